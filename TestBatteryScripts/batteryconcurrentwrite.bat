@@ -0,0 +1 @@
+java -ea -server -Djava.library.path=C:/Users/groff/downloads/librocksdbjni-win64.dll -cp \Progra~1\apache\apache-tomcat\lib\Relatrix.jar;\Progra~1\apache\apache-tomcat\lib\RockSack.jar;\Progra~1\apache\apache-tomcat\lib\neurovolve.jar;\Progra~1\apache\apache-tomcat\lib\RoboCore.jar;\Progra~1\apache\apache-tomcat\lib\rocksdbjni-9.10.0-win64.jar com.neocoretechs.rocksack.test.BatteryConcurrentWrite %1
\ No newline at end of file
@@ -0,0 +1,28 @@
+package com.neocoretechs.rocksack;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+/**
+ * Marks a field, or a method without parameters, of a class stored as a value whose result is kept in a compressed
+ * bitmap index. Meant for results of few distinct values, such as a status, a region or a flag, where a
+ * {@link SecondaryIndex} would hold one entry per value stored. The result must be Comparable and Serializable.
+ * Null results are not indexed.<p>
+ * Each value stored under a key with bitmap indexes is given an ordinal, and each distinct result holds a bitmap of
+ * the ordinals of the values having it, kept in a column family beside the one of the map and written in the same
+ * write batch or transaction as the put or remove. Bitmaps are combined with AND, OR and NOT by a
+ * {@link com.neocoretechs.rocksack.session.BitmapQuery} given to bitmapKeyStream, bitmapQuery and bitmapCount of the
+ * map. i.e.:<p>
+ * @BitmapIndex(name = "status") <br>
+ * private String status; <br>
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+@Retention(RUNTIME)
+@Target({FIELD, METHOD})
+public @interface BitmapIndex {
+	public String name() default ""; // "" means the name of the field or method
+}
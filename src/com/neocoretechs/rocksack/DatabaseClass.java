@@ -34,6 +34,16 @@ import org.rocksdb.CompactionStyle;
  *   compactionStyle = CompactionStyle.FIFO, <br>
  *   writeBufferSize = 32L * SizeUnit.MB, <br>
  *   maxWriteBufferNumber = 2 ) <br>
+ * The memtable representation is chosen with memtable, one of skip_list, the default, hash_skip_list or vector.
+ * hash_skip_list hashes keys to buckets by their first prefixLength serialized bytes and suits point lookups of many keys,
+ * prefixLength must then reach past the serialization header common to all keys of the class into the key itself.
+ * vector suits a bulk load written once and read after flush. Neither supports concurrent memtable writes, so the
+ * database holding the column family must be configured with db.allow_concurrent_memtable_write=false,
+ * see {@link com.neocoretechs.rocksack.session.TuningConfig}.<p>
+ * cacheEntries or cacheBytes put an {@link com.neocoretechs.rocksack.session.ObjectCache} of deserialized values in front of
+ * the gets of the column family, bounded by entries or estimated bytes. pinned holds the whole column family on heap in a
+ * {@link com.neocoretechs.rocksack.session.PinnedMap} instead. rangeCacheEntries puts a
+ * {@link com.neocoretechs.rocksack.session.RangeCache} of materialized range results behind the range queries.<p>
  * @author Jonathan N Groff (C) NeoCoreTechs 2024
  *
  */
@@ -48,5 +58,11 @@ public @interface DatabaseClass {
 	CompactionStyle compactionStyle() default CompactionStyle.UNIVERSAL;
 	long writeBufferSize() default -1; // -1 means "use default"
 	int maxWriteBufferNumber() default -1;
+	String memtable() default ""; // "" means "use default"
+	int prefixLength() default -1;
+	long cacheEntries() default -1; // on heap object cache bound, -1 means none
+	long cacheBytes() default -1;
+	long rangeCacheEntries() default -1; // on heap range result cache bound, -1 means none
+	boolean pinned() default false; // serve all reads from the column family held on heap
 
 }
\ No newline at end of file
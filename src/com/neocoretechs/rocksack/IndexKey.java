@@ -0,0 +1,104 @@
+package com.neocoretechs.rocksack;
+
+import java.io.Serializable;
+
+/**
+ * Key of an entry of a secondary index, ordered by index name, then indexed value, then the primary key of the entry,
+ * so the entries of one value are contiguous and a range of values is a range of keys. A bound holds no value or no
+ * primary key, and sorts before or after all entries sharing the rest of its key. See {@link SecondaryIndex}.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+@SuppressWarnings("rawtypes")
+public final class IndexKey implements Serializable, Comparable {
+	private static final long serialVersionUID = 4170625319938206815L;
+	private static final byte LOW = -1;
+	private static final byte HIGH = 1;
+	private final String index;
+	private final Comparable value;
+	private final Comparable key;
+	private final byte bound;
+
+	private IndexKey(String index, Comparable value, Comparable key, byte bound) {
+		this.index = index;
+		this.value = value;
+		this.key = key;
+		this.bound = bound;
+	}
+	/**
+	 * @param index the name of the index
+	 * @param value the indexed value
+	 * @param key the primary key of the entry
+	 */
+	public IndexKey(String index, Comparable value, Comparable key) {
+		this(index, value, key, (byte)0);
+	}
+	/**
+	 * @param index the name of the index
+	 * @param value the indexed value, or null for the start of the index
+	 * @return the bound before all entries of the value
+	 */
+	public static IndexKey low(String index, Comparable value) {
+		return new IndexKey(index, value, null, LOW);
+	}
+	/**
+	 * @param index the name of the index
+	 * @param value the indexed value, or null for the end of the index
+	 * @return the bound after all entries of the value
+	 */
+	public static IndexKey high(String index, Comparable value) {
+		return new IndexKey(index, value, null, HIGH);
+	}
+
+	public String getIndex() {
+		return index;
+	}
+
+	public Comparable getValue() {
+		return value;
+	}
+
+	public Comparable getKey() {
+		return key;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public int compareTo(Object o) {
+		IndexKey k = (IndexKey)o;
+		int c = index.compareTo(k.index);
+		if(c != 0)
+			return c;
+		c = compare(value, k.value, k);
+		if(c != 0)
+			return c;
+		return compare(key, k.key, k);
+	}
+	/**
+	 * Compare a part of the keys, where a missing part is the position of the bound of its key.
+	 */
+	@SuppressWarnings("unchecked")
+	private int compare(Comparable a, Comparable b, IndexKey k) {
+		if(a == null || b == null) {
+			if(a == null && b == null)
+				return Byte.compare(bound, k.bound);
+			return a == null ? bound : -k.bound;
+		}
+		return a.compareTo(b);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof IndexKey && compareTo(o) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return index.hashCode() ^ (value == null ? 0 : value.hashCode()) ^ (key == null ? 0 : key.hashCode()) ^ bound;
+	}
+
+	@Override
+	public String toString() {
+		return "IndexKey:["+index+","+value+","+key+(bound == 0 ? "" : bound < 0 ? ",low" : ",high")+"]";
+	}
+}
@@ -0,0 +1,26 @@
+package com.neocoretechs.rocksack;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+/**
+ * Marks a field, or a method without parameters, of a class stored as a value whose result is indexed, so entries can
+ * be found by it without a scan of the column family. The result must be Comparable, and the results of one index
+ * comparable to each other. Null results are not indexed.<p>
+ * Index entries are kept in a column family beside the one of the map, written in the same write batch as a put or
+ * remove of a {@link com.neocoretechs.rocksack.session.BufferedMap}, or in the same transaction as one of a
+ * {@link com.neocoretechs.rocksack.session.TransactionalMap}. They are queried with getByIndex, indexRange and
+ * indexStream of the map, and built for existing entries with rebuildIndex. i.e.:<p>
+ * @SecondaryIndex(name = "region") <br>
+ * private String region; <br>
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+@Retention(RUNTIME)
+@Target({FIELD, METHOD})
+public @interface SecondaryIndex {
+	public String name() default ""; // "" means the name of the field or method
+}
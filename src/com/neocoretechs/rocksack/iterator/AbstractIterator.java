@@ -3,6 +3,8 @@ package com.neocoretechs.rocksack.iterator;
 import java.io.IOException;
 import java.util.Iterator;
 
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
 import org.rocksdb.RocksIterator;
 
 import com.neocoretechs.rocksack.SerializedComparator;
@@ -12,9 +14,27 @@ import com.neocoretechs.rocksack.SerializedComparator;
  * @author Jonathan Groff Copyright (C) NeoCoreTechs 2021,2022
  *
  */
-public abstract class AbstractIterator implements Iterator<Object> {
+public abstract class AbstractIterator implements Iterator<Object>, AutoCloseable {
 	RocksIterator kvMain;
 	Comparable nextKey, retKey;
+	private Runnable onClose = null;
+	// read options shared by all iterators, created on first use once the native library is loaded
+	private static final class TotalOrder {
+		static final ReadOptions READ_OPTIONS;
+		static {
+			RocksDB.loadLibrary();
+			READ_OPTIONS = new ReadOptions().setTotalOrderSeek(true);
+		}
+	}
+	/**
+	 * Read options for iteration in key order over the whole column family. Column families with a prefix extractor,
+	 * such as those with a hash memtable, would otherwise confine seeks to the prefix of the sought key,
+	 * and iterate nothing from a hash memtable on seek to first.
+	 * @return the shared ReadOptions, which must not be closed or modified
+	 */
+	public static ReadOptions totalOrder() {
+		return TotalOrder.READ_OPTIONS;
+	}
 	public AbstractIterator(RocksIterator kvMain) throws IOException {
 		this.kvMain = kvMain;
 	    kvMain.seekToFirst();
@@ -32,4 +52,19 @@ public abstract class AbstractIterator implements Iterator<Object> {
 	public abstract boolean hasNext();
 	public abstract Object next();
 	public RocksIterator getIterator() { return kvMain; }
+	/**
+	 * @param action run once the iterator is closed, such as releasing the pin it holds on its database
+	 */
+	public void onClose(Runnable action) {
+		onClose = action;
+	}
+	/**
+	 * Release the native RocksIterator ahead of garbage collection. The iterator may not be used after close.
+	 */
+	@Override
+	public void close() {
+		kvMain.close();
+		if(onClose != null)
+			onClose.run();
+	}
 }
@@ -0,0 +1,58 @@
+package com.neocoretechs.rocksack.iterator;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming difference of two key ordered iterators of Map.Entry. A full outer {@link MergeJoinIterator}
+ * from which keys present on both sides with equal values are dropped. Each {@link JoinEntry} delivered is then
+ * either left only (removed with respect to the right side), right only (added), or {@link JoinEntry#isChanged()}.
+ * Values are compared with equals. Same single forward pass and constant memory as the merge join.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class DiffIterator implements Iterator<JoinEntry>, AutoCloseable {
+	private MergeJoinIterator join;
+	private JoinEntry nextEntry = null;
+
+	/**
+	 * @param left left side iterator of Map.Entry in ascending key order
+	 * @param right right side iterator of Map.Entry in ascending key order
+	 */
+	public DiffIterator(Iterator<?> left, Iterator<?> right) {
+		this.join = new MergeJoinIterator(left, right, MergeJoinIterator.JoinType.FULL_OUTER);
+		nextEntry = diff();
+	}
+
+	private JoinEntry diff() {
+		while(join.hasNext()) {
+			JoinEntry je = join.next();
+			if(!je.hasLeft() || !je.hasRight() || je.isChanged())
+				return je;
+		}
+		return null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return nextEntry != null;
+	}
+
+	@Override
+	public JoinEntry next() {
+		if(nextEntry == null)
+			throw new NoSuchElementException("No next iterator element");
+		JoinEntry ret = nextEntry;
+		nextEntry = diff();
+		return ret;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("No provision to remove from Iterator");
+	}
+	@Override
+	public void close() {
+		nextEntry = null;
+		join.close();
+	}
+}
@@ -0,0 +1,82 @@
+package com.neocoretechs.rocksack.iterator;
+
+import java.io.Serializable;
+import java.util.Objects;
+/**
+ * Serializable Map.Entry delivered by {@link MergeJoinIterator} and {@link DiffIterator}.
+ * Carries the common key and the value from each side of the join. Since a stored value may itself be null,
+ * presence on each side is carried separately by {@link #hasLeft()} and {@link #hasRight()}.
+ * The Map.Entry value is the left value if present, otherwise the right value.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class JoinEntry implements java.util.Map.Entry<Comparable, Object>, Comparable, Serializable {
+	private static final long serialVersionUID = -3398271054615873094L;
+	Comparable key;
+	Object leftValue, rightValue;
+	boolean hasLeft, hasRight;
+
+	public JoinEntry(Comparable key, boolean hasLeft, Object leftValue, boolean hasRight, Object rightValue) {
+		this.key = key;
+		this.hasLeft = hasLeft;
+		this.leftValue = leftValue;
+		this.hasRight = hasRight;
+		this.rightValue = rightValue;
+	}
+
+	@Override
+	public Comparable getKey() {
+		return key;
+	}
+
+	@Override
+	public Object getValue() {
+		return hasLeft ? leftValue : rightValue;
+	}
+
+	@Override
+	public Object setValue(Object value) {
+		throw new UnsupportedOperationException("Map.Entry write-through not supported");
+	}
+	/**
+	 * @return value from the left map, null if not present there
+	 */
+	public Object getLeftValue() {
+		return leftValue;
+	}
+	/**
+	 * @return value from the right map, null if not present there
+	 */
+	public Object getRightValue() {
+		return rightValue;
+	}
+	/**
+	 * @return true if the key is present in the left map
+	 */
+	public boolean hasLeft() {
+		return hasLeft;
+	}
+	/**
+	 * @return true if the key is present in the right map
+	 */
+	public boolean hasRight() {
+		return hasRight;
+	}
+	/**
+	 * @return true if key is present on both sides with values that are not equal
+	 */
+	public boolean isChanged() {
+		return hasLeft && hasRight && !Objects.equals(leftValue, rightValue);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("<%s,%s,%s>%n", key, (hasLeft ? leftValue : "-"), (hasRight ? rightValue : "-"));
+	}
+
+	@Override
+	public int compareTo(Object o) {
+		return key.compareTo(((JoinEntry)o).key);
+	}
+
+}
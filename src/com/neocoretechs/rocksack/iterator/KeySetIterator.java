@@ -3,7 +3,6 @@ import java.io.IOException;
 import java.util.NoSuchElementException;
 
 import org.rocksdb.ColumnFamilyHandle;
-import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.Transaction;
 
@@ -39,19 +38,19 @@ import com.neocoretechs.rocksack.SerializedComparator;
 public class KeySetIterator extends AbstractIterator  {
 	@SuppressWarnings("rawtypes")
 	public KeySetIterator(RocksDB db) throws IOException {
-		super(db.newIterator());
+		super(db.newIterator(totalOrder()));
 	}
 	
 	public KeySetIterator(Transaction db) throws IOException {
-		super(db.getIterator(new ReadOptions()));
+		super(db.getIterator(totalOrder()));
 	}
 	
 	public KeySetIterator(RocksDB db, ColumnFamilyHandle cfh) throws IOException {
-		super(db.newIterator(cfh));
+		super(db.newIterator(cfh, totalOrder()));
 	}
 	
 	public KeySetIterator(Transaction db, ColumnFamilyHandle cfh) throws IOException {
-		super(db.getIterator(new ReadOptions(),cfh));
+		super(db.getIterator(totalOrder(),cfh));
 	}
 	
 	public boolean hasNext() {
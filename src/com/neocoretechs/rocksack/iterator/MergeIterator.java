@@ -0,0 +1,106 @@
+package com.neocoretechs.rocksack.iterator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of ordered iterators into a single ordered iterator using a heap holding the current element of each source.
+ * The sources are range iterators over separate column families or databases, all ordered by the serialized comparator,
+ * hence the natural Comparable order of their keys. Elements may be keys or Map.Entry, in which case the key of the entry
+ * is used for ordering. Equal keys from several sources are all delivered, in order of the sources as given.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class MergeIterator implements Iterator<Object>, AutoCloseable {
+	private PriorityQueue<Source> heap;
+	private List<Iterator<?>> sources;
+
+	private static final class Source {
+		Iterator<?> it;
+		int index;
+		Object head;
+		Comparable key;
+		Source(Iterator<?> it, int index) {
+			this.it = it;
+			this.index = index;
+		}
+		boolean advance() {
+			if(!it.hasNext()) {
+				head = null;
+				key = null;
+				return false;
+			}
+			head = it.next();
+			key = (Comparable) (head instanceof Map.Entry ? ((Map.Entry)head).getKey() : head);
+			return true;
+		}
+	}
+
+	/**
+	 * @param sources the ordered iterators to merge
+	 */
+	@SuppressWarnings("unchecked")
+	public MergeIterator(List<Iterator<?>> sources) {
+		this.sources = sources;
+		heap = new PriorityQueue<Source>(Math.max(1, sources.size()), (s1, s2) -> {
+			int cmp = s1.key.compareTo(s2.key);
+			return cmp != 0 ? cmp : Integer.compare(s1.index, s2.index);
+		});
+		int index = 0;
+		for(Iterator<?> it : sources) {
+			Source s = new Source(it, index++);
+			if(s.advance())
+				heap.add(s);
+		}
+	}
+
+	public MergeIterator(Iterator<?>... sources) {
+		this(toList(sources));
+	}
+
+	private static List<Iterator<?>> toList(Iterator<?>[] sources) {
+		ArrayList<Iterator<?>> l = new ArrayList<Iterator<?>>(sources.length);
+		for(Iterator<?> it : sources)
+			l.add(it);
+		return l;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !heap.isEmpty();
+	}
+
+	@Override
+	public Object next() {
+		Source s = heap.poll();
+		if(s == null)
+			throw new NoSuchElementException("No next iterator element");
+		Object ret = s.head;
+		if(s.advance())
+			heap.add(s);
+		return ret;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("No provision to remove from Iterator");
+	}
+
+	/**
+	 * Close any of the sources that are AutoCloseable, such as {@link PrefetchIterator}
+	 */
+	@Override
+	public void close() {
+		heap.clear();
+		for(Iterator<?> it : sources) {
+			if(it instanceof AutoCloseable) {
+				try {
+					((AutoCloseable)it).close();
+				} catch (Exception e) {}
+			}
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.neocoretechs.rocksack.iterator;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming merge join of two key ordered iterators of Map.Entry, such as those returned by the KV
+ * range methods of BufferedMap and TransactionalMap (entrySet, subSetKV, headSetKV, tailSetKV etc.).<p>
+ * Since both sides are delivered in the order of the same serialized comparator, a single forward pass is made over each
+ * side, holding only the current element of each in memory. Keys are compared with their natural Comparable order,
+ * which is the order RockSack stores them in. Keys are assumed unique on each side as they are in a map.<p>
+ * Results are delivered in key order as {@link JoinEntry}.
+ * <dd>INNER - keys present on both sides
+ * <dd>LEFT - all keys of the left side, with right value where present
+ * <dd>FULL_OUTER - all keys of either side
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class MergeJoinIterator implements Iterator<JoinEntry>, AutoCloseable {
+	public enum JoinType { INNER, LEFT, FULL_OUTER };
+	private Iterator<?> left, right;
+	private JoinType joinType;
+	private Map.Entry leftEntry = null, rightEntry = null;
+	private JoinEntry nextEntry = null;
+
+	/**
+	 * @param left left side iterator of Map.Entry in ascending key order
+	 * @param right right side iterator of Map.Entry in ascending key order
+	 * @param joinType INNER, LEFT, FULL_OUTER
+	 */
+	public MergeJoinIterator(Iterator<?> left, Iterator<?> right, JoinType joinType) {
+		this.left = left;
+		this.right = right;
+		this.joinType = joinType;
+		leftEntry = advance(left);
+		rightEntry = advance(right);
+		nextEntry = join();
+	}
+
+	private static Map.Entry advance(Iterator<?> it) {
+		return it.hasNext() ? (Map.Entry) it.next() : null;
+	}
+
+	/**
+	 * Move forward on one or both sides until the join type produces an element.
+	 * @return the next JoinEntry or null if the join is exhausted
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private JoinEntry join() {
+		while(leftEntry != null || rightEntry != null) {
+			if(leftEntry == null) {
+				// only right remains
+				if(joinType != JoinType.FULL_OUTER)
+					return null;
+				JoinEntry je = new JoinEntry((Comparable)rightEntry.getKey(), false, null, true, rightEntry.getValue());
+				rightEntry = advance(right);
+				return je;
+			}
+			if(rightEntry == null) {
+				// only left remains
+				if(joinType == JoinType.INNER)
+					return null;
+				JoinEntry je = new JoinEntry((Comparable)leftEntry.getKey(), true, leftEntry.getValue(), false, null);
+				leftEntry = advance(left);
+				return je;
+			}
+			int cmp = ((Comparable)leftEntry.getKey()).compareTo(rightEntry.getKey());
+			if(cmp == 0) {
+				JoinEntry je = new JoinEntry((Comparable)leftEntry.getKey(), true, leftEntry.getValue(), true, rightEntry.getValue());
+				leftEntry = advance(left);
+				rightEntry = advance(right);
+				return je;
+			}
+			if(cmp < 0) {
+				Map.Entry e = leftEntry;
+				leftEntry = advance(left);
+				if(joinType != JoinType.INNER)
+					return new JoinEntry((Comparable)e.getKey(), true, e.getValue(), false, null);
+			} else {
+				Map.Entry e = rightEntry;
+				rightEntry = advance(right);
+				if(joinType == JoinType.FULL_OUTER)
+					return new JoinEntry((Comparable)e.getKey(), false, null, true, e.getValue());
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return nextEntry != null;
+	}
+
+	@Override
+	public JoinEntry next() {
+		if(nextEntry == null)
+			throw new NoSuchElementException("No next iterator element");
+		JoinEntry ret = nextEntry;
+		nextEntry = join();
+		return ret;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("No provision to remove from Iterator");
+	}
+	/**
+	 * Close either side that is AutoCloseable, releasing the native iterators.
+	 */
+	@Override
+	public void close() {
+		leftEntry = rightEntry = null;
+		nextEntry = null;
+		for(Iterator<?> it : new Iterator<?>[] {left, right}) {
+			if(it instanceof AutoCloseable) {
+				try {
+					((AutoCloseable)it).close();
+				} catch (Exception e) {}
+			}
+		}
+	}
+}
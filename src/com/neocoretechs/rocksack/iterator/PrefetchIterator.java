@@ -0,0 +1,121 @@
+package com.neocoretechs.rocksack.iterator;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps a source iterator and fetches from it in batches on a separate thread supplied by an ExecutorService,
+ * so that several sources, such as the column families of a {@link MergeIterator}, are read from the database concurrently.
+ * The source iterator is used exclusively by the fetch thread once started. At most queueDepth batches are held
+ * ahead of the consumer. Closing stops the fetch thread at its next batch boundary, and the fetch thread closes the source
+ * if it is AutoCloseable when it finishes.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class PrefetchIterator implements Iterator<Object>, AutoCloseable {
+	private static boolean DEBUG = false;
+	private static final Object[] EOF = new Object[0];
+	public static int DEFAULT_BATCH_SIZE = 256;
+	public static int DEFAULT_QUEUE_DEPTH = 4;
+	private ArrayBlockingQueue<Object[]> queue;
+	private Object[] batch = null;
+	private int batchIndex = 0;
+	private volatile boolean closed = false;
+	private volatile RuntimeException fault = null;
+
+	public PrefetchIterator(Iterator<?> source, ExecutorService executor) {
+		this(source, executor, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_DEPTH);
+	}
+
+	/**
+	 * @param source iterator to fetch from
+	 * @param executor supplies the fetch thread
+	 * @param batchSize number of elements fetched per batch
+	 * @param queueDepth number of batches buffered ahead of the consumer
+	 */
+	public PrefetchIterator(Iterator<?> source, ExecutorService executor, int batchSize, int queueDepth) {
+		this.queue = new ArrayBlockingQueue<Object[]>(queueDepth);
+		executor.execute(() -> {
+			try {
+				while(!closed) {
+					Object[] b = new Object[batchSize];
+					int n = 0;
+					while(n < batchSize && source.hasNext())
+						b[n++] = source.next();
+					if(n == 0)
+						break;
+					if(n < batchSize) {
+						Object[] t = new Object[n];
+						System.arraycopy(b, 0, t, 0, n);
+						b = t;
+					}
+					offer(b);
+				}
+			} catch(RuntimeException re) {
+				fault = re;
+			} catch(InterruptedException ie) {
+				fault = new RuntimeException(ie);
+			} finally {
+				// the source belongs to this thread, release it here
+				if(source instanceof AutoCloseable) {
+					try {
+						((AutoCloseable)source).close();
+					} catch (Exception e) {}
+				}
+				try {
+					offer(EOF);
+				} catch (InterruptedException e) {}
+			}
+			if(DEBUG)
+				System.out.printf("%s fetch complete closed=%b fault=%s%n", this.getClass().getName(), closed, fault);
+		});
+	}
+
+	private void offer(Object[] b) throws InterruptedException {
+		while(!closed) {
+			if(queue.offer(b, 100, TimeUnit.MILLISECONDS))
+				return;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(batch == EOF)
+			return false;
+		if(batch == null || batchIndex >= batch.length) {
+			try {
+				batch = queue.take();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			batchIndex = 0;
+			if(batch == EOF) {
+				if(fault != null)
+					throw fault;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public Object next() {
+		if(!hasNext())
+			throw new NoSuchElementException("No next iterator element");
+		return batch[batchIndex++];
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("No provision to remove from Iterator");
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		batch = EOF;
+		queue.clear();
+	}
+}
@@ -42,19 +42,19 @@ public class SubSetIterator extends AbstractIterator {
 	Comparable fromKey, toKey;
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public SubSetIterator(Comparable fromKey, Comparable toKey, RocksDB db) throws IOException {
-		super(db.newIterator(), fromKey);//new ReadOptions()));//.
+		super(db.newIterator(totalOrder()), fromKey);//new ReadOptions()));//.
 				//setIterateUpperBound(new Slice(SerializedComparator.serializeObject(toKey)))));//.
 				//setIterateLowerBound(new Slice(SerializedComparator.serializeObject(fromKey)))));
 		//
 		while(kvMain.isValid()) {
-			// set our lower bound
+			// set our lower bound, the first key at or above it may already be past the upper bound
 			nextKey = (Comparable) SerializedComparator.deserializeObject(kvMain.key());
-			if(nextKey.compareTo(fromKey) >= 0)
-				break;
 			if(nextKey.compareTo(toKey) >= 0)  {
 				nextKey = null;
 				break;
 			}
+			if(nextKey.compareTo(fromKey) >= 0)
+				break;
 			kvMain.next();
 		}
 		if(DEBUG) {
@@ -66,18 +66,18 @@ public class SubSetIterator extends AbstractIterator {
 	}
 	
 	public SubSetIterator(Comparable fromKey, Comparable toKey, Transaction db) throws IOException {
-		super(db.getIterator(new ReadOptions()));//.
+		super(db.getIterator(totalOrder()));//.
 				//setIterateUpperBound(new Slice(SerializedComparator.serializeObject(toKey)))));//.
 				//setIterateLowerBound(new Slice(SerializedComparator.serializeObject(fromKey)))));
 		while(kvMain.isValid()) {
-			// set our lower bound
+			// set our lower bound, the first key at or above it may already be past the upper bound
 			nextKey = (Comparable) SerializedComparator.deserializeObject(kvMain.key());
-			if(nextKey.compareTo(fromKey) >= 0)
-				break;
-			if (nextKey.compareTo(toKey) >= 0)  {
+			if(nextKey.compareTo(toKey) >= 0)  {
 				nextKey = null;
 				break;
 			}
+			if(nextKey.compareTo(fromKey) >= 0)
+				break;
 			kvMain.next();
 		}
 		if(DEBUG) {
@@ -89,19 +89,19 @@ public class SubSetIterator extends AbstractIterator {
 	}
 	
 	public SubSetIterator(ColumnFamilyHandle cfh, Comparable fromKey, Comparable toKey, RocksDB db) throws IOException {
-		super(db.newIterator(cfh), fromKey);//new ReadOptions()));//.
+		super(db.newIterator(cfh, totalOrder()), fromKey);//new ReadOptions()));//.
 		//setIterateUpperBound(new Slice(SerializedComparator.serializeObject(toKey)))));//.
 		//setIterateLowerBound(new Slice(SerializedComparator.serializeObject(fromKey)))));
 		//
 		while(kvMain.isValid()) {
-			// set our lower bound
+			// set our lower bound, the first key at or above it may already be past the upper bound
 			nextKey = (Comparable) SerializedComparator.deserializeObject(kvMain.key());
-			if(nextKey.compareTo(fromKey) >= 0)
-				break;
 			if(nextKey.compareTo(toKey) >= 0)  {
 				nextKey = null;
 				break;
 			}
+			if(nextKey.compareTo(fromKey) >= 0)
+				break;
 			kvMain.next();
 		}
 		if(DEBUG) {
@@ -113,18 +113,18 @@ public class SubSetIterator extends AbstractIterator {
 	}
 	
 	public SubSetIterator(ColumnFamilyHandle cfh, Comparable fromKey, Comparable toKey, Transaction db) throws IOException {
-		super(db.getIterator(new ReadOptions(), cfh));//.
+		super(db.getIterator(totalOrder(), cfh));//.
 				//setIterateUpperBound(new Slice(SerializedComparator.serializeObject(toKey)))));//.
 				//setIterateLowerBound(new Slice(SerializedComparator.serializeObject(fromKey)))));
 		while(kvMain.isValid()) {
-			// set our lower bound
+			// set our lower bound, the first key at or above it may already be past the upper bound
 			nextKey = (Comparable) SerializedComparator.deserializeObject(kvMain.key());
-			if(nextKey.compareTo(fromKey) >= 0)
-				break;
-			if (nextKey.compareTo(toKey) >= 0)  {
+			if(nextKey.compareTo(toKey) >= 0)  {
 				nextKey = null;
 				break;
 			}
+			if(nextKey.compareTo(fromKey) >= 0)
+				break;
 			kvMain.next();
 		}
 		if(DEBUG) {
@@ -0,0 +1,91 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Shared configuration for the CompletableFuture variants of the map operations, such as
+ * {@link BufferedMap#getAsync(Comparable)}. The operations run on the executor set here, by default one virtual thread
+ * per task, so blocking in the database ties up no platform thread.<p>
+ * Concurrent point gets on a BufferedMap are coalesced into multiGets of at most maxBatch keys, with at most
+ * maxConcurrentBatches multiGets in flight per map. Under light load a get is issued alone on the calling thread,
+ * as load rises gets queue behind the gets in flight and are issued together on the executor.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public final class AsyncSupport {
+	private static Executor executor = Executors.newVirtualThreadPerTaskExecutor();
+	private static int maxBatch = 64;
+	private static int maxConcurrentBatches = 4;
+	private static boolean inlineGets = true;
+
+	/**
+	 * An operation against the database that may fail with IOException.
+	 */
+	@FunctionalInterface
+	interface IOCallable<T> {
+		T call() throws IOException;
+	}
+
+	private AsyncSupport() {}
+
+	public static Executor getExecutor() {
+		return executor;
+	}
+	/**
+	 * Set the executor for all subsequent asynchronous map operations.
+	 * @param exec
+	 */
+	public static void setExecutor(Executor exec) {
+		executor = exec;
+	}
+
+	public static int getMaxBatch() {
+		return maxBatch;
+	}
+	/**
+	 * @param batch maximum number of coalesced gets issued in one multiGet
+	 */
+	public static void setMaxBatch(int batch) {
+		maxBatch = batch;
+	}
+
+	public static int getMaxConcurrentBatches() {
+		return maxConcurrentBatches;
+	}
+	/**
+	 * @param batches maximum number of multiGets in flight per map
+	 */
+	public static void setMaxConcurrentBatches(int batches) {
+		maxConcurrentBatches = batches;
+	}
+
+	public static boolean isInlineGets() {
+		return inlineGets;
+	}
+	/**
+	 * @param inline true to issue a get on the calling thread when no other get of the map is in flight or queued,
+	 * false to always complete gets on the executor, for callers that must not block
+	 */
+	public static void setInlineGets(boolean inline) {
+		inlineGets = inline;
+	}
+	/**
+	 * Run the operation on the executor.
+	 * @param op the operation
+	 * @return the future completed with the result of the operation, or exceptionally with its IOException
+	 */
+	static <T> CompletableFuture<T> supply(IOCallable<T> op) {
+		CompletableFuture<T> cf = new CompletableFuture<T>();
+		executor.execute(() -> {
+			try {
+				cf.complete(op.call());
+			} catch(Throwable t) {
+				cf.completeExceptionally(t);
+			}
+		});
+		return cf;
+	}
+}
@@ -0,0 +1,715 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Snapshot;
+import org.rocksdb.Transaction;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import com.neocoretechs.rocksack.BitmapIndex;
+import com.neocoretechs.rocksack.IndexKey;
+import com.neocoretechs.rocksack.KeyValue;
+import com.neocoretechs.rocksack.SerializedComparator;
+import com.neocoretechs.rocksack.iterator.AbstractIterator;
+
+/**
+ * Maintains the {@link BitmapIndex} bitmaps of the values of a map in the bitmap column family beside the column
+ * family of the map, named after it with the suffix #bitmap. A value with bitmap indexes is given an ordinal on its
+ * first put under a key, kept until the key is removed or its value has none, and never reused. All entries are
+ * {@link IndexKey}s:
+ * <dd>(index, result, high bits) the {@link RoaringBitmap} container of the ordinals of a chunk of the values with the result
+ * <dd>(\0all, true, high bits) the container of all ordinals in use, the universe of NOT
+ * <dd>(\0ordinal, key, 0) the ordinal of a primary key
+ * <dd>(\0key, ordinal, 0) the primary key of an ordinal
+ * <dd>(\0next, 0, 0) the next ordinal to give
+ * <dd>(\0pending, 0, 0) present while writes outside a transaction have containers not yet written<p>
+ * A write outside a transaction writes the ordinal and key entries in its write batch and changes the containers of
+ * the ordinal in memory, so writes of different keys run concurrently and a container is read and written once for
+ * many writes. The pending containers are written in one batch every {@link #FLUSH_SIZE} writes, before a query and
+ * before the database is closed. A database left with containers pending by an unclean shutdown has its bitmaps built
+ * again on first use. A transaction reads the containers it changes for update and writes them in the transaction, so
+ * transactions putting new keys or changing the same results wait on each other.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+final class BitmapIndexer {
+	private static boolean DEBUG = false;
+	/** suffix of the name of the bitmap column family to the name of the column family of the map */
+	static final String BITMAP_SUFFIX = "#bitmap";
+	// reserved index names, a field or method name cannot begin with \0
+	private static final String NEXT = "\0next";
+	private static final String ORDINAL = "\0ordinal";
+	private static final String KEY = "\0key";
+	private static final String ALL = "\0all";
+	private static final String PENDING = "\0pending";
+	private static final Integer ZERO = 0;
+	private static final byte[] EMPTY = new byte[0];
+	// writes outside a transaction changing containers between flushes
+	private static final int FLUSH_SIZE = 8192;
+	// ordinals resolved to keys per multiGet
+	private static final int FETCH_SIZE = 256;
+
+	private final Session session;
+	private final SecondaryIndexer.Family family;
+	// writes outside a transaction change containers held here, written together by flush
+	private final ConcurrentHashMap<ByteBuffer, Pending> pending = new ConcurrentHashMap<ByteBuffer, Pending>();
+	// shared by writes outside a transaction, exclusive to flush, rebuild and drop
+	private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+	private final AtomicInteger updates = new AtomicInteger();
+	// whether the PENDING entry is written, cleared by flush
+	private volatile boolean dirty = false;
+	// the next ordinal given by writes outside a transaction, -1 until read, guarded by pending
+	private int next = -1;
+	// whether bitmaps left pending by an unclean shutdown were looked for
+	private volatile boolean recovered = false;
+
+	/**
+	 * A container of the bitmap column family as changed by writes outside a transaction, read on first change.
+	 */
+	private static final class Pending {
+		boolean loaded = false;
+		// null if the container has no ordinal
+		RoaringBitmap.Container container = null;
+	}
+	/**
+	 * An ordinal added to or removed from a pending container.
+	 */
+	private static final class Change {
+		final Pending pending;
+		final char low;
+		final boolean add;
+		Change(Pending pending, char low, boolean add) {
+			this.pending = pending;
+			this.low = low;
+			this.add = add;
+		}
+	}
+	/**
+	 * The previous and new value of a key written outside a transaction.
+	 */
+	@SuppressWarnings("rawtypes")
+	static final class Update {
+		final Comparable key;
+		final Object old;
+		final Object value;
+		/**
+		 * @param key the primary key
+		 * @param old the previous value, or null
+		 * @param value the new value, or null for a remove
+		 */
+		Update(Comparable key, Object old, Object value) {
+			this.key = key;
+			this.old = old;
+			this.value = value;
+		}
+	}
+	/**
+	 * Reads and writes entries of the bitmap column family for one update.
+	 */
+	private static abstract class Store {
+		abstract byte[] get(ColumnFamilyHandle cfh, byte[] key) throws RocksDBException;
+		abstract void put(ColumnFamilyHandle cfh, byte[] key, byte[] value) throws RocksDBException;
+		abstract void delete(ColumnFamilyHandle cfh, byte[] key) throws RocksDBException;
+		/**
+		 * @return the ordinal given to a new key
+		 */
+		abstract int next(ColumnFamilyHandle bch) throws IOException, RocksDBException;
+		/**
+		 * Add or remove the ordinal in the container under the key.
+		 */
+		abstract void change(ColumnFamilyHandle bch, byte[] k, int ordinal, boolean add) throws IOException, RocksDBException;
+	}
+	/**
+	 * Writes the per key entries to the batch and collects the container changes, applied to the pending containers
+	 * once the batch is written.
+	 */
+	private final class WriteBack extends Store {
+		private final RocksDB db;
+		private final WriteBatch wb;
+		private final ArrayList<Change> changed = new ArrayList<Change>();
+		WriteBack(RocksDB db, WriteBatch wb) {
+			this.db = db;
+			this.wb = wb;
+		}
+		@Override
+		byte[] get(ColumnFamilyHandle cfh, byte[] key) throws RocksDBException {
+			return db.get(cfh, key);
+		}
+		@Override
+		void put(ColumnFamilyHandle cfh, byte[] key, byte[] value) throws RocksDBException {
+			wb.put(cfh, key, value);
+		}
+		@Override
+		void delete(ColumnFamilyHandle cfh, byte[] key) throws RocksDBException {
+			wb.delete(cfh, key);
+		}
+		@Override
+		int next(ColumnFamilyHandle bch) throws IOException, RocksDBException {
+			synchronized(pending) {
+				if(next < 0) {
+					byte[] nb = db.get(bch, reserved(NEXT));
+					next = nb == null ? 0 : (Integer) SerializedComparator.deserializeObject(nb);
+				}
+				if(next == Integer.MAX_VALUE)
+					throw exhausted();
+				return next++;
+			}
+		}
+		@Override
+		void change(ColumnFamilyHandle bch, byte[] k, int ordinal, boolean add) throws IOException, RocksDBException {
+			Pending p = pending.computeIfAbsent(ByteBuffer.wrap(k), x -> new Pending());
+			synchronized(p) {
+				if(!p.loaded) {
+					byte[] b = db.get(bch, k);
+					p.container = b == null ? null : RoaringBitmap.Container.deserialize(b);
+					p.loaded = true;
+				}
+			}
+			changed.add(new Change(p, (char)ordinal, add));
+		}
+		/**
+		 * Apply the changes of the written batch to the pending containers.
+		 */
+		void apply() {
+			for(Change ch : changed) {
+				synchronized(ch.pending) {
+					RoaringBitmap.Container c = ch.pending.container;
+					if(ch.add)
+						c = (c == null ? new RoaringBitmap.ArrayContainer() : c).add(ch.low);
+					else if(c != null)
+						c = c.remove(ch.low);
+					ch.pending.container = c == null || c.cardinality() == 0 ? null : c;
+				}
+			}
+		}
+	}
+	/**
+	 * Reads for update and writes the transaction.
+	 */
+	private final class TransactionStore extends Store {
+		private final Transaction txn;
+		private final ReadOptions ro;
+		TransactionStore(Transaction txn, ReadOptions ro) {
+			this.txn = txn;
+			this.ro = ro;
+		}
+		@Override
+		byte[] get(ColumnFamilyHandle cfh, byte[] key) throws RocksDBException {
+			return txn.getForUpdate(ro, cfh, key, true);
+		}
+		@Override
+		void put(ColumnFamilyHandle cfh, byte[] key, byte[] value) throws RocksDBException {
+			txn.put(cfh, key, value);
+		}
+		@Override
+		void delete(ColumnFamilyHandle cfh, byte[] key) throws RocksDBException {
+			txn.delete(cfh, key);
+		}
+		@Override
+		int next(ColumnFamilyHandle bch) throws IOException, RocksDBException {
+			byte[] nb = get(bch, reserved(NEXT));
+			int ordinal = nb == null ? 0 : (Integer) SerializedComparator.deserializeObject(nb);
+			if(ordinal == Integer.MAX_VALUE)
+				throw exhausted();
+			put(bch, reserved(NEXT), serialize(ordinal + 1));
+			return ordinal;
+		}
+		@Override
+		void change(ColumnFamilyHandle bch, byte[] k, int ordinal, boolean add) throws IOException, RocksDBException {
+			byte[] b = get(bch, k);
+			if(b == null && !add)
+				return;
+			RoaringBitmap.Container c = b == null ? new RoaringBitmap.ArrayContainer() : RoaringBitmap.Container.deserialize(b);
+			c = add ? c.add((char)ordinal) : c.remove((char)ordinal);
+			if(c.cardinality() == 0)
+				delete(bch, k);
+			else
+				put(bch, k, c.serialize());
+		}
+	}
+
+	/**
+	 * @param session the session of the map
+	 * @param cfName the name of the column family of the map, the class for the default column family
+	 * @throws RocksDBException
+	 */
+	BitmapIndexer(Session session, String cfName) throws RocksDBException {
+		this.session = session;
+		this.family = new SecondaryIndexer.Family(session, cfName+BITMAP_SUFFIX);
+		session.addFlusher(this::flush);
+	}
+	/**
+	 * @param name a column family name
+	 * @return true if it names a bitmap column family
+	 */
+	static boolean isBitmap(String name) {
+		return name.endsWith(BITMAP_SUFFIX);
+	}
+	/**
+	 * @param o a value, or null
+	 * @return true if the class of the value has bitmap indexes
+	 */
+	static boolean isIndexed(Object o) {
+		return o != null && SecondaryIndexer.accessors(o.getClass(), true).length > 0;
+	}
+	/**
+	 * @return true if the map has a bitmap column family, so its writes maintain it
+	 */
+	boolean isActive() {
+		return family.handle() != null;
+	}
+	/**
+	 * @param value the value put
+	 * @return the bitmap column family, created if the value has bitmap indexes, or null if there is none to maintain
+	 * @throws IOException
+	 */
+	ColumnFamilyHandle prepare(Object value) throws IOException {
+		return isIndexed(value) ? family.create() : family.handle();
+	}
+	/**
+	 * @return the bitmap column family, or null if there is none yet
+	 */
+	ColumnFamilyHandle getHandle() {
+		return family.handle();
+	}
+	/**
+	 * Drop the bitmap column family with the column family of the map, discarding the pending containers.
+	 * @throws IOException
+	 */
+	void drop() throws IOException {
+		flushLock.writeLock().lock();
+		try {
+			family.drop();
+			discard();
+		} finally {
+			flushLock.writeLock().unlock();
+		}
+	}
+
+	private IOException exhausted() {
+		return new IOException("Bitmap index ordinals exhausted in "+family.name+", rebuild the index");
+	}
+
+	private static byte[] serialize(Object o) throws IOException {
+		return SerializedComparator.serializeObject(o);
+	}
+	/**
+	 * @return the key of a reserved entry holding one value
+	 */
+	private static byte[] reserved(String name) throws IOException {
+		return serialize(new IndexKey(name, ZERO, ZERO));
+	}
+	/**
+	 * @return the bitmap index results of the value by index name, nulls left out
+	 */
+	@SuppressWarnings("rawtypes")
+	private static Map<String, Comparable> results(Object value) throws IOException {
+		if(value == null)
+			return Collections.emptyMap();
+		LinkedHashMap<String, Comparable> ret = new LinkedHashMap<String, Comparable>();
+		for(SecondaryIndexer.Accessor a : SecondaryIndexer.accessors(value.getClass(), true)) {
+			Comparable v = a.get(value);
+			if(v != null)
+				ret.put(a.name, v);
+		}
+		return ret;
+	}
+	/**
+	 * Write the batch of a write outside a transaction with the per key entries of the bitmap update, changing its
+	 * containers in memory once the batch is written. Writes of different keys run concurrently, the containers
+	 * are written by {@link #flush()} when enough writes are pending.
+	 * @param wb the batch of the write
+	 * @param bch the bitmap column family
+	 * @param key the primary key
+	 * @param old the previous value, or null
+	 * @param value the new value, or null for a remove
+	 * @throws IOException
+	 * @throws RocksDBException
+	 */
+	@SuppressWarnings("rawtypes")
+	void write(WriteBatch wb, ColumnFamilyHandle bch, Comparable key, Object old, Object value) throws IOException, RocksDBException {
+		write(wb, bch, Collections.singletonList(new Update(key, old, value)));
+	}
+	/**
+	 * Write the batch of several writes outside a transaction with the per key entries of their bitmap updates,
+	 * changing the containers in memory once the batch is written. The keys are distinct.
+	 * @param wb the batch of the writes
+	 * @param bch the bitmap column family
+	 * @param writes the previous and new value of each key
+	 * @throws IOException
+	 * @throws RocksDBException
+	 */
+	void write(WriteBatch wb, ColumnFamilyHandle bch, List<Update> writes) throws IOException, RocksDBException {
+		RocksDB db = session.getKVStore();
+		WriteBack st = new WriteBack(db, wb);
+		boolean changed;
+		flushLock.readLock().lock();
+		try {
+			for(Update u : writes)
+				update(st, bch, u.key, u.old, u.value);
+			changed = !st.changed.isEmpty();
+			// a database closed before flush has its bitmaps built again on open
+			boolean mark = changed && !dirty;
+			if(mark)
+				wb.put(bch, reserved(PENDING), EMPTY);
+			try (WriteOptions wo = new WriteOptions()) {
+				db.write(wo, wb);
+			}
+			if(mark)
+				dirty = true;
+			st.apply();
+		} finally {
+			flushLock.readLock().unlock();
+		}
+		if(changed && updates.addAndGet(writes.size()) >= FLUSH_SIZE)
+			flush();
+	}
+	/**
+	 * Update the bitmaps in the transaction, reading the containers it changes for update.
+	 * @param txn the transaction
+	 * @param ro the ReadOptions of the transaction
+	 * @param bch the bitmap column family
+	 * @param key the primary key
+	 * @param old the previous value, or null
+	 * @param value the new value, or null for a remove
+	 * @throws IOException
+	 * @throws RocksDBException
+	 */
+	@SuppressWarnings("rawtypes")
+	void update(Transaction txn, ReadOptions ro, ColumnFamilyHandle bch, Comparable key, Object old, Object value) throws IOException, RocksDBException {
+		update(new TransactionStore(txn, ro), bch, key, old, value);
+	}
+	/**
+	 * Move the ordinal of the key from the bitmaps of the results of the previous value to those of the new value,
+	 * giving it an ordinal if it has none and taking it away if the new value has no bitmap indexes.
+	 */
+	@SuppressWarnings("rawtypes")
+	private void update(Store st, ColumnFamilyHandle bch, Comparable key, Object old, Object value) throws IOException, RocksDBException {
+		Map<String, Comparable> before = results(old), after = results(value);
+		boolean indexed = isIndexed(value);
+		byte[] ok = serialize(new IndexKey(ORDINAL, key, ZERO));
+		byte[] ob = st.get(bch, ok);
+		int ordinal;
+		if(ob == null) {
+			if(!indexed)
+				return;
+			ordinal = st.next(bch);
+			st.put(bch, ok, serialize(ordinal));
+			st.put(bch, serialize(new IndexKey(KEY, ordinal, ZERO)), serialize(key));
+			container(st, bch, ALL, Boolean.TRUE, ordinal, true);
+			// a value without an ordinal is in no bitmap
+			before = Collections.emptyMap();
+		} else
+			ordinal = (Integer) SerializedComparator.deserializeObject(ob);
+		for(Map.Entry<String, Comparable> e : before.entrySet())
+			if(!e.getValue().equals(after.get(e.getKey())))
+				container(st, bch, e.getKey(), e.getValue(), ordinal, false);
+		for(Map.Entry<String, Comparable> e : after.entrySet())
+			if(!e.getValue().equals(before.get(e.getKey())))
+				container(st, bch, e.getKey(), e.getValue(), ordinal, true);
+		if(!indexed) {
+			container(st, bch, ALL, Boolean.TRUE, ordinal, false);
+			st.delete(bch, ok);
+			st.delete(bch, serialize(new IndexKey(KEY, ordinal, ZERO)));
+		}
+	}
+	/**
+	 * Add or remove the ordinal in its container of the bitmap of the result.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static void container(Store st, ColumnFamilyHandle bch, String index, Comparable value, int ordinal, boolean add) throws IOException, RocksDBException {
+		st.change(bch, serialize(new IndexKey(index, value, ordinal >>> 16)), ordinal, add);
+	}
+	/**
+	 * Write the pending containers and next ordinal in one batch, waiting for the writes in progress.
+	 * Done before the bitmaps are read and before the database is closed.
+	 * @throws IOException
+	 */
+	void flush() throws IOException {
+		flushLock.writeLock().lock();
+		try {
+			if(!dirty)
+				return;
+			ColumnFamilyHandle bch = family.handle();
+			RocksDB db = session.getKVStore();
+			try (WriteOptions wo = new WriteOptions(); WriteBatch wb = new WriteBatch()) {
+				for(Map.Entry<ByteBuffer, Pending> e : pending.entrySet()) {
+					RoaringBitmap.Container c = e.getValue().container;
+					if(c == null)
+						wb.delete(bch, e.getKey().array());
+					else
+						wb.put(bch, e.getKey().array(), c.serialize());
+				}
+				synchronized(pending) {
+					if(next >= 0)
+						wb.put(bch, reserved(NEXT), serialize(next));
+				}
+				wb.delete(bch, reserved(PENDING));
+				db.write(wo, wb);
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+			if(DEBUG)
+				System.out.printf("BitmapIndexer.flush %s %d containers of %d writes%n", family.name, pending.size(), updates.get());
+			pending.clear();
+			updates.set(0);
+			dirty = false;
+		} finally {
+			flushLock.writeLock().unlock();
+		}
+	}
+	/**
+	 * Forget the pending containers and next ordinal, the caller holding the flush lock.
+	 */
+	private void discard() {
+		pending.clear();
+		updates.set(0);
+		synchronized(pending) {
+			next = -1;
+		}
+		dirty = false;
+	}
+	/**
+	 * Build the bitmaps again if the database was closed with containers pending, checked once per indexer.
+	 * @param cfh the column family of the map
+	 * @throws IOException
+	 */
+	void recover(ColumnFamilyHandle cfh) throws IOException {
+		if(recovered)
+			return;
+		synchronized(this) {
+			if(recovered)
+				return;
+			ColumnFamilyHandle bch = family.handle();
+			try {
+				if(bch != null && session.getKVStore().get(bch, reserved(PENDING)) != null) {
+					if(DEBUG)
+						System.out.printf("BitmapIndexer.recover %s was closed with pending bitmaps%n", family.name);
+					rebuild(cfh);
+				}
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+			recovered = true;
+		}
+	}
+	/**
+	 * @return the bitmap of the result, assembled from its containers read by the iterator
+	 */
+	@SuppressWarnings("rawtypes")
+	private static RoaringBitmap read(RocksIterator it, String index, Comparable value) throws IOException {
+		RoaringBitmap r = new RoaringBitmap();
+		IndexKey high = IndexKey.high(index, value);
+		for(it.seek(serialize(IndexKey.low(index, value))); it.isValid(); it.next()) {
+			IndexKey k = (IndexKey) SerializedComparator.deserializeObject(it.key());
+			if(k.compareTo(high) >= 0)
+				break;
+			r.putChunk((Integer)k.getKey(), it.value());
+		}
+		try {
+			it.status();
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+		return r;
+	}
+
+	private static BitmapQuery.Source source(RocksIterator it) {
+		return new BitmapQuery.Source() {
+			@SuppressWarnings("rawtypes")
+			@Override
+			public RoaringBitmap get(String index, Comparable value) throws IOException {
+				return read(it, index, value);
+			}
+			@Override
+			public RoaringBitmap all() throws IOException {
+				return read(it, ALL, Boolean.TRUE);
+			}
+		};
+	}
+	/**
+	 * Evaluate the query on a snapshot of the bitmap column family, so all its bitmaps are of the same writes.
+	 * The pending containers are written first.
+	 * @param cfh the column family of the map
+	 * @param query the query
+	 * @return the ordinals of the values satisfying it
+	 * @throws IOException
+	 */
+	RoaringBitmap evaluate(ColumnFamilyHandle cfh, BitmapQuery query) throws IOException {
+		recover(cfh);
+		flush();
+		ColumnFamilyHandle bch = family.handle();
+		if(bch == null)
+			return new RoaringBitmap();
+		RocksDB db = session.getKVStore();
+		Snapshot snapshot = db.getSnapshot();
+		try (ReadOptions ro = new ReadOptions().setSnapshot(snapshot).setTotalOrderSeek(true);
+			 RocksIterator it = db.newIterator(bch, ro)) {
+			return query.evaluate(source(it));
+		} finally {
+			db.releaseSnapshot(snapshot);
+		}
+	}
+	/**
+	 * Evaluate the query in the transaction, seeing its own writes.
+	 * @param txn the transaction
+	 * @param cfh the column family of the map
+	 * @param query the query
+	 * @return the ordinals of the values satisfying it
+	 * @throws IOException
+	 */
+	RoaringBitmap evaluate(Transaction txn, ColumnFamilyHandle cfh, BitmapQuery query) throws IOException {
+		recover(cfh);
+		ColumnFamilyHandle bch = family.handle();
+		if(bch == null)
+			return new RoaringBitmap();
+		try (RocksIterator it = txn.getIterator(AbstractIterator.totalOrder(), bch)) {
+			return query.evaluate(source(it));
+		}
+	}
+	/**
+	 * @param ordinals the result of a query
+	 * @param fetcher reads the key entries of ordinals from the bitmap column family
+	 * @return iterator of the primary keys of the ordinals, in ordinal order, keys removed since left out
+	 */
+	static Iterator<?> keys(RoaringBitmap ordinals, SecondaryIndexer.Fetcher fetcher) {
+		return new KeyIterator(ordinals.intIterator(), fetcher);
+	}
+	/**
+	 * Resolves ordinals to primary keys a batch at a time.
+	 */
+	private static final class KeyIterator implements Iterator<Object> {
+		private final PrimitiveIterator.OfInt ordinals;
+		private final SecondaryIndexer.Fetcher fetcher;
+		private Iterator<Object> batch = Collections.emptyIterator();
+		private Object next = null;
+		KeyIterator(PrimitiveIterator.OfInt ordinals, SecondaryIndexer.Fetcher fetcher) {
+			this.ordinals = ordinals;
+			this.fetcher = fetcher;
+		}
+		@SuppressWarnings("rawtypes")
+		@Override
+		public boolean hasNext() {
+			while(next == null) {
+				if(batch.hasNext()) {
+					Object o = batch.next();
+					if(o != null)
+						next = ((KeyValue)o).getValue();
+					continue;
+				}
+				if(!ordinals.hasNext())
+					return false;
+				ArrayList<Comparable> keys = new ArrayList<Comparable>(FETCH_SIZE);
+				while(ordinals.hasNext() && keys.size() < FETCH_SIZE)
+					keys.add(new IndexKey(KEY, ordinals.nextInt(), ZERO));
+				try {
+					batch = fetcher.fetch(keys).iterator();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return true;
+		}
+		@Override
+		public Object next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			Object o = next;
+			next = null;
+			return o;
+		}
+	}
+	/**
+	 * Build the bitmap column family again from the entries of the map, giving ordinals from 0 in key order. Writes
+	 * outside a transaction wait for the build, their pending containers are discarded as the build reads their values.
+	 * Transactions should not write the map while it runs.
+	 * @param cfh the column family of the map
+	 * @return the number of values with bitmap indexes
+	 * @throws IOException
+	 */
+	synchronized long rebuild(ColumnFamilyHandle cfh) throws IOException {
+		flushLock.writeLock().lock();
+		try {
+			discard();
+			return build(cfh);
+		} finally {
+			flushLock.writeLock().unlock();
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private long build(ColumnFamilyHandle cfh) throws IOException {
+		long tims = System.currentTimeMillis();
+		RocksDB db = session.getKVStore();
+		ColumnFamilyHandle bch = family.handle();
+		if(bch != null)
+			SecondaryIndexer.clear(db, bch);
+		HashMap<IndexKey, RoaringBitmap> bitmaps = new HashMap<IndexKey, RoaringBitmap>();
+		RoaringBitmap all = new RoaringBitmap();
+		int ordinal = 0;
+		try (WriteOptions wo = new WriteOptions(); WriteBatch wb = new WriteBatch();
+			 RocksIterator it = db.newIterator(cfh, AbstractIterator.totalOrder())) {
+			for(it.seekToFirst(); it.isValid(); it.next()) {
+				Object value = SerializedComparator.deserializeObject(it.value());
+				if(!isIndexed(value))
+					continue;
+				if(bch == null)
+					bch = family.create();
+				wb.put(bch, serialize(new IndexKey(ORDINAL, (Comparable) SerializedComparator.deserializeObject(it.key()), ZERO)), serialize(ordinal));
+				wb.put(bch, serialize(new IndexKey(KEY, ordinal, ZERO)), it.key());
+				all.add(ordinal);
+				for(Map.Entry<String, Comparable> e : results(value).entrySet())
+					bitmaps.computeIfAbsent(new IndexKey(e.getKey(), e.getValue(), ZERO), k -> new RoaringBitmap()).add(ordinal);
+				++ordinal;
+				if(wb.count() >= FETCH_SIZE) {
+					db.write(wo, wb);
+					wb.clear();
+				}
+			}
+			it.status();
+			if(bch != null) {
+				bitmaps.put(new IndexKey(ALL, Boolean.TRUE, ZERO), all);
+				for(Map.Entry<IndexKey, RoaringBitmap> e : bitmaps.entrySet()) {
+					for(char high : e.getValue().highs()) {
+						wb.put(bch, serialize(new IndexKey(e.getKey().getIndex(), e.getKey().getValue(), (int)high)), e.getValue().serializeChunk(high));
+						if(wb.count() >= FETCH_SIZE) {
+							db.write(wo, wb);
+							wb.clear();
+						}
+					}
+				}
+				wb.put(bch, serialize(new IndexKey(NEXT, ZERO, ZERO)), serialize(ordinal));
+				db.write(wo, wb);
+			}
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+		if(DEBUG)
+			System.out.printf("BitmapIndexer.rebuild %s %d values %d bitmaps in %d ms.%n", family.name, ordinal, bitmaps.size(), System.currentTimeMillis()-tims);
+		return ordinal;
+	}
+
+	@Override
+	public String toString() {
+		return "BitmapIndexer "+family.name+" in "+session.getDBname()+(isActive() ? "" : " (none)");
+	}
+}
@@ -0,0 +1,143 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Expression over the {@link com.neocoretechs.rocksack.BitmapIndex} bitmaps of a map, evaluated to the set of
+ * ordinals of the values satisfying it. i.e.:<p>
+ * BitmapQuery.and(BitmapQuery.eq("status", "OPEN"), BitmapQuery.not(BitmapQuery.in("region", "EU", "APAC")))<p>
+ * NOT is the complement in the ordinals of all values with bitmap indexes, so a value without the index is not
+ * selected by the negation of one of its results. Within an AND a NOT is evaluated as a difference, without
+ * reading the bitmap of all values.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public final class BitmapQuery {
+	private static final byte EQ = 0;
+	private static final byte AND = 1;
+	private static final byte OR = 2;
+	private static final byte NOT = 3;
+	private final byte op;
+	private final String index;
+	@SuppressWarnings("rawtypes")
+	private final Comparable value;
+	private final BitmapQuery[] operands;
+
+	/**
+	 * Reads the bitmaps of the query.
+	 */
+	interface Source {
+		@SuppressWarnings("rawtypes")
+		RoaringBitmap get(String index, Comparable value) throws IOException;
+		RoaringBitmap all() throws IOException;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private BitmapQuery(byte op, String index, Comparable value, BitmapQuery[] operands) {
+		this.op = op;
+		this.index = index;
+		this.value = value;
+		this.operands = operands;
+	}
+	/**
+	 * @param index the name of the bitmap index
+	 * @param value the result of the index
+	 * @return the query of the values with the result
+	 */
+	@SuppressWarnings("rawtypes")
+	public static BitmapQuery eq(String index, Comparable value) {
+		if(index == null || value == null)
+			throw new IllegalArgumentException("Bitmap query needs an index and a value");
+		return new BitmapQuery(EQ, index, value, null);
+	}
+	/**
+	 * @param index the name of the bitmap index
+	 * @param values the results of the index
+	 * @return the query of the values with any of the results
+	 */
+	@SuppressWarnings("rawtypes")
+	public static BitmapQuery in(String index, Comparable... values) {
+		BitmapQuery[] q = new BitmapQuery[values.length];
+		for(int i = 0; i < values.length; i++)
+			q[i] = eq(index, values[i]);
+		return or(q);
+	}
+	/**
+	 * @return the query of the values satisfying all of the queries
+	 */
+	public static BitmapQuery and(BitmapQuery... q) {
+		if(q.length == 0)
+			throw new IllegalArgumentException("Bitmap query AND of nothing");
+		return q.length == 1 ? q[0] : new BitmapQuery(AND, null, null, q.clone());
+	}
+	/**
+	 * @return the query of the values satisfying any of the queries
+	 */
+	public static BitmapQuery or(BitmapQuery... q) {
+		if(q.length == 0)
+			throw new IllegalArgumentException("Bitmap query OR of nothing");
+		return q.length == 1 ? q[0] : new BitmapQuery(OR, null, null, q.clone());
+	}
+	/**
+	 * @return the query of the values with bitmap indexes not satisfying the query
+	 */
+	public static BitmapQuery not(BitmapQuery q) {
+		return q.op == NOT ? q.operands[0] : new BitmapQuery(NOT, null, null, new BitmapQuery[] {q});
+	}
+	/**
+	 * @param source the bitmaps
+	 * @return the ordinals of the values satisfying the query
+	 * @throws IOException
+	 */
+	RoaringBitmap evaluate(Source source) throws IOException {
+		switch(op) {
+			case EQ:
+				return source.get(index, value);
+			case OR:
+				RoaringBitmap r = operands[0].evaluate(source);
+				for(int i = 1; i < operands.length; i++)
+					r = r.or(operands[i].evaluate(source));
+				return r;
+			case NOT:
+				return source.all().andNot(operands[0].evaluate(source));
+			default:
+				// positive operands intersected, then the negated ones taken away
+				ArrayList<BitmapQuery> negated = new ArrayList<BitmapQuery>();
+				RoaringBitmap p = null;
+				for(BitmapQuery q : operands) {
+					if(q.op == NOT)
+						negated.add(q.operands[0]);
+					else {
+						p = p == null ? q.evaluate(source) : p.and(q.evaluate(source));
+						if(p.isEmpty())
+							return p;
+					}
+				}
+				if(p == null)
+					p = source.all();
+				for(BitmapQuery q : negated) {
+					p = p.andNot(q.evaluate(source));
+					if(p.isEmpty())
+						break;
+				}
+				return p;
+		}
+	}
+
+	@Override
+	public String toString() {
+		switch(op) {
+			case EQ:
+				return index+"="+value;
+			case NOT:
+				return "NOT("+operands[0]+")";
+			default:
+				List<String> s = Arrays.stream(operands).map(BitmapQuery::toString).collect(Collectors.toList());
+				return (op == AND ? "AND" : "OR")+s;
+		}
+	}
+}
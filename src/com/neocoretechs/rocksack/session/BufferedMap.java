@@ -1,13 +1,35 @@
 package com.neocoretechs.rocksack.session;
 import java.io.IOException;
+import java.util.ArrayList;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
 import java.util.stream.Stream;
 
 import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.RocksDB;
+import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Snapshot;
+import org.rocksdb.WriteBatch;
+
+import com.neocoretechs.rocksack.IndexKey;
+import com.neocoretechs.rocksack.SerializedComparator;
+import com.neocoretechs.rocksack.iterator.DiffIterator;
+import com.neocoretechs.rocksack.iterator.KeyValuePair;
+import com.neocoretechs.rocksack.iterator.MergeJoinIterator;
+import com.neocoretechs.rocksack.stream.DiffStream;
+import com.neocoretechs.rocksack.stream.MergeJoinStream;
+import com.neocoretechs.rocksack.stream.SackPublisher;
+import com.neocoretechs.rocksack.stream.SackStream;
 
 /*
 * Copyright (c) 2024, NeoCoreTechs
@@ -39,10 +61,17 @@ import org.rocksdb.RocksDBException;
 */
 public class BufferedMap implements OrderedKVMapInterface {
 	private static boolean DEBUG = false;
+	// keys read per page of a range removed a key at a time
+	static final int REMOVE_PAGE = 256;
 	protected Session session = null;
 	private String className;
+	private boolean isDerived;
 	ColumnFamilyHandle columnFamilyHandle = null;
 	ColumnFamilyDescriptor columnFamilyDescriptor = null;
+	private GetCoalescer coalescer;
+	private ObjectCache cache;
+	private RangeCache rangeCache;
+	private SecondaryIndexer indexer;
 
 	/**
 	* Encapsulates a RockSack session. Calls processColumnFamily on derivedClassName.
@@ -50,14 +79,43 @@ public class BufferedMap implements OrderedKVMapInterface {
 	* @param className the class for the ColumnFamily denoting main or derived subclasses stored in this database
 	* @param isDerived if this is a derived subclass, process column family accordingly as subclass of main
 	* @exception IOException if global IO problem
+	* Not usable until {@link #open()} registers it with the session.
 	* @exception IllegalAccessException if the database has been put offline
 	* @throws RocksDBException 
 	*/
-	public BufferedMap(Session session, String className, boolean isDerived) throws IllegalAccessException, IOException, RocksDBException {
+	BufferedMap(Session session, String className, boolean isDerived) throws IllegalAccessException, IOException, RocksDBException {
 		this.session = session;
 		this.className = className;
 		if(DEBUG)
 			System.out.printf("%s %s %b%n", this.getClass().getName(), className, isDerived);
+		this.isDerived = isDerived;
+		session.pin();
+		try {
+			bindColumnFamily();
+			indexer = new SecondaryIndexer(session, className);
+		} finally {
+			session.unpin();
+		}
+		cache = ObjectCache.forColumnFamily(session.getDBname(), isDerived ? className : null);
+		rangeCache = RangeCache.forColumnFamily(session.getDBname(), isDerived ? className : null);
+	}
+	/**
+	 * Register the constructed map with its session, so the column family is bound again when the database is
+	 * reopened, and start coalescing its gets. Called once by {@link DatabaseManager} before the map is published.
+	 * @return this map
+	 * @exception IOException if the map cannot be made ready
+	 */
+	BufferedMap open() throws IOException {
+		session.addRebinder(this::bindColumnFamily);
+		coalescer = new GetCoalescer(this);
+		return this;
+	}
+	/**
+	 * Bind the column family handle and descriptor of this map from the session, on construction
+	 * and again when the database is reopened by the {@link OpenDatabaseCache}.
+	 * @throws RocksDBException
+	 */
+	private void bindColumnFamily() throws RocksDBException {
 		if(isDerived)
 			processColumnFamily(className);
 		else
@@ -123,7 +181,7 @@ public class BufferedMap implements OrderedKVMapInterface {
 	    			}
 	    		}
 	    	} else {
-	    		this.columnFamilyDescriptor = new ColumnFamilyDescriptor(derivedClassName.getBytes(), DatabaseManager.getDefaultColumnFamilyOptions());
+	    		this.columnFamilyDescriptor = new ColumnFamilyDescriptor(derivedClassName.getBytes(), DatabaseManager.getInstance().getColumnFamilyOptions(this.session.getDBname(), derivedClassName));
 	    		this.session.columnFamilyDescriptor.add(this.columnFamilyDescriptor);
 	    		this.columnFamilyHandle = this.session.kvStore.createColumnFamily(this.columnFamilyDescriptor);
 	    	}
@@ -137,7 +195,12 @@ public class BufferedMap implements OrderedKVMapInterface {
 	 * @return the {@link Session} instance after ensuring the database is open and ready for processing.
 	 */
 	public Session getSession() throws IOException {
-		session.waitOpen();
+		session.pin();
+		try {
+			session.waitOpen();
+		} finally {
+			session.unpin();
+		}
 		return session;
 	}
 	/**
@@ -148,7 +211,16 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public boolean put(Comparable tkey, Object tvalue) throws IOException {
-		return session.put(columnFamilyHandle, tkey, tvalue);
+		synchronized(indexer.stripe(tkey)) {
+			boolean b = indexer.maintains(tvalue) ?
+				session.pinned(() -> indexer.put(columnFamilyHandle, tkey, tvalue)) :
+				session.pinned(() -> session.put(columnFamilyHandle, tkey, tvalue));
+			if(cache != null)
+				cache.invalidate(tkey);
+			if(rangeCache != null)
+				rangeCache.invalidate(tkey);
+			return b;
+		}
 	}
 	/**
 	* Put a key/value pair to underlying store. {@link Session}
@@ -156,18 +228,31 @@ public class BufferedMap implements OrderedKVMapInterface {
 	* @param tvalue The value for the pair
 	* @exception IOException if put to backing store fails
 	*/
+	@SuppressWarnings("rawtypes")
 	public boolean putViaBytes(byte[] tkey, Object tvalue) throws IOException {
-		return session.putViaBytes(columnFamilyHandle, tkey, tvalue);
+		Comparable key = (Comparable) SerializedComparator.deserializeObject(tkey);
+		synchronized(indexer.stripe(key)) {
+			boolean b = indexer.maintains(tvalue) ?
+				session.pinned(() -> indexer.put(columnFamilyHandle, key, tvalue)) :
+				session.pinned(() -> session.putViaBytes(columnFamilyHandle, tkey, tvalue));
+			if(cache != null)
+				cache.invalidate(key);
+			if(rangeCache != null)
+				rangeCache.invalidate(key);
+			return b;
+		}
 	}
 	/**
-	* call a get from {@link Session}
+	* call a get from {@link Session}, or from the {@link ObjectCache} of the map if it has one
 	* @param tkey The key for the value
 	* @return The key/value for the key returned as {@link com.neocoretechs.rocksack.KeyValue}
 	* @exception IOException if get from backing store fails
 	*/
 	@SuppressWarnings("rawtypes")
 	public Object get(Comparable tkey) throws IOException {
-		return getSession().get(columnFamilyHandle, tkey);
+		if(cache != null)
+			return cache.get(tkey, k -> session.pinned(() -> session.getRaw(columnFamilyHandle, k)));
+		return session.pinned(() -> session.get(columnFamilyHandle, tkey));
 	}
 	/**
 	* Get a value from backing store. {@link Session}
@@ -176,7 +261,7 @@ public class BufferedMap implements OrderedKVMapInterface {
 	* @exception IOException if get from backing store fails
 	*/
 	public Object getViaBytes(byte[] tkey) throws IOException {
-		return getSession().getViaBytes(columnFamilyHandle, tkey);
+		return session.pinned(() -> session.getViaBytes(columnFamilyHandle, tkey));
 	}
 	/**
 	* Get a value from backing store. {@link Session}
@@ -185,7 +270,7 @@ public class BufferedMap implements OrderedKVMapInterface {
 	* @exception IOException if get from backing store fails
 	*/
 	public Object getValue(Object tkey) throws IOException {
-		return session.getValue(columnFamilyHandle, tkey);
+		return session.pinned(() -> session.getValue(columnFamilyHandle, tkey));
 	}
 	/**
 	* Return the number of elements in the backing store. {@link Session}
@@ -193,7 +278,7 @@ public class BufferedMap implements OrderedKVMapInterface {
 	* @exception IOException If backing store retrieval failure
 	*/
 	public long size() throws IOException {
-		return session.size(columnFamilyHandle);
+		return session.pinned(() -> session.size(columnFamilyHandle));
 	}
 
 	/**
@@ -202,14 +287,14 @@ public class BufferedMap implements OrderedKVMapInterface {
 	* @exception IOException if get from backing store fails
 	*/
 	public Iterator<?> entrySet() throws IOException {
-		return session.entrySet(columnFamilyHandle);
+		return session.pinned(() -> session.entrySet(columnFamilyHandle));
 	}
 	
 	/**
 	 * Stream of all elements as Map.Entry {@link Session}
 	 */
 	public Stream<?> entrySetStream() throws IOException {
-		return session.entrySetStream(columnFamilyHandle);
+		return session.pinned(() -> session.entrySetStream(columnFamilyHandle));
 	}
 	/**
 	* Get a keySet iterator. {@link Session}
@@ -217,13 +302,13 @@ public class BufferedMap implements OrderedKVMapInterface {
 	* @exception IOException if get from backing store fails
 	*/
 	public Iterator<?> keySet() throws IOException {
-		return session.keySet(columnFamilyHandle);
+		return session.pinned(() -> session.keySet(columnFamilyHandle));
 	}
 	/**
 	 * Get a stream over keys {@link Session}
 	 */
 	public Stream<?> keySetStream() throws IOException {
-		return session.keySetStream(columnFamilyHandle);
+		return session.pinned(() -> session.keySetStream(columnFamilyHandle));
 	}
 	/**
 	* Returns true if the collection contains the given key. {@link Session}
@@ -233,7 +318,7 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public boolean containsKey(Comparable tkey) throws IOException {
-		return session.contains(columnFamilyHandle, tkey);
+		return session.pinned(() -> session.contains(columnFamilyHandle, tkey));
 	}
 	/**
 	* Remove object from cache and backing store. {@link Session}
@@ -243,21 +328,345 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public Object remove(Comparable tkey) throws IOException {
-		return session.remove(columnFamilyHandle, tkey);
+		synchronized(indexer.stripe(tkey)) {
+			Object o = indexer.isActive() ?
+				session.pinned(() -> indexer.remove(columnFamilyHandle, tkey)) :
+				session.pinned(() -> session.remove(columnFamilyHandle, tkey));
+			if(cache != null)
+				cache.invalidate(tkey);
+			if(rangeCache != null)
+				rangeCache.invalidate(tkey);
+			return o;
+		}
+	}
+	/**
+	* Remove the key without reading its value, for removes whose previous value is not needed.
+	* If the map has secondary or bitmap indexes the value is read to remove its entries. {@link Session}
+	* @param tkey The key to remove
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public void removeBlind(Comparable tkey) throws IOException {
+		delete(tkey, false);
+	}
+	/**
+	* Remove a write once key with a SingleDelete, which cancels the put it meets in compaction and is dropped with it
+	* rather than kept until the last level. The key must have been put at most once since it was last removed and
+	* never overwritten, otherwise an older value may reappear. The value is not read, unless the map has indexes.
+	* @param tkey The key to remove
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public void removeSingle(Comparable tkey) throws IOException {
+		delete(tkey, true);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void delete(Comparable tkey, boolean single) throws IOException {
+		synchronized(indexer.stripe(tkey)) {
+			if(indexer.isActive())
+				session.pinned(() -> indexer.remove(columnFamilyHandle, tkey));
+			else
+				session.pinned(() -> {
+					session.delete(columnFamilyHandle, tkey, single);
+					return null;
+				});
+			if(cache != null)
+				cache.invalidate(tkey);
+			if(rangeCache != null)
+				rangeCache.invalidate(tkey);
+		}
+	}
+	/**
+	* Remove the keys from fkey inclusive to tkey exclusive. {@link #removeRange(Comparable, Comparable, boolean)}
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public void removeRange(Comparable fkey, Comparable tkey) throws IOException {
+		removeRange(fkey, tkey, false);
+	}
+	/**
+	* Remove the keys from fkey inclusive to tkey exclusive with a RocksDB range tombstone, reading no key.
+	* A map with secondary or bitmap indexes removes the range a key at a time, as the index entries need the values,
+	* unless the whole map is removed, after which the indexes are built again.
+	* The object and range caches of the map are cleared. {@link Session}
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param reclaim true to drop the files wholly in the range and compact it, freeing the space now. Snapshots and
+	* iterators open on the map may lose entries of the range.
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public void removeRange(Comparable fkey, Comparable tkey, boolean reclaim) throws IOException {
+		session.pinned(() -> {
+			if(!indexer.isActive()) {
+				session.deleteRange(columnFamilyHandle, fkey, tkey, reclaim);
+			} else if(fkey == null && tkey == null) {
+				session.deleteRange(columnFamilyHandle, null, null, reclaim);
+				indexer.rebuild(columnFamilyHandle);
+			} else {
+				List<Comparable> keys;
+				Comparable from = fkey;
+				boolean inclusive = true;
+				do {
+					keys = session.keys(columnFamilyHandle, from, inclusive, tkey, REMOVE_PAGE);
+					for(Comparable key : keys)
+						indexer.remove(columnFamilyHandle, key);
+					// resume after the last key removed
+					if(!keys.isEmpty()) {
+						from = keys.get(keys.size() - 1);
+						inclusive = false;
+					}
+				} while(keys.size() == REMOVE_PAGE);
+			}
+			return null;
+		});
+		if(cache != null)
+			cache.clear();
+		if(rangeCache != null)
+			rangeCache.clear();
+	}
+	/**
+	* Remove the keys strictly less than tkey. {@link #removeRange(Comparable, Comparable, boolean)}
+	* @param tkey The key ending the range
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public void removeHead(Comparable tkey) throws IOException {
+		removeRange(null, tkey, false);
+	}
+	/**
+	* Remove the keys greater or equal to fkey. {@link #removeRange(Comparable, Comparable, boolean)}
+	* @param fkey The first key of the range
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public void removeTail(Comparable fkey) throws IOException {
+		removeRange(fkey, null, false);
+	}
+	/**
+	* Remove every key of the map. {@link #removeRange(Comparable, Comparable, boolean)}
+	* @exception IOException If backing store fails
+	*/
+	public void clear() throws IOException {
+		removeRange(null, null, false);
+	}
+	/**
+	* Remove every key of the map. {@link #removeRange(Comparable, Comparable, boolean)}
+	* @param reclaim true to drop the files of the map and compact it, freeing the space now
+	* @exception IOException If backing store fails
+	*/
+	public void clear(boolean reclaim) throws IOException {
+		removeRange(null, null, reclaim);
+	}
+	/**
+	* Remove the entries of the range the predicate accepts. {@link #removeIf(Comparable, Comparable, BiPredicate, BulkUpdate.Progress)}
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param predicate true for a key and value to remove
+	* @return the number of entries removed
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public long removeIf(Comparable fkey, Comparable tkey, BiPredicate<Comparable, Object> predicate) throws IOException {
+		return removeIf(fkey, tkey, predicate, null);
+	}
+	/**
+	* Remove the entries of the range the predicate accepts. The range is scanned on a snapshot and judged in chunks
+	* in parallel by a {@link BulkUpdate}, each chunk removed in one WriteBatch, or a key at a time through the indexes
+	* if the map has them. A write to the range while it runs may be undone, as entries are judged as the snapshot holds them.
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param predicate true for a key and value to remove, called from several threads at once
+	* @param progress receives the entries judged and removed after each chunk, or null
+	* @return the number of entries removed
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public long removeIf(Comparable fkey, Comparable tkey, BiPredicate<Comparable, Object> predicate, BulkUpdate.Progress progress) throws IOException {
+		return bulk(fkey, tkey, BulkUpdate.removing(predicate), progress);
+	}
+	/**
+	* Replace the values of the range by the function. {@link #updateRange(Comparable, Comparable, BiFunction, BulkUpdate.Progress)}
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param function gives the new value for a key and value, or null to leave the entry
+	* @return the number of entries replaced
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public long updateRange(Comparable fkey, Comparable tkey, BiFunction<Comparable, Object, Object> function) throws IOException {
+		return updateRange(fkey, tkey, function, null);
+	}
+	/**
+	* Replace the values of the range by the function. The range is scanned on a snapshot and judged in chunks in
+	* parallel by a {@link BulkUpdate}, each chunk written in one WriteBatch, or a key at a time through the indexes
+	* if the map has them. A write to the range while it runs may be overwritten, as the function sees the snapshot.
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param function gives the new value for a key and value, or null to leave the entry, called from several threads at once
+	* @param progress receives the entries judged and replaced after each chunk, or null
+	* @return the number of entries replaced
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public long updateRange(Comparable fkey, Comparable tkey, BiFunction<Comparable, Object, Object> function, BulkUpdate.Progress progress) throws IOException {
+		return bulk(fkey, tkey, function, progress);
+	}
+	/**
+	 * Scan the range on a snapshot, submitting a chunk at a time to the bulk update.
+	 */
+	@SuppressWarnings("rawtypes")
+	private long bulk(Comparable fkey, Comparable tkey, BiFunction<Comparable, Object, Object> op, BulkUpdate.Progress progress) throws IOException {
+		BulkUpdate bulk = new BulkUpdate(op, progress);
+		long tims = System.currentTimeMillis();
+		long n = session.pinned(() -> {
+			RocksDB db = session.getKVStore();
+			Snapshot snapshot = db.getSnapshot();
+			try (ReadOptions ro = new ReadOptions().setSnapshot(snapshot).setTotalOrderSeek(true);
+				 RocksIterator it = db.newIterator(columnFamilyHandle, ro)) {
+				if(fkey == null)
+					it.seekToFirst();
+				else
+					it.seek(SerializedComparator.serializeObject(fkey));
+				ArrayList<KeyValuePair> chunk = new ArrayList<KeyValuePair>(BulkUpdate.CHUNK_SIZE);
+				for(; it.isValid(); it.next()) {
+					Comparable key = (Comparable) SerializedComparator.deserializeObject(it.key());
+					if(tkey != null && key.compareTo(tkey) >= 0)
+						break;
+					chunk.add(new KeyValuePair(key, SerializedComparator.deserializeObject(it.value())));
+					if(chunk.size() == BulkUpdate.CHUNK_SIZE) {
+						bulk.submit(chunk, this::applyChunk);
+						chunk = new ArrayList<KeyValuePair>(BulkUpdate.CHUNK_SIZE);
+					}
+				}
+				it.status();
+				if(!chunk.isEmpty())
+					bulk.submit(chunk, this::applyChunk);
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			} finally {
+				// chunks in flight write the database, not the snapshot
+				try {
+					bulk.finish();
+				} finally {
+					db.releaseSnapshot(snapshot);
+				}
+			}
+			return bulk.getChanged();
+		});
+		if(DEBUG)
+			System.out.printf("%s.bulk %s %d changed in %d ms.%n", this.getClass().getName(), className, n, System.currentTimeMillis()-tims);
+		return n;
+	}
+	/**
+	 * Write the changes of a chunk of a bulk update in one WriteBatch, with the index entries and bitmaps of its keys.
+	 * @param puts the keys and their new values
+	 * @param removes the keys to remove
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	void applyChunk(List<KeyValuePair> puts, List<Comparable> removes) throws IOException {
+		indexer.write(columnFamilyHandle, puts, removes);
+		if(cache != null || rangeCache != null) {
+			ArrayList<Object> keys = new ArrayList<Object>(puts.size() + removes.size());
+			for(KeyValuePair kv : puts)
+				keys.add(kv.getKey());
+			keys.addAll(removes);
+			if(cache != null)
+				for(Object key : keys)
+					cache.invalidate(key);
+			if(rangeCache != null)
+				rangeCache.invalidate(keys);
+		}
+	}
+	/**
+	* Put the value if the key is absent, as decided by the object cache or a get, not by keyMayExist, whose filters
+	* may rule out a key comparing equal to a stored key. Atomic with every put and remove of the key through the map,
+	* which hold the same stripe of the key.
+	* @param tkey The key for the pair
+	* @param tvalue The value for the pair
+	* @return null if the value was put, else the present value
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Object putIfAbsent(Comparable tkey, Object tvalue) throws IOException {
+		Object o;
+		synchronized(indexer.stripe(tkey)) {
+			o = present(tkey);
+			if(o == null)
+				put(tkey, tvalue);
+		}
+		return o;
+	}
+	/**
+	* Put the value if the key is present, as decided by the object cache or a get.
+	* Atomic with every put and remove of the key through the map.
+	* @param tkey The key for the pair
+	* @param tvalue The value for the pair
+	* @return the previous value, or null if the key was absent and nothing was put
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Object replace(Comparable tkey, Object tvalue) throws IOException {
+		Object o;
+		synchronized(indexer.stripe(tkey)) {
+			o = present(tkey);
+			if(o != null)
+				put(tkey, tvalue);
+		}
+		return o;
+	}
+	/**
+	* Put the value if the key holds a value equal to the expected one.
+	* Atomic with every put and remove of the key through the map.
+	* @param tkey The key for the pair
+	* @param expected The value the key must hold
+	* @param tvalue The value for the pair
+	* @return true if the value was put
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public boolean replace(Comparable tkey, Object expected, Object tvalue) throws IOException {
+		synchronized(indexer.stripe(tkey)) {
+			Object o = present(tkey);
+			if(o == null || !o.equals(expected))
+				return false;
+			put(tkey, tvalue);
+		}
+		return true;
+	}
+	/**
+	 * @return the value of the key, or null if absent, from the object cache if it holds it, else by a get
+	 */
+	@SuppressWarnings("rawtypes")
+	private Object present(Comparable tkey) throws IOException {
+		if(cache != null) {
+			Object kv = cache.getIfPresent(tkey);
+			if(kv != null)
+				return ((Map.Entry)kv).getValue();
+		}
+		byte[] k = SerializedComparator.serializeObject(tkey);
+		byte[] b = session.pinned(() -> session.getStored(columnFamilyHandle, k));
+		return b == null ? null : SerializedComparator.deserializeObject(b);
 	}
 	/**
 	* @return First key in set. {@link Session}
 	* @exception IOException If backing store retrieval failure
 	*/
 	public Comparable firstKey() throws IOException {
-		return session.firstKey(columnFamilyHandle);
+		return session.pinned(() -> session.firstKey(columnFamilyHandle));
 	}
 	/**
 	* @return Last key in set. {@link Session}
 	* @exception IOException If backing store retrieval failure
 	*/
 	public Comparable lastKey() throws IOException {
-		return session.lastKey(columnFamilyHandle);
+		return session.pinned(() -> session.lastKey(columnFamilyHandle));
 	}
 	/**
 	* Return the last element. {@link Session}
@@ -265,7 +674,7 @@ public class BufferedMap implements OrderedKVMapInterface {
 	* @exception IOException If backing store retrieval failure
 	*/
 	public Object last() throws IOException {
-		return session.last(columnFamilyHandle);
+		return session.pinned(() -> session.last(columnFamilyHandle));
 	}
 	/**
 	* Return the first element. {@link Session}
@@ -273,7 +682,7 @@ public class BufferedMap implements OrderedKVMapInterface {
 	* @exception IOException If backing store retrieval failure
 	*/
 	public Object first() throws IOException {
-		return session.first(columnFamilyHandle);
+		return session.pinned(() -> session.first(columnFamilyHandle));
 	}
 	/**
 	 * Find the entry nearest to given key
@@ -282,7 +691,7 @@ public class BufferedMap implements OrderedKVMapInterface {
 	 * @throws IOException
 	 */
 	public Object nearest(Comparable key) throws IOException {
-		return session.nearest(columnFamilyHandle, key);
+		return session.pinned(() -> session.nearest(columnFamilyHandle, key));
 	}
 	/**
 	* @param tkey Strictly less than 'to' this element. {@link Session}
@@ -291,7 +700,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public Iterator<?> headMap(Comparable tkey) throws IOException {
-		return session.headSet(columnFamilyHandle, tkey);
+		if(rangeCache != null)
+			return range(null, tkey, true);
+		return session.pinned(() -> session.headSet(columnFamilyHandle, tkey));
 	}
 	
 	/**
@@ -302,7 +713,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	 */
 	@SuppressWarnings("rawtypes")
 	public Stream<?> headMapStream(Comparable tkey) throws IOException {
-		return session.headSetStream(columnFamilyHandle, tkey);
+		if(rangeCache != null)
+			return new SackStream(range(null, tkey, true));
+		return session.pinned(() -> session.headSetStream(columnFamilyHandle, tkey));
 	}
 	/**
 	* @param tkey Strictly less than 'to' this element. {@link Session}
@@ -311,7 +724,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public Iterator<?> headMapKV(Comparable tkey) throws IOException {
-		return session.headSetKV(columnFamilyHandle, tkey);
+		if(rangeCache != null)
+			return range(null, tkey, false);
+		return session.pinned(() -> session.headSetKV(columnFamilyHandle, tkey));
 	}
 	/**
 	* @param tkey Strictly less than 'to' this element. {@link Session}
@@ -320,7 +735,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public Stream<?> headMapKVStream(Comparable tkey) throws IOException {
-		return session.headSetKVStream(columnFamilyHandle, tkey);
+		if(rangeCache != null)
+			return new SackStream(range(null, tkey, false));
+		return session.pinned(() -> session.headSetKVStream(columnFamilyHandle, tkey));
 	}
 	/**
 	* @param fkey Greater or equal to 'from' element. {@link Session}
@@ -329,7 +746,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public Iterator<?> tailMap(Comparable fkey) throws IOException {
-		return session.tailSet(columnFamilyHandle, fkey);
+		if(rangeCache != null)
+			return range(fkey, null, true);
+		return session.pinned(() -> session.tailSet(columnFamilyHandle, fkey));
 	}
 	/**
 	* @param fkey Greater or equal to 'from' element. {@link Session}
@@ -338,7 +757,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public Stream<?> tailMapStream(Comparable fkey) throws IOException {
-		return session.tailSetStream(columnFamilyHandle, fkey);
+		if(rangeCache != null)
+			return new SackStream(range(fkey, null, true));
+		return session.pinned(() -> session.tailSetStream(columnFamilyHandle, fkey));
 	}
 	/**
 	* @param fkey Greater or equal to 'from' element. {@link Session}
@@ -347,7 +768,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public Iterator<?> tailMapKV(Comparable fkey) throws IOException {
-		return session.tailSetKV(columnFamilyHandle, fkey);
+		if(rangeCache != null)
+			return range(fkey, null, false);
+		return session.pinned(() -> session.tailSetKV(columnFamilyHandle, fkey));
 	}
 	/**
 	* @param fkey Greater or equal to 'from' element, {@link Session}
@@ -356,7 +779,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public Stream<?> tailMapKVStream(Comparable fkey) throws IOException {
-		return session.tailSetKVStream(columnFamilyHandle, fkey);
+		if(rangeCache != null)
+			return new SackStream(range(fkey, null, false));
+		return session.pinned(() -> session.tailSetKVStream(columnFamilyHandle, fkey));
 	}
 	/**
 	* @param fkey 'from' element inclusive. {@link Session}
@@ -366,7 +791,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public Iterator<?> subMap(Comparable fkey, Comparable tkey) throws IOException {
-		return session.subSet(columnFamilyHandle, fkey, tkey);
+		if(rangeCache != null)
+			return range(fkey, tkey, true);
+		return session.pinned(() -> session.subSet(columnFamilyHandle, fkey, tkey));
 	}
 	/**
 	* @param fkey 'from' element inclusive. {@link Session} 
@@ -376,7 +803,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public Stream<?> subMapStream(Comparable fkey, Comparable tkey) throws IOException {
-		return session.subSetStream(columnFamilyHandle, fkey, tkey);
+		if(rangeCache != null)
+			return new SackStream(range(fkey, tkey, true));
+		return session.pinned(() -> session.subSetStream(columnFamilyHandle, fkey, tkey));
 	}
 	/**
 	* @param fkey 'from' element inclusive. {@link Session}
@@ -386,7 +815,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public Iterator<?> subMapKV(Comparable fkey, Comparable tkey) throws IOException {
-		return session.subSetKV(columnFamilyHandle, fkey, tkey);
+		if(rangeCache != null)
+			return range(fkey, tkey, false);
+		return session.pinned(() -> session.subSetKV(columnFamilyHandle, fkey, tkey));
 	}
 	/**
 	* @param fkey 'from' element inclusive. {@link Session}
@@ -396,7 +827,209 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public Stream<?> subMapKVStream(Comparable fkey, Comparable tkey) throws IOException {
-		return session.subSetKVStream(columnFamilyHandle, fkey, tkey);
+		if(rangeCache != null)
+			return new SackStream(range(fkey, tkey, false));
+		return session.pinned(() -> session.subSetKVStream(columnFamilyHandle, fkey, tkey));
+	}
+	/**
+	* Merge join this map with another map ordered by the same comparator. A single forward pass is made over each map.
+	* @param other the right side map
+	* @param joinType INNER, LEFT, FULL_OUTER
+	* @return Iterator of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Iterator<?> joinKV(BufferedMap other, MergeJoinIterator.JoinType joinType) throws IOException {
+		return new MergeJoinIterator(entrySet(), other.entrySet(), joinType);
+	}
+	/**
+	* Merge join this map with another map ordered by the same comparator over a range of keys.
+	* @param other the right side map
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @param joinType INNER, LEFT, FULL_OUTER
+	* @return Iterator of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> joinKV(BufferedMap other, Comparable fkey, Comparable tkey, MergeJoinIterator.JoinType joinType) throws IOException {
+		return new MergeJoinIterator(subSetKV(fkey, tkey), other.subSetKV(fkey, tkey), joinType);
+	}
+	/**
+	* @param other the right side map
+	* @param joinType INNER, LEFT, FULL_OUTER
+	* @return Stream of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Stream<?> joinKVStream(BufferedMap other, MergeJoinIterator.JoinType joinType) throws IOException {
+		return new MergeJoinStream(entrySet(), other.entrySet(), joinType);
+	}
+	/**
+	* @param other the right side map
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @param joinType INNER, LEFT, FULL_OUTER
+	* @return Stream of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> joinKVStream(BufferedMap other, Comparable fkey, Comparable tkey, MergeJoinIterator.JoinType joinType) throws IOException {
+		return new MergeJoinStream(subSetKV(fkey, tkey), other.subSetKV(fkey, tkey), joinType);
+	}
+	/**
+	* Difference of this map against another map, such as a snapshot copy. Delivers keys present on one side only
+	* and keys whose values are not equal. A single forward pass is made over each map.
+	* @param other the right side map
+	* @return Iterator of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Iterator<?> diffKV(BufferedMap other) throws IOException {
+		return new DiffIterator(entrySet(), other.entrySet());
+	}
+	/**
+	* @param other the right side map
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Iterator of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> diffKV(BufferedMap other, Comparable fkey, Comparable tkey) throws IOException {
+		return new DiffIterator(subSetKV(fkey, tkey), other.subSetKV(fkey, tkey));
+	}
+	/**
+	* @param other the right side map
+	* @return Stream of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Stream<?> diffKVStream(BufferedMap other) throws IOException {
+		return new DiffStream(entrySet(), other.entrySet());
+	}
+	/**
+	* @param other the right side map
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Stream of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> diffKVStream(BufferedMap other, Comparable fkey, Comparable tkey) throws IOException {
+		return new DiffStream(subSetKV(fkey, tkey), other.subSetKV(fkey, tkey));
+	}
+	/**
+	* Flow.Publisher variant of the range scan. The iterator is opened and read on the executor of {@link SackPublisher}
+	* as subscriber demand arrives, and released on cancel or completion.
+	* @return Publisher of {@link com.neocoretechs.rocksack.iterator.Entry} over the entire map
+	*/
+	public Flow.Publisher<Object> entrySetPublisher() {
+		return new SackPublisher(() -> session.pinned(() -> session.entrySet(columnFamilyHandle)));
+	}
+	/**
+	* @return Publisher of keys over the entire map
+	*/
+	public Flow.Publisher<Object> keySetPublisher() {
+		return new SackPublisher(() -> session.pinned(() -> session.keySet(columnFamilyHandle)));
+	}
+	/**
+	* @param tkey Strictly less than 'to' this element
+	* @return Publisher of keys from first to tkey
+	*/
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> headMapPublisher(Comparable tkey) {
+		return new SackPublisher(() -> session.pinned(() -> session.headSet(columnFamilyHandle, tkey)));
+	}
+	/**
+	* @param tkey Strictly less than 'to' this element
+	* @return Publisher of KeyValuePairs from first to tkey
+	*/
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> headMapKVPublisher(Comparable tkey) {
+		return new SackPublisher(() -> session.pinned(() -> session.headSetKV(columnFamilyHandle, tkey)));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @return Publisher of keys from fkey to last
+	*/
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> tailMapPublisher(Comparable fkey) {
+		return new SackPublisher(() -> session.pinned(() -> session.tailSet(columnFamilyHandle, fkey)));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @return Publisher of KeyValuePairs from fkey to last
+	*/
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> tailMapKVPublisher(Comparable fkey) {
+		return new SackPublisher(() -> session.pinned(() -> session.tailSetKV(columnFamilyHandle, fkey)));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Publisher of keys from fkey to tkey
+	*/
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> subMapPublisher(Comparable fkey, Comparable tkey) {
+		return new SackPublisher(() -> session.pinned(() -> session.subSet(columnFamilyHandle, fkey, tkey)));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Publisher of KeyValuePairs from fkey to tkey
+	*/
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> subMapKVPublisher(Comparable fkey, Comparable tkey) {
+		return new SackPublisher(() -> session.pinned(() -> session.subSetKV(columnFamilyHandle, fkey, tkey)));
+	}
+	/**
+	* Get a value asynchronously. Concurrent gets on this map are coalesced into multiGets under load, see {@link AsyncSupport}.
+	* @param tkey The key for the value
+	* @return future of the {@link com.neocoretechs.rocksack.KeyValue} for the key, or null if not found
+	*/
+	@SuppressWarnings("rawtypes")
+	public CompletableFuture<Object> getAsync(Comparable tkey) {
+		if(cache != null) {
+			Object o = cache.getIfPresent(tkey);
+			if(o != null)
+				return CompletableFuture.completedFuture(o);
+		}
+		return coalescer.get(tkey);
+	}
+	/**
+	* Get several values in one multiGet.
+	* @param tkeys The keys for the values
+	* @return List of {@link com.neocoretechs.rocksack.KeyValue} in order of the keys, null for keys not found
+	* @exception IOException if get from backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public List<Object> getAll(List<? extends Comparable> tkeys) throws IOException {
+		return session.pinned(() -> session.multiGet(columnFamilyHandle, tkeys));
+	}
+	/**
+	* Get several values asynchronously in one multiGet.
+	* @param tkeys The keys for the values
+	* @return future of the List of {@link com.neocoretechs.rocksack.KeyValue} in order of the keys, null for keys not found
+	*/
+	@SuppressWarnings("rawtypes")
+	public CompletableFuture<List<Object>> getAllAsync(List<? extends Comparable> tkeys) {
+		return AsyncSupport.supply(() -> session.pinned(() -> session.multiGet(columnFamilyHandle, tkeys)));
+	}
+	/**
+	* Put a key/value pair asynchronously.
+	* @param tkey The key for the pair
+	* @param tvalue The value for the pair
+	* @return future of the put result
+	*/
+	@SuppressWarnings("rawtypes")
+	public CompletableFuture<Boolean> putAsync(Comparable tkey, Object tvalue) {
+		return AsyncSupport.supply(() -> put(tkey, tvalue));
+	}
+	/**
+	* Remove a key asynchronously.
+	* @param tkey The key to match
+	* @return future of the removed value, or null if not present
+	*/
+	@SuppressWarnings("rawtypes")
+	public CompletableFuture<Object> removeAsync(Comparable tkey) {
+		return AsyncSupport.supply(() -> remove(tkey));
 	}
 	/**
 	* Return boolean value indicating whether the map for the columnFamilyHandle encapsulated by this {@link Session} is empty
@@ -404,7 +1037,7 @@ public class BufferedMap implements OrderedKVMapInterface {
 	* @exception IOException If backing store retrieval failure
 	*/
 	public boolean isEmpty() throws IOException {
-		return session.isEmpty(columnFamilyHandle);
+		return session.pinned(() -> session.isEmpty(columnFamilyHandle));
 	}
 	
 	@Override
@@ -432,7 +1065,7 @@ public class BufferedMap implements OrderedKVMapInterface {
 	 */
 	@Override
 	public Iterator<?> iterator() throws IOException {
-		return session.keySet(columnFamilyHandle);
+		return session.pinned(() -> session.keySet(columnFamilyHandle));
 	}
 	/**
 	 * @param o the key to locate
@@ -441,7 +1074,7 @@ public class BufferedMap implements OrderedKVMapInterface {
 	 */
 	@Override
 	public boolean contains(Comparable o) throws IOException {
-		return session.contains(columnFamilyHandle, o);
+		return session.pinned(() -> session.contains(columnFamilyHandle, o));
 	}
 
 	public String getClassName() {
@@ -452,9 +1085,14 @@ public class BufferedMap implements OrderedKVMapInterface {
 	public void Open() throws IOException {
 	}
 
+	/**
+	 * Close the session of this map if it owns it. A derived map shares the session of its database
+	 * with the map of the default column family and its sibling maps, and leaves it open.
+	 */
 	@Override
 	public void Close() throws IOException {
-			session.getKVStore().close();
+		if(!isDerived)
+			session.Close();
 	}
 	/**
 	 * Return the RocksDB instance.
@@ -468,7 +1106,7 @@ public class BufferedMap implements OrderedKVMapInterface {
 	 */
 	@Override
 	public boolean containsValue(Object o) throws IOException {
-			return session.containsValue(columnFamilyHandle, o);
+			return session.pinned(() -> session.containsValue(columnFamilyHandle, o));
 	}
 	/**
 	* @param fkey 'from' element inclusive. {@link Session}
@@ -478,7 +1116,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@Override
 	public Iterator<?> subSet(Comparable fkey, Comparable tkey) throws IOException {
-		return session.subSet(columnFamilyHandle, fkey, tkey);
+		if(rangeCache != null)
+			return range(fkey, tkey, true);
+		return session.pinned(() -> session.subSet(columnFamilyHandle, fkey, tkey));
 	}
 	/**
 	* @param fkey 'from' element inclusive. {@link Session}
@@ -488,7 +1128,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@Override
 	public Stream<?> subSetStream(Comparable fkey, Comparable tkey) throws IOException {
-		return session.subSetStream(columnFamilyHandle, fkey, tkey);
+		if(rangeCache != null)
+			return new SackStream(range(fkey, tkey, true));
+		return session.pinned(() -> session.subSetStream(columnFamilyHandle, fkey, tkey));
 	}
 	/**
 	* @param tkey Strictly less than 'to' this element. {@link Session}
@@ -497,7 +1139,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@Override
 	public Iterator<?> headSet(Comparable tkey) throws IOException {
-		return session.headSet(columnFamilyHandle, tkey);
+		if(rangeCache != null)
+			return range(null, tkey, true);
+		return session.pinned(() -> session.headSet(columnFamilyHandle, tkey));
 	}
 	/**
 	* @param tkey Strictly less than 'to' this element. {@link Session}
@@ -506,7 +1150,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@Override
 	public Stream<?> headSetStream(Comparable tkey) throws IOException {
-		return session.headSetStream(columnFamilyHandle, tkey);
+		if(rangeCache != null)
+			return new SackStream(range(null, tkey, true));
+		return session.pinned(() -> session.headSetStream(columnFamilyHandle, tkey));
 	}
 	/**
 	* @param fkey Greater or equal to 'from' element. {@link Session}
@@ -515,7 +1161,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@Override
 	public Iterator<?> tailSet(Comparable fkey) throws IOException {
-		return session.tailSet(columnFamilyHandle, fkey);
+		if(rangeCache != null)
+			return range(fkey, null, true);
+		return session.pinned(() -> session.tailSet(columnFamilyHandle, fkey));
 	}
 	/**
 	* @param fkey Greater or equal to 'from' element. {@link Session}
@@ -524,7 +1172,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@Override
 	public Stream<?> tailSetStream(Comparable fkey) throws IOException {
-		return session.tailSetStream(columnFamilyHandle, fkey);
+		if(rangeCache != null)
+			return new SackStream(range(fkey, null, true));
+		return session.pinned(() -> session.tailSetStream(columnFamilyHandle, fkey));
 	}
 	/**
 	* @param fkey 'from' element inclusive. {@link Session}
@@ -534,7 +1184,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@Override
 	public Iterator<?> subSetKV(Comparable fkey, Comparable tkey) throws IOException {
-		return session.subSetKV(columnFamilyHandle, fkey, tkey);
+		if(rangeCache != null)
+			return range(fkey, tkey, false);
+		return session.pinned(() -> session.subSetKV(columnFamilyHandle, fkey, tkey));
 	}
 	/**
 	* @param fkey 'from' element inclusive. {@link Session}
@@ -544,7 +1196,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@Override
 	public Stream<?> subSetKVStream(Comparable fkey, Comparable tkey) throws IOException {
-		return session.subSetKVStream(columnFamilyHandle, fkey, tkey);
+		if(rangeCache != null)
+			return new SackStream(range(fkey, tkey, false));
+		return session.pinned(() -> session.subSetKVStream(columnFamilyHandle, fkey, tkey));
 	}
 	/**
 	* @param tkey Strictly less than 'to' this element. {@link Session}
@@ -553,7 +1207,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@Override
 	public Iterator<?> headSetKV(Comparable tkey) throws IOException {
-		return session.headSetKV(columnFamilyHandle, tkey);
+		if(rangeCache != null)
+			return range(null, tkey, false);
+		return session.pinned(() -> session.headSetKV(columnFamilyHandle, tkey));
 	}
 	/**
 	* @param tkey Strictly less than 'to' this element. {@link Session}
@@ -562,7 +1218,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@Override
 	public Stream<?> headSetKVStream(Comparable tkey) throws IOException {
-		return session.headSetKVStream(columnFamilyHandle, tkey);
+		if(rangeCache != null)
+			return new SackStream(range(null, tkey, false));
+		return session.pinned(() -> session.headSetKVStream(columnFamilyHandle, tkey));
 	}
 	/**
 	* @param fkey Greater or equal to 'from' element. {@link Session}
@@ -571,7 +1229,9 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@Override
 	public Iterator<?> tailSetKV(Comparable fkey) throws IOException {
-		return session.tailSetKV(columnFamilyHandle, fkey);
+		if(rangeCache != null)
+			return range(fkey, null, false);
+		return session.pinned(() -> session.tailSetKV(columnFamilyHandle, fkey));
 	}
 	/**
 	* @param fkey Greater or equal to 'from' element. {@link Session}
@@ -580,14 +1240,173 @@ public class BufferedMap implements OrderedKVMapInterface {
 	*/
 	@Override
 	public Stream<?> tailSetKVStream(Comparable fkey) throws IOException {
-		return session.tailSetKVStream(columnFamilyHandle, fkey);
+		if(rangeCache != null)
+			return new SackStream(range(fkey, null, false));
+		return session.pinned(() -> session.tailSetKVStream(columnFamilyHandle, fkey));
+	}
+	/**
+	 * Open a read only view of the map pinned to a RocksDB Snapshot, every read of which sees the map as it is now.
+	 * The view must be closed to release the snapshot. {@link SnapshotMap}
+	 * @return the view
+	 * @throws IOException
+	 */
+	public SnapshotMap openSnapshot() throws IOException {
+		return new SnapshotMap(this);
 	}
 	/**
 	 * Drop the column encapsulated by the session for this BufferedMap
 	 * @throws IOException
 	 */
 	public void dropColumn() throws IOException {
-		session.dropColumn(columnFamilyHandle);
+		session.pinned(() -> {
+			session.dropColumn(columnFamilyHandle);
+			indexer.drop();
+			return null;
+		});
+		if(cache != null)
+			cache.clear();
+		if(rangeCache != null)
+			rangeCache.clear();
+	}
+	/**
+	 * @return the {@link ObjectCache} in front of the gets of this map, or null if its class has none
+	 */
+	public ObjectCache getObjectCache() {
+		return cache;
+	}
+	/**
+	* Get the entries whose values have the given value of a {@link com.neocoretechs.rocksack.SecondaryIndex}, in primary key order.
+	* @param index the name of the index
+	* @param value the indexed value
+	* @return Iterator of {@link com.neocoretechs.rocksack.KeyValue}, empty if no value of the map was indexed
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> getByIndex(String index, Comparable value) throws IOException {
+		return indexFetch(SecondaryIndexer.bounds(index, value));
+	}
+	/**
+	* Get the entries whose values of a {@link com.neocoretechs.rocksack.SecondaryIndex} are in a range, in index order.
+	* @param index the name of the index
+	* @param fvalue 'from' indexed value inclusive, null from the first
+	* @param tvalue 'to' indexed value exclusive, null to the last
+	* @return Iterator of {@link com.neocoretechs.rocksack.KeyValue}, empty if no value of the map was indexed
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> indexRange(String index, Comparable fvalue, Comparable tvalue) throws IOException {
+		return indexFetch(SecondaryIndexer.bounds(index, fvalue, tvalue));
+	}
+	/**
+	* @param index the name of the index
+	* @param fvalue 'from' indexed value inclusive, null from the first
+	* @param tvalue 'to' indexed value exclusive, null to the last
+	* @return Stream of {@link com.neocoretechs.rocksack.KeyValue} in index order
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> indexRangeStream(String index, Comparable fvalue, Comparable tvalue) throws IOException {
+		return new SackStream(indexRange(index, fvalue, tvalue));
+	}
+	/**
+	* Stream of the index alone, the values of the map are not read.
+	* @param index the name of the index
+	* @param fvalue 'from' indexed value inclusive, null from the first
+	* @param tvalue 'to' indexed value exclusive, null to the last
+	* @return Stream of {@link com.neocoretechs.rocksack.iterator.KeyValuePair} of indexed value and primary key in index order
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> indexStream(String index, Comparable fvalue, Comparable tvalue) throws IOException {
+		IndexKey[] b = SecondaryIndexer.bounds(index, fvalue, tvalue);
+		return session.pinned(() -> {
+			ColumnFamilyHandle ich = indexer.getIndexHandle();
+			if(ich == null)
+				return Stream.empty();
+			return new SackStream(SecondaryIndexer.indexOnly(session.subSet(ich, b[0], b[1])));
+		});
+	}
+	/**
+	 * Build the {@link com.neocoretechs.rocksack.SecondaryIndex} entries and {@link com.neocoretechs.rocksack.BitmapIndex}
+	 * bitmaps of all values of the map, replacing any present. The map may be read and written meanwhile.
+	 * @return the number of values indexed
+	 * @throws IOException
+	 */
+	public long rebuildIndex() throws IOException {
+		return session.pinned(() -> indexer.rebuild(columnFamilyHandle));
+	}
+	/**
+	 * Read the primary entries of a range of the index column family.
+	 */
+	private Iterator<?> indexFetch(IndexKey[] b) throws IOException {
+		return session.pinned(() -> {
+			ColumnFamilyHandle ich = indexer.getIndexHandle();
+			if(ich == null)
+				return Collections.emptyIterator();
+			return new SecondaryIndexer.FetchIterator(SecondaryIndexer.primaryKeys(session.subSet(ich, b[0], b[1])),
+				keys -> SecondaryIndexer.present(session.pinned(() -> session.multiGet(columnFamilyHandle, keys))));
+		});
+	}
+	/**
+	* Get the keys of the entries whose values satisfy a query of their {@link com.neocoretechs.rocksack.BitmapIndex}
+	* results, without reading the values. Keys are in the order their values were first indexed.
+	* @param query the query
+	* @return Stream of keys, empty if no value of the map had bitmap indexes
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Stream<?> bitmapKeyStream(BitmapQuery query) throws IOException {
+		return new SackStream(bitmapKeys(query));
+	}
+	/**
+	* Get the entries whose values satisfy a query of their {@link com.neocoretechs.rocksack.BitmapIndex} results.
+	* Entries are in the order their values were first indexed, read a batch at a time.
+	* @param query the query
+	* @return Iterator of {@link com.neocoretechs.rocksack.KeyValue}, empty if no value of the map had bitmap indexes
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Iterator<?> bitmapQuery(BitmapQuery query) throws IOException {
+		Iterator<?> keys = bitmapKeys(query);
+		return new SecondaryIndexer.FetchIterator(keys,
+			k -> SecondaryIndexer.present(session.pinned(() -> session.multiGet(columnFamilyHandle, k))));
+	}
+	/**
+	* Count the entries whose values satisfy a query of their {@link com.neocoretechs.rocksack.BitmapIndex} results
+	* from the bitmaps alone.
+	* @param query the query
+	* @return the number of entries
+	* @exception IOException If backing store retrieval failure
+	*/
+	public long bitmapCount(BitmapQuery query) throws IOException {
+		return session.pinned(() -> indexer.getBitmaps().evaluate(columnFamilyHandle, query)).cardinality();
+	}
+	/**
+	 * Evaluate the query and resolve its ordinals to keys a batch at a time.
+	 */
+	private Iterator<?> bitmapKeys(BitmapQuery query) throws IOException {
+		BitmapIndexer bitmaps = indexer.getBitmaps();
+		RoaringBitmap ordinals = session.pinned(() -> bitmaps.evaluate(columnFamilyHandle, query));
+		return BitmapIndexer.keys(ordinals, k -> session.pinned(() -> session.multiGet(bitmaps.getHandle(), k)));
+	}
+	/**
+	 * @return the {@link RangeCache} behind the range queries of this map, or null if its class has none
+	 */
+	public RangeCache getRangeCache() {
+		return rangeCache;
+	}
+	/**
+	 * Range query through the {@link RangeCache}, scanning the KeyValuePairs of the range on a miss.
+	 * @param fkey 'from' element inclusive, null for a head range
+	 * @param tkey 'to' element exclusive, null for a tail range
+	 * @param keys true for the keys of the range, false for KeyValuePairs
+	 * @return Iterator over the range
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	private Iterator<?> range(Comparable fkey, Comparable tkey, boolean keys) throws IOException {
+		return rangeCache.get(fkey, tkey, keys, () -> session.pinned(() ->
+			fkey == null ? session.headSetKV(columnFamilyHandle, tkey) :
+			tkey == null ? session.tailSetKV(columnFamilyHandle, fkey) :
+			session.subSetKV(columnFamilyHandle, fkey, tkey)));
 	}
 	
 	@Override
@@ -0,0 +1,212 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+
+import com.neocoretechs.rocksack.iterator.KeyValuePair;
+
+/**
+ * Evaluates a removeIf or updateRange over a range of a map. The range is scanned in key order and cut into chunks
+ * of consecutive entries, the partitions of the range, which are judged on the threads of the {@link AsyncSupport}
+ * executor while the scan reads on. Each chunk yields the keys to remove and the values to put, applied in one write.
+ * At most {@link #getParallelism()} chunks are in flight, holding back the scan when the writes fall behind.<p>
+ * The operation is called at once from several threads, and must be free of side effects on the map.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public final class BulkUpdate {
+	private static boolean DEBUG = false;
+	/** result of an update removing the entry */
+	static final Object REMOVE = new Object();
+	/** entries per chunk */
+	static final int CHUNK_SIZE = 1024;
+	private static int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Receives the progress of a bulk operation after each chunk is applied, one call at a time.
+	 */
+	@FunctionalInterface
+	public interface Progress {
+		/**
+		 * @param scanned the entries judged so far
+		 * @param changed the entries removed or replaced so far
+		 */
+		void progress(long scanned, long changed);
+	}
+	/**
+	 * Writes the changes of a chunk.
+	 */
+	@FunctionalInterface
+	interface Applier {
+		@SuppressWarnings("rawtypes")
+		void apply(List<KeyValuePair> puts, List<Comparable> removes) throws IOException;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private final BiFunction<Comparable, Object, Object> op;
+	private final Progress progress;
+	private final int permits = parallelism;
+	private final Semaphore inFlight = new Semaphore(permits);
+	private final AtomicLong scanned = new AtomicLong();
+	private final AtomicLong changed = new AtomicLong();
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	/**
+	 * @param op gives the new value of an entry, {@link #REMOVE} to remove it or null to leave it
+	 * @param progress receives the progress, or null
+	 */
+	@SuppressWarnings("rawtypes")
+	BulkUpdate(BiFunction<Comparable, Object, Object> op, Progress progress) {
+		this.op = op;
+		this.progress = progress;
+	}
+	/**
+	 * @return the operation of a removeIf, removing the entries the predicate accepts
+	 */
+	@SuppressWarnings("rawtypes")
+	static BiFunction<Comparable, Object, Object> removing(BiPredicate<Comparable, Object> predicate) {
+		return (k, v) -> predicate.test(k, v) ? REMOVE : null;
+	}
+	/**
+	 * @return the chunks judged and applied at once, by default the number of processors
+	 */
+	public static int getParallelism() {
+		return parallelism;
+	}
+	/**
+	 * @param n the chunks judged and applied at once
+	 */
+	public static void setParallelism(int n) {
+		if(n < 1)
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		parallelism = n;
+	}
+	/**
+	 * Judge and apply a chunk on the executor, waiting while all permits are in flight.
+	 * @param chunk the entries, which the caller no longer touches
+	 * @param applier writes the changes
+	 * @throws IOException if an earlier chunk failed or the wait is interrupted
+	 */
+	void submit(List<KeyValuePair> chunk, Applier applier) throws IOException {
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		if(failure.get() != null) {
+			inFlight.release();
+			throw failed();
+		}
+		AsyncSupport.getExecutor().execute(() -> {
+			try {
+				ArrayList<KeyValuePair> puts = new ArrayList<KeyValuePair>();
+				@SuppressWarnings("rawtypes")
+				ArrayList<Comparable> removes = new ArrayList<Comparable>();
+				judge(chunk, 0, chunk.size(), puts, removes);
+				if(!puts.isEmpty() || !removes.isEmpty())
+					applier.apply(puts, removes);
+				done(chunk.size(), puts.size() + removes.size());
+			} catch (Throwable t) {
+				failure.compareAndSet(null, t);
+			} finally {
+				inFlight.release();
+			}
+		});
+	}
+	/**
+	 * Wait for the chunks in flight.
+	 * @return the entries changed
+	 * @throws IOException if a chunk failed
+	 */
+	long finish() throws IOException {
+		try {
+			inFlight.acquire(permits);
+			inFlight.release(permits);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		if(failure.get() != null)
+			throw failed();
+		if(DEBUG)
+			System.out.printf("BulkUpdate.finish %d scanned %d changed%n", scanned.get(), changed.get());
+		return changed.get();
+	}
+	/**
+	 * Judge a chunk in slices on the executor and apply the changes on the calling thread, for a transaction,
+	 * which is written by one thread at a time.
+	 * @param chunk the entries
+	 * @param applier writes the changes
+	 * @throws IOException if judging or the write fails
+	 */
+	@SuppressWarnings("rawtypes")
+	void apply(List<KeyValuePair> chunk, Applier applier) throws IOException {
+		int slices = Math.max(1, Math.min(parallelism, chunk.size() / 64));
+		ArrayList<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(slices);
+		ArrayList<List<KeyValuePair>> puts = new ArrayList<List<KeyValuePair>>(slices);
+		ArrayList<List<Comparable>> removes = new ArrayList<List<Comparable>>(slices);
+		for(int i = 0; i < slices; i++) {
+			int from = chunk.size() * i / slices, to = chunk.size() * (i + 1) / slices;
+			ArrayList<KeyValuePair> p = new ArrayList<KeyValuePair>();
+			ArrayList<Comparable> r = new ArrayList<Comparable>();
+			puts.add(p);
+			removes.add(r);
+			futures.add(CompletableFuture.runAsync(() -> judge(chunk, from, to, p, r), AsyncSupport.getExecutor()));
+		}
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+		} catch (RuntimeException e) {
+			throw new IOException(e.getCause() != null ? e.getCause() : e);
+		}
+		ArrayList<KeyValuePair> allPuts = new ArrayList<KeyValuePair>();
+		ArrayList<Comparable> allRemoves = new ArrayList<Comparable>();
+		for(int i = 0; i < slices; i++) {
+			allPuts.addAll(puts.get(i));
+			allRemoves.addAll(removes.get(i));
+		}
+		if(!allPuts.isEmpty() || !allRemoves.isEmpty())
+			applier.apply(allPuts, allRemoves);
+		done(chunk.size(), allPuts.size() + allRemoves.size());
+	}
+	/**
+	 * @return the entries changed
+	 */
+	long getChanged() {
+		return changed.get();
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void judge(List<KeyValuePair> chunk, int from, int to, List<KeyValuePair> puts, List<Comparable> removes) {
+		for(int i = from; i < to; i++) {
+			KeyValuePair kv = chunk.get(i);
+			Object o = op.apply((Comparable) kv.getKey(), kv.getValue());
+			if(o == REMOVE)
+				removes.add((Comparable) kv.getKey());
+			else if(o != null)
+				puts.add(new KeyValuePair((Comparable) kv.getKey(), o));
+		}
+	}
+
+	private void done(int n, int c) {
+		scanned.addAndGet(n);
+		changed.addAndGet(c);
+		if(progress != null) {
+			synchronized(this) {
+				progress.progress(scanned.get(), changed.get());
+			}
+		}
+	}
+
+	private IOException failed() {
+		Throwable t = failure.get();
+		return t instanceof IOException ? (IOException) t : new IOException(t);
+	}
+}
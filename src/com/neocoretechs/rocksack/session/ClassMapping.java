@@ -0,0 +1,85 @@
+package com.neocoretechs.rocksack.session;
+
+import com.neocoretechs.rocksack.DatabaseClass;
+
+/**
+ * The resolved placement of a Java class in the database, computed once per class and held in a ClassValue.
+ * The {@link DatabaseClass} annotation is read, the tablespace and column names translated, and for a derived class
+ * the options of the annotation recorded with {@link DatabaseManager}, all on first use of the class.
+ * Subsequent resolution of the class to its map is the ClassValue lookup plus a lookup of {@link #getMapName()}
+ * in the classToIso or classToIsoTransaction map of the volume, which holds the map handles for the tablespace.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+final class ClassMapping {
+	private static boolean DEBUG = false;
+	private static final ClassValue<ClassMapping> mappings = new ClassValue<ClassMapping>() {
+		@Override
+		protected ClassMapping computeValue(Class<?> clazz) {
+			return new ClassMapping(clazz);
+		}
+	};
+	/** true if the class is annotated with DatabaseClass and stored as a column family in a tablespace */
+	final boolean isDerivedClass;
+	/** translated tablespace class, the main class of the database */
+	final String xClass;
+	/** translated column family name if isDerivedClass, otherwise null */
+	final String dClass;
+	// placement of the class in a consolidated tablespace, created on first use
+	private volatile ClassMapping consolidated = null;
+
+	private ClassMapping(Class<?> clazz) {
+		if(clazz.isAnnotationPresent(DatabaseClass.class)) {
+			isDerivedClass = true;
+			DatabaseClass dc = clazz.getAnnotation(DatabaseClass.class);
+			String ts = dc.tablespace();
+			if(ts.equals(""))
+				ts = clazz.getSuperclass().getName();
+			xClass = DatabaseManager.translateClass(ts);
+			String ds = dc.column();
+			if(ds.equals(""))
+				ds = clazz.getName();
+			dClass = DatabaseManager.translateClass(ds);
+			DatabaseManager.getInstance().addAnnotationOptions(dc, dClass);
+		} else {
+			isDerivedClass = false;
+			xClass = DatabaseManager.translateClass(clazz.getName());
+			dClass = null;
+		}
+		if(DEBUG)
+			System.out.printf("%s resolved %s to tablespace class:%s derived:%s%n", this.getClass().getName(), clazz.getName(), xClass, dClass);
+	}
+	/**
+	 * Mapping of the class in a consolidated tablespace, where every class is a column family of the single
+	 * database {@link DatabaseManager#CONSOLIDATED_DATABASE}. The column family is the name the map is held under
+	 * in a regular tablespace.
+	 * @param base the mapping in a regular tablespace
+	 */
+	private ClassMapping(ClassMapping base) {
+		isDerivedClass = true;
+		xClass = DatabaseManager.CONSOLIDATED_DATABASE;
+		dClass = base.getMapName();
+	}
+	/**
+	 * @return the mapping of the class in a consolidated tablespace
+	 */
+	ClassMapping consolidated() {
+		ClassMapping c = consolidated;
+		if(c == null)
+			consolidated = c = new ClassMapping(this);
+		return c;
+	}
+	/**
+	 * @param clazz
+	 * @return the mapping for the class, computed on first call
+	 */
+	static ClassMapping get(Class<?> clazz) {
+		return mappings.get(clazz);
+	}
+	/**
+	 * @return the name the map for the class is held under in the volume, the column if derived, otherwise the tablespace class
+	 */
+	String getMapName() {
+		return isDerivedClass ? dClass : xClass;
+	}
+}
@@ -0,0 +1,193 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import com.neocoretechs.rocksack.Alias;
+
+/**
+ * Migration of a tablespace stored as one database per class into the single database of a consolidated tablespace,
+ * see {@link DatabaseManager#setConsolidated(boolean)}.<p>
+ * Every database of the tablespace, a directory named tablespace plus translated class, is opened read only and each of its
+ * column families copied in write batches to the column family of the same name in tablespace+{@link DatabaseManager#CONSOLIDATED_DATABASE}.
+ * The default column family, which holds the tablespace class itself, is copied to the column family named after the class.
+ * Keys and values are copied as stored, so no class need be loaded. The per class databases are left in place and may be
+ * removed once the consolidated tablespace is verified.<p>
+ * No session may be open on the tablespace during migration.
+ * NOTES:
+ * program argument is the tablespace i.e. C:/users/you/RockSack/TestDB2
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public final class Consolidator {
+	private static boolean DEBUG = false;
+	private static int batchSize = 10000;
+
+	private Consolidator() {}
+
+	/**
+	 * @param size number of entries copied per write batch
+	 */
+	public static void setBatchSize(int size) {
+		batchSize = size;
+	}
+	/**
+	 * Migrate the aliased tablespace.
+	 * @param alias the tablespace alias
+	 * @return the number of entries copied per consolidated column family
+	 * @throws IOException if a session is open on the tablespace, no per class database was found, or the copy failed
+	 */
+	public static Map<String, Long> migrate(Alias alias) throws IOException {
+		return migrate(DatabaseManager.getTableSpaceDir(alias));
+	}
+	/**
+	 * Migrate the tablespace, copying every per class database into the consolidated database.
+	 * @param tablespace the tablespace directory and database prefix, as given to {@link DatabaseManager#setTableSpaceDir(String)}
+	 * @return the number of entries copied per consolidated column family
+	 * @throws IOException if a session is open on the tablespace, no per class database was found, or the copy failed
+	 */
+	public static Map<String, Long> migrate(String tablespace) throws IOException {
+		File ts = new File(tablespace);
+		File parent;
+		String prefix;
+		// a tablespace ending in a separator is a directory, its databases are named by class alone, as DatabaseManager appends the class to the tablespace
+		if(tablespace.endsWith("/") || tablespace.endsWith(File.separator)) {
+			parent = ts.getAbsoluteFile();
+			prefix = "";
+		} else {
+			parent = ts.getAbsoluteFile().getParentFile();
+			prefix = ts.getName();
+		}
+		String target = tablespace+DatabaseManager.CONSOLIDATED_DATABASE;
+		for(String open : SessionManager.getSessionTable().keySet()) {
+			if(open.startsWith(tablespace))
+				throw new IOException("Session "+open+" is open on tablespace "+tablespace);
+		}
+		File[] dirs = parent.listFiles(f -> f.isDirectory() && f.getName().startsWith(prefix) && f.getName().length() > prefix.length() &&
+				!f.getName().equals(prefix+DatabaseManager.CONSOLIDATED_DATABASE) && new File(f, "CURRENT").exists());
+		if(dirs == null || dirs.length == 0)
+			throw new IOException("No database to migrate found for tablespace "+tablespace);
+		LinkedHashMap<String, Long> copied = new LinkedHashMap<String, Long>();
+		DatabaseManager dm = DatabaseManager.getInstance();
+		ArrayList<ColumnFamilyHandle> targetHandles = new ArrayList<ColumnFamilyHandle>();
+		List<ColumnFamilyDescriptor> targetDescriptors = descriptors(target);
+		try (RocksDB targetDb = RocksDB.open(dm.getDBOptions(target), target, targetDescriptors, targetHandles);
+			 WriteOptions wo = new WriteOptions()) {
+			try {
+				LinkedHashMap<String, ColumnFamilyHandle> targetFamilies = new LinkedHashMap<String, ColumnFamilyHandle>();
+				for(int i = 0; i < targetDescriptors.size(); i++)
+					targetFamilies.put(new String(targetDescriptors.get(i).getName()), targetHandles.get(i));
+				for(File dir : dirs) {
+					String xClass = dir.getName().substring(prefix.length());
+					String source = dir.getPath();
+					ArrayList<ColumnFamilyHandle> sourceHandles = new ArrayList<ColumnFamilyHandle>();
+					List<ColumnFamilyDescriptor> sourceDescriptors = descriptors(source);
+					try (RocksDB sourceDb = RocksDB.openReadOnly(dm.getDBOptions(source), source, sourceDescriptors, sourceHandles)) {
+						try {
+							for(int i = 0; i < sourceDescriptors.size(); i++) {
+								String cn = new String(sourceDescriptors.get(i).getName());
+								String dn = cn.equals(new String(RocksDB.DEFAULT_COLUMN_FAMILY)) ? xClass : cn;
+								ColumnFamilyHandle th = targetFamilies.get(dn);
+								if(th == null) {
+									th = targetDb.createColumnFamily(new ColumnFamilyDescriptor(dn.getBytes(), options(target, dn)));
+									targetFamilies.put(dn, th);
+									targetHandles.add(th);
+								}
+								long n = copy(sourceDb, sourceHandles.get(i), targetDb, th, wo);
+								copied.merge(dn, n, Long::sum);
+								if(DEBUG)
+									System.out.printf("Consolidator.migrate copied %d entries from %s column family %s to %s%n", n, source, cn, dn);
+							}
+						} finally {
+							// handles are closed before their database
+							for(ColumnFamilyHandle h : sourceHandles)
+								h.close();
+						}
+					}
+				}
+				targetDb.flushWal(true);
+			} finally {
+				for(ColumnFamilyHandle h : targetHandles)
+					h.close();
+			}
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+		return copied;
+	}
+	/**
+	 * Copy all entries of the source column family to the target in write batches.
+	 * @return the number of entries copied
+	 */
+	private static long copy(RocksDB sourceDb, ColumnFamilyHandle sh, RocksDB targetDb, ColumnFamilyHandle th, WriteOptions wo) throws RocksDBException {
+		long n = 0;
+		try (RocksIterator it = sourceDb.newIterator(sh)) {
+			WriteBatch wb = new WriteBatch();
+			try {
+				for(it.seekToFirst(); it.isValid(); it.next()) {
+					wb.put(th, it.key(), it.value());
+					if(++n % batchSize == 0) {
+						targetDb.write(wo, wb);
+						wb.close();
+						wb = new WriteBatch();
+					}
+				}
+				it.status();
+				if(wb.count() > 0)
+					targetDb.write(wo, wb);
+			} finally {
+				wb.close();
+			}
+		}
+		return n;
+	}
+	/**
+	 * Descriptors of the existing column families of the database, or the default column family of a new one.
+	 */
+	private static List<ColumnFamilyDescriptor> descriptors(String dbPath) throws IOException {
+		ArrayList<ColumnFamilyDescriptor> cfds = new ArrayList<ColumnFamilyDescriptor>();
+		List<byte[]> names = new ArrayList<byte[]>();
+		if(new File(dbPath, "CURRENT").exists()) {
+			try {
+				names.addAll(RocksDB.listColumnFamilies(DatabaseManager.getInstance().getDefaultOptions(), dbPath));
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+		}
+		if(names.isEmpty())
+			names.add(RocksDB.DEFAULT_COLUMN_FAMILY);
+		for(byte[] name : names)
+			cfds.add(new ColumnFamilyDescriptor(name, options(dbPath, new String(name))));
+		return cfds;
+	}
+
+	private static ColumnFamilyOptions options(String dbPath, String cn) {
+		return DatabaseManager.getInstance().getColumnFamilyOptions(dbPath, cn);
+	}
+
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.session.Consolidator <tablespace>");
+			System.exit(1);
+		}
+		long tims = System.currentTimeMillis();
+		Map<String, Long> copied = migrate(argv[0]);
+		for(Map.Entry<String, Long> e : copied.entrySet())
+			System.out.println(e.getKey()+" "+e.getValue());
+		System.out.println("Consolidated "+copied.size()+" column families into "+argv[0]+DatabaseManager.CONSOLIDATED_DATABASE+
+				" in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+}
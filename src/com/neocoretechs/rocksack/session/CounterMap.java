@@ -0,0 +1,305 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import com.neocoretechs.rocksack.SerializedComparator;
+import com.neocoretechs.rocksack.iterator.AbstractIterator;
+import com.neocoretechs.rocksack.iterator.KeyValuePair;
+import com.neocoretechs.rocksack.stream.SackStream;
+
+/**
+ * Counters kept beside the column family of a map, in a column family named after it with the suffix #counters.
+ * Keys are any Comparable, ordered as the keys of the map, and values are 64 bit counts stored for the uint64add
+ * merge operator of RocksDB. An increment is a merge of its delta, written blind with no read and no lock, and the
+ * deltas of a key are summed when it is read and when compaction meets them, so concurrent increments never conflict
+ * where a get, add and put in a transaction would.<p>
+ * Counts are signed longs added with wraparound, so a negative delta decrements. A key never written counts 0.
+ * Writes go to the database, not to a transaction.<p>
+ * The column family takes the {@link TuningProfile#COUNTERS} options under the Class section of its name, the merge
+ * operator is always uint64add. Obtained with {@link DatabaseManager#getCounterMap(Class)}.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public final class CounterMap {
+	private static boolean DEBUG = false;
+	/** suffix of the name of the counter column family to the name of the column family of the map */
+	static final String COUNTERS_SUFFIX = "#counters";
+	/** merge operator of the counter column family */
+	static final String UINT64ADD = "uint64add";
+	// entries read per page of a range
+	private static final int PAGE_SIZE = 256;
+	// counter maps by database path and column family
+	private static ConcurrentHashMap<String, CounterMap> maps = new ConcurrentHashMap<String, CounterMap>();
+
+	private final Session session;
+	private final SecondaryIndexer.Family family;
+
+	private CounterMap(Session session, String cfName) throws RocksDBException, IOException {
+		this.session = session;
+		this.family = new SecondaryIndexer.Family(session, cfName+COUNTERS_SUFFIX);
+		family.create();
+	}
+	/**
+	 * The counters of the map, the column family created on first use.
+	 * @param map the map
+	 * @return the counters
+	 * @throws IOException
+	 */
+	static CounterMap forMap(BufferedMap map) throws IOException {
+		Session session = map.getSession();
+		String name = session.getDBname()+":"+map.getClassName();
+		CounterMap cm = maps.get(name);
+		if(cm != null)
+			return cm;
+		synchronized(maps) {
+			cm = maps.get(name);
+			if(cm == null) {
+				cm = session.pinned(() -> {
+					try {
+						return new CounterMap(session, map.getClassName());
+					} catch (RocksDBException e) {
+						throw new IOException(e);
+					}
+				});
+				maps.put(name, cm);
+				if(DEBUG)
+					System.out.println("CounterMap.forMap "+cm);
+			}
+		}
+		return cm;
+	}
+	/**
+	 * @param name a column family name
+	 * @return true if it names a counter column family
+	 */
+	static boolean isCounters(String name) {
+		return name.endsWith(COUNTERS_SUFFIX);
+	}
+
+	private static byte[] encode(long count) {
+		return ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(count).array();
+	}
+
+	private static long decode(byte[] b) {
+		return b == null ? 0 : ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN).getLong();
+	}
+	/**
+	 * Add the delta to the count of the key.
+	 * @param key the key
+	 * @param delta the amount to add, negative to subtract
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	public void increment(Comparable key, long delta) throws IOException {
+		byte[] k = SerializedComparator.serializeObject(key);
+		session.pinned(() -> {
+			try (WriteOptions wo = new WriteOptions()) {
+				session.getKVStore().merge(family.handle(), wo, k, encode(delta));
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+			return null;
+		});
+	}
+	/**
+	 * Add the deltas to the counts of their keys in one write batch, so all or none are applied.
+	 * @param deltas the amounts to add by key
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	public void incrementAll(Map<? extends Comparable, Long> deltas) throws IOException {
+		session.pinned(() -> {
+			try (WriteBatch wb = new WriteBatch(); WriteOptions wo = new WriteOptions()) {
+				ColumnFamilyHandle cfh = family.handle();
+				for(Map.Entry<? extends Comparable, Long> e : deltas.entrySet())
+					wb.merge(cfh, SerializedComparator.serializeObject(e.getKey()), encode(e.getValue()));
+				session.getKVStore().write(wo, wb);
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+			return null;
+		});
+	}
+	/**
+	 * @param key the key
+	 * @return the count of the key, 0 if never written
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	public long get(Comparable key) throws IOException {
+		byte[] k = SerializedComparator.serializeObject(key);
+		return session.pinned(() -> {
+			try {
+				return decode(session.getKVStore().get(family.handle(), k));
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+		});
+	}
+	/**
+	 * Get the counts of several keys in one multiGet.
+	 * @param keys the keys
+	 * @return the counts in order of the keys, 0 for keys never written
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	public List<Long> getAll(List<? extends Comparable> keys) throws IOException {
+		ArrayList<byte[]> bkeys = new ArrayList<byte[]>(keys.size());
+		for(Comparable key : keys)
+			bkeys.add(SerializedComparator.serializeObject(key));
+		return session.pinned(() -> {
+			try {
+				ColumnFamilyHandle cfh = family.handle();
+				List<byte[]> values = session.getKVStore().multiGetAsList(Collections.nCopies(bkeys.size(), cfh), bkeys);
+				ArrayList<Long> ret = new ArrayList<Long>(values.size());
+				for(byte[] b : values)
+					ret.add(decode(b));
+				return ret;
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+		});
+	}
+	/**
+	 * Replace the count of the key, discarding the deltas merged before.
+	 * @param key the key
+	 * @param count the new count
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	public void set(Comparable key, long count) throws IOException {
+		byte[] k = SerializedComparator.serializeObject(key);
+		session.pinned(() -> {
+			try (WriteOptions wo = new WriteOptions()) {
+				session.getKVStore().put(family.handle(), wo, k, encode(count));
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+			return null;
+		});
+	}
+	/**
+	 * Remove the counter, so it counts 0.
+	 * @param key the key
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	public void remove(Comparable key) throws IOException {
+		byte[] k = SerializedComparator.serializeObject(key);
+		session.pinned(() -> {
+			try (WriteOptions wo = new WriteOptions()) {
+				session.getKVStore().delete(family.handle(), wo, k);
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+			return null;
+		});
+	}
+	/**
+	 * Get the counters of a range of keys in key order. The range is read a page of entries at a time, each page as
+	 * the counters were when it was read.
+	 * @param from the first key inclusive, or null from the first counter
+	 * @param to the last key exclusive, or null to the last counter
+	 * @return Iterator of {@link KeyValuePair} of key and Long count
+	 */
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> range(Comparable from, Comparable to) {
+		return new RangeIterator(from, to);
+	}
+	/**
+	 * @param from the first key inclusive, or null from the first counter
+	 * @param to the last key exclusive, or null to the last counter
+	 * @return Stream of {@link KeyValuePair} of key and Long count in key order
+	 */
+	@SuppressWarnings("rawtypes")
+	public Stream<?> rangeStream(Comparable from, Comparable to) {
+		return new SackStream(range(from, to));
+	}
+	/**
+	 * Reads the range a page at a time, each page under its own pin of the session, resuming after the last key read.
+	 */
+	@SuppressWarnings("rawtypes")
+	private final class RangeIterator implements Iterator<Object> {
+		private final Comparable to;
+		private Comparable from;
+		private boolean inclusive = true;
+		private boolean done = false;
+		private Iterator<KeyValuePair> page = Collections.emptyIterator();
+
+		RangeIterator(Comparable from, Comparable to) {
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		public boolean hasNext() {
+			while(!page.hasNext() && !done) {
+				try {
+					page = nextPage().iterator();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return page.hasNext();
+		}
+		@Override
+		public Object next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			return page.next();
+		}
+		@SuppressWarnings("unchecked")
+		private List<KeyValuePair> nextPage() throws IOException {
+			ArrayList<KeyValuePair> ret = new ArrayList<KeyValuePair>(PAGE_SIZE);
+			session.pinned(() -> {
+				try (RocksIterator it = session.getKVStore().newIterator(family.handle(), AbstractIterator.totalOrder())) {
+					if(from == null)
+						it.seekToFirst();
+					else
+						it.seek(SerializedComparator.serializeObject(from));
+					for(; it.isValid() && ret.size() < PAGE_SIZE; it.next()) {
+						Comparable key = (Comparable) SerializedComparator.deserializeObject(it.key());
+						if(!inclusive && key.compareTo(from) == 0)
+							continue;
+						if(to != null && key.compareTo(to) >= 0) {
+							done = true;
+							break;
+						}
+						ret.add(new KeyValuePair(key, decode(it.value())));
+					}
+					if(!it.isValid())
+						done = true;
+					it.status();
+				} catch (RocksDBException e) {
+					throw new IOException(e);
+				}
+				return null;
+			});
+			if(!ret.isEmpty()) {
+				from = (Comparable) ret.get(ret.size() - 1).getKey();
+				inclusive = false;
+			}
+			return ret;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CounterMap "+family.name+" in "+session.getDBname();
+	}
+}
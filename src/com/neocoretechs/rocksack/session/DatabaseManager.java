@@ -3,28 +3,44 @@ package com.neocoretechs.rocksack.session;
 import java.io.File;
 import java.io.IOException;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.rocksdb.AbstractComparator;
 import org.rocksdb.BlockBasedTableConfig;
 import org.rocksdb.BloomFilter;
 import org.rocksdb.Cache;
+import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.ColumnFamilyOptions;
 import org.rocksdb.CompactionStyle;
 import org.rocksdb.CompressionType;
 import org.rocksdb.DBOptions;
+import org.rocksdb.DBOptionsInterface;
+import org.rocksdb.Env;
 import org.rocksdb.Filter;
 import org.rocksdb.HashSkipListMemTableConfig;
+import org.rocksdb.MemTableConfig;
 import org.rocksdb.LRUCache;
+import org.rocksdb.MutableDBOptionsInterface;
 import org.rocksdb.Options;
+import org.rocksdb.Priority;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.SkipListMemTableConfig;
+import org.rocksdb.SstFileManager;
 import org.rocksdb.Statistics;
 import org.rocksdb.Transaction;
 import org.rocksdb.Transaction.TransactionState;
+import org.rocksdb.VectorMemTableConfig;
+import org.rocksdb.WriteBufferManager;
 import org.rocksdb.util.SizeUnit;
 
 import com.neocoretechs.rocksack.Alias;
@@ -41,7 +57,12 @@ import com.neocoretechs.rocksack.session.VolumeManager.Volume;
  * class name of the class stored there.<p>
  * In almost all cases, this is the main entry point to obtain a BufferedMap or a TransactionalMap.<p>
  * The DatabaseManager coordinates the {@link VolumeManager} the {@link SessionManager} and the {@link TransactionManager}.<p>
- * To override options call setDatabaseOptions(Options). If options are not set in this manner the default options will be used.
+ * Database, column family and table options are resolved per tablespace, alias and class from the {@link TuningConfig},
+ * with named {@link TuningProfile}s for common workloads, and built on first use. If no configuration is loaded the default options will be used.
+ * <p>
+ * All databases share one block cache, write buffer manager, environment with its flush and compaction thread pools,
+ * and SST file manager, so memory and threads do not multiply with the number of classes. The global memory budget and
+ * thread pools are set at startup with {@link #setMemoryBudget(long, double)} and {@link #setBackgroundThreads(int, int)}.
  * <p>
  * The main function of this adapter is to ensure that the appropriate map is instantiated.<br>
  * A map can be obtained by instance of Comparable to impart ordering.<br>
@@ -85,17 +106,134 @@ public final class DatabaseManager {
 	private static final char[] ILLEGAL_CHARS = { '[', ']', '!', '+', '=', '|', ';', '?', '*', '\\', '<', '>', '|', '\"', ':' };
 	private static final char[] OK_CHARS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E' };
 	private Options options = null;
-	private DBOptions dbOptions = null;
-	private BlockBasedTableConfig baseTable = null;
+	// resources shared by every database and column family, sized from the global memory budget at startup
+	private static long memoryBudget = 1024L * SizeUnit.MB;
+	private static double memtableShare = 0.5;
+	private static int flushThreads = 2;
+	private static int compactionThreads = 6;
+	private Cache sharedCache = null;
+	private WriteBufferManager writeBufferManager = null;
+	private Env env = null;
+	private SstFileManager sstFileManager = null;
+	private Statistics statistics = null;
+	// options are built on first use from the TuningConfig, keyed by the resolved options so that equal options are shared
 	private ConcurrentHashMap<String, ColumnFamilyOptions> CFOptionsCache = new ConcurrentHashMap<String,ColumnFamilyOptions>();
+	private ConcurrentHashMap<String, DBOptions> DBOptionsCache = new ConcurrentHashMap<String,DBOptions>();
+	private ConcurrentHashMap<String, BlockBasedTableConfig> tableCache = new ConcurrentHashMap<String,BlockBasedTableConfig>();
+	// DatabaseClass overrides by column family, empty if the column family has no annotated class
+	private ConcurrentHashMap<String, Map<String, String>> annotationOptions = new ConcurrentHashMap<String, Map<String, String>>();
+	private static final String DB_PREFIX = "db.";
+	private static final String TABLE_PREFIX = "table.";
+	private static final String CACHE_PREFIX = "cache.";
+	/** database option giving the bytes of a row cache for the database, none if 0 or absent */
+	static final String ROW_CACHE_SIZE = "row_cache_size";
+	/** column family option giving the memtable representation, one of skip_list, hash_skip_list or vector */
+	static final String MEMTABLE = "memtable";
+	/** column family option giving the bytes of the fixed length prefix extractor, required by hash_skip_list */
+	static final String PREFIX_LENGTH = "prefix_length";
+	/** column family option giving the number of buckets of a hash_skip_list memtable */
+	static final String MEMTABLE_BUCKET_COUNT = "memtable_bucket_count";
+	/** column family option naming a built in merge operator, such as uint64add */
+	static final String MERGE_OPERATOR = "merge_operator";
+	/** table and column family options filtering gets on the hash of the whole serialized key */
+	static final String WHOLE_KEY_FILTERING = "whole_key_filtering";
+	static final String MEMTABLE_WHOLE_KEY_FILTERING = "memtable_whole_key_filtering";
+	public static final String SKIP_LIST = "skip_list";
+	public static final String HASH_SKIP_LIST = "hash_skip_list";
+	public static final String VECTOR = "vector";
+	private static final String CONCURRENT_MEMTABLE_WRITE = "allow_concurrent_memtable_write";
+	private static final String PIPELINED_WRITE = "enable_pipelined_write";
+	private static final String UNORDERED_WRITE = "unordered_write";
+	/** Name of the single database holding every class of a consolidated tablespace, see {@link #setConsolidated(boolean)} */
+	public static final String CONSOLIDATED_DATABASE = "ColumnFamilies";
 	
 	// Multithreaded double check Singleton setups:
 	// 1.) privatized constructor; no other class can call
 	private DatabaseManager() {
-		baseTable = getPrivateBaseTable();
-		setupColumnFamilies(baseTable);
-		dbOptions = getPrivateDBOptions(baseTable);
-		options = getDefaultOptions(baseTable);
+		sharedCache = new LRUCache(memoryBudget, 6, true);
+		// memtables of all databases are charged to the block cache, so together they stay within the budget
+		writeBufferManager = new WriteBufferManager((long)(memoryBudget * memtableShare), sharedCache);
+		env = Env.getDefault();
+		env.setBackgroundThreads(flushThreads, Priority.HIGH);
+		env.setBackgroundThreads(compactionThreads, Priority.LOW);
+		try {
+			sstFileManager = new SstFileManager(env);
+		} catch (RocksDBException e) {
+			throw new RuntimeException(e);
+		}
+		statistics = new Statistics();
+	}
+	/**
+	 * Apply the shared write buffer manager, environment and SST file manager to the options, and allow as many
+	 * background jobs as there are threads in the shared pools.
+	 * @param opts the DBOptions or Options used to open each database
+	 */
+	private <T extends DBOptionsInterface<T> & MutableDBOptionsInterface<T>> void shareResources(T opts) {
+		opts.setWriteBufferManager(writeBufferManager)
+			.setEnv(env)
+			.setSstFileManager(sstFileManager);
+		opts.setMaxBackgroundJobs(flushThreads + compactionThreads);
+	}
+	/**
+	 * Set the global memory budget for all open databases, shared by the block cache and the memtables
+	 * of every database and column family. Memtable memory is charged to the block cache, so the two together
+	 * stay within the budget. Must be called at startup, before the first map is obtained.
+	 * @param bytes the total budget, default 1 GB
+	 * @param memtableFraction the fraction of the budget memtables may use before flushes are triggered, default 0.5
+	 * @throws IllegalStateException if the databases have already been configured
+	 */
+	public static synchronized void setMemoryBudget(long bytes, double memtableFraction) throws IllegalStateException {
+		if(instance != null)
+			throw new IllegalStateException("Memory budget must be set before the DatabaseManager is initialized");
+		if(bytes <= 0 || memtableFraction <= 0 || memtableFraction > 1)
+			throw new IllegalArgumentException("Memory budget "+bytes+" with memtable fraction "+memtableFraction+" is invalid");
+		memoryBudget = bytes;
+		memtableShare = memtableFraction;
+	}
+	/**
+	 * Set the global memory budget with half of it available to memtables, see {@link #setMemoryBudget(long, double)}
+	 * @param bytes the total budget
+	 * @throws IllegalStateException if the databases have already been configured
+	 */
+	public static void setMemoryBudget(long bytes) throws IllegalStateException {
+		setMemoryBudget(bytes, memtableShare);
+	}
+	
+	public static long getMemoryBudget() {
+		return memoryBudget;
+	}
+	/**
+	 * Size the thread pools of the shared environment, which run the flushes and compactions of every database.
+	 * Must be called at startup, before the first map is obtained.
+	 * @param flush threads for memtable flushes, default 2
+	 * @param compaction threads for compactions, default 6
+	 * @throws IllegalStateException if the databases have already been configured
+	 */
+	public static synchronized void setBackgroundThreads(int flush, int compaction) throws IllegalStateException {
+		if(instance != null)
+			throw new IllegalStateException("Background threads must be set before the DatabaseManager is initialized");
+		if(flush < 1 || compaction < 1)
+			throw new IllegalArgumentException("Background threads flush:"+flush+" compaction:"+compaction+" must be at least 1");
+		flushThreads = flush;
+		compactionThreads = compaction;
+	}
+	/**
+	 * @return the block cache shared by all databases, to which memtables are also charged
+	 */
+	public Cache getSharedCache() {
+		return sharedCache;
+	}
+	/**
+	 * @return the write buffer manager bounding the memtables of all databases
+	 */
+	public WriteBufferManager getWriteBufferManager() {
+		return writeBufferManager;
+	}
+	/**
+	 * @return the SST file manager tracking the files of all databases, which gives total disk usage
+	 */
+	public SstFileManager getSstFileManager() {
+		return sstFileManager;
 	}
 	// 2.) volatile instance
 	private static volatile DatabaseManager instance = null;
@@ -136,11 +274,9 @@ public final class DatabaseManager {
 		options.setComparator(comparator);
 		try {
 			options.setCreateIfMissing(true)
-			.setIncreaseParallelism(8)
 			.setStatistics(stats)
 			.setWriteBufferSize(64 * SizeUnit.MB)
 			.setMaxWriteBufferNumber(25)
-			.setMaxBackgroundJobs(24)
 			.setCompressionType(CompressionType.SNAPPY_COMPRESSION)
 			.setCompactionStyle(CompactionStyle.LEVEL);
 		} catch (final IllegalArgumentException e) {
@@ -148,13 +284,9 @@ public final class DatabaseManager {
 			bloomFilter.close();
 			throw new RuntimeException(e);
 		}
-		options.setMemTableConfig(
-				new HashSkipListMemTableConfig()
-				.setHeight(4)
-				.setBranchingFactor(4)
-				.setBucketCount(2000000));
+		// the default skiplist memtable, the only one supporting concurrent writes and ordered iteration without a prefix extractor,
+		// other representations are chosen per column family with the memtable option, see getMemTableConfig
 		// options.setMemTableConfig(new VectorMemTableConfig().setReservedSize(10000));
-		// options.setMemTableConfig(new SkipListMemTableConfig());
 		// options.setTableFormatConfig(new PlainTableConfig());
 		// Plain-Table requires mmap read
 		options.setTableFormatConfig(baseTable);
@@ -163,128 +295,394 @@ public final class DatabaseManager {
 		return options;
 	}
 
-	private static BlockBasedTableConfig getPrivateBaseTable() {
-		// Shared cache for all CFs
-		final Cache sharedCache = new LRUCache(1024L * 1024 * 1024, 6, true);
-		BlockBasedTableConfig baseTbl = new BlockBasedTableConfig()
-				.setBlockCache(sharedCache)
-				.setBlockSize(64 * 1024)
-				.setCacheIndexAndFilterBlocks(true)
-				.setPinL0FilterAndIndexBlocksInCache(true)
-				.setWholeKeyFiltering(false)
-				.setFilterPolicy(new BloomFilter(10));
-		return baseTbl;
+	/**
+	 * Build the block based table options from the table. options, all sharing the block cache.
+	 * @param opts the resolved options
+	 * @return the table options, shared by all column families with the same table options
+	 */
+	private BlockBasedTableConfig getTableConfig(Map<String, String> opts) {
+		TreeMap<String, String> table = select(opts, TABLE_PREFIX);
+		return tableCache.computeIfAbsent(table.toString(), k -> {
+			BlockBasedTableConfig baseTbl = new BlockBasedTableConfig().setBlockCache(sharedCache);
+			for(Map.Entry<String, String> e : table.entrySet()) {
+				switch(e.getKey()) {
+					case "block_size":
+						baseTbl.setBlockSize(Long.parseLong(e.getValue()));
+						break;
+					case "bloom_bits_per_key":
+						double bits = Double.parseDouble(e.getValue());
+						if(bits > 0)
+							baseTbl.setFilterPolicy(new BloomFilter(bits));
+						break;
+					case WHOLE_KEY_FILTERING:
+						baseTbl.setWholeKeyFiltering(Boolean.parseBoolean(e.getValue()));
+						break;
+					case "cache_index_and_filter_blocks":
+						baseTbl.setCacheIndexAndFilterBlocks(Boolean.parseBoolean(e.getValue()));
+						break;
+					case "pin_l0_filter_and_index_blocks_in_cache":
+						baseTbl.setPinL0FilterAndIndexBlocksInCache(Boolean.parseBoolean(e.getValue()));
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown table option "+TABLE_PREFIX+e.getKey());
+				}
+			}
+			if(DEBUG)
+				System.out.println("DatabaseManager.getTableConfig built "+table);
+			return baseTbl;
+		});
+	}
+	/**
+	 * The options with the given prefix, with the prefix removed, or with no prefix if prefix is null.
+	 */
+	private static TreeMap<String, String> select(Map<String, String> opts, String prefix) {
+		TreeMap<String, String> sel = new TreeMap<String, String>();
+		for(Map.Entry<String, String> e : opts.entrySet()) {
+			if(prefix == null) {
+				if(!e.getKey().startsWith(DB_PREFIX) && !e.getKey().startsWith(TABLE_PREFIX) && !e.getKey().startsWith(CACHE_PREFIX))
+					sel.put(e.getKey(), e.getValue());
+			} else if(e.getKey().startsWith(prefix))
+				sel.put(e.getKey().substring(prefix.length()), e.getValue());
+		}
+		return sel;
 	}
-	
-	private static DBOptions getPrivateDBOptions(BlockBasedTableConfig baseTable) {
-		DBOptions dbOpts = new DBOptions(getDefaultOptions(baseTable))
-				.setCreateIfMissing(true)
-				.setCreateMissingColumnFamilies(true)
-				.setUseDirectReads(false)
-				.setAllowMmapReads(true)
-				.setUseDirectIoForFlushAndCompaction(true)
-				.setIncreaseParallelism(2)
-				.setMaxBackgroundJobs(2);
-		return dbOpts;
-	}
-	/**
-	 * Compression_Compaction_Writebuffer_size, X is'use default'
-	 * DEFAULT_COLUMN_FAMILY: equivalent to LZ4_X_3_96, <p>
-	 * LZ4_X_64_X = LZ4 compression, default compaction, 64 MB write buffer, default max write buffer <p>
-	 * LZ4_X_64_2 <p>
-	 * NO_FIFO_32_2 = No compression, FIFO writebuffer, 32MB write buffer, max 2 write buffers<p>
-	 * @param baseTbl
-	 */
-	private void setupColumnFamilies(BlockBasedTableConfig baseTbl) {
-		ColumnFamilyOptions cfPrimary = new ColumnFamilyOptions()
-				.setTableFormatConfig(baseTbl)
-				.setWriteBufferSize(96L * SizeUnit.MB)
-				.setMaxWriteBufferNumber(3)
-				.setCompressionType(CompressionType.LZ4_COMPRESSION)
-				.setBottommostCompressionType(CompressionType.ZSTD_COMPRESSION); //bottom most, or cold long term compression disabled by default
-		cfPrimary.setComparator(SerializedComparatorFactory.newComparator());
-		/*
-		ColumnFamilyOptions cfReverse = new ColumnFamilyOptions()
-				.setWriteBufferSize(64L * SizeUnit.MB)
-				.setCompressionType(CompressionType.LZ4_COMPRESSION);
-		cfReverse.setComparator(SerializedComparatorFactory.newComparator());
-		
-		ColumnFamilyOptions cfIndex = new ColumnFamilyOptions()
-				.setWriteBufferSize(64L * SizeUnit.MB)
-				.setMaxWriteBufferNumber(2)
-				.setCompressionType(CompressionType.LZ4_COMPRESSION);
-		cfIndex.setComparator(SerializedComparatorFactory.newComparator()));
 
-		ColumnFamilyOptions cfCounters = new ColumnFamilyOptions()
-				.setWriteBufferSize(32L * SizeUnit.MB)
-				.setMaxWriteBufferNumber(2)
-				.setCompactionStyle(CompactionStyle.FIFO)
-				.setCompressionType(CompressionType.NO_COMPRESSION);
-		cfCounters.setComparator(SerializedComparatorFactory.newComparator());
-		 */
-		// Define CF descriptors Compression_Compaction_Writebuffer_size, X is'use default'
-		CFOptionsCache.put("DEFAULT_COLUMN_FAMILY", cfPrimary);  //  primary semantic
-		/*CFOptionsCache.put("LZ4_X_64_X", cfReverse);                //  reverse index
-		CFOptionsCache.put("LZ4_X_64_2", cfIndex);                    //  main index
-		CFOptionsCache.put("NO_FIFO_32_2", cfCounters);              // stats/counters
-		*/
+	private static Properties toProperties(Map<String, String> opts) {
+		Properties props = new Properties();
+		props.putAll(opts);
+		return props;
 	}
-	
+	/**
+	 * Get the options to open the database at the path, as resolved by {@link TuningConfig}, built on first use.
+	 * Concurrent memtable writes are turned off if the memtable of the class of the database does not support them.
+	 * @param dbPath the database path, tablespace plus translated class, or null for the Global options
+	 * @return the DBOptions, sharing the resources of all databases
+	 * @throws IllegalArgumentException if an option is invalid
+	 */
+	public DBOptions getDBOptions(String dbPath) {
+		return getDBOptions(dbPath, false);
+	}
+	/**
+	 * Get the options to open a TransactionDB or OptimisticTransactionDB at the path. As {@link #getDBOptions(String)}
+	 * but without unordered_write, which would let a transaction see its writes out of sequence order.
+	 * @param dbPath the database path, tablespace plus translated class, or null for the Global options
+	 * @return the DBOptions, sharing the resources of all databases
+	 * @throws IllegalArgumentException if an option is invalid
+	 */
+	public DBOptions getTransactionDBOptions(String dbPath) {
+		return getDBOptions(dbPath, true);
+	}
+
+	private DBOptions getDBOptions(String dbPath, boolean transactional) {
+		TreeMap<String, String> opts = TuningConfig.resolve(dbPath, null, null);
+		TreeMap<String, String> db = select(opts, DB_PREFIX);
+		if(!supportsConcurrentWrites(opts.get(MEMTABLE)))
+			db.put(CONCURRENT_MEMTABLE_WRITE, "false");
+		if(transactional)
+			db.remove(UNORDERED_WRITE);
+		if(Boolean.parseBoolean(db.get(UNORDERED_WRITE)) && (!isConcurrentMemtableWrite(db) || Boolean.parseBoolean(db.get(PIPELINED_WRITE))))
+			throw new IllegalArgumentException("unordered_write requires allow_concurrent_memtable_write, a skip_list memtable, and no enable_pipelined_write for "+dbPath);
+		return DBOptionsCache.computeIfAbsent(db.toString(), k -> {
+			// the row cache is ours to build, the remaining options are parsed by RocksDB
+			String rowCacheSize = db.remove(ROW_CACHE_SIZE);
+			DBOptions dbOpts = db.isEmpty() ? new DBOptions() : DBOptions.getDBOptionsFromProps(toProperties(db));
+			if(dbOpts == null)
+				throw new IllegalArgumentException("Invalid database options "+db+" for "+dbPath);
+			dbOpts.setCreateIfMissing(true)
+				.setCreateMissingColumnFamilies(true)
+				.setAllow2pc(true) // prepared transactions of a TwoPhaseCommit survive restart
+				.setStatistics(statistics);
+			if(rowCacheSize != null && Long.parseLong(rowCacheSize) > 0)
+				dbOpts.setRowCache(new LRUCache(Long.parseLong(rowCacheSize)));
+			shareResources(dbOpts);
+			if(DEBUG)
+				System.out.println("DatabaseManager.getDBOptions built "+db+" for "+dbPath);
+			return dbOpts;
+		});
+	}
+	/**
+	 * @param memtable the memtable option, or null for the default skiplist
+	 * @return true if writers may insert into the memtable concurrently
+	 */
+	private static boolean supportsConcurrentWrites(String memtable) {
+		return memtable == null || memtable.equals(SKIP_LIST);
+	}
+	/**
+	 * @param db the unprefixed database options
+	 * @return true unless allow_concurrent_memtable_write is false, its RocksDB default is true
+	 */
+	private static boolean isConcurrentMemtableWrite(Map<String, String> db) {
+		return !"false".equals(db.get(CONCURRENT_MEMTABLE_WRITE));
+	}
+	/**
+	 * Build the memtable representation from the memtable, prefix_length and memtable_bucket_count options,
+	 * removing them from the options RocksDB parses.
+	 * @param cf the unprefixed column family options
+	 * @return the memtable config, or null for the default skiplist
+	 */
+	private static MemTableConfig getMemTableConfig(Map<String, String> cf) {
+		String memtable = cf.remove(MEMTABLE);
+		String bucketCount = cf.remove(MEMTABLE_BUCKET_COUNT);
+		if(memtable == null)
+			return null;
+		switch(memtable) {
+			case SKIP_LIST:
+				return new SkipListMemTableConfig();
+			case HASH_SKIP_LIST:
+				// keys hash to buckets by their prefix, without a prefix every key lands in one bucket
+				if(cf.get(PREFIX_LENGTH) == null)
+					throw new IllegalArgumentException("Memtable "+HASH_SKIP_LIST+" requires "+PREFIX_LENGTH);
+				HashSkipListMemTableConfig hash = new HashSkipListMemTableConfig().setHeight(4).setBranchingFactor(4);
+				if(bucketCount != null)
+					hash.setBucketCount(Long.parseLong(bucketCount));
+				return hash;
+			case VECTOR:
+				return new VectorMemTableConfig();
+			default:
+				throw new IllegalArgumentException("Unknown memtable "+memtable+", expected "+SKIP_LIST+", "+HASH_SKIP_LIST+" or "+VECTOR);
+		}
+	}
+	/**
+	 * Get the options of a column family of the database at the path, as resolved by {@link TuningConfig}, built on first use.
+	 * @param dbPath the database path, tablespace plus translated class, or null for the Global options
+	 * @param cfName the column family, null or default for the class of the database
+	 * @return the ColumnFamilyOptions with the RockSack {@link SerializedComparator}
+	 * @throws IllegalArgumentException if an option is invalid
+	 */
+	public ColumnFamilyOptions getColumnFamilyOptions(String dbPath, String cfName) {
+		Map<String, String> annotated = getColumnFamilyAnnotationOptions(cfName);
+		TreeMap<String, String> opts = TuningConfig.resolve(dbPath, cfName, annotated);
+		TreeMap<String, String> cf = select(opts, null);
+		// a column family created in an open database cannot change its concurrent writes, the database must be configured for it
+		if(annotated != null && !supportsConcurrentWrites(cf.get(MEMTABLE)) &&
+			isConcurrentMemtableWrite(select(TuningConfig.resolve(dbPath, null, null), DB_PREFIX)))
+			throw new IllegalArgumentException("Memtable "+cf.get(MEMTABLE)+" of "+cfName+" does not support concurrent writes, set "+
+				DB_PREFIX+CONCURRENT_MEMTABLE_WRITE+"=false for the database "+dbPath);
+		return CFOptionsCache.computeIfAbsent(opts.toString(), k -> {
+			MemTableConfig memtable = getMemTableConfig(cf);
+			String prefixLength = cf.remove(PREFIX_LENGTH);
+			String mergeOperator = cf.remove(MERGE_OPERATOR);
+			ColumnFamilyOptions cfo = cf.isEmpty() ? new ColumnFamilyOptions() : ColumnFamilyOptions.getColumnFamilyOptionsFromProps(toProperties(cf));
+			if(cfo == null)
+				throw new IllegalArgumentException("Invalid column family options "+cf+" for "+dbPath+" "+cfName);
+			if(memtable != null)
+				cfo.setMemTableConfig(memtable);
+			// iterators read in total order, so the prefix serves the hash memtable and prefix blooms of point lookups only
+			if(prefixLength != null)
+				cfo.useFixedLengthPrefixExtractor(Integer.parseInt(prefixLength));
+			if(mergeOperator != null)
+				cfo.setMergeOperatorName(mergeOperator);
+			cfo.setTableFormatConfig(getTableConfig(opts));
+			cfo.setComparator(SerializedComparatorFactory.newComparator());
+			if(DEBUG)
+				System.out.println("DatabaseManager.getColumnFamilyOptions built "+opts+" for "+dbPath+" "+cfName);
+			return cfo;
+		});
+	}
+	/**
+	 * Whether the bloom filters of the column family hash whole serialized keys, as set by the
+	 * {@link TuningProfile#CANONICAL_KEYS} profile. Only then may a get be answered absent by keyMayExist.
+	 * @param dbPath the database path, tablespace plus translated class
+	 * @param cfName the column family, null or default for the class of the database
+	 * @return true if whole_key_filtering or memtable_whole_key_filtering is set
+	 */
+	boolean isWholeKeyFiltered(String dbPath, String cfName) {
+		TreeMap<String, String> opts = TuningConfig.resolve(dbPath, cfName, getColumnFamilyAnnotationOptions(cfName));
+		return Boolean.parseBoolean(opts.get(TABLE_PREFIX+WHOLE_KEY_FILTERING)) || Boolean.parseBoolean(opts.get(MEMTABLE_WHOLE_KEY_FILTERING));
+	}
+	/**
+	 * Get the options of the {@link ObjectCache} of a column family, as resolved by {@link TuningConfig}.
+	 * @param dbPath the database path, tablespace plus translated class
+	 * @param cfName the column family, null or default for the class of the database
+	 * @return the cache. options with the prefix removed, empty if the column family has no cache
+	 */
+	Map<String, String> getObjectCacheOptions(String dbPath, String cfName) {
+		return select(TuningConfig.resolve(dbPath, cfName, getColumnFamilyAnnotationOptions(cfName)), CACHE_PREFIX);
+	}
+	/**
+	 * Create the map of a column family, a {@link PinnedMap} if the cache.pinned option of its class is true.
+	 * @param session the session of the database
+	 * @param name the class of the database or the column family
+	 * @param isDerived true for a column family other than the default
+	 * @return the map
+	 * @throws IllegalAccessException
+	 * @throws IOException
+	 * @throws RocksDBException
+	 */
+	private static BufferedMap newMap(Session session, String name, boolean isDerived) throws IllegalAccessException, IOException, RocksDBException {
+		if(Boolean.parseBoolean(getInstance().getObjectCacheOptions(session.getDBname(), isDerived ? name : null).get(PinnedMap.PINNED)))
+			return new PinnedMap(session, name, isDerived).open();
+		return new BufferedMap(session, name, isDerived).open();
+	}
+	/**
+	 * @return the DatabaseClass overrides of the column family, the counters profile for a {@link CounterMap},
+	 * null for the default column family
+	 */
+	private Map<String, String> getColumnFamilyAnnotationOptions(String cfName) {
+		if(cfName == null || cfName.equals(new String(RocksDB.DEFAULT_COLUMN_FAMILY)))
+			return null;
+		if(CounterMap.isCounters(cfName)) {
+			// the counts are unreadable without their merge operator, whatever the profile holds
+			TreeMap<String, String> opts = new TreeMap<String, String>(TuningConfig.getProfileOptions(TuningProfile.COUNTERS));
+			opts.put(MERGE_OPERATOR, CounterMap.UINT64ADD);
+			return opts;
+		}
+		return getAnnotationOptions(cfName);
+	}
+	/**
+	 * Get the options of the column family in the default tablespace.
+	 * @param optName the column family name
+	 * @return the ColumnFamilyOptions
+	 */
 	public ColumnFamilyOptions getOptionsCache(String optName) {
-		return CFOptionsCache.get(optName);
+		return getColumnFamilyOptions(tableSpaceDir, optName);
 	}
 	
 	/**
 	 * Get the default options using default options.
-	 * @return the populated DBOptions from default getDefaultOptions method
+	 * @return the populated DBOptions from the Global options of the {@link TuningConfig}
 	 */
 	public DBOptions getDefaultDBOptions() {
-		return dbOptions;
+		return getDBOptions(null);
 	}
-	
-	public Options getDefaultOptions() {
+	/**
+	 * @return the Options used to list the column families of a database, built on first use
+	 */
+	public synchronized Options getDefaultOptions() {
+		if(options == null) {
+			options = getDefaultOptions(getBaseTable());
+			shareResources(options);
+		}
 		return options;
 	}
 	
 	public BlockBasedTableConfig getBaseTable() {
-		return baseTable;
+		return getTableConfig(TuningConfig.resolve(null, null, null));
 	}
 	
 	/**
 	 * Get the default ColumnFamily options using default options.
-	 * @return the populated ColumnFamilyOptions from default getDefaultOptions method
+	 * @return the populated ColumnFamilyOptions from the Global options of the {@link TuningConfig}
 	 */	
 	public static ColumnFamilyOptions getDefaultColumnFamilyOptions() {
-		return instance.CFOptionsCache.get("DEFAULT_COLUMN_FAMILY");
+		return getInstance().getColumnFamilyOptions(null, null);
 	}
 	/**
-	 * Extract the options from the {@link DatabaseClass} methods and build a ColumnFamilyOptions
-	 * instance to place in the cache based on cfKey from DatabaseClass. 
+	 * Record the options of the {@link DatabaseClass} annotation for the column family of the class.
+	 * They apply over the Alias options and under the Class options of the {@link TuningConfig}.
 	 * @param anno
-	 * @param dClass 
-	 * @param baseTbl
-	 * @return
+	 * @param dClass the translated column family name
 	 */
-	ColumnFamilyOptions buildOptionsFromAnnotation(DatabaseClass anno, String dClass, BlockBasedTableConfig baseTbl) {
-	    ColumnFamilyOptions opts = new ColumnFamilyOptions().setTableFormatConfig(baseTbl);
-	    // Apply overrides if present
-	    if (anno.writeBufferSize() > 0) {
-	        opts.setWriteBufferSize(anno.writeBufferSize());
-	    }
-	    if (anno.maxWriteBufferNumber() > 0) {
-	        opts.setMaxWriteBufferNumber(anno.maxWriteBufferNumber());
-	    }
-	    if (anno.compression() != CompressionType.NO_COMPRESSION) {
-	        opts.setCompressionType(anno.compression());
-	    }
-	    if (anno.compactionStyle() != CompactionStyle.UNIVERSAL) {
-	        opts.setCompactionStyle(anno.compactionStyle());
-	    }
-	    opts.setComparator(SerializedComparatorFactory.newComparator());
-	    CFOptionsCache.put(dClass, opts);
-	    if(DEBUG)
-	    	System.out.printf("%s for column:%s cache key class:%s opts:%s%n",this.getClass().getName(),anno.column(),dClass,opts);
-	    return opts;
+	void addAnnotationOptions(DatabaseClass anno, String dClass) {
+		TreeMap<String, String> opts = new TreeMap<String, String>();
+		// Apply overrides if present
+		if (anno.writeBufferSize() > 0)
+			opts.put("write_buffer_size", String.valueOf(anno.writeBufferSize()));
+		if (anno.maxWriteBufferNumber() > 0)
+			opts.put("max_write_buffer_number", String.valueOf(anno.maxWriteBufferNumber()));
+		if (anno.compression() != CompressionType.NO_COMPRESSION) {
+			String c = compressionOption(anno.compression());
+			if(c != null)
+				opts.put("compression", c);
+		}
+		if (anno.compactionStyle() != CompactionStyle.UNIVERSAL)
+			opts.put("compaction_style", compactionStyleOption(anno.compactionStyle()));
+		if (!anno.memtable().isEmpty())
+			opts.put(MEMTABLE, anno.memtable());
+		if (anno.prefixLength() > 0)
+			opts.put(PREFIX_LENGTH, String.valueOf(anno.prefixLength()));
+		if (anno.cacheEntries() > 0)
+			opts.put(CACHE_PREFIX+ObjectCache.MAX_ENTRIES, String.valueOf(anno.cacheEntries()));
+		if (anno.cacheBytes() > 0)
+			opts.put(CACHE_PREFIX+ObjectCache.MAX_BYTES, String.valueOf(anno.cacheBytes()));
+		if (anno.rangeCacheEntries() > 0)
+			opts.put(CACHE_PREFIX+RangeCache.RANGE_MAX_ENTRIES, String.valueOf(anno.rangeCacheEntries()));
+		if (anno.pinned())
+			opts.put(CACHE_PREFIX+PinnedMap.PINNED, "true");
+		annotationOptions.put(dClass, opts);
+		if(DEBUG)
+			System.out.printf("%s for column:%s cache key class:%s opts:%s%n",this.getClass().getName(),anno.column(),dClass,opts);
+	}
+	/**
+	 * The DatabaseClass overrides of the column family, loading the class of that name to find them if the
+	 * column family has not been seen.
+	 */
+	private Map<String, String> getAnnotationOptions(String cfName) {
+		Map<String, String> opts = annotationOptions.get(cfName);
+		if(opts != null)
+			return opts;
+		try {
+			Class<?> clazz = Class.forName(cfName);
+			// resolving the mapping records the options of an annotated class
+			if(clazz.isAnnotationPresent(DatabaseClass.class))
+				ClassMapping.get(clazz);
+		} catch (ClassNotFoundException e) {
+			// translated names and columns need not be loadable classes
+			if(DEBUG)
+				System.out.println("DatabaseManager.getAnnotationOptions no class for column family "+cfName);
+		}
+		annotationOptions.putIfAbsent(cfName, Collections.emptyMap());
+		return annotationOptions.get(cfName);
+	}
+
+	private static String compressionOption(CompressionType c) {
+		switch(c.name()) {
+			case "NO_COMPRESSION": return "kNoCompression";
+			case "SNAPPY_COMPRESSION": return "kSnappyCompression";
+			case "ZLIB_COMPRESSION": return "kZlibCompression";
+			case "BZLIB2_COMPRESSION": return "kBZip2Compression";
+			case "LZ4_COMPRESSION": return "kLZ4Compression";
+			case "LZ4HC_COMPRESSION": return "kLZ4HCCompression";
+			case "XPRESS_COMPRESSION": return "kXpressCompression";
+			case "ZSTD_COMPRESSION": return "kZSTD";
+			default: return null;
+		}
+	}
+
+	private static String compactionStyleOption(CompactionStyle c) {
+		switch(c.name()) {
+			case "LEVEL": return "kCompactionStyleLevel";
+			case "FIFO": return "kCompactionStyleFIFO";
+			case "NONE": return "kCompactionStyleNone";
+			default: return "kCompactionStyleUniversal";
+		}
+	}
+	/**
+	 * Set consolidated mode for the default tablespace. In consolidated mode every class stored in the tablespace is a column family
+	 * of the single database tablespace+{@link #CONSOLIDATED_DATABASE}, instead of a database of its own, so all classes share
+	 * one write ahead log, memtable budget and set of background threads, and a transaction spanning classes is one
+	 * RocksDB transaction. A {@link DatabaseClass} column becomes the column family name.<p>
+	 * Must be set before any map of the tablespace is obtained. Existing per class databases can be copied into
+	 * the consolidated database with {@link Consolidator}. The column families of unrelated classes share the database, so
+	 * {@link #getUnionMap(Class)} is refused in a consolidated tablespace, a union is built from the maps with
+	 * {@link #getUnionMap(BufferedMap...)}.
+	 * @param consolidated true for one database per tablespace, false for one database per class
+	 */
+	public static void setConsolidated(boolean consolidated) {
+		VolumeManager.get(tableSpaceDir).consolidated = consolidated;
+	}
+	/**
+	 * Set consolidated mode for the aliased tablespace, see {@link #setConsolidated(boolean)}
+	 * @param alias the tablespace alias
+	 * @param consolidated true for one database per tablespace, false for one database per class
+	 * @throws NoSuchElementException if the alias does not exist
+	 */
+	public static void setConsolidated(Alias alias, boolean consolidated) throws NoSuchElementException {
+		VolumeManager.getByAlias(alias).consolidated = consolidated;
+	}
+	/**
+	 * @return true if the default tablespace is in consolidated mode
+	 */
+	public static boolean isConsolidated() {
+		return VolumeManager.get(tableSpaceDir).consolidated;
+	}
+	/**
+	 * @param alias the tablespace alias
+	 * @return true if the aliased tablespace is in consolidated mode
+	 * @throws NoSuchElementException if the alias does not exist
+	 */
+	public static boolean isConsolidated(Alias alias) throws NoSuchElementException {
+		return VolumeManager.getByAlias(alias).consolidated;
 	}
 	/**
 	 * Get the tablespace by given alias
@@ -414,52 +812,52 @@ public final class DatabaseManager {
 		BufferedMap ret = null;
 		//
 		Volume v = VolumeManager.get(tableSpaceDir);
-		// are we working with marked derived class? if so open as column family in main class tablespace
-		if(clazz.isAnnotationPresent(DatabaseClass.class)) {
-			isDerivedClass = true;
-			DatabaseClass dc = (DatabaseClass)clazz.getAnnotation(DatabaseClass.class);
-			String ts = dc.tablespace();
-			if(ts.equals(""))
-				ts = clazz.getSuperclass().getName();
-			xClass = translateClass(ts);
-			String ds = dc.column();
-			if(ds.equals(""))
-				ds = clazz.getName();
-			dClass = translateClass(ds);
-			ret = (BufferedMap) v.classToIso.get(dClass);
-			DatabaseManager.getInstance().buildOptionsFromAnnotation(dc, dClass, DatabaseManager.getInstance().getBaseTable());
-		} else {
-			xClass = translateClass(clazz.getName());
-			ret = (BufferedMap) v.classToIso.get(xClass);
-		}
+		// resolve the tablespace class, and the column family of a marked derived class, cached per class
+		ClassMapping cm = ClassMapping.get(clazz);
+		if(v.consolidated)
+			cm = cm.consolidated();
+		isDerivedClass = cm.isDerivedClass;
+		xClass = cm.xClass;
+		dClass = cm.dClass;
+		ret = (BufferedMap) v.classToIso.get(cm.getMapName());
 		if( ret == null ) {
+			ReentrantLock lock = v.getClassLock(xClass);
+			lock.lock();
 			try {
-				if(isDerivedClass) {
-					BufferedMap def = (BufferedMap) v.classToIso.get(xClass);
-					// have we already opened the main database?
-					if(def == null) {
-						Session ts = SessionManager.Connect(tableSpaceDir+xClass, getInstance().getDefaultOptions(), dClass);
-						// put the main class default ColumnFamily, its not there
-						v.classToIso.put(xClass, (BufferedMap)(new BufferedMap(ts, xClass, false)));
-						ret = (BufferedMap)(new BufferedMap(ts, dClass, isDerivedClass));
-					} else {
-						// create derived with session of main, previously instantiated default ColumnFamily
-						ret = (BufferedMap)(new BufferedMap(def.getSession(), dClass, isDerivedClass));
+				// another thread may have created the map while we waited for the class lock
+				ret = (BufferedMap) v.classToIso.get(cm.getMapName());
+				if( ret == null ) {
+					try {
+						if(isDerivedClass) {
+							BufferedMap def = (BufferedMap) v.classToIso.get(xClass);
+							// have we already opened the main database?
+							if(def == null) {
+								Session ts = SessionManager.Connect(tableSpaceDir+xClass, getInstance().getDefaultOptions(), dClass);
+								// put the main class default ColumnFamily, its not there
+								v.classToIso.put(xClass, newMap(ts, xClass, false));
+								ret = newMap(ts, dClass, isDerivedClass);
+							} else {
+								// create derived with session of main, previously instantiated default ColumnFamily
+								ret = newMap(def.getSession(), dClass, isDerivedClass);
+							}
+							v.classToIso.put(dClass, ret);
+							if(DEBUG)
+								System.out.println("DatabaseManager.getMap About to return DERIVED map:"+ret+" for dir:"+tableSpaceDir+" class:"+xClass+" derived:"+dClass+" for volume:"+v);
+						} else {
+							ret = newMap(SessionManager.Connect(tableSpaceDir+xClass, getInstance().getDefaultOptions()), xClass, isDerivedClass);
+							v.classToIso.put(xClass, ret);
+							if(DEBUG)
+								System.out.println("DatabaseManager.getMap About to return BASE map:"+ret+" for dir:"+tableSpaceDir+" class:"+xClass+" formed from "+clazz.getName()+" for volume:"+v);
+						}
+					} catch (RocksDBException e) {
+						throw new IOException(e);
 					}
-					v.classToIso.put(dClass, ret);
 					if(DEBUG)
-						System.out.println("DatabaseManager.getMap About to return DERIVED map:"+ret+" for dir:"+tableSpaceDir+" class:"+xClass+" derived:"+dClass+" for volume:"+v);
-				} else {
-					ret =  new BufferedMap(SessionManager.Connect(tableSpaceDir+xClass, getInstance().getDefaultOptions()), xClass, isDerivedClass);
-					v.classToIso.put(xClass, ret);
-					if(DEBUG)
-						System.out.println("DatabaseManager.getMap About to return BASE map:"+ret+" for dir:"+tableSpaceDir+" class:"+xClass+" formed from "+clazz.getName()+" for volume:"+v);
+						System.out.println("DatabaseManager.getMap About to create new map:"+ret);
 				}
-			} catch (RocksDBException e) {
-				throw new IOException(e);
+			} finally {
+				lock.unlock();
 			}
-			if(DEBUG)
-				System.out.println("DatabaseManager.getMap About to create new map:"+ret);
 		}
 		if(DEBUG)
 			System.out.println("DatabaseManager.getMap About to return map:"+ret+" for class:"+xClass+" isDerivedClass:"+isDerivedClass);
@@ -492,58 +890,222 @@ public final class DatabaseManager {
 		BufferedMap ret = null;
 		//
 		Volume v = VolumeManager.getByAlias(alias);
-		// are we working with marked derived class? if so open as column family in main class tablespace
-		if(clazz.isAnnotationPresent(DatabaseClass.class)) {
-			isDerivedClass = true;
-			DatabaseClass dc = (DatabaseClass)clazz.getAnnotation(DatabaseClass.class);
-			String ts = dc.tablespace();
-			if(ts.equals(""))
-				ts = clazz.getSuperclass().getName();
-			xClass = translateClass(ts);
-			String ds = dc.column();
-			if(ds.equals(""))
-				ds = clazz.getName();
-			dClass = translateClass(ds);
-			DatabaseManager.getInstance().buildOptionsFromAnnotation(dc, dClass, DatabaseManager.getInstance().getBaseTable());
-			ret = (BufferedMap) v.classToIso.get(dClass);
-		} else {
-			xClass = translateClass(clazz.getName());
-			ret = (BufferedMap) v.classToIso.get(xClass);
-		}
+		// resolve the tablespace class, and the column family of a marked derived class, cached per class
+		ClassMapping cm = ClassMapping.get(clazz);
+		if(v.consolidated)
+			cm = cm.consolidated();
+		isDerivedClass = cm.isDerivedClass;
+		xClass = cm.xClass;
+		dClass = cm.dClass;
+		ret = (BufferedMap) v.classToIso.get(cm.getMapName());
 		if( ret == null ) {
+			ReentrantLock lock = v.getClassLock(xClass);
+			lock.lock();
 			try {
-				if(isDerivedClass) {
-					BufferedMap def = (BufferedMap) v.classToIso.get(xClass);
-					// have we already opened the main database?
-					if(def == null) {
-						Session ts = SessionManager.Connect(VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions(), dClass);
-						// put the main class default ColumnFamily, its not there
-						v.classToIso.put(xClass, (BufferedMap)(new BufferedMap(ts, xClass, false)));
-						ret = (BufferedMap)(new BufferedMap(ts, dClass, isDerivedClass));
-					} else {
-						// create derived with session of main, previously instantiated default ColumnFamily
-						ret = (BufferedMap)(new BufferedMap(def.getSession(), dClass, isDerivedClass));
+				// another thread may have created the map while we waited for the class lock
+				ret = (BufferedMap) v.classToIso.get(cm.getMapName());
+				if( ret == null ) {
+					try {
+						if(isDerivedClass) {
+							BufferedMap def = (BufferedMap) v.classToIso.get(xClass);
+							// have we already opened the main database?
+							if(def == null) {
+								Session ts = SessionManager.Connect(VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions(), dClass);
+								// put the main class default ColumnFamily, its not there
+								v.classToIso.put(xClass, newMap(ts, xClass, false));
+								ret = newMap(ts, dClass, isDerivedClass);
+							} else {
+								// create derived with session of main, previously instantiated default ColumnFamily
+								ret = newMap(def.getSession(), dClass, isDerivedClass);
+							}
+							v.classToIso.put(dClass, ret);
+							if(DEBUG)
+								System.out.println("DatabaseManager.getMap About to return DERIVED map:"+ret+" for alias:"+alias+" path:"+(VolumeManager.getAliasToPath(alias)+xClass)+" class:"+xClass+" derived:"+dClass+" for volume:"+v);
+						} else {
+							ret = newMap(SessionManager.Connect(VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions()), xClass, isDerivedClass);
+							v.classToIso.put(xClass, ret);
+							if(DEBUG)
+								System.out.println("DatabaseManager.getMap About to return BASE map:"+ret+" alias:"+alias+" for dir:"+(VolumeManager.getAliasToPath(alias)+xClass)+" class:"+xClass+" formed from "+clazz.getName()+" for volume:"+v);
+						}
+					} catch (RocksDBException e) {
+						throw new IOException(e);
 					}
-					v.classToIso.put(dClass, ret);
-					if(DEBUG)
-						System.out.println("DatabaseManager.getMap About to return DERIVED map:"+ret+" for alias:"+alias+" path:"+(VolumeManager.getAliasToPath(alias)+xClass)+" class:"+xClass+" derived:"+dClass+" for volume:"+v);
-				} else {
-					ret =  new BufferedMap(SessionManager.Connect(VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions()), xClass, isDerivedClass);
-					v.classToIso.put(xClass, ret);
 					if(DEBUG)
-						System.out.println("DatabaseManager.getMap About to return BASE map:"+ret+" alias:"+alias+" for dir:"+(VolumeManager.getAliasToPath(alias)+xClass)+" class:"+xClass+" formed from "+clazz.getName()+" for volume:"+v);
+						System.out.println("DatabaseManager.getMap About to create new map:"+ret+" for alias:"+alias);
 				}
-			} catch (RocksDBException e) {
-				throw new IOException(e);
+			} finally {
+				lock.unlock();
 			}
-			if(DEBUG)
-				System.out.println("DatabaseManager.getMap About to create new map:"+ret+" for alias:"+alias);
 		}
 		if(DEBUG)
 			System.out.println("DatabaseManager.getMap About to return map:"+ret+" for class:"+xClass+" isDerivedClass:"+isDerivedClass+" alias:"+alias);
 		return ret;
 	}	
 
+	/**
+	 * Get the counters kept beside the map of the class in the default tablespace, see {@link CounterMap}.
+	 * @param clazz The Java Class of the intended database
+	 * @return The {@link CounterMap} beside the map of the clazz type
+	 * @throws IllegalAccessException
+	 * @throws IOException
+	 */
+	public static CounterMap getCounterMap(Class clazz) throws IllegalAccessException, IOException {
+		return CounterMap.forMap(getMap(clazz));
+	}
+	/**
+	 * Get the counters kept beside the map of the class in the tablespace of the alias, see {@link CounterMap}.
+	 * @param alias The database alias for tablespace
+	 * @param clazz The Java Class of the intended database
+	 * @return The {@link CounterMap} beside the map of the clazz type
+	 * @throws IllegalAccessException
+	 * @throws NoSuchElementException if alias was not found
+	 * @throws IOException
+	 */
+	public static CounterMap getCounterMap(Alias alias, Class clazz) throws IllegalAccessException, IOException, NoSuchElementException {
+		return CounterMap.forMap(getMap(alias, clazz));
+	}
+
+	/**
+	 * Open a read only view of the map of the class in the default tablespace pinned to a RocksDB Snapshot,
+	 * see {@link SnapshotMap}. The view must be closed to release the snapshot.
+	 * @param clazz The Java Class of the intended database
+	 * @return The {@link SnapshotMap} of the map of the clazz type
+	 * @throws IllegalAccessException
+	 * @throws IOException
+	 */
+	public static SnapshotMap openSnapshot(Class clazz) throws IllegalAccessException, IOException {
+		return getMap(clazz).openSnapshot();
+	}
+	/**
+	 * Open a read only view of the map of the class in the tablespace of the alias pinned to a RocksDB Snapshot,
+	 * see {@link SnapshotMap}. The view must be closed to release the snapshot.
+	 * @param alias The database alias for tablespace
+	 * @param clazz The Java Class of the intended database
+	 * @return The {@link SnapshotMap} of the map of the clazz type
+	 * @throws IllegalAccessException
+	 * @throws NoSuchElementException if alias was not found
+	 * @throws IOException
+	 */
+	public static SnapshotMap openSnapshot(Alias alias, Class clazz) throws IllegalAccessException, IOException, NoSuchElementException {
+		return getMap(alias, clazz).openSnapshot();
+	}
+
+	/**
+	 * Get a union view of all column families in the database holding the given class in the default tablespace,
+	 * that is, the main class and all its {@link DatabaseClass} derived classes. Range methods merge the column families
+	 * in key order.
+	 * @param clazz The main or any derived Java Class of the intended database
+	 * @return The {@link UnionMap} over the main and derived column families
+	 * @throws IllegalAccessException
+	 * @throws IOException
+	 * @throws UnsupportedOperationException if the tablespace is consolidated
+	 */
+	public static UnionMap getUnionMap(Class clazz) throws IllegalAccessException, IOException {
+		ArrayList<BufferedMap> maps = new ArrayList<BufferedMap>();
+		Volume v = VolumeManager.get(tableSpaceDir);
+		checkNotConsolidated(v);
+		addColumnFamilies(v, getTablespaceClass(clazz), getMap(clazz), maps);
+		return new UnionMap(maps);
+	}
+	/**
+	 * Get a union view of all column families in the database holding the given class across several tablespace aliases,
+	 * such as tenants. Range methods merge all column families of all aliases in key order.
+	 * @param aliases The database aliases for the tablespaces, in order of precedence for equal keys
+	 * @param clazz The main or any derived Java Class of the intended database
+	 * @return The {@link UnionMap} over the main and derived column families of each alias
+	 * @throws IllegalAccessException
+	 * @throws NoSuchElementException if an alias was not found
+	 * @throws IOException
+	 * @throws UnsupportedOperationException if the tablespace of an alias is consolidated
+	 */
+	public static UnionMap getUnionMap(Alias[] aliases, Class clazz) throws IllegalAccessException, IOException, NoSuchElementException {
+		ArrayList<BufferedMap> maps = new ArrayList<BufferedMap>();
+		String xClass = getTablespaceClass(clazz);
+		for(Alias alias : aliases)
+			checkNotConsolidated(VolumeManager.getByAlias(alias));
+		for(Alias alias : aliases)
+			addColumnFamilies(VolumeManager.getByAlias(alias), xClass, getMap(alias, clazz), maps);
+		return new UnionMap(maps);
+	}
+	/**
+	 * The column families of a consolidated database hold every class of the tablespace, whose keys do not compare
+	 * with each other, and do not tell which of them derive from a class.
+	 */
+	private static void checkNotConsolidated(Volume v) {
+		if(v.consolidated)
+			throw new UnsupportedOperationException("No union of the column families of a class in a consolidated tablespace, use getUnionMap(BufferedMap...)");
+	}
+	/**
+	 * Get a union view over an arbitrary set of maps ordered by the same comparator.
+	 * @param maps The maps, in order of precedence for equal keys
+	 * @return The {@link UnionMap}
+	 */
+	public static UnionMap getUnionMap(BufferedMap... maps) {
+		ArrayList<BufferedMap> l = new ArrayList<BufferedMap>(maps.length);
+		for(BufferedMap map : maps)
+			l.add(map);
+		return new UnionMap(l);
+	}
+	/**
+	 * Translated name of the main class database for a class, the tablespace of a {@link DatabaseClass} or the class itself.
+	 * @param clazz
+	 * @return
+	 */
+	private static String getTablespaceClass(Class clazz) {
+		return ClassMapping.get(clazz).xClass;
+	}
+	/**
+	 * Add a map for each column family open in the session of the given map, using the maps already in the volume
+	 * where present. The default column family is the main class xClass.
+	 * @param v the volume
+	 * @param xClass translated main class name
+	 * @param map a map in the database
+	 * @param maps the list to add to
+	 * @throws IOException
+	 */
+	private static void addColumnFamilies(Volume v, String xClass, BufferedMap map, List<BufferedMap> maps) throws IOException {
+		Session s = map.getSession();
+		try {
+			ArrayList<String> names = s.pinned(() -> {
+				ArrayList<String> cfNames = new ArrayList<String>();
+				try {
+					for(ColumnFamilyHandle cfh : s.columnFamilyHandles)
+						cfNames.add(new String(cfh.getName()));
+				} catch (RocksDBException e) {
+					throw new IOException(e);
+				}
+				return cfNames;
+			});
+			for(String cfName : names) {
+				boolean isDefault = cfName.equals(new String(RocksDB.DEFAULT_COLUMN_FAMILY));
+				// index and counter column families belong to the map beside them
+				if(SecondaryIndexer.isIndex(cfName) || CounterMap.isCounters(cfName))
+					continue;
+				String name = isDefault ? xClass : cfName;
+				SetInterface si = v.classToIso.get(name);
+				if(si == null) {
+					ReentrantLock lock = v.getClassLock(xClass);
+					lock.lock();
+					try {
+						// another thread may have created the map while we waited for the class lock
+						si = v.classToIso.get(name);
+						if(si == null) {
+							si = newMap(s, name, !isDefault);
+							v.classToIso.put(name, si);
+						}
+					} finally {
+						lock.unlock();
+					}
+				}
+				maps.add((BufferedMap) si);
+			}
+		} catch (RocksDBException | IllegalAccessException e) {
+			throw new IOException(e);
+		}
+		if(DEBUG)
+			System.out.println("DatabaseManager.addColumnFamilies for class:"+xClass+" maps:"+maps);
+	}
+
 	/**
 	 * Generate a transaction with random UUID
 	 * @return the {@link TransactionId} with string value randomUUID that will serve as unique globally unique transaction ID
@@ -568,7 +1130,7 @@ public final class DatabaseManager {
 	 * @throws IOException
 	 * @throws RocksDBException 
 	 */
-	public static synchronized TransactionalMap getTransactionalMap(Comparable clazz, TransactionId xid) throws IllegalAccessException, IOException {
+	public static TransactionalMap getTransactionalMap(Comparable clazz, TransactionId xid) throws IllegalAccessException, IOException {
 		return getMap(VolumeManager.get(tableSpaceDir), tableSpaceDir, clazz.getClass(), xid);
 	}
 	/**
@@ -579,7 +1141,7 @@ public final class DatabaseManager {
 	 * @throws IOException
 	 * @throws RocksDBException 
 	 */
-	public static synchronized TransactionalMap getTransactionalMap(Class clazz, TransactionId xid) throws IllegalAccessException, IOException {
+	public static TransactionalMap getTransactionalMap(Class clazz, TransactionId xid) throws IllegalAccessException, IOException {
 		return getMap(VolumeManager.get(tableSpaceDir), tableSpaceDir, clazz, xid);
 	}
 	/***
@@ -598,65 +1160,65 @@ public final class DatabaseManager {
 		String xClass,dClass = null;
 		TransactionalMap ret = null;
 		//
-		// are we working with marked derived class? if so open as column family in main class tablespace
-		if(clazz.isAnnotationPresent(DatabaseClass.class)) {
-			isDerivedClass = true;
-			DatabaseClass dc = (DatabaseClass)clazz.getAnnotation(DatabaseClass.class);
-			String ts = dc.tablespace();
-			if(ts.equals(""))
-				ts = clazz.getSuperclass().getName();
-			xClass = translateClass(ts);
-			String ds = dc.column();
-			if(ds.equals(""))
-				ds = clazz.getName();
-			dClass = translateClass(ds);
-			DatabaseManager.getInstance().buildOptionsFromAnnotation(dc, dClass, DatabaseManager.getInstance().getBaseTable());
-			ret = (TransactionalMap) v.classToIsoTransaction.get(dClass);
-		} else {
-			xClass = translateClass(clazz.getName());
-			ret = (TransactionalMap) v.classToIsoTransaction.get(xClass);
-		}
+		// resolve the tablespace class, and the column family of a marked derived class, cached per class
+		ClassMapping cm = ClassMapping.get(clazz);
+		if(v.consolidated)
+			cm = cm.consolidated();
+		isDerivedClass = cm.isDerivedClass;
+		xClass = cm.xClass;
+		dClass = cm.dClass;
+		ret = (TransactionalMap) v.classToIsoTransaction.get(cm.getMapName());
 		if( ret == null ) {
+			ReentrantLock lock = v.getClassLock(xClass);
+			lock.lock();
 			try {
-				if(isDerivedClass) {
-					TransactionalMap def = (TransactionalMap) v.classToIsoTransaction.get(xClass);
-					// have we already opened the main database?
-					if(def == null) {
-						TransactionSession ts;
-						if(xid instanceof LockingTransactionId)
-							ts = SessionManager.ConnectTransaction(tDir+xClass, getInstance().getDefaultOptions(), dClass, ((LockingTransactionId)xid).getLockTimeout());
-						else
-							ts = SessionManager.ConnectTransaction(tDir+xClass, getInstance().getDefaultOptions(), dClass);
-						// put the main class default ColumnFamily, its not there
-						TransactionalMap tm = new TransactionalMap(ts, xClass, false);
-						v.classToIsoTransaction.put(xClass, tm);
-						associateSession(xid, tm);
-						ret = new TransactionalMap(ts, dClass, isDerivedClass);
-					} else {
-						// create derived with session of main, previously instantiated default ColumnFamily
-						ret = new TransactionalMap(def.getSession(), dClass, isDerivedClass);
+				// another thread may have created the map while we waited for the class lock
+				ret = (TransactionalMap) v.classToIsoTransaction.get(isDerivedClass ? dClass : xClass);
+				if( ret == null ) {
+					try {
+						if(isDerivedClass) {
+							TransactionalMap def = (TransactionalMap) v.classToIsoTransaction.get(xClass);
+							// have we already opened the main database?
+							if(def == null) {
+								TransactionSession ts;
+								if(xid instanceof LockingTransactionId)
+									ts = SessionManager.ConnectTransaction(tDir+xClass, getInstance().getDefaultOptions(), dClass, ((LockingTransactionId)xid).getLockTimeout());
+								else
+									ts = SessionManager.ConnectTransaction(tDir+xClass, getInstance().getDefaultOptions(), dClass);
+								// put the main class default ColumnFamily, its not there
+								TransactionalMap tm = new TransactionalMap(ts, xClass, false).open();
+								v.classToIsoTransaction.put(xClass, tm);
+								associateSession(xid, tm);
+								ret = new TransactionalMap(ts, dClass, isDerivedClass).open();
+							} else {
+								// create derived with session of main, previously instantiated default ColumnFamily
+								ret = new TransactionalMap(def.getSession(), dClass, isDerivedClass).open();
+							}
+							v.classToIsoTransaction.put(dClass, ret);
+							if(DEBUG)
+								System.out.println("DatabaseManager.getMap xid:"+xid+" About to return DERIVED map:"+ret+" for dir:"+(tDir+xClass)+" class:"+xClass+" derived:"+dClass+" for volume:"+v);
+						} else {
+							TransactionSession ts;
+							if(xid instanceof LockingTransactionId)
+								ts = SessionManager.ConnectTransaction(tDir+xClass, getInstance().getDefaultOptions(), ((LockingTransactionId)xid).getLockTimeout());
+							else
+								ts = SessionManager.ConnectTransaction(tDir+xClass, getInstance().getDefaultOptions());
+							ret =  new TransactionalMap(ts, xClass, isDerivedClass).open();
+							v.classToIsoTransaction.put(xClass, ret);
+							if(DEBUG)
+								System.out.println("DatabaseManager.getMap xid:"+xid+" About to return BASE map:"+ret+" for dir:"+(tDir+xClass)+" class:"+xClass+" formed from "+clazz.getName()+" for volume:"+v);
+						}
+					} catch (RocksDBException e) {
+						throw new IOException(e);
 					}
-					v.classToIsoTransaction.put(dClass, ret);
-					if(DEBUG)
-						System.out.println("DatabaseManager.getMap xid:"+xid+" About to return DERIVED map:"+ret+" for dir:"+(tDir+xClass)+" class:"+xClass+" derived:"+dClass+" for volume:"+v);
-				} else {
-					TransactionSession ts;
-					if(xid instanceof LockingTransactionId)
-						ts = SessionManager.ConnectTransaction(tDir+xClass, getInstance().getDefaultOptions(), ((LockingTransactionId)xid).getLockTimeout());
-					else
-						ts = SessionManager.ConnectTransaction(tDir+xClass, getInstance().getDefaultOptions());
-					ret =  new TransactionalMap(ts, xClass, isDerivedClass);
-					v.classToIsoTransaction.put(xClass, ret);
 					if(DEBUG)
-						System.out.println("DatabaseManager.getMap xid:"+xid+" About to return BASE map:"+ret+" for dir:"+(tDir+xClass)+" class:"+xClass+" formed from "+clazz.getName()+" for volume:"+v);
+						System.out.println("DatabaseManager.getMap xid:"+xid+" About to create new map:"+ret);
+					associateSession(xid, ret);
+					return ret;
 				}
-			} catch (RocksDBException e) {
-				throw new IOException(e);
+			} finally {
+				lock.unlock();
 			}
-			if(DEBUG)
-				System.out.println("DatabaseManager.getMap xid:"+xid+" About to create new map:"+ret);
-			associateSession(xid, ret);
-			return ret;
 		}
 		if(DEBUG)
 			System.out.println("DatabaseManager.getMap xid:"+xid+" About to return map:"+ret+" for class:"+xClass+" isDerivedClass:"+isDerivedClass);
@@ -671,7 +1233,7 @@ public final class DatabaseManager {
 	 * @throws IOException
 	 * @throws RocksDBException 
 	 */
-	public static synchronized TransactionalMap getOptimisticTransactionalMap(Comparable clazz, TransactionId xid) throws IllegalAccessException, IOException {
+	public static TransactionalMap getOptimisticTransactionalMap(Comparable clazz, TransactionId xid) throws IllegalAccessException, IOException {
 		return getOptimisticMap(VolumeManager.get(tableSpaceDir), tableSpaceDir, clazz.getClass(), xid);
 	}
 	/**
@@ -682,7 +1244,7 @@ public final class DatabaseManager {
 	 * @throws IOException
 	 * @throws RocksDBException 
 	 */
-	public static synchronized TransactionalMap getOptimisticTransactionalMap(Class clazz, TransactionId xid) throws IllegalAccessException, IOException {
+	public static TransactionalMap getOptimisticTransactionalMap(Class clazz, TransactionId xid) throws IllegalAccessException, IOException {
 		return getOptimisticMap(VolumeManager.get(tableSpaceDir), tableSpaceDir, clazz, xid);
 	}
 	/**
@@ -702,56 +1264,56 @@ public final class DatabaseManager {
 		String xClass,dClass = null;
 		TransactionalMap ret = null;
 		//
-		// are we working with marked derived class? if so open as column family in main class tablespace
-		if(clazz.isAnnotationPresent(DatabaseClass.class)) {
-			isDerivedClass = true;
-			DatabaseClass dc = (DatabaseClass)clazz.getAnnotation(DatabaseClass.class);
-			String ts = dc.tablespace();
-			if(ts.equals(""))
-				ts = clazz.getSuperclass().getName();
-			xClass = translateClass(ts);
-			String ds = dc.column();
-			if(ds.equals(""))
-				ds = clazz.getName();
-			dClass = translateClass(ds);
-			DatabaseManager.getInstance().buildOptionsFromAnnotation(dc, dClass, DatabaseManager.getInstance().getBaseTable());
-			ret = (TransactionalMap) v.classToIsoTransaction.get(dClass);
-		} else {
-			xClass = translateClass(clazz.getName());
-			ret = (TransactionalMap) v.classToIsoTransaction.get(xClass);
-		}
+		// resolve the tablespace class, and the column family of a marked derived class, cached per class
+		ClassMapping cm = ClassMapping.get(clazz);
+		if(v.consolidated)
+			cm = cm.consolidated();
+		isDerivedClass = cm.isDerivedClass;
+		xClass = cm.xClass;
+		dClass = cm.dClass;
+		ret = (TransactionalMap) v.classToIsoTransaction.get(cm.getMapName());
 		if( ret == null ) {
+			ReentrantLock lock = v.getClassLock(xClass);
+			lock.lock();
 			try {
-				if(isDerivedClass) {
-					TransactionalMap def = (TransactionalMap) v.classToIsoTransaction.get(xClass);
-					// have we already opened the main database?
-					if(def == null) {
-						TransactionSession ts = SessionManager.ConnectOptimisticTransaction(tDir+xClass, getInstance().getDefaultOptions(), dClass);
-						// put the main class default ColumnFamily, its not there
-						TransactionalMap tm = new TransactionalMap(ts, xClass, false);
-						v.classToIsoTransaction.put(xClass, tm);
-						associateSession(xid, tm);
-						ret = new TransactionalMap(ts, dClass, isDerivedClass);
-					} else {
-						// create derived with session of main, previously instantiated default ColumnFamily
-						ret = new TransactionalMap(def.getSession(), dClass, isDerivedClass);
+				// another thread may have created the map while we waited for the class lock
+				ret = (TransactionalMap) v.classToIsoTransaction.get(isDerivedClass ? dClass : xClass);
+				if( ret == null ) {
+					try {
+						if(isDerivedClass) {
+							TransactionalMap def = (TransactionalMap) v.classToIsoTransaction.get(xClass);
+							// have we already opened the main database?
+							if(def == null) {
+								TransactionSession ts = SessionManager.ConnectOptimisticTransaction(tDir+xClass, getInstance().getDefaultOptions(), dClass);
+								// put the main class default ColumnFamily, its not there
+								TransactionalMap tm = new TransactionalMap(ts, xClass, false).open();
+								v.classToIsoTransaction.put(xClass, tm);
+								associateSession(xid, tm);
+								ret = new TransactionalMap(ts, dClass, isDerivedClass).open();
+							} else {
+								// create derived with session of main, previously instantiated default ColumnFamily
+								ret = new TransactionalMap(def.getSession(), dClass, isDerivedClass).open();
+							}
+							v.classToIsoTransaction.put(dClass, ret);
+							if(DEBUG)
+								System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to return DERIVED map:"+ret+" for dir:"+(tDir+xClass)+" class:"+xClass+" derived:"+dClass+" for volume:"+v);
+						} else {
+							ret =  new TransactionalMap(SessionManager.ConnectOptimisticTransaction(tDir+xClass, getInstance().getDefaultOptions()), xClass, isDerivedClass).open();
+							v.classToIsoTransaction.put(xClass, ret);
+							if(DEBUG)
+								System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to return BASE map:"+ret+" for dir:"+(tDir+xClass)+" class:"+xClass+" formed from "+clazz.getName()+" for volume:"+v);
+						}
+					} catch (RocksDBException e) {
+						throw new IOException(e);
 					}
-					v.classToIsoTransaction.put(dClass, ret);
-					if(DEBUG)
-						System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to return DERIVED map:"+ret+" for dir:"+(tDir+xClass)+" class:"+xClass+" derived:"+dClass+" for volume:"+v);
-				} else {
-					ret =  new TransactionalMap(SessionManager.ConnectOptimisticTransaction(tDir+xClass, getInstance().getDefaultOptions()), xClass, isDerivedClass);
-					v.classToIsoTransaction.put(xClass, ret);
 					if(DEBUG)
-						System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to return BASE map:"+ret+" for dir:"+(tDir+xClass)+" class:"+xClass+" formed from "+clazz.getName()+" for volume:"+v);
+						System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to create new map:"+ret);
+					associateSession(xid, ret);
+					return ret;
 				}
-			} catch (RocksDBException e) {
-				throw new IOException(e);
+			} finally {
+				lock.unlock();
 			}
-			if(DEBUG)
-				System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to create new map:"+ret);
-			associateSession(xid, ret);
-			return ret;
 		}
 		if(DEBUG)
 			System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to return map:"+ret+" for class:"+xClass+" isDerivedClass:"+isDerivedClass);
@@ -766,11 +1328,11 @@ public final class DatabaseManager {
 	 * @throws NoSuchElementException if The alias cant be located
 	 * @throws IOException
 	 */
-	public static synchronized TransactionalMap getTransactionalMap(Alias alias, Comparable clazz, TransactionId xid) throws IllegalAccessException, IOException, NoSuchElementException {
+	public static TransactionalMap getTransactionalMap(Alias alias, Comparable clazz, TransactionId xid) throws IllegalAccessException, IOException, NoSuchElementException {
 		return getMap(alias, clazz.getClass(), xid);
 	}
 	
-	public static synchronized TransactionalMap getTransactionalMap(Alias alias, Class clazz, TransactionId xid) throws IllegalAccessException, IOException, NoSuchElementException {
+	public static TransactionalMap getTransactionalMap(Alias alias, Class clazz, TransactionId xid) throws IllegalAccessException, IOException, NoSuchElementException {
 		return getMap(alias, clazz, xid);
 	}
 	/**
@@ -790,65 +1352,65 @@ public final class DatabaseManager {
 		String xClass,dClass = null;
 		TransactionalMap ret = null;
 		//
-		// are we working with marked derived class? if so open as column family in main class tablespace
-		if(clazz.isAnnotationPresent(DatabaseClass.class)) {
-			isDerivedClass = true;
-			DatabaseClass dc = (DatabaseClass)clazz.getAnnotation(DatabaseClass.class);
-			String ts = dc.tablespace();
-			if(ts.equals(""))
-				ts = clazz.getSuperclass().getName();
-			xClass = translateClass(ts);
-			String ds = dc.column();
-			if(ds.equals(""))
-				ds = clazz.getName();
-			dClass = translateClass(ds);
-			DatabaseManager.getInstance().buildOptionsFromAnnotation(dc, dClass, DatabaseManager.getInstance().getBaseTable());
-			ret = (TransactionalMap) v.classToIsoTransaction.get(dClass);
-		} else {
-			xClass = translateClass(clazz.getName());
-			ret = (TransactionalMap) v.classToIsoTransaction.get(xClass);
-		}
+		// resolve the tablespace class, and the column family of a marked derived class, cached per class
+		ClassMapping cm = ClassMapping.get(clazz);
+		if(v.consolidated)
+			cm = cm.consolidated();
+		isDerivedClass = cm.isDerivedClass;
+		xClass = cm.xClass;
+		dClass = cm.dClass;
+		ret = (TransactionalMap) v.classToIsoTransaction.get(cm.getMapName());
 		if( ret == null ) {
+			ReentrantLock lock = v.getClassLock(xClass);
+			lock.lock();
 			try {
-				if(isDerivedClass) {
-					TransactionalMap def = (TransactionalMap) v.classToIsoTransaction.get(xClass);
-					// have we already opened the main database?
-					if(def == null) {
-						TransactionSession ts;
-						if(xid instanceof LockingTransactionId)
-							ts = SessionManager.ConnectTransaction(alias,VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions(), dClass, ((LockingTransactionId)xid).getLockTimeout());
-						else
-							ts = SessionManager.ConnectTransaction(alias,VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions(), dClass);
-						// put the main class default ColumnFamily, its not there
-						TransactionalMap tm = new TransactionalMap(ts, xClass, false);
-						v.classToIsoTransaction.put(xClass, tm);
-						associateSession(xid, tm);
-						ret = new TransactionalMap(ts, dClass, isDerivedClass);
-					} else {
-						// create derived with session of main, previously instantiated default ColumnFamily
-						ret = new TransactionalMap(def.getSession(), dClass, isDerivedClass);
+				// another thread may have created the map while we waited for the class lock
+				ret = (TransactionalMap) v.classToIsoTransaction.get(isDerivedClass ? dClass : xClass);
+				if( ret == null ) {
+					try {
+						if(isDerivedClass) {
+							TransactionalMap def = (TransactionalMap) v.classToIsoTransaction.get(xClass);
+							// have we already opened the main database?
+							if(def == null) {
+								TransactionSession ts;
+								if(xid instanceof LockingTransactionId)
+									ts = SessionManager.ConnectTransaction(alias,VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions(), dClass, ((LockingTransactionId)xid).getLockTimeout());
+								else
+									ts = SessionManager.ConnectTransaction(alias,VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions(), dClass);
+								// put the main class default ColumnFamily, its not there
+								TransactionalMap tm = new TransactionalMap(ts, xClass, false).open();
+								v.classToIsoTransaction.put(xClass, tm);
+								associateSession(xid, tm);
+								ret = new TransactionalMap(ts, dClass, isDerivedClass).open();
+							} else {
+								// create derived with session of main, previously instantiated default ColumnFamily
+								ret = new TransactionalMap(def.getSession(), dClass, isDerivedClass).open();
+							}
+							v.classToIsoTransaction.put(dClass, ret);
+							if(DEBUG)
+								System.out.println("DatabaseManager.getMap xid:"+xid+" About to return DERIVED map:"+ret+" for dir:"+VolumeManager.getAliasToPath(alias)+" class:"+xClass+" derived:"+dClass+" for volume:"+v);
+						} else {
+							TransactionSession ts;
+							if(xid instanceof LockingTransactionId)
+								ts = SessionManager.ConnectTransaction(alias,VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions(), ((LockingTransactionId)xid).getLockTimeout());
+							else
+								ts = SessionManager.ConnectTransaction(alias,VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions());
+							ret = new TransactionalMap(ts, xClass, isDerivedClass).open();
+							v.classToIsoTransaction.put(xClass, ret);
+							if(DEBUG)
+								System.out.println("DatabaseManager.getMap xid:"+xid+" About to return BASE map:"+ret+" for dir:"+VolumeManager.getAliasToPath(alias)+" class:"+xClass+" formed from "+clazz.getName()+" for volume:"+v);
+						}
+					} catch (RocksDBException e) {
+						throw new IOException(e);
 					}
-					v.classToIsoTransaction.put(dClass, ret);
-					if(DEBUG)
-						System.out.println("DatabaseManager.getMap xid:"+xid+" About to return DERIVED map:"+ret+" for dir:"+VolumeManager.getAliasToPath(alias)+" class:"+xClass+" derived:"+dClass+" for volume:"+v);
-				} else {
-					TransactionSession ts;
-					if(xid instanceof LockingTransactionId)
-						ts = SessionManager.ConnectTransaction(alias,VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions(), ((LockingTransactionId)xid).getLockTimeout());
-					else
-						ts = SessionManager.ConnectTransaction(alias,VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions());
-					ret = new TransactionalMap(ts, xClass, isDerivedClass);
-					v.classToIsoTransaction.put(xClass, ret);
 					if(DEBUG)
-						System.out.println("DatabaseManager.getMap xid:"+xid+" About to return BASE map:"+ret+" for dir:"+VolumeManager.getAliasToPath(alias)+" class:"+xClass+" formed from "+clazz.getName()+" for volume:"+v);
+						System.out.println("DatabaseManager.getMap xid:"+xid+" About to create new map:"+ret);
+					associateSession(xid, ret);
+					return ret;
 				}
-			} catch (RocksDBException e) {
-				throw new IOException(e);
+			} finally {
+				lock.unlock();
 			}
-			if(DEBUG)
-				System.out.println("DatabaseManager.getMap xid:"+xid+" About to create new map:"+ret);
-			associateSession(xid, ret);
-			return ret;
 		}
 		// We had the map requested,
 		if(DEBUG)
@@ -888,56 +1450,56 @@ public final class DatabaseManager {
 		String xClass,dClass = null;
 		TransactionalMap ret = null;
 		//
-		// are we working with marked derived class? if so open as column family in main class tablespace
-		if(clazz.isAnnotationPresent(DatabaseClass.class)) {
-			isDerivedClass = true;
-			DatabaseClass dc = (DatabaseClass)clazz.getAnnotation(DatabaseClass.class);
-			String ts = dc.tablespace();
-			if(ts.equals(""))
-				ts = clazz.getSuperclass().getName();
-			xClass = translateClass(ts);
-			String ds = dc.column();
-			if(ds.equals(""))
-				ds = clazz.getName();
-			dClass = translateClass(ds);
-			DatabaseManager.getInstance().buildOptionsFromAnnotation(dc, dClass, DatabaseManager.getInstance().getBaseTable());
-			ret = (TransactionalMap) v.classToIsoTransaction.get(dClass);
-		} else {
-			xClass = translateClass(clazz.getName());
-			ret = (TransactionalMap) v.classToIsoTransaction.get(xClass);
-		}
+		// resolve the tablespace class, and the column family of a marked derived class, cached per class
+		ClassMapping cm = ClassMapping.get(clazz);
+		if(v.consolidated)
+			cm = cm.consolidated();
+		isDerivedClass = cm.isDerivedClass;
+		xClass = cm.xClass;
+		dClass = cm.dClass;
+		ret = (TransactionalMap) v.classToIsoTransaction.get(cm.getMapName());
 		if( ret == null ) {
+			ReentrantLock lock = v.getClassLock(xClass);
+			lock.lock();
 			try {
-				if(isDerivedClass) {
-					TransactionalMap def = (TransactionalMap) v.classToIsoTransaction.get(xClass);
-					// have we already opened the main database?
-					if(def == null) {
-						TransactionSession ts = SessionManager.ConnectOptimisticTransaction(alias,VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions(), dClass);
-						// put the main class default ColumnFamily, its not there
-						TransactionalMap tm = new TransactionalMap(ts, xClass, false);
-						v.classToIsoTransaction.put(xClass, tm);
-						associateSession(xid, tm);
-						ret = new TransactionalMap(ts, dClass, isDerivedClass);
-					} else {
-						// create derived with session of main, previously instantiated default ColumnFamily
-						ret = new TransactionalMap(def.getSession(), dClass, isDerivedClass);
+				// another thread may have created the map while we waited for the class lock
+				ret = (TransactionalMap) v.classToIsoTransaction.get(isDerivedClass ? dClass : xClass);
+				if( ret == null ) {
+					try {
+						if(isDerivedClass) {
+							TransactionalMap def = (TransactionalMap) v.classToIsoTransaction.get(xClass);
+							// have we already opened the main database?
+							if(def == null) {
+								TransactionSession ts = SessionManager.ConnectOptimisticTransaction(alias,VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions(), dClass);
+								// put the main class default ColumnFamily, its not there
+								TransactionalMap tm = new TransactionalMap(ts, xClass, false).open();
+								v.classToIsoTransaction.put(xClass, tm);
+								associateSession(xid, tm);
+								ret = new TransactionalMap(ts, dClass, isDerivedClass).open();
+							} else {
+								// create derived with session of main, previously instantiated default ColumnFamily
+								ret = new TransactionalMap(def.getSession(), dClass, isDerivedClass).open();
+							}
+							v.classToIsoTransaction.put(dClass, ret);
+							if(DEBUG)
+								System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to return DERIVED map:"+ret+" for dir:"+VolumeManager.getAliasToPath(alias)+" class:"+xClass+" derived:"+dClass+" for volume:"+v);
+						} else {
+							ret = new TransactionalMap(SessionManager.ConnectOptimisticTransaction(alias,VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions()), xClass, isDerivedClass).open();
+							v.classToIsoTransaction.put(xClass, ret);
+							if(DEBUG)
+								System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to return BASE map:"+ret+" for dir:"+VolumeManager.getAliasToPath(alias)+" class:"+xClass+" formed from "+clazz.getName()+" for volume:"+v);
+						}
+					} catch (RocksDBException e) {
+						throw new IOException(e);
 					}
-					v.classToIsoTransaction.put(dClass, ret);
 					if(DEBUG)
-						System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to return DERIVED map:"+ret+" for dir:"+VolumeManager.getAliasToPath(alias)+" class:"+xClass+" derived:"+dClass+" for volume:"+v);
-				} else {
-					ret = new TransactionalMap(SessionManager.ConnectOptimisticTransaction(alias,VolumeManager.getAliasToPath(alias)+xClass, getInstance().getDefaultOptions()), xClass, isDerivedClass);
-					v.classToIsoTransaction.put(xClass, ret);
-					if(DEBUG)
-						System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to return BASE map:"+ret+" for dir:"+VolumeManager.getAliasToPath(alias)+" class:"+xClass+" formed from "+clazz.getName()+" for volume:"+v);
+						System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to create new map:"+ret);
+					associateSession(xid, ret);
+					return ret;
 				}
-			} catch (RocksDBException e) {
-				throw new IOException(e);
+			} finally {
+				lock.unlock();
 			}
-			if(DEBUG)
-				System.out.println("DatabaseManager.getOptimisticMap xid:"+xid+" About to create new map:"+ret);
-			associateSession(xid, ret);
-			return ret;
 		}
 		// We had the map requested,
 		if(DEBUG)
@@ -954,19 +1516,20 @@ public final class DatabaseManager {
 	 * @param tm
 	 * @throws IOException
 	 */
-	public static synchronized void associateSession(TransactionId xid, TransactionalMap tm) throws IOException {
+	public static void associateSession(TransactionId xid, TransactionalMap tm) throws IOException {
 		ConcurrentHashMap<String, SessionAndTransaction> ts = TransactionManager.getTransactionSession(xid);
 		if(DEBUG)
 			System.out.printf("DatabaseManager.associateSession Enter Transaction id:%s TransactionMap:%s got session:%s%n",xid,tm,ts);
 		if(ts == null) {
 			if(DEBUG)
 				System.out.printf("DatabaseManager.associateSession Setting Transaction id:%s TransactionMap:%s create new link for session:%s%n",xid,tm,tm.getSession());
-			TransactionManager.setTransaction(xid, tm);
-			return;
+			// created atomically, concurrent first associations of the same id share the new link
+			ts = TransactionManager.setTransaction(xid);
 		}
 		// if map of mangled name to SessionAndTransaction instances exists already, throw exception
 		if(tm.getSession().linkSessionAndTransaction(xid, tm, ts))
 			throw new IOException("Transactional Map "+tm+" already associated with id "+xid);
+		tm.unbindTransaction(xid);
 	}
 	
 	/**
@@ -991,7 +1554,7 @@ public final class DatabaseManager {
 	 * Remove the given TransactionalMap from active DB/transaction collection
 	 * @param tmap the TransactionalMap for a given transaction Id
 	 */
-	public static synchronized void removeTransactionalMap(SetInterface tmap) {
+	public static void removeTransactionalMap(SetInterface tmap) {
 		Volume vm = VolumeManager.get(tableSpaceDir);
 		vm.classToIsoTransaction.forEach((k,v) -> {
 			if(v.equals(tmap)) {
@@ -1011,7 +1574,7 @@ public final class DatabaseManager {
 	 * @param xid
 	 * @throws IOException If the transaction is not in a state to be removed. i.e. not COMMITTED, ROLLEDBACK or STARTED
 	 */
-	public static synchronized void removeTransaction(TransactionId xid) throws IOException {
+	public static void removeTransaction(TransactionId xid) throws IOException {
 		removeTransactionalMap(xid.getTransactionId());
 		TransactionManager.removeTransaction(xid);
 	}
@@ -1023,7 +1586,7 @@ public final class DatabaseManager {
 	 * @throws NoSuchElementException if the alias doesnt exist
 	 * @throws IOException If the transaction is not in a state to be removed. i.e. not COMMITTED, ROLLEDBACK or STARTED
 	 */
-	public static synchronized void removeTransaction(Alias alias, TransactionId xid) throws NoSuchElementException, IOException {
+	public static void removeTransaction(Alias alias, TransactionId xid) throws NoSuchElementException, IOException {
 		List<Transaction> tx = TransactionManager.getOutstandingTransactionsByAliasAndId(alias.getAlias(), xid);
 		if(tx != null && !tx.isEmpty()) {
 				TransactionManager.removeTransaction(alias,xid);
@@ -1031,34 +1594,32 @@ public final class DatabaseManager {
 			throw new IOException("Transaction id "+xid+" was not found.");
 	}
 	
+	/**
+	 * Commit the transactions of the id in the default tablespace. When the id spans several class databases
+	 * they are committed atomically with {@link TwoPhaseCommit}.
+	 * @param xid
+	 * @throws IOException if the id was not found or the commit failed
+	 */
 	public static void commitTransaction(TransactionId xid) throws IOException {
 		List<Transaction> tx = TransactionManager.getOutstandingTransactionsByPathAndId(tableSpaceDir, xid);
 		if(tx != null && !tx.isEmpty()) {
-			try {
-				for(Transaction t: tx) {
-					if(!t.getState().equals(TransactionState.COMMITTED) &&
-					   !t.getState().equals(TransactionState.ROLLEDBACK))
-					t.commit();
-				}
-			} catch (RocksDBException e) {
-				throw new IOException(e);
-			}
+			TwoPhaseCommit.commit(xid, tx);
 		} else
 			throw new IOException("Transaction id "+xid+" was not found.");
 	}
 	
+	/**
+	 * Commit the transactions of the id in the aliased tablespace. When the id spans several class databases
+	 * they are committed atomically with {@link TwoPhaseCommit}.
+	 * @param alias
+	 * @param xid
+	 * @throws IOException if the id was not found or the commit failed
+	 * @throws NoSuchElementException if the alias does not exist
+	 */
 	public static void commitTransaction(Alias alias, TransactionId xid) throws IOException, NoSuchElementException {
 		List<Transaction> tx = TransactionManager.getOutstandingTransactionsByAliasAndId(alias.getAlias(), xid);
 		if(tx != null && !tx.isEmpty()) {
-			try {
-				for(Transaction t: tx) {
-					if(!t.getState().equals(TransactionState.COMMITTED) &&
-					   !t.getState().equals(TransactionState.ROLLEDBACK))
-						t.commit();
-				}
-			} catch (RocksDBException e) {
-				throw new IOException(e);
-			}
+			TwoPhaseCommit.commit(xid, tx);
 		} else
 			throw new IOException("Transaction id "+xid+" was not found.");
 	}
@@ -1071,6 +1632,9 @@ public final class DatabaseManager {
 					if(!t.getState().equals(TransactionState.COMMITTED) &&
 					   !t.getState().equals(TransactionState.ROLLEDBACK))
 						t.rollback();
+					// as TransactionManager.rollback, drop the writes the caches held pending for the transaction
+					ObjectCache.discard(t);
+					RangeCache.discard(t);
 				}
 			} catch (RocksDBException e) {
 				throw new IOException(e);
@@ -1087,6 +1651,9 @@ public final class DatabaseManager {
 					if(!t.getState().equals(TransactionState.COMMITTED) &&
 					   !t.getState().equals(TransactionState.ROLLEDBACK))
 						t.rollback();
+					// as TransactionManager.rollback, drop the writes the caches held pending for the transaction
+					ObjectCache.discard(t);
+					RangeCache.discard(t);
 				}
 			} catch (RocksDBException e) {
 				throw new IOException(e);
@@ -1164,7 +1731,7 @@ public final class DatabaseManager {
 	 * @param alias The alias for the tablespace
 	 * @param tmap the Map for a given transaction Id
 	 */
-	public static synchronized void removeMap(Alias alias, SetInterface tmap) throws NoSuchElementException {
+	public static void removeMap(Alias alias, SetInterface tmap) throws NoSuchElementException {
 		Volume vm = VolumeManager.getByAlias(alias);
 		vm.classToIso.forEach((k,v) -> {
 			if(v.equals(tmap)) {
@@ -1183,7 +1750,7 @@ public final class DatabaseManager {
 	 * Remove the given Map from active DB/transaction collection
 	 * @param tmap the Map to remove
 	 */
-	public static synchronized void removeMap(SetInterface tmap) {
+	public static void removeMap(SetInterface tmap) {
 		Volume vm = VolumeManager.get(tableSpaceDir);
 		vm.classToIso.forEach((k,v) -> {
 			if(v.equals(tmap)) {
@@ -1203,7 +1770,7 @@ public final class DatabaseManager {
 	 * @param alias The alias for the tablespace
 	 * @param tmap the TransactionalMap for a given transaction Id
 	 */
-	public static synchronized void removeTransactionalMap(Alias alias, TransactionSetInterface tmap) throws NoSuchElementException {
+	public static void removeTransactionalMap(Alias alias, TransactionSetInterface tmap) throws NoSuchElementException {
 		Volume vm = VolumeManager.getByAlias(alias);
 		vm.classToIsoTransaction.forEach((k,v) -> {
 			if(v.equals(tmap)) {
@@ -1224,7 +1791,7 @@ public final class DatabaseManager {
 	 * @param tmap the TransactionalMap for a given transaction Id
 	 * @throws IOException 
 	 */
-	public static synchronized void removeTransactionalMap(TransactionId xid, TransactionSetInterface tmap) throws IOException {
+	public static void removeTransactionalMap(TransactionId xid, TransactionSetInterface tmap) throws IOException {
 		// Get the TransactionalMap
 		Collection<Volume> vms = VolumeManager.get();
 		for(Volume vm : vms) {
@@ -1248,7 +1815,7 @@ public final class DatabaseManager {
 	 * Remove the given TransactionalMap from active DB/transaction collection
 	 * @param xid The Transaction Id
 	 */
-	private static synchronized void removeTransactionalMap(String xid) {
+	private static void removeTransactionalMap(String xid) {
 		Volume vm = VolumeManager.get(tableSpaceDir);
 		vm.classToIsoTransaction.forEach((k,c) -> {
 			if(k.equals(xid)) {
@@ -1269,7 +1836,7 @@ public final class DatabaseManager {
 	 * @param xid The Transaction Id
 	 * @throws NoSuchElementException if the alias does not exist
 	 */
-	public static synchronized void removeTransactionalMap(Alias alias, TransactionId xid) throws NoSuchElementException {
+	public static void removeTransactionalMap(Alias alias, TransactionId xid) throws NoSuchElementException {
 		Volume vm = VolumeManager.getByAlias(alias);
 		vm.classToIsoTransaction.forEach((k,c) -> {
 			if(k.equals(xid.getTransactionId())) {
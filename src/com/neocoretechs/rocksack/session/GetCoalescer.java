@@ -0,0 +1,109 @@
+package com.neocoretechs.rocksack.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces concurrent asynchronous point gets against one column family into multiGets.
+ * A get arriving with nothing in flight or queued is issued on the caller, unless {@link AsyncSupport#setInlineGets(boolean)}
+ * turned that off, so a lone caller pays no queue node or executor hop per key. Otherwise gets are queued, and up to
+ * {@link AsyncSupport#getMaxConcurrentBatches()} gets and drains run at once, each drain on the executor taking up to
+ * {@link AsyncSupport#getMaxBatch()} queued keys per multiGet until the queue is empty.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+final class GetCoalescer {
+	private static boolean DEBUG = false;
+	// the column family handle of the map is read per batch, since it changes if the database is reopened
+	private BufferedMap map;
+	private ConcurrentLinkedQueue<PendingGet> pending = new ConcurrentLinkedQueue<PendingGet>();
+	private AtomicInteger active = new AtomicInteger();
+
+	@SuppressWarnings("rawtypes")
+	private static final class PendingGet {
+		Comparable key;
+		CompletableFuture<Object> future = new CompletableFuture<Object>();
+		PendingGet(Comparable key) {
+			this.key = key;
+		}
+	}
+
+	GetCoalescer(BufferedMap map) {
+		this.map = map;
+	}
+
+	@SuppressWarnings("rawtypes")
+	CompletableFuture<Object> get(Comparable key) {
+		// nothing in flight or queued: issue the get on the caller, gets arriving meanwhile queue behind it
+		if(AsyncSupport.isInlineGets() && pending.isEmpty() && active.compareAndSet(0, 1)) {
+			try {
+				Session session = map.session;
+				return CompletableFuture.completedFuture(session.pinned(() -> session.get(map.columnFamilyHandle, key)));
+			} catch(Throwable t) {
+				return CompletableFuture.failedFuture(t);
+			} finally {
+				active.decrementAndGet();
+				if(!pending.isEmpty())
+					startDrain();
+			}
+		}
+		PendingGet pg = new PendingGet(key);
+		pending.add(pg);
+		startDrain();
+		return pg.future;
+	}
+
+	private void startDrain() {
+		for(;;) {
+			int a = active.get();
+			if(a >= AsyncSupport.getMaxConcurrentBatches())
+				return;
+			if(active.compareAndSet(a, a + 1))
+				break;
+		}
+		AsyncSupport.getExecutor().execute(this::drain);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void drain() {
+		try {
+			int maxBatch = AsyncSupport.getMaxBatch();
+			ArrayList<PendingGet> batch = new ArrayList<PendingGet>(maxBatch);
+			for(;;) {
+				PendingGet pg;
+				while(batch.size() < maxBatch && (pg = pending.poll()) != null)
+					batch.add(pg);
+				if(batch.isEmpty())
+					break;
+				Session session = map.session;
+				try {
+					if(batch.size() == 1) {
+						Comparable key = batch.get(0).key;
+						batch.get(0).future.complete(session.pinned(() -> session.get(map.columnFamilyHandle, key)));
+					} else {
+						ArrayList<Comparable> keys = new ArrayList<Comparable>(batch.size());
+						for(PendingGet p : batch)
+							keys.add(p.key);
+						List<Object> values = session.pinned(() -> session.multiGet(map.columnFamilyHandle, keys));
+						for(int i = 0; i < batch.size(); i++)
+							batch.get(i).future.complete(values.get(i));
+					}
+					if(DEBUG)
+						System.out.printf("%s drained %d gets%n", this.getClass().getName(), batch.size());
+				} catch(Throwable t) {
+					for(PendingGet p : batch)
+						p.future.completeExceptionally(t);
+				}
+				batch.clear();
+			}
+		} finally {
+			active.decrementAndGet();
+		}
+		// a get may have been queued after the last poll and seen all drains active
+		if(!pending.isEmpty())
+			startDrain();
+	}
+}
@@ -0,0 +1,493 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.rocksdb.Transaction;
+
+import com.neocoretechs.rocksack.KeyValue;
+import com.neocoretechs.rocksack.SerializedComparator;
+
+/**
+ * On heap read through cache of deserialized values in front of the gets of a column family, so hot keys are served
+ * without serializing the key, crossing into RocksDB, copying and deserializing the value. One cache serves all maps of
+ * the column family, bounded by entry count, or by bytes estimated from the serialized key and value.<p>
+ * Admission follows W-TinyLFU. New entries enter a small LRU window, and an entry leaving the window displaces the least
+ * recently used entry of the main segmented LRU only if it was accessed more often, as counted by a count-min sketch
+ * of 4 bit counters halved periodically, so a scan of keys read once does not flush the keys read continually.
+ * Accesses update the policy when its lock is free and are otherwise dropped, so hits do not contend.<p>
+ * Entries are invalidated by put and remove on a map of the column family, and by the commit of a transaction that
+ * wrote them, a transaction reading a key it wrote bypasses the cache. A value loaded while an invalidation ran is
+ * not admitted. Cached values are shared by all readers and must not be modified.<p>
+ * Enabled per class with the cache.max_entries or cache.max_bytes options of the {@link TuningConfig}, or the
+ * cacheEntries and cacheBytes elements of {@link com.neocoretechs.rocksack.DatabaseClass}.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public final class ObjectCache {
+	private static boolean DEBUG = false;
+	/** option giving the maximum entries of the cache of a column family */
+	static final String MAX_ENTRIES = "max_entries";
+	/** option giving the maximum estimated bytes of the cache of a column family, used over max_entries if both are set */
+	static final String MAX_BYTES = "max_bytes";
+	// estimated bytes of a cached entry over its serialized key and value
+	private static final long ENTRY_OVERHEAD = 96;
+	// caches by database path and column family
+	private static ConcurrentHashMap<String, ObjectCache> caches = new ConcurrentHashMap<String, ObjectCache>();
+	// keys written by open transactions per cache, invalidated when the transaction commits
+	private static ConcurrentHashMap<Transaction, ConcurrentHashMap<ObjectCache, Set<Object>>> pending = new ConcurrentHashMap<Transaction, ConcurrentHashMap<ObjectCache, Set<Object>>>();
+
+	private final String name;
+	private final long maximum;
+	private final boolean weighBytes;
+	private final long windowMaximum;
+	private final long protectedMaximum;
+	private final ConcurrentHashMap<Object, Node> data = new ConcurrentHashMap<Object, Node>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final FrequencySketch sketch;
+	// access ordered segments, most recent at the head, guarded by lock
+	private final Node window = new Node();
+	private final Node probation = new Node();
+	private final Node protect = new Node();
+	private long windowWeight = 0;
+	private long probationWeight = 0;
+	private long protectedWeight = 0;
+	// advanced by every invalidation, a load begun before is not admitted
+	private final AtomicLong generation = new AtomicLong();
+	private LongAdder hits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+	private LongAdder evictions = new LongAdder();
+	private LongAdder invalidations = new LongAdder();
+
+	private static final byte WINDOW = 0;
+	private static final byte PROBATION = 1;
+	private static final byte PROTECTED = 2;
+
+	private static final class Node {
+		Object key;
+		volatile Object value;
+		long weight;
+		byte segment;
+		Node prev = this, next = this;
+	}
+	/**
+	 * Reads the value bytes of a serialized key from the database or transaction.
+	 */
+	@FunctionalInterface
+	interface Loader {
+		byte[] load(byte[] key) throws IOException;
+	}
+
+	private ObjectCache(String name, long maximum, boolean weighBytes) {
+		this.name = name;
+		this.maximum = maximum;
+		this.weighBytes = weighBytes;
+		windowMaximum = Math.max(1, maximum / 100);
+		protectedMaximum = (long)((maximum - windowMaximum) * 0.8);
+		// size the sketch for the expected number of entries
+		sketch = new FrequencySketch(weighBytes ? maximum / 1024 : maximum);
+	}
+	/**
+	 * The cache of the column family, created on first use if its options enable one.
+	 * @param dbPath the database path
+	 * @param cfName the column family, or null for the class of the database
+	 * @return the cache, or null if the column family has none
+	 */
+	static ObjectCache forColumnFamily(String dbPath, String cfName) {
+		Map<String, String> opts = DatabaseManager.getInstance().getObjectCacheOptions(dbPath, cfName);
+		long bytes = opts.containsKey(MAX_BYTES) ? Long.parseLong(opts.get(MAX_BYTES)) : 0;
+		long entries = opts.containsKey(MAX_ENTRIES) ? Long.parseLong(opts.get(MAX_ENTRIES)) : 0;
+		// a pinned column family is on heap already
+		if((bytes <= 0 && entries <= 0) || Boolean.parseBoolean(opts.get(PinnedMap.PINNED)))
+			return null;
+		String name = dbPath+":"+(cfName == null ? "default" : cfName);
+		return caches.computeIfAbsent(name, k -> {
+			if(DEBUG)
+				System.out.printf("ObjectCache.forColumnFamily %s max entries:%d bytes:%d%n", k, entries, bytes);
+			return bytes > 0 ? new ObjectCache(k, bytes, true) : new ObjectCache(k, entries, false);
+		});
+	}
+	/**
+	 * Get the entry of the key, loading and admitting it on a miss.
+	 * @param key the key
+	 * @param loader reads the value bytes of the serialized key
+	 * @return a {@link KeyValue} of the key and its value, or null if absent
+	 * @throws IOException
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	Object get(Comparable key, Loader loader) throws IOException {
+		Object value = getIfPresent(key);
+		if(value != null)
+			return value;
+		long stamp = generation.get();
+		byte[] k = SerializedComparator.serializeObject(key);
+		byte[] b = loader.load(k);
+		if(b == null)
+			return null;
+		value = SerializedComparator.deserializeObject(b);
+		admit(key, value, weighBytes ? k.length + b.length + ENTRY_OVERHEAD : 1, stamp);
+		return new KeyValue(key, value);
+	}
+	/**
+	 * @param key the key
+	 * @return a {@link KeyValue} of the key and its cached value, or null if not cached
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	Object getIfPresent(Comparable key) {
+		Node n = data.get(key);
+		if(n == null) {
+			misses.increment();
+			if(lock.tryLock()) {
+				try {
+					sketch.increment(key);
+				} finally {
+					lock.unlock();
+				}
+			}
+			return null;
+		}
+		hits.increment();
+		Object value = n.value;
+		if(lock.tryLock()) {
+			try {
+				sketch.increment(key);
+				if(n.prev != n)
+					onAccess(n);
+			} finally {
+				lock.unlock();
+			}
+		}
+		// a fresh entry, so a caller setting its value cannot change the cache
+		return new KeyValue(key, value);
+	}
+	/**
+	 * Admit a loaded value unless the cache was invalidated since the load began.
+	 */
+	private void admit(Object key, Object value, long weight, long stamp) {
+		if(weight > maximum)
+			return;
+		lock.lock();
+		try {
+			if(generation.get() != stamp)
+				return;
+			Node old = data.get(key);
+			if(old != null)
+				remove(old);
+			Node n = new Node();
+			n.key = key;
+			n.value = value;
+			n.weight = weight;
+			n.segment = WINDOW;
+			linkFirst(window, n);
+			windowWeight += weight;
+			data.put(key, n);
+			evict();
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Remove the key, after a write to it is visible in the database.
+	 * @param key the key
+	 */
+	void invalidate(Object key) {
+		lock.lock();
+		try {
+			generation.incrementAndGet();
+			Node n = data.get(key);
+			if(n != null) {
+				remove(n);
+				invalidations.increment();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Remove every entry, after a write to an unknown set of keys.
+	 */
+	void clear() {
+		lock.lock();
+		try {
+			generation.incrementAndGet();
+			invalidations.add(data.size());
+			// a reader holding a node must find it unlinked
+			for(Node n : data.values())
+				n.prev = n.next = n;
+			data.clear();
+			for(Node head : new Node[] {window, probation, protect})
+				head.prev = head.next = head;
+			windowWeight = probationWeight = protectedWeight = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Record a write of the key by the transaction, invalidated when the transaction commits.
+	 * @param txn the transaction
+	 * @param key the key
+	 */
+	void written(Transaction txn, Object key) {
+		pending.computeIfAbsent(txn, k -> new ConcurrentHashMap<ObjectCache, Set<Object>>())
+			.computeIfAbsent(this, k -> ConcurrentHashMap.newKeySet()).add(key);
+	}
+	/**
+	 * @param txn the transaction
+	 * @param key the key
+	 * @return true if the transaction wrote the key, so its reads of the key must go to the transaction
+	 */
+	boolean isWritten(Transaction txn, Object key) {
+		Map<ObjectCache, Set<Object>> byCache = pending.get(txn);
+		if(byCache == null)
+			return false;
+		Set<Object> keys = byCache.get(this);
+		return keys != null && keys.contains(key);
+	}
+	/**
+	 * Invalidate the keys written by the transaction, which has committed.
+	 * @param txn the transaction
+	 */
+	static void committed(Transaction txn) {
+		Map<ObjectCache, Set<Object>> byCache = pending.remove(txn);
+		if(byCache == null)
+			return;
+		for(Map.Entry<ObjectCache, Set<Object>> e : byCache.entrySet())
+			for(Object key : e.getValue())
+				e.getKey().invalidate(key);
+	}
+	/**
+	 * Forget the keys written by the transaction, which was rolled back or removed.
+	 * @param txn the transaction
+	 */
+	static void discard(Transaction txn) {
+		pending.remove(txn);
+	}
+
+	private void onAccess(Node n) {
+		switch(n.segment) {
+			case WINDOW:
+				unlink(n);
+				linkFirst(window, n);
+				break;
+			case PROBATION:
+				// promoted on its second access, demoting the least recent protected entries if over
+				unlink(n);
+				probationWeight -= n.weight;
+				n.segment = PROTECTED;
+				linkFirst(protect, n);
+				protectedWeight += n.weight;
+				while(protectedWeight > protectedMaximum && protect.prev != protect) {
+					Node d = protect.prev;
+					unlink(d);
+					protectedWeight -= d.weight;
+					d.segment = PROBATION;
+					linkFirst(probation, d);
+					probationWeight += d.weight;
+				}
+				break;
+			default:
+				unlink(n);
+				linkFirst(protect, n);
+		}
+	}
+	/**
+	 * Move entries leaving the window into probation, each admitted over the probation victim only if more frequent,
+	 * then evict least recently used entries while still over.
+	 */
+	private void evict() {
+		while(windowWeight > windowMaximum && window.prev != window) {
+			Node candidate = window.prev;
+			unlink(candidate);
+			windowWeight -= candidate.weight;
+			candidate.segment = PROBATION;
+			linkFirst(probation, candidate);
+			probationWeight += candidate.weight;
+			while(weight() > maximum) {
+				Node victim = probation.prev;
+				if(victim == candidate) {
+					// nothing older in probation, take from protected
+					victim = protect.prev != protect ? protect.prev : candidate;
+				}
+				if(victim != candidate && sketch.frequency(candidate.key) <= sketch.frequency(victim.key))
+					victim = candidate;
+				evict(victim);
+				if(victim == candidate)
+					break;
+			}
+		}
+		while(weight() > maximum) {
+			Node victim = probation.prev != probation ? probation.prev : protect.prev != protect ? protect.prev : window.prev;
+			if(victim == window)
+				break;
+			evict(victim);
+		}
+	}
+
+	private void evict(Node n) {
+		remove(n);
+		evictions.increment();
+	}
+
+	private void remove(Node n) {
+		data.remove(n.key, n);
+		if(n.prev == n)
+			return;
+		unlink(n);
+		switch(n.segment) {
+			case WINDOW: windowWeight -= n.weight; break;
+			case PROBATION: probationWeight -= n.weight; break;
+			default: protectedWeight -= n.weight;
+		}
+	}
+
+	private static void linkFirst(Node head, Node n) {
+		n.next = head.next;
+		n.prev = head;
+		head.next.prev = n;
+		head.next = n;
+	}
+
+	private static void unlink(Node n) {
+		n.prev.next = n.next;
+		n.next.prev = n.prev;
+		n.prev = n.next = n;
+	}
+
+	private long weight() {
+		return windowWeight + probationWeight + protectedWeight;
+	}
+	/**
+	 * @return the number of gets answered from the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+	/**
+	 * @return the number of gets that went to the database
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+	/**
+	 * @return the fraction of gets answered from the cache
+	 */
+	public double getHitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0.0 : (double)h / total;
+	}
+	/**
+	 * @return the number of entries evicted to stay within the bound
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+	/**
+	 * @return the number of entries removed by writes
+	 */
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+	/**
+	 * @return the number of entries cached
+	 */
+	public long size() {
+		return data.size();
+	}
+	/**
+	 * @return the entries, or estimated bytes if bounded by bytes, cached
+	 */
+	public long getWeight() {
+		lock.lock();
+		try {
+			return weight();
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * @return the bound in entries, or estimated bytes if bounded by bytes
+	 */
+	public long getMaximum() {
+		return maximum;
+	}
+
+	public boolean isWeighBytes() {
+		return weighBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "ObjectCache "+name+" size:"+size()+" hits:"+getHits()+" misses:"+getMisses()+" evictions:"+getEvictions()+" invalidations:"+getInvalidations();
+	}
+	/**
+	 * Count-min sketch of access frequency with four 4 bit counters per key, all halved once the number of increments
+	 * reaches ten times the expected entries, so the counts follow recent popularity.
+	 */
+	private static final class FrequencySketch {
+		private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+		private final long[] table;
+		private final int mask;
+		private final long sampleSize;
+		private long size = 0;
+
+		FrequencySketch(long expected) {
+			int n = (int)Math.min(Math.max(expected, 64), 1 << 20);
+			int cap = Integer.highestOneBit(n - 1) << 1;
+			table = new long[cap];
+			mask = cap - 1;
+			sampleSize = 10L * n;
+		}
+
+		private static int spread(Object key) {
+			int h = key.hashCode();
+			h ^= (h >>> 17);
+			h *= 0xed5ad4bb;
+			h ^= (h >>> 11);
+			return h;
+		}
+
+		private int indexOf(int hash, int i) {
+			long h = (hash + SEEDS[i]) * SEEDS[i];
+			h += (h >>> 32);
+			return ((int)h) & mask;
+		}
+
+		void increment(Object key) {
+			int hash = spread(key);
+			// each row uses one of the 16 counters of its long, chosen by the low bits of the hash
+			int start = (hash & 3) << 2;
+			boolean added = false;
+			for(int i = 0; i < 4; i++) {
+				int index = indexOf(hash, i);
+				int offset = (start + i) << 2;
+				long m = 0xfL << offset;
+				if((table[index] & m) != m) {
+					table[index] += 1L << offset;
+					added = true;
+				}
+			}
+			if(added && ++size >= sampleSize) {
+				for(int i = 0; i < table.length; i++)
+					table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+				size /= 2;
+			}
+		}
+
+		int frequency(Object key) {
+			int hash = spread(key);
+			int start = (hash & 3) << 2;
+			int freq = Integer.MAX_VALUE;
+			for(int i = 0; i < 4; i++) {
+				int offset = (start + i) << 2;
+				freq = Math.min(freq, (int)((table[indexOf(hash, i)] >>> offset) & 0xfL));
+			}
+			return freq;
+		}
+	}
+}
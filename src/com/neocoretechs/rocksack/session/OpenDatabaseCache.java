@@ -0,0 +1,169 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps the number of RocksDB instances open at once. Every database opened through the {@link SessionManager} counts
+ * against the cap, and when it is exceeded the least recently used idle databases are flushed and closed.
+ * The {@link Session} and the maps over it remain valid, and the database is reopened in place on next use,
+ * so processes touching many rarely used classes hold files, memtables and threads only for those in use.<p>
+ * A session is pinned, and never closed, while a map operation is in progress on it, while an iterator or stream
+ * it issued is open, and while a transaction is linked to it. An iterator releases its pin on close, or when garbage
+ * collected, as does a stream, so iterators over rarely used databases should be closed.<p>
+ * The cap defaults to 0, no limit. Eviction and reopen counts and times are kept for monitoring.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public final class OpenDatabaseCache {
+	private static boolean DEBUG = false;
+	private static volatile int maxOpen = 0;
+	private static Set<Session> open = ConcurrentHashMap.newKeySet();
+	// one thread evicts at a time, others go on
+	private static ReentrantLock evictLock = new ReentrantLock();
+	private static LongAdder evictions = new LongAdder();
+	private static LongAdder evictionNanos = new LongAdder();
+	private static LongAdder reopens = new LongAdder();
+	private static LongAdder reopenNanos = new LongAdder();
+
+	private OpenDatabaseCache() {}
+
+	/**
+	 * Set the maximum number of databases open at once, evicting idle databases if more are open.
+	 * @param max the cap, 0 for no limit
+	 */
+	public static void setMaxOpenDatabases(int max) {
+		maxOpen = max;
+		evictIdle(null);
+	}
+
+	public static int getMaxOpenDatabases() {
+		return maxOpen;
+	}
+	/**
+	 * @return the number of databases currently open
+	 */
+	public static int getOpenDatabases() {
+		return open.size();
+	}
+	/**
+	 * @return the number of databases closed to stay within the cap
+	 */
+	public static long getEvictions() {
+		return evictions.sum();
+	}
+	/**
+	 * @return total nanoseconds spent flushing and closing evicted databases
+	 */
+	public static long getEvictionNanos() {
+		return evictionNanos.sum();
+	}
+	/**
+	 * @return the number of evicted databases reopened on use
+	 */
+	public static long getReopens() {
+		return reopens.sum();
+	}
+	/**
+	 * @return total nanoseconds spent reopening evicted databases, the latency added to the operation that found them closed
+	 */
+	public static long getReopenNanos() {
+		return reopenNanos.sum();
+	}
+	/**
+	 * Register a newly opened session, evicting idle databases if the cap is exceeded.
+	 * @param s the session
+	 */
+	static void opened(Session s) {
+		open.add(s);
+		evictIdle(s);
+	}
+	/**
+	 * Remove a session closed other than by eviction.
+	 * @param s the session
+	 */
+	static void closed(Session s) {
+		open.remove(s);
+	}
+	/**
+	 * Reopen an evicted session with the opener it was connected with, under the path lock of the database.
+	 * @param s the evicted session
+	 * @throws IOException if the database could not be opened
+	 */
+	static void reopen(Session s) throws IOException {
+		ReentrantLock lock = SessionManager.getPathLock(s.getDBname());
+		lock.lock();
+		try {
+			if(!s.isEvicted())
+				return;
+			if(SessionManager.isDBOffline(s.getDBname()))
+				throw new IOException("Database "+s.getDBname()+" is offline, try later");
+			long tims = System.nanoTime();
+			Session fresh;
+			try {
+				fresh = s.opener.get();
+			} catch(RuntimeException e) {
+				throw new IOException("Could not reopen "+s.getDBname(), e);
+			}
+			// resolve transactions left prepared by an interrupted two phase commit
+			if(fresh instanceof TransactionSession)
+				TwoPhaseCommit.recover((TransactionSession)fresh);
+			s.lastAccess = System.nanoTime();
+			s.reopened(fresh);
+			open.add(s);
+			reopens.increment();
+			reopenNanos.add(System.nanoTime() - tims);
+			if(DEBUG)
+				System.out.printf("OpenDatabaseCache.reopen %s in %d us%n", s.getDBname(), (System.nanoTime() - tims)/1000);
+		} finally {
+			lock.unlock();
+		}
+		evictIdle(s);
+	}
+	/**
+	 * Close least recently used unpinned databases until the cap is met.
+	 * @param keep a session not to evict, the one just opened, or null
+	 */
+	private static void evictIdle(Session keep) {
+		int max = maxOpen;
+		if(max <= 0 || open.size() <= max || !evictLock.tryLock())
+			return;
+		try {
+			// order on a snapshot of the access times, which change during the sort
+			ArrayList<Map.Entry<Session, Long>> lru = new ArrayList<Map.Entry<Session, Long>>(open.size());
+			for(Session s : open)
+				lru.add(new AbstractMap.SimpleEntry<Session, Long>(s, s.lastAccess));
+			lru.sort(Map.Entry.comparingByValue());
+			for(Map.Entry<Session, Long> e : lru) {
+				if(open.size() <= max)
+					break;
+				Session s = e.getKey();
+				if(s == keep || s.isPinned())
+					continue;
+				ReentrantLock lock = SessionManager.getPathLock(s.getDBname());
+				if(!lock.tryLock())
+					continue;
+				try {
+					long tims = System.nanoTime();
+					if(s.evict()) {
+						open.remove(s);
+						evictions.increment();
+						evictionNanos.add(System.nanoTime() - tims);
+						if(DEBUG)
+							System.out.printf("OpenDatabaseCache.evictIdle closed %s in %d us%n", s.getDBname(), (System.nanoTime() - tims)/1000);
+					}
+				} finally {
+					lock.unlock();
+				}
+			}
+		} finally {
+			evictLock.unlock();
+		}
+	}
+}
@@ -2,6 +2,8 @@ package com.neocoretechs.rocksack.session;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
 import java.util.stream.Stream;
 
 /**
@@ -63,6 +65,28 @@ interface OrderedKVMapInterface extends MapInterface, OrderedKVSetInterface {
 	 * @throws IOException
 	 */
 	Stream<?> tailSetKVStream(Comparable fkey) throws IOException;
+
+	/**
+	 * Remove the entries from fkey inclusive to tkey exclusive the predicate accepts, judged in parallel.
+	 * @param fkey the first key, or null from the first key
+	 * @param tkey the key ending the range, or null through the last key
+	 * @param predicate true for a key and value to remove
+	 * @param progress receives the entries judged and removed as the range is processed, or null
+	 * @return the number of entries removed
+	 * @throws IOException
+	 */
+	long removeIf(Comparable fkey, Comparable tkey, BiPredicate<Comparable, Object> predicate, BulkUpdate.Progress progress) throws IOException;
+
+	/**
+	 * Replace the values from fkey inclusive to tkey exclusive by the function, judged in parallel.
+	 * @param fkey the first key, or null from the first key
+	 * @param tkey the key ending the range, or null through the last key
+	 * @param function gives the new value for a key and value, or null to leave the entry
+	 * @param progress receives the entries judged and replaced as the range is processed, or null
+	 * @return the number of entries replaced
+	 * @throws IOException
+	 */
+	long updateRange(Comparable fkey, Comparable tkey, BiFunction<Comparable, Object, Object> function, BulkUpdate.Progress progress) throws IOException;
 	
 
 	
@@ -0,0 +1,658 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Flow;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.stream.Stream;
+
+import org.rocksdb.RocksDBException;
+
+import com.neocoretechs.rocksack.KeyValue;
+import com.neocoretechs.rocksack.SerializedComparator;
+import com.neocoretechs.rocksack.iterator.Entry;
+import com.neocoretechs.rocksack.iterator.EntrySetIterator;
+import com.neocoretechs.rocksack.iterator.KeyValuePair;
+import com.neocoretechs.rocksack.stream.SackPublisher;
+import com.neocoretechs.rocksack.stream.SackStream;
+
+/**
+ * A {@link BufferedMap} whose column family is held entirely on heap as decoded objects. The column family is read into a
+ * concurrent skip list at open, in the order of the keys, and every get, range and stream of the map is served from it
+ * with the same element types as the maps over RocksDB. Puts and removes write through to RocksDB before they update
+ * the skip list, so the database stays the durable copy and is read again the next time the map is opened.<p>
+ * Meant for small classes read far more often than written, such as routing tables or feature flags. The skip list only
+ * sees writes made through this map, writes by a {@link TransactionalMap} or another process on the column family are
+ * not reflected until it is opened again. Values are shared by all readers and must not be modified after the put.<p>
+ * Enabled per class with the cache.pinned option of the {@link TuningConfig} or the pinned element of
+ * {@link com.neocoretechs.rocksack.DatabaseClass}, {@link DatabaseManager#getMap(Class)} then returns a PinnedMap.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class PinnedMap extends BufferedMap {
+	private static boolean DEBUG = false;
+	/** option holding the column family of a class on heap when true */
+	static final String PINNED = "pinned";
+	// writes of a key to RocksDB and the skip list are made under its stripe, so both see them in the same order
+	private static final int STRIPES = 64;
+	@SuppressWarnings("rawtypes")
+	private final ConcurrentSkipListMap<Comparable, Object> data = new ConcurrentSkipListMap<Comparable, Object>();
+	private final Object[] stripes = new Object[STRIPES];
+
+	/**
+	 * Open the column family, read all of it into memory by {@link #open()}.
+	 * @param session the {@link Session} instance
+	 * @param className the class for the ColumnFamily denoting main or derived subclasses stored in this database
+	 * @param isDerived if this is a derived subclass, process column family accordingly as subclass of main
+	 * @exception IOException if the column family cannot be read
+	 * @exception IllegalAccessException if the database has been put offline
+	 * @throws RocksDBException
+	 */
+	PinnedMap(Session session, String className, boolean isDerived) throws IllegalAccessException, IOException, RocksDBException {
+		super(session, className, isDerived);
+		for(int i = 0; i < STRIPES; i++)
+			stripes[i] = new Object();
+	}
+	/**
+	 * Register the map with its session, then read the column family into memory.
+	 */
+	@Override
+	PinnedMap open() throws IOException {
+		super.open();
+		load();
+		return this;
+	}
+	/**
+	 * Read every entry of the column family into the skip list.
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	private void load() throws IOException {
+		long tims = System.currentTimeMillis();
+		session.pinned(() -> {
+			try (EntrySetIterator it = new EntrySetIterator(session.getKVStore(), columnFamilyHandle)) {
+				while(it.hasNext()) {
+					Entry e = (Entry)it.next();
+					data.put(e.getKey(), e.getValue());
+				}
+			}
+			return null;
+		});
+		if(DEBUG)
+			System.out.printf("%s.load %s %d entries in %d ms.%n", this.getClass().getName(), getClassName(), data.size(), System.currentTimeMillis()-tims);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private Object stripe(Comparable key) {
+		return stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+	}
+	/**
+	 * @return the entries of the map as {@link Entry}
+	 */
+	@SuppressWarnings("rawtypes")
+	private static Iterator<?> entries(NavigableMap<Comparable, Object> m) {
+		return m.entrySet().stream().map(e -> new Entry(e.getKey(), e.getValue())).iterator();
+	}
+	/**
+	 * @return the entries of the map as {@link KeyValuePair}
+	 */
+	@SuppressWarnings("rawtypes")
+	private static Iterator<?> pairs(NavigableMap<Comparable, Object> m) {
+		return m.entrySet().stream().map(e -> new KeyValuePair(e.getKey(), e.getValue())).iterator();
+	}
+	/**
+	* Put a key/value pair to RocksDB, then to memory.
+	* @param tkey The key for the pair
+	* @param tvalue The value for the pair
+	* @exception IOException if put to backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public boolean put(Comparable tkey, Object tvalue) throws IOException {
+		synchronized(stripe(tkey)) {
+			boolean b = super.put(tkey, tvalue);
+			data.put(tkey, tvalue);
+			return b;
+		}
+	}
+	/**
+	* Put a key/value pair to RocksDB, then to memory.
+	* @param tkey The key for the pair, raw bytes unserialized before storage
+	* @param tvalue The value for the pair
+	* @exception IOException if put to backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public boolean putViaBytes(byte[] tkey, Object tvalue) throws IOException {
+		Comparable key = (Comparable) SerializedComparator.deserializeObject(tkey);
+		synchronized(stripe(key)) {
+			boolean b = super.putViaBytes(tkey, tvalue);
+			data.put(key, tvalue);
+			return b;
+		}
+	}
+	/**
+	* Remove the key from RocksDB, then from memory.
+	* @param tkey The key to match
+	* @return The removed value, or null if not present
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object remove(Comparable tkey) throws IOException {
+		synchronized(stripe(tkey)) {
+			Object o = super.remove(tkey);
+			data.remove(tkey);
+			return o;
+		}
+	}
+	/**
+	* Remove the key from RocksDB without reading it, then from memory.
+	* @param tkey The key to remove
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void removeBlind(Comparable tkey) throws IOException {
+		synchronized(stripe(tkey)) {
+			super.removeBlind(tkey);
+			data.remove(tkey);
+		}
+	}
+	/**
+	* Remove the write once key from RocksDB with a SingleDelete, then from memory.
+	* @param tkey The key to remove
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void removeSingle(Comparable tkey) throws IOException {
+		synchronized(stripe(tkey)) {
+			super.removeSingle(tkey);
+			data.remove(tkey);
+		}
+	}
+	/**
+	* Remove the range from RocksDB, then from memory, holding every stripe so no write of a key in the range interleaves.
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param reclaim true to drop the files wholly in the range and compact it
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void removeRange(Comparable fkey, Comparable tkey, boolean reclaim) throws IOException {
+		locked(0, () -> {
+			super.removeRange(fkey, tkey, reclaim);
+			if(fkey == null && tkey == null)
+				data.clear();
+			else if(fkey == null)
+				data.headMap(tkey).clear();
+			else if(tkey == null)
+				data.tailMap(fkey).clear();
+			else if(fkey.compareTo(tkey) < 0)
+				data.subMap(fkey, tkey).clear();
+			return null;
+		});
+	}
+	/**
+	* Remove the entries of the range the predicate accepts from RocksDB, then from memory, holding every stripe.
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param predicate true for a key and value to remove, called from several threads at once
+	* @param progress receives the entries judged and removed after each chunk, or null
+	* @return the number of entries removed
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public long removeIf(Comparable fkey, Comparable tkey, BiPredicate<Comparable, Object> predicate, BulkUpdate.Progress progress) throws IOException {
+		return locked(0, () -> super.removeIf(fkey, tkey, predicate, progress));
+	}
+	/**
+	* Replace the values of the range by the function in RocksDB, then in memory, holding every stripe.
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param function gives the new value for a key and value, or null to leave the entry, called from several threads at once
+	* @param progress receives the entries judged and replaced after each chunk, or null
+	* @return the number of entries replaced
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public long updateRange(Comparable fkey, Comparable tkey, BiFunction<Comparable, Object, Object> function, BulkUpdate.Progress progress) throws IOException {
+		return locked(0, () -> super.updateRange(fkey, tkey, function, progress));
+	}
+	/**
+	 * Write the changes of a chunk to RocksDB, then to memory. The stripes are held by the thread running the update.
+	 */
+	@Override
+	@SuppressWarnings("rawtypes")
+	void applyChunk(List<KeyValuePair> puts, List<Comparable> removes) throws IOException {
+		super.applyChunk(puts, removes);
+		for(KeyValuePair kv : puts)
+			data.put((Comparable) kv.getKey(), kv.getValue());
+		for(Comparable key : removes)
+			data.remove(key);
+	}
+	/**
+	 * Run the operation holding the stripes from i up.
+	 */
+	private <T> T locked(int i, AsyncSupport.IOCallable<T> op) throws IOException {
+		if(i == STRIPES)
+			return op.call();
+		synchronized(stripes[i]) {
+			return locked(i + 1, op);
+		}
+	}
+	/**
+	* Put the value if the key is absent from memory.
+	* @param tkey The key for the pair
+	* @param tvalue The value for the pair
+	* @return null if the value was put, else the present value
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object putIfAbsent(Comparable tkey, Object tvalue) throws IOException {
+		synchronized(stripe(tkey)) {
+			Object o = data.get(tkey);
+			if(o == null)
+				put(tkey, tvalue);
+			return o;
+		}
+	}
+	/**
+	* Put the value if the key is present in memory.
+	* @param tkey The key for the pair
+	* @param tvalue The value for the pair
+	* @return the previous value, or null if the key was absent and nothing was put
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object replace(Comparable tkey, Object tvalue) throws IOException {
+		synchronized(stripe(tkey)) {
+			Object o = data.get(tkey);
+			if(o != null)
+				put(tkey, tvalue);
+			return o;
+		}
+	}
+	/**
+	* Put the value if the key holds a value equal to the expected one in memory.
+	* @param tkey The key for the pair
+	* @param expected The value the key must hold
+	* @param tvalue The value for the pair
+	* @return true if the value was put
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public boolean replace(Comparable tkey, Object expected, Object tvalue) throws IOException {
+		synchronized(stripe(tkey)) {
+			Object o = data.get(tkey);
+			if(o == null || !o.equals(expected))
+				return false;
+			put(tkey, tvalue);
+			return true;
+		}
+	}
+	/**
+	* @param tkey The key for the value
+	* @return The key/value for the key returned as {@link com.neocoretechs.rocksack.KeyValue}, or null if not present
+	*/
+	@Override
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public Object get(Comparable tkey) throws IOException {
+		Object value = data.get(tkey);
+		return value == null ? null : new KeyValue(tkey, value);
+	}
+	/**
+	* @param tkey The serialized key for the value
+	* @return The value for the key, or null if not present
+	*/
+	@Override
+	public Object getViaBytes(byte[] tkey) throws IOException {
+		return data.get(SerializedComparator.deserializeObject(tkey));
+	}
+	/**
+	* @param tkey The value to find
+	* @return The first entry holding the value as {@link com.neocoretechs.rocksack.iterator.Entry}, or null if none
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object getValue(Object tkey) throws IOException {
+		for(Map.Entry<Comparable, Object> e : data.entrySet())
+			if(e.getValue().equals(tkey))
+				return new Entry(e.getKey(), e.getValue());
+		return null;
+	}
+
+	@Override
+	public long size() throws IOException {
+		return data.size();
+	}
+
+	@Override
+	public boolean isEmpty() throws IOException {
+		return data.isEmpty();
+	}
+
+	@Override
+	public Iterator<?> entrySet() throws IOException {
+		return entries(data);
+	}
+
+	@Override
+	public Stream<?> entrySetStream() throws IOException {
+		return new SackStream(entrySet());
+	}
+
+	@Override
+	public Iterator<?> keySet() throws IOException {
+		return data.keySet().iterator();
+	}
+
+	@Override
+	public Stream<?> keySetStream() throws IOException {
+		return new SackStream(keySet());
+	}
+
+	@Override
+	public Iterator<?> iterator() throws IOException {
+		return keySet();
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public boolean containsKey(Comparable tkey) throws IOException {
+		return data.containsKey(tkey);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public boolean contains(Comparable o) throws IOException {
+		return data.containsKey(o);
+	}
+
+	@Override
+	public boolean containsValue(Object o) throws IOException {
+		return data.containsValue(o);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Comparable firstKey() throws IOException {
+		Map.Entry<Comparable, Object> e = data.firstEntry();
+		return e == null ? null : e.getKey();
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Comparable lastKey() throws IOException {
+		Map.Entry<Comparable, Object> e = data.lastEntry();
+		return e == null ? null : e.getKey();
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object first() throws IOException {
+		Map.Entry<Comparable, Object> e = data.firstEntry();
+		return e == null ? null : e.getValue();
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object last() throws IOException {
+		Map.Entry<Comparable, Object> e = data.lastEntry();
+		return e == null ? null : e.getValue();
+	}
+	/**
+	 * @return the {@link KeyValuePair} of the least key greater than or equal to the given key, or null if nothing
+	 */
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object nearest(Comparable key) throws IOException {
+		Map.Entry<Comparable, Object> e = data.ceilingEntry(key);
+		return e == null ? null : new KeyValuePair(e.getKey(), e.getValue());
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> headMap(Comparable tkey) throws IOException {
+		return data.headMap(tkey).keySet().iterator();
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Stream<?> headMapStream(Comparable tkey) throws IOException {
+		return new SackStream(headMap(tkey));
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> headMapKV(Comparable tkey) throws IOException {
+		return pairs(data.headMap(tkey));
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Stream<?> headMapKVStream(Comparable tkey) throws IOException {
+		return new SackStream(headMapKV(tkey));
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> tailMap(Comparable fkey) throws IOException {
+		return data.tailMap(fkey).keySet().iterator();
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Stream<?> tailMapStream(Comparable fkey) throws IOException {
+		return new SackStream(tailMap(fkey));
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> tailMapKV(Comparable fkey) throws IOException {
+		return pairs(data.tailMap(fkey));
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Stream<?> tailMapKVStream(Comparable fkey) throws IOException {
+		return new SackStream(tailMapKV(fkey));
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> subMap(Comparable fkey, Comparable tkey) throws IOException {
+		return data.subMap(fkey, tkey).keySet().iterator();
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Stream<?> subMapStream(Comparable fkey, Comparable tkey) throws IOException {
+		return new SackStream(subMap(fkey, tkey));
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> subMapKV(Comparable fkey, Comparable tkey) throws IOException {
+		return pairs(data.subMap(fkey, tkey));
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Stream<?> subMapKVStream(Comparable fkey, Comparable tkey) throws IOException {
+		return new SackStream(subMapKV(fkey, tkey));
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> headSet(Comparable tkey) throws IOException {
+		return headMap(tkey);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Stream<?> headSetStream(Comparable tkey) throws IOException {
+		return headMapStream(tkey);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> headSetKV(Comparable tkey) throws IOException {
+		return headMapKV(tkey);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Stream<?> headSetKVStream(Comparable tkey) throws IOException {
+		return headMapKVStream(tkey);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> tailSet(Comparable fkey) throws IOException {
+		return tailMap(fkey);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Stream<?> tailSetStream(Comparable fkey) throws IOException {
+		return tailMapStream(fkey);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> tailSetKV(Comparable fkey) throws IOException {
+		return tailMapKV(fkey);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Stream<?> tailSetKVStream(Comparable fkey) throws IOException {
+		return tailMapKVStream(fkey);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> subSet(Comparable fkey, Comparable tkey) throws IOException {
+		return subMap(fkey, tkey);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Stream<?> subSetStream(Comparable fkey, Comparable tkey) throws IOException {
+		return subMapStream(fkey, tkey);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> subSetKV(Comparable fkey, Comparable tkey) throws IOException {
+		return subMapKV(fkey, tkey);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Stream<?> subSetKVStream(Comparable fkey, Comparable tkey) throws IOException {
+		return subMapKVStream(fkey, tkey);
+	}
+
+	@Override
+	public Flow.Publisher<Object> entrySetPublisher() {
+		return new SackPublisher(() -> entries(data));
+	}
+
+	@Override
+	public Flow.Publisher<Object> keySetPublisher() {
+		return new SackPublisher(() -> data.keySet().iterator());
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> headMapPublisher(Comparable tkey) {
+		return new SackPublisher(() -> data.headMap(tkey).keySet().iterator());
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> headMapKVPublisher(Comparable tkey) {
+		return new SackPublisher(() -> pairs(data.headMap(tkey)));
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> tailMapPublisher(Comparable fkey) {
+		return new SackPublisher(() -> data.tailMap(fkey).keySet().iterator());
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> tailMapKVPublisher(Comparable fkey) {
+		return new SackPublisher(() -> pairs(data.tailMap(fkey)));
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> subMapPublisher(Comparable fkey, Comparable tkey) {
+		return new SackPublisher(() -> data.subMap(fkey, tkey).keySet().iterator());
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> subMapKVPublisher(Comparable fkey, Comparable tkey) {
+		return new SackPublisher(() -> pairs(data.subMap(fkey, tkey)));
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public CompletableFuture<Object> getAsync(Comparable tkey) {
+		try {
+			return CompletableFuture.completedFuture(get(tkey));
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+	/**
+	* @param tkeys The keys for the values
+	* @return List of {@link com.neocoretechs.rocksack.KeyValue} in order of the keys, null for keys not found
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public List<Object> getAll(List<? extends Comparable> tkeys) throws IOException {
+		ArrayList<Object> ret = new ArrayList<Object>(tkeys.size());
+		for(Comparable k : tkeys)
+			ret.add(get(k));
+		return ret;
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public CompletableFuture<List<Object>> getAllAsync(List<? extends Comparable> tkeys) {
+		try {
+			return CompletableFuture.completedFuture(getAll(tkeys));
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+	/**
+	 * Drop the column family, and with it the entries in memory.
+	 * @throws IOException
+	 */
+	@Override
+	public void dropColumn() throws IOException {
+		super.dropColumn();
+		data.clear();
+	}
+}
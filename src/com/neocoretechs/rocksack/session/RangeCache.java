@@ -0,0 +1,347 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.rocksdb.Transaction;
+
+import com.neocoretechs.rocksack.iterator.KeyValuePair;
+
+/**
+ * On heap cache of the results of range queries over a column family, so a range read again is served from the
+ * materialized result instead of a scan deserializing every key and value. Results are keyed by their bounds, from
+ * inclusive and to exclusive, either of which is open for a head or tail range, and the key only ranges are served from
+ * the key/value result of the same bounds. One cache serves all maps of the column family.<p>
+ * A put or remove of a key invalidates the results of the ranges containing it, the others stay. Writes of a transaction
+ * invalidate when it commits. A result loaded while a write ran is not admitted. The cache is bounded by the total
+ * entries of its results, the least recently used results are evicted to stay under it, and a range longer than the bound
+ * is scanned and not cached. Values of cached results are shared by all readers and must not be modified.<p>
+ * Enabled per class with the cache.range_max_entries option of the {@link TuningConfig}, or the rangeCacheEntries
+ * element of {@link com.neocoretechs.rocksack.DatabaseClass}. Meant for maps read far more often than written, the
+ * invalidation visits every cached range.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public final class RangeCache {
+	private static boolean DEBUG = false;
+	/** option giving the maximum total entries of the cached ranges of a column family */
+	static final String RANGE_MAX_ENTRIES = "range_max_entries";
+	// caches by database path and column family
+	private static ConcurrentHashMap<String, RangeCache> caches = new ConcurrentHashMap<String, RangeCache>();
+	// keys written by open transactions per cache, invalidated when the transaction commits
+	private static ConcurrentHashMap<Transaction, ConcurrentHashMap<RangeCache, Set<Object>>> pending = new ConcurrentHashMap<Transaction, ConcurrentHashMap<RangeCache, Set<Object>>>();
+
+	private final String name;
+	private final long maximum;
+	// access ordered, least recent first, guarded by this
+	private final LinkedHashMap<Range, List<KeyValuePair>> results = new LinkedHashMap<Range, List<KeyValuePair>>(16, 0.75f, true);
+	private long weight = 0;
+	// advanced by every write, a load begun before is not admitted
+	private final AtomicLong generation = new AtomicLong();
+	private LongAdder hits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+	private LongAdder evictions = new LongAdder();
+	private LongAdder invalidations = new LongAdder();
+
+	/**
+	 * Bounds of a range, null for an open end.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final class Range {
+		final Comparable from;
+		final Comparable to;
+		Range(Comparable from, Comparable to) {
+			this.from = from;
+			this.to = to;
+		}
+		@SuppressWarnings("unchecked")
+		boolean contains(Object key) {
+			return (from == null || from.compareTo(key) <= 0) && (to == null || to.compareTo(key) > 0);
+		}
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Range))
+				return false;
+			Range r = (Range)o;
+			return Objects.equals(from, r.from) && Objects.equals(to, r.to);
+		}
+		@Override
+		public int hashCode() {
+			return Objects.hash(from, to);
+		}
+		@Override
+		public String toString() {
+			return "["+from+","+to+")";
+		}
+	}
+	/**
+	 * Scans the key/value range from the database.
+	 */
+	@FunctionalInterface
+	interface Loader {
+		Iterator<?> load() throws IOException;
+	}
+
+	private RangeCache(String name, long maximum) {
+		this.name = name;
+		this.maximum = maximum;
+	}
+	/**
+	 * The range cache of the column family, created on first use if its options enable one.
+	 * @param dbPath the database path
+	 * @param cfName the column family, or null for the class of the database
+	 * @return the cache, or null if the column family has none
+	 */
+	static RangeCache forColumnFamily(String dbPath, String cfName) {
+		Map<String, String> opts = DatabaseManager.getInstance().getObjectCacheOptions(dbPath, cfName);
+		long entries = opts.containsKey(RANGE_MAX_ENTRIES) ? Long.parseLong(opts.get(RANGE_MAX_ENTRIES)) : 0;
+		// a pinned column family serves its ranges from memory already
+		if(entries <= 0 || Boolean.parseBoolean(opts.get(PinnedMap.PINNED)))
+			return null;
+		String name = dbPath+":"+(cfName == null ? "default" : cfName);
+		return caches.computeIfAbsent(name, k -> {
+			if(DEBUG)
+				System.out.printf("RangeCache.forColumnFamily %s max entries:%d%n", k, entries);
+			return new RangeCache(k, entries);
+		});
+	}
+	/**
+	 * Get the range, scanning and admitting it if not cached.
+	 * @param from the first key inclusive, or null from the first key of the column family
+	 * @param to the last key exclusive, or null to the last key of the column family
+	 * @param keys true for the keys of the range, false for {@link KeyValuePair}
+	 * @param loader scans the range as KeyValuePairs
+	 * @return iterator over the range
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	Iterator<?> get(Comparable from, Comparable to, boolean keys, Loader loader) throws IOException {
+		Range range = new Range(from, to);
+		List<KeyValuePair> result;
+		synchronized(this) {
+			result = results.get(range);
+		}
+		if(result != null) {
+			hits.increment();
+			return iterator(result, keys);
+		}
+		misses.increment();
+		long gen = generation.get();
+		Iterator<?> it = loader.load();
+		ArrayList<KeyValuePair> loaded = new ArrayList<KeyValuePair>();
+		while(it.hasNext()) {
+			loaded.add((KeyValuePair)it.next());
+			if(loaded.size() > maximum) {
+				// too long to cache, hand over what was read followed by the rest of the scan
+				if(DEBUG)
+					System.out.printf("RangeCache.get %s range %s over maximum%n", name, range);
+				return new Remainder(loaded, it, keys);
+			}
+		}
+		if(it instanceof AutoCloseable) {
+			try {
+				((AutoCloseable)it).close();
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+		}
+		admit(range, loaded, gen);
+		return iterator(loaded, keys);
+	}
+
+	private synchronized void admit(Range range, List<KeyValuePair> loaded, long gen) {
+		if(generation.get() != gen)
+			return;
+		List<KeyValuePair> old = results.put(range, loaded);
+		if(old != null)
+			weight -= old.size();
+		weight += loaded.size();
+		Iterator<Map.Entry<Range, List<KeyValuePair>>> lru = results.entrySet().iterator();
+		while(weight > maximum && lru.hasNext()) {
+			Map.Entry<Range, List<KeyValuePair>> e = lru.next();
+			weight -= e.getValue().size();
+			lru.remove();
+			evictions.increment();
+		}
+	}
+	/**
+	 * @return copies of the pairs, so the cached pairs are not changed by setValue, or the keys
+	 */
+	private static Iterator<?> iterator(List<KeyValuePair> result, boolean keys) {
+		if(keys)
+			return result.stream().map(KeyValuePair::getKey).iterator();
+		return result.stream().map(p -> new KeyValuePair(p.getKey(), p.getValue())).iterator();
+	}
+	/**
+	 * Iterates the pairs read by a load that was not admitted, then the remainder of its scan.
+	 */
+	private static final class Remainder implements Iterator<Object>, AutoCloseable {
+		private final Iterator<KeyValuePair> head;
+		private final Iterator<?> tail;
+		private final boolean keys;
+		Remainder(List<KeyValuePair> read, Iterator<?> tail, boolean keys) {
+			this.head = read.iterator();
+			this.tail = tail;
+			this.keys = keys;
+		}
+		@Override
+		public boolean hasNext() {
+			return head.hasNext() || tail.hasNext();
+		}
+		@Override
+		public Object next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			KeyValuePair p = head.hasNext() ? head.next() : (KeyValuePair)tail.next();
+			return keys ? p.getKey() : p;
+		}
+		@Override
+		public void close() {
+			if(tail instanceof AutoCloseable) {
+				try {
+					((AutoCloseable)tail).close();
+				} catch (Exception e) {}
+			}
+		}
+	}
+	/**
+	 * Invalidate the cached ranges containing the key.
+	 * @param key the key written
+	 */
+	synchronized void invalidate(Object key) {
+		generation.incrementAndGet();
+		Iterator<Map.Entry<Range, List<KeyValuePair>>> it = results.entrySet().iterator();
+		while(it.hasNext()) {
+			Map.Entry<Range, List<KeyValuePair>> e = it.next();
+			if(e.getKey().contains(key)) {
+				weight -= e.getValue().size();
+				it.remove();
+				invalidations.increment();
+			}
+		}
+	}
+	/**
+	 * Invalidate the cached ranges containing any of the keys, in one pass over the ranges.
+	 * @param keys the keys written
+	 */
+	synchronized void invalidate(Collection<?> keys) {
+		if(keys.isEmpty())
+			return;
+		generation.incrementAndGet();
+		Iterator<Map.Entry<Range, List<KeyValuePair>>> it = results.entrySet().iterator();
+		while(it.hasNext()) {
+			Map.Entry<Range, List<KeyValuePair>> e = it.next();
+			for(Object key : keys) {
+				if(e.getKey().contains(key)) {
+					weight -= e.getValue().size();
+					it.remove();
+					invalidations.increment();
+					break;
+				}
+			}
+		}
+	}
+	/**
+	 * Remove all cached ranges, as when the column family is dropped.
+	 */
+	synchronized void clear() {
+		generation.incrementAndGet();
+		invalidations.add(results.size());
+		results.clear();
+		weight = 0;
+	}
+	/**
+	 * Record a key written by a transaction, the ranges containing it are invalidated when the transaction commits.
+	 * @param txn the transaction
+	 * @param key the key
+	 */
+	void written(Transaction txn, Object key) {
+		pending.computeIfAbsent(txn, k -> new ConcurrentHashMap<RangeCache, Set<Object>>())
+			.computeIfAbsent(this, k -> ConcurrentHashMap.newKeySet()).add(key);
+	}
+	/**
+	 * Invalidate the ranges holding keys written by the transaction, which has committed.
+	 * @param txn the transaction
+	 */
+	static void committed(Transaction txn) {
+		Map<RangeCache, Set<Object>> byCache = pending.remove(txn);
+		if(byCache == null)
+			return;
+		for(Map.Entry<RangeCache, Set<Object>> e : byCache.entrySet())
+			for(Object key : e.getValue())
+				e.getKey().invalidate(key);
+	}
+	/**
+	 * Forget the keys written by the transaction, which was rolled back or removed.
+	 * @param txn the transaction
+	 */
+	static void discard(Transaction txn) {
+		pending.remove(txn);
+	}
+	/**
+	 * @return ranges answered from the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+	/**
+	 * @return ranges scanned from the database
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+	/**
+	 * @return hits over all range queries, 0 if there were none
+	 */
+	public double getHitRate() {
+		long h = hits.sum(), t = h + misses.sum();
+		return t == 0 ? 0 : (double)h / t;
+	}
+	/**
+	 * @return ranges evicted to stay under the bound
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+	/**
+	 * @return ranges removed by writes and clears
+	 */
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+	/**
+	 * @return the number of cached ranges
+	 */
+	public synchronized int size() {
+		return results.size();
+	}
+	/**
+	 * @return the total entries of the cached ranges
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+	/**
+	 * @return the bound of the total entries
+	 */
+	public long getMaximum() {
+		return maximum;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RangeCache %s ranges:%d entries:%d/%d hits:%d misses:%d evictions:%d invalidations:%d",
+				name, size(), getWeight(), maximum, getHits(), getMisses(), getEvictions(), getInvalidations());
+	}
+}
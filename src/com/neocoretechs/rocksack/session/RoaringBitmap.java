@@ -0,0 +1,424 @@
+package com.neocoretechs.rocksack.session;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Compressed set of non negative ints in the manner of Roaring bitmaps. Values are split by their high 16 bits into
+ * chunks of 65536, each held in a container of the low 16 bits: a sorted char array while it holds up to 4096 values,
+ * a bitmap of 1024 longs above that. Containers are kept in order of their high bits, so iteration is in ascending order.<p>
+ * Each container serializes on its own, so a bitmap index stores one entry per chunk and a write rewrites one container.
+ * Not thread safe.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public final class RoaringBitmap implements Iterable<Integer> {
+	// most values held in a sorted array container
+	static final int ARRAY_MAX = 4096;
+	private static final byte ARRAY = 0;
+	private static final byte BITMAP = 1;
+	// empty container, copying a container by or
+	private static final Container EMPTY = new ArrayContainer(new char[1], 0);
+	private char[] keys = new char[4];
+	private Container[] containers = new Container[4];
+	private int size = 0;
+
+	/**
+	 * Low 16 bits of the values of one chunk.
+	 */
+	static abstract class Container {
+		abstract Container add(char x);
+		abstract Container remove(char x);
+		abstract boolean contains(char x);
+		abstract int cardinality();
+		abstract long[] words();
+		abstract PrimitiveIterator.OfInt iterator();
+		abstract byte[] serialize();
+		/**
+		 * @return the container of the set bits, an array container if few enough
+		 */
+		static Container of(long[] words) {
+			int card = 0;
+			for(long w : words)
+				card += Long.bitCount(w);
+			if(card > ARRAY_MAX)
+				return new BitmapContainer(words, card);
+			char[] a = new char[Math.max(card, 1)];
+			int n = 0;
+			for(int i = 0; i < words.length; i++) {
+				long w = words[i];
+				while(w != 0) {
+					a[n++] = (char)(i * 64 + Long.numberOfTrailingZeros(w));
+					w &= w - 1;
+				}
+			}
+			return new ArrayContainer(a, n);
+		}
+		static Container deserialize(byte[] b) {
+			ByteBuffer bb = ByteBuffer.wrap(b);
+			if(bb.get() == ARRAY) {
+				int n = bb.getInt();
+				char[] a = new char[Math.max(n, 1)];
+				for(int i = 0; i < n; i++)
+					a[i] = bb.getChar();
+				return new ArrayContainer(a, n);
+			}
+			long[] words = new long[1024];
+			int card = 0;
+			for(int i = 0; i < words.length; i++) {
+				words[i] = bb.getLong();
+				card += Long.bitCount(words[i]);
+			}
+			return new BitmapContainer(words, card);
+		}
+		Container and(Container c) {
+			if(this instanceof ArrayContainer) {
+				ArrayContainer a = (ArrayContainer)this;
+				char[] r = new char[Math.max(a.size, 1)];
+				int n = 0;
+				for(int i = 0; i < a.size; i++)
+					if(c.contains(a.values[i]))
+						r[n++] = a.values[i];
+				return new ArrayContainer(r, n);
+			}
+			if(c instanceof ArrayContainer)
+				return c.and(this);
+			long[] w = words(), o = c.words();
+			for(int i = 0; i < w.length; i++)
+				w[i] &= o[i];
+			return of(w);
+		}
+		Container or(Container c) {
+			long[] w = words(), o = c.words();
+			for(int i = 0; i < w.length; i++)
+				w[i] |= o[i];
+			return of(w);
+		}
+		Container andNot(Container c) {
+			long[] w = words(), o = c.words();
+			for(int i = 0; i < w.length; i++)
+				w[i] &= ~o[i];
+			return of(w);
+		}
+	}
+
+	static final class ArrayContainer extends Container {
+		char[] values;
+		int size;
+		ArrayContainer(char[] values, int size) {
+			this.values = values;
+			this.size = size;
+		}
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+		@Override
+		Container add(char x) {
+			int i = Arrays.binarySearch(values, 0, size, x);
+			if(i >= 0)
+				return this;
+			if(size == ARRAY_MAX) {
+				long[] w = words();
+				w[x >>> 6] |= 1L << x;
+				return new BitmapContainer(w, size + 1);
+			}
+			i = -i - 1;
+			if(size == values.length)
+				values = Arrays.copyOf(values, Math.min(ARRAY_MAX, size * 2));
+			System.arraycopy(values, i, values, i + 1, size - i);
+			values[i] = x;
+			++size;
+			return this;
+		}
+		@Override
+		Container remove(char x) {
+			int i = Arrays.binarySearch(values, 0, size, x);
+			if(i >= 0) {
+				System.arraycopy(values, i + 1, values, i, size - i - 1);
+				--size;
+			}
+			return this;
+		}
+		@Override
+		boolean contains(char x) {
+			return Arrays.binarySearch(values, 0, size, x) >= 0;
+		}
+		@Override
+		int cardinality() {
+			return size;
+		}
+		@Override
+		long[] words() {
+			long[] w = new long[1024];
+			for(int i = 0; i < size; i++)
+				w[values[i] >>> 6] |= 1L << values[i];
+			return w;
+		}
+		@Override
+		PrimitiveIterator.OfInt iterator() {
+			return new PrimitiveIterator.OfInt() {
+				int i = 0;
+				@Override
+				public boolean hasNext() {
+					return i < size;
+				}
+				@Override
+				public int nextInt() {
+					if(i >= size)
+						throw new NoSuchElementException();
+					return values[i++];
+				}
+			};
+		}
+		@Override
+		byte[] serialize() {
+			ByteBuffer bb = ByteBuffer.allocate(5 + size * 2);
+			bb.put(ARRAY).putInt(size);
+			for(int i = 0; i < size; i++)
+				bb.putChar(values[i]);
+			return bb.array();
+		}
+	}
+
+	static final class BitmapContainer extends Container {
+		final long[] bits;
+		int card;
+		BitmapContainer(long[] bits, int card) {
+			this.bits = bits;
+			this.card = card;
+		}
+		@Override
+		Container add(char x) {
+			long prev = bits[x >>> 6];
+			bits[x >>> 6] |= 1L << x;
+			if(prev != bits[x >>> 6])
+				++card;
+			return this;
+		}
+		@Override
+		Container remove(char x) {
+			long prev = bits[x >>> 6];
+			bits[x >>> 6] &= ~(1L << x);
+			if(prev != bits[x >>> 6] && --card <= ARRAY_MAX)
+				return of(bits);
+			return this;
+		}
+		@Override
+		boolean contains(char x) {
+			return (bits[x >>> 6] & (1L << x)) != 0;
+		}
+		@Override
+		int cardinality() {
+			return card;
+		}
+		@Override
+		long[] words() {
+			return bits.clone();
+		}
+		@Override
+		PrimitiveIterator.OfInt iterator() {
+			return new PrimitiveIterator.OfInt() {
+				int i = 0;
+				long w = bits[0];
+				@Override
+				public boolean hasNext() {
+					while(w == 0 && i < bits.length - 1)
+						w = bits[++i];
+					return w != 0;
+				}
+				@Override
+				public int nextInt() {
+					if(!hasNext())
+						throw new NoSuchElementException();
+					int x = i * 64 + Long.numberOfTrailingZeros(w);
+					w &= w - 1;
+					return x;
+				}
+			};
+		}
+		@Override
+		byte[] serialize() {
+			ByteBuffer bb = ByteBuffer.allocate(1 + bits.length * 8);
+			bb.put(BITMAP);
+			for(long w : bits)
+				bb.putLong(w);
+			return bb.array();
+		}
+	}
+
+	private int find(char high) {
+		return Arrays.binarySearch(keys, 0, size, high);
+	}
+
+	private void insert(int i, char high, Container c) {
+		if(size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(containers, i, containers, i + 1, size - i);
+		keys[i] = high;
+		containers[i] = c;
+		++size;
+	}
+
+	private void delete(int i) {
+		System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+		System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+		containers[--size] = null;
+	}
+	/**
+	 * @param x the value, not negative
+	 */
+	public void add(int x) {
+		char high = (char)(x >>> 16);
+		int i = find(high);
+		if(i < 0)
+			insert(-i - 1, high, new ArrayContainer().add((char)x));
+		else
+			containers[i] = containers[i].add((char)x);
+	}
+	/**
+	 * @param x the value
+	 */
+	public void remove(int x) {
+		int i = find((char)(x >>> 16));
+		if(i < 0)
+			return;
+		containers[i] = containers[i].remove((char)x);
+		if(containers[i].cardinality() == 0)
+			delete(i);
+	}
+
+	public boolean contains(int x) {
+		int i = find((char)(x >>> 16));
+		return i >= 0 && containers[i].contains((char)x);
+	}
+	/**
+	 * @return the number of values
+	 */
+	public long cardinality() {
+		long n = 0;
+		for(int i = 0; i < size; i++)
+			n += containers[i].cardinality();
+		return n;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	/**
+	 * @return a new bitmap of the values in both
+	 */
+	public RoaringBitmap and(RoaringBitmap b) {
+		RoaringBitmap r = new RoaringBitmap();
+		int i = 0, j = 0;
+		while(i < size && j < b.size) {
+			if(keys[i] < b.keys[j])
+				++i;
+			else if(keys[i] > b.keys[j])
+				++j;
+			else {
+				Container c = containers[i++].and(b.containers[j++]);
+				if(c.cardinality() > 0)
+					r.insert(r.size, keys[i - 1], c);
+			}
+		}
+		return r;
+	}
+	/**
+	 * @return a new bitmap of the values in either
+	 */
+	public RoaringBitmap or(RoaringBitmap b) {
+		RoaringBitmap r = new RoaringBitmap();
+		int i = 0, j = 0;
+		while(i < size || j < b.size) {
+			if(j == b.size || (i < size && keys[i] < b.keys[j])) {
+				r.insert(r.size, keys[i], containers[i].or(EMPTY));
+				++i;
+			} else if(i == size || keys[i] > b.keys[j]) {
+				r.insert(r.size, b.keys[j], b.containers[j].or(EMPTY));
+				++j;
+			} else {
+				r.insert(r.size, keys[i], containers[i++].or(b.containers[j++]));
+			}
+		}
+		return r;
+	}
+	/**
+	 * @return a new bitmap of the values in this and not in the other
+	 */
+	public RoaringBitmap andNot(RoaringBitmap b) {
+		RoaringBitmap r = new RoaringBitmap();
+		for(int i = 0; i < size; i++) {
+			int j = b.find(keys[i]);
+			Container c = j < 0 ? containers[i].or(EMPTY) : containers[i].andNot(b.containers[j]);
+			if(c.cardinality() > 0)
+				r.insert(r.size, keys[i], c);
+		}
+		return r;
+	}
+	/**
+	 * @return the values in ascending order
+	 */
+	public PrimitiveIterator.OfInt intIterator() {
+		return new PrimitiveIterator.OfInt() {
+			int i = 0;
+			PrimitiveIterator.OfInt it = size > 0 ? containers[0].iterator() : null;
+			@Override
+			public boolean hasNext() {
+				while(it != null && !it.hasNext())
+					it = ++i < size ? containers[i].iterator() : null;
+				return it != null;
+			}
+			@Override
+			public int nextInt() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				return (keys[i] << 16) | it.nextInt();
+			}
+		};
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt iterator() {
+		return intIterator();
+	}
+	/**
+	 * @return the high 16 bits of the chunks holding values, ascending
+	 */
+	char[] highs() {
+		return Arrays.copyOf(keys, size);
+	}
+	/**
+	 * @param high the high 16 bits of a chunk
+	 * @return the serialized container of the chunk, or null if it holds no values
+	 */
+	byte[] serializeChunk(int high) {
+		int i = find((char)high);
+		return i < 0 ? null : containers[i].serialize();
+	}
+	/**
+	 * Replace the container of a chunk with a serialized one.
+	 * @param high the high 16 bits of the chunk
+	 * @param b the container from {@link #serializeChunk(int)}
+	 */
+	void putChunk(int high, byte[] b) {
+		Container c = Container.deserialize(b);
+		int i = find((char)high);
+		if(i >= 0) {
+			if(c.cardinality() == 0)
+				delete(i);
+			else
+				containers[i] = c;
+		} else if(c.cardinality() > 0)
+			insert(-i - 1, (char)high, c);
+	}
+
+	@Override
+	public String toString() {
+		return "RoaringBitmap containers:"+size+" cardinality:"+cardinality();
+	}
+}
@@ -0,0 +1,732 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Transaction;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import com.neocoretechs.rocksack.BitmapIndex;
+import com.neocoretechs.rocksack.IndexKey;
+import com.neocoretechs.rocksack.SecondaryIndex;
+import com.neocoretechs.rocksack.SerializedComparator;
+import com.neocoretechs.rocksack.iterator.AbstractIterator;
+import com.neocoretechs.rocksack.iterator.KeyValuePair;
+
+/**
+ * Maintains the {@link SecondaryIndex} entries of the values of a map in the index column family beside the column
+ * family of the map, named after it with the suffix #index. Each entry is an {@link IndexKey} of the index name, the
+ * indexed value and the primary key, with an empty value. The column family is created by the first put of a value
+ * with indexes.<p>
+ * A put reads the previous value to delete its entries, then writes the entries of the new value and the value itself
+ * in one write batch, or in the transaction of a {@link TransactionalMap}. Writes of a key made outside a transaction
+ * are serialized on a stripe of the key, so the previous value read is the one replaced.<p>
+ * The {@link BitmapIndex} bitmaps of the map are maintained by its {@link BitmapIndexer} in the same write batch or
+ * transaction, from the same previous value.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+final class SecondaryIndexer {
+	private static boolean DEBUG = false;
+	/** suffix of the name of the index column family to the name of the column family of the map */
+	static final String INDEX_SUFFIX = "#index";
+	// keys read per multiGet of the primary entries of an index range
+	private static final int FETCH_SIZE = 256;
+	private static final byte[] EMPTY = new byte[0];
+	private static final int STRIPES = 64;
+	// indexed fields and methods by class, empty for classes without indexes
+	private static ConcurrentHashMap<Class<?>, Accessor[]> indexAccessors = new ConcurrentHashMap<Class<?>, Accessor[]>();
+	private static ConcurrentHashMap<Class<?>, Accessor[]> bitmapAccessors = new ConcurrentHashMap<Class<?>, Accessor[]>();
+
+	private final Session session;
+	private final Family index;
+	private final BitmapIndexer bitmaps;
+	private final Object[] stripes = new Object[STRIPES];
+
+	/**
+	 * Reads one index of a value.
+	 */
+	static final class Accessor {
+		final String name;
+		final AccessibleObject member;
+		Accessor(String name, AccessibleObject member) {
+			this.name = name;
+			this.member = member;
+			member.setAccessible(true);
+		}
+		@SuppressWarnings("rawtypes")
+		Comparable get(Object o) throws IOException {
+			Object v;
+			try {
+				v = member instanceof Field ? ((Field)member).get(o) : ((Method)member).invoke(o);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw new IOException(e);
+			}
+			if(v != null && !(v instanceof Comparable))
+				throw new IllegalArgumentException("Index "+name+" of "+o.getClass().getName()+" is not Comparable: "+v.getClass().getName());
+			return (Comparable)v;
+		}
+	}
+	/**
+	 * A column family kept beside the one of a map, bound on construction and reopen of the session, created by the
+	 * first write needing it and dropped with the column family of the map.
+	 */
+	static final class Family {
+		private final Session session;
+		final String name;
+		private volatile ColumnFamilyHandle handle = null;
+
+		Family(Session session, String name) throws RocksDBException {
+			this.session = session;
+			this.name = name;
+			bind();
+			session.addRebinder(this::bind);
+		}
+		/**
+		 * Bind the handle of the column family if the database has one.
+		 * @throws RocksDBException
+		 */
+		private void bind() throws RocksDBException {
+			ColumnFamilyHandle found = null;
+			for(ColumnFamilyHandle cfh : session.columnFamilyHandles) {
+				if(new String(cfh.getName()).equals(name)) {
+					found = cfh;
+					break;
+				}
+			}
+			handle = found;
+		}
+		/**
+		 * @return the handle, or null if the database has no such column family
+		 */
+		ColumnFamilyHandle handle() {
+			return handle;
+		}
+		/**
+		 * @return the handle of the column family, created if the database has none
+		 * @throws IOException
+		 */
+		synchronized ColumnFamilyHandle create() throws IOException {
+			if(handle == null) {
+				try {
+					ColumnFamilyDescriptor cfd = new ColumnFamilyDescriptor(name.getBytes(), DatabaseManager.getInstance().getColumnFamilyOptions(session.getDBname(), name));
+					session.columnFamilyDescriptor.add(cfd);
+					handle = session.getKVStore().createColumnFamily(cfd);
+				} catch (RocksDBException e) {
+					throw new IOException(e);
+				}
+				if(DEBUG)
+					System.out.printf("SecondaryIndexer created %s in %s%n", name, session.getDBname());
+			}
+			return handle;
+		}
+		/**
+		 * Drop the column family, if there is one.
+		 * @throws IOException
+		 */
+		synchronized void drop() throws IOException {
+			if(handle == null)
+				return;
+			try {
+				session.getKVStore().dropColumnFamily(handle);
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+			session.columnFamilyDescriptor.removeIf(cfd -> new String(cfd.getName()).equals(name));
+			handle = null;
+		}
+	}
+	/**
+	 * Reads a list of primary keys from the database or transaction.
+	 */
+	@FunctionalInterface
+	interface Fetcher {
+		@SuppressWarnings("rawtypes")
+		List<Object> fetch(List<Comparable> keys) throws IOException;
+	}
+
+	/**
+	 * @param session the session of the map
+	 * @param cfName the name of the column family of the map, the class for the default column family
+	 * @throws RocksDBException
+	 */
+	SecondaryIndexer(Session session, String cfName) throws RocksDBException {
+		this.session = session;
+		this.index = new Family(session, cfName+INDEX_SUFFIX);
+		this.bitmaps = new BitmapIndexer(session, cfName);
+		for(int i = 0; i < STRIPES; i++)
+			stripes[i] = new Object();
+	}
+	/**
+	 * Drop the index and bitmap column families with the column family of the map.
+	 * @throws IOException
+	 */
+	void drop() throws IOException {
+		index.drop();
+		bitmaps.drop();
+	}
+	/**
+	 * @param name a column family name
+	 * @return true if it names an index or bitmap column family
+	 */
+	static boolean isIndex(String name) {
+		return name.endsWith(INDEX_SUFFIX) || BitmapIndexer.isBitmap(name);
+	}
+	/**
+	 * @param clazz the class of a value
+	 * @param bitmap true for the {@link BitmapIndex} members, false for the {@link SecondaryIndex} members
+	 * @return the indexed fields and methods of the class and its superclasses, cached per class
+	 */
+	static Accessor[] accessors(Class<?> clazz, boolean bitmap) {
+		Class<? extends Annotation> type = bitmap ? BitmapIndex.class : SecondaryIndex.class;
+		return (bitmap ? bitmapAccessors : indexAccessors).computeIfAbsent(clazz, c -> {
+			ArrayList<Accessor> found = new ArrayList<Accessor>();
+			for(Class<?> k = c; k != null && k != Object.class; k = k.getSuperclass()) {
+				for(Field f : k.getDeclaredFields()) {
+					String n = name(f.getAnnotation(type));
+					if(n != null)
+						found.add(new Accessor(n.isEmpty() ? f.getName() : n, f));
+				}
+				for(Method m : k.getDeclaredMethods()) {
+					String n = name(m.getAnnotation(type));
+					if(n != null && m.getParameterCount() == 0)
+						found.add(new Accessor(n.isEmpty() ? m.getName() : n, m));
+				}
+			}
+			return found.toArray(new Accessor[found.size()]);
+		});
+	}
+	/**
+	 * @return the name element of the index annotation, or null if there is none
+	 */
+	private static String name(Annotation a) {
+		if(a instanceof SecondaryIndex)
+			return ((SecondaryIndex)a).name();
+		if(a instanceof BitmapIndex)
+			return ((BitmapIndex)a).name();
+		return null;
+	}
+	/**
+	 * @param o a value, or null
+	 * @return true if the class of the value has secondary or bitmap indexes
+	 */
+	static boolean isIndexed(Object o) {
+		return o != null && (accessors(o.getClass(), false).length > 0 || BitmapIndexer.isIndexed(o));
+	}
+	/**
+	 * @return true if the map has an index or bitmap column family, so its writes maintain it
+	 */
+	boolean isActive() {
+		return index.handle() != null || bitmaps.isActive();
+	}
+	/**
+	 * @return true if a put of the value must maintain the index or bitmap column family
+	 */
+	boolean maintains(Object value) {
+		return isActive() || isIndexed(value);
+	}
+	/**
+	 * @return the bitmap indexer of the map
+	 */
+	BitmapIndexer getBitmaps() {
+		return bitmaps;
+	}
+	/**
+	 * @return the index column family, created if the value has secondary indexes, or null if there is none to maintain
+	 */
+	private ColumnFamilyHandle prepare(Object value) throws IOException {
+		return value != null && accessors(value.getClass(), false).length > 0 ? index.create() : index.handle();
+	}
+	/**
+	 * @return the serialized index entries of the value under the key
+	 */
+	@SuppressWarnings("rawtypes")
+	private static List<byte[]> entries(Comparable key, Object value) throws IOException {
+		if(value == null)
+			return Collections.emptyList();
+		Accessor[] acc = accessors(value.getClass(), false);
+		ArrayList<byte[]> ret = new ArrayList<byte[]>(acc.length);
+		for(Accessor a : acc) {
+			Comparable v = a.get(value);
+			if(v != null)
+				ret.add(SerializedComparator.serializeObject(new IndexKey(a.name, v, key)));
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the lock of the key, held by indexed and conditional writes outside a transaction
+	 */
+	@SuppressWarnings("rawtypes")
+	Object stripe(Comparable key) {
+		return stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+	}
+	/**
+	 * Put the value and its index entries in one write batch, deleting the entries of the previous value.
+	 * @param cfh the column family of the map
+	 * @param key the key
+	 * @param value the value
+	 * @return true
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	boolean put(ColumnFamilyHandle cfh, Comparable key, Object value) throws IOException {
+		ColumnFamilyHandle ich = prepare(value);
+		ColumnFamilyHandle bch = bitmaps.prepare(value);
+		bitmaps.recover(cfh);
+		synchronized(stripe(key)) {
+			try (WriteBatch wb = new WriteBatch()) {
+				byte[] k = SerializedComparator.serializeObject(key);
+				byte[] old = session.getKVStore().get(cfh, k);
+				Object o = old == null ? null : SerializedComparator.deserializeObject(old);
+				if(ich != null) {
+					for(byte[] e : entries(key, o))
+						wb.delete(ich, e);
+					for(byte[] e : entries(key, value))
+						wb.put(ich, e, EMPTY);
+				}
+				wb.put(cfh, k, SerializedComparator.serializeObject(value));
+				write(wb, bch, key, o, value);
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+		}
+		return true;
+	}
+	/**
+	 * Remove the value and its index entries in one write batch.
+	 * @param cfh the column family of the map
+	 * @param key the key
+	 * @return the previous value, or null if not present
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	Object remove(ColumnFamilyHandle cfh, Comparable key) throws IOException {
+		ColumnFamilyHandle ich = index.handle();
+		ColumnFamilyHandle bch = bitmaps.getHandle();
+		bitmaps.recover(cfh);
+		synchronized(stripe(key)) {
+			try (WriteBatch wb = new WriteBatch()) {
+				byte[] k = SerializedComparator.serializeObject(key);
+				byte[] old = session.getKVStore().get(cfh, k);
+				if(old == null)
+					return null;
+				Object o = SerializedComparator.deserializeObject(old);
+				if(ich != null)
+					for(byte[] e : entries(key, o))
+						wb.delete(ich, e);
+				wb.delete(cfh, k);
+				write(wb, bch, key, o, null);
+				return o;
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+	/**
+	 * Write the batch, through the bitmap indexer if the map has bitmaps, which adds the bitmap updates of the key.
+	 */
+	@SuppressWarnings("rawtypes")
+	private void write(WriteBatch wb, ColumnFamilyHandle bch, Comparable key, Object old, Object value) throws IOException, RocksDBException {
+		if(bch != null) {
+			bitmaps.write(wb, bch, key, old, value);
+			return;
+		}
+		try (WriteOptions wo = new WriteOptions()) {
+			session.getKVStore().write(wo, wb);
+		}
+	}
+	/**
+	 * Write a chunk of puts and removes with their index entries and bitmaps in one write batch. The stripes of the
+	 * keys are held in order while the previous values are read and the batch written, so the chunk is atomic against
+	 * other writes of its keys and against readers. The keys are distinct.
+	 * @param cfh the column family of the map
+	 * @param puts the keys and their new values
+	 * @param removes the keys to remove
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	void write(ColumnFamilyHandle cfh, List<KeyValuePair> puts, List<Comparable> removes) throws IOException {
+		boolean[] held = new boolean[STRIPES];
+		for(KeyValuePair kv : puts)
+			held[(kv.getKey().hashCode() & 0x7fffffff) % STRIPES] = true;
+		for(Comparable key : removes)
+			held[(key.hashCode() & 0x7fffffff) % STRIPES] = true;
+		ColumnFamilyHandle ich = index.handle();
+		ColumnFamilyHandle bch = bitmaps.getHandle();
+		for(KeyValuePair kv : puts) {
+			if(isIndexed(kv.getValue())) {
+				ColumnFamilyHandle h = prepare(kv.getValue());
+				if(h != null)
+					ich = h;
+				h = bitmaps.prepare(kv.getValue());
+				if(h != null)
+					bch = h;
+			}
+		}
+		if(bch != null)
+			bitmaps.recover(cfh);
+		ColumnFamilyHandle fich = ich, fbch = bch;
+		locked(held, 0, () -> {
+			write(cfh, fich, fbch, puts, removes);
+			return null;
+		});
+	}
+	/**
+	 * Run the operation holding the marked stripes from i up.
+	 */
+	private <T> T locked(boolean[] held, int i, AsyncSupport.IOCallable<T> op) throws IOException {
+		while(i < STRIPES && !held[i])
+			++i;
+		if(i == STRIPES)
+			return op.call();
+		synchronized(stripes[i]) {
+			return locked(held, i + 1, op);
+		}
+	}
+	/**
+	 * Build and write the batch of the chunk, the caller holding the stripes of its keys.
+	 */
+	@SuppressWarnings("rawtypes")
+	private void write(ColumnFamilyHandle cfh, ColumnFamilyHandle ich, ColumnFamilyHandle bch, List<KeyValuePair> puts, List<Comparable> removes) throws IOException {
+		RocksDB db = session.getKVStore();
+		ArrayList<BitmapIndexer.Update> writes = bch == null ? null : new ArrayList<BitmapIndexer.Update>(puts.size() + removes.size());
+		try (WriteBatch wb = new WriteBatch()) {
+			for(KeyValuePair kv : puts) {
+				Comparable key = (Comparable) kv.getKey();
+				byte[] k = SerializedComparator.serializeObject(key);
+				if(ich != null || bch != null) {
+					byte[] old = db.get(cfh, k);
+					Object o = old == null ? null : SerializedComparator.deserializeObject(old);
+					if(ich != null) {
+						for(byte[] e : entries(key, o))
+							wb.delete(ich, e);
+						for(byte[] e : entries(key, kv.getValue()))
+							wb.put(ich, e, EMPTY);
+					}
+					if(bch != null)
+						writes.add(new BitmapIndexer.Update(key, o, kv.getValue()));
+				}
+				wb.put(cfh, k, SerializedComparator.serializeObject(kv.getValue()));
+			}
+			for(Comparable key : removes) {
+				byte[] k = SerializedComparator.serializeObject(key);
+				if(ich != null || bch != null) {
+					byte[] old = db.get(cfh, k);
+					if(old == null)
+						continue;
+					Object o = SerializedComparator.deserializeObject(old);
+					if(ich != null)
+						for(byte[] e : entries(key, o))
+							wb.delete(ich, e);
+					if(bch != null)
+						writes.add(new BitmapIndexer.Update(key, o, null));
+				}
+				wb.delete(cfh, k);
+			}
+			if(bch != null) {
+				bitmaps.write(wb, bch, writes);
+			} else if(wb.count() > 0) {
+				try (WriteOptions wo = new WriteOptions()) {
+					db.write(wo, wb);
+				}
+			}
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
+	/**
+	 * Put the value and its index entries in the transaction, deleting the entries of the previous value.
+	 * The key is read for update, so a concurrent write of it conflicts.
+	 * @param txn the transaction
+	 * @param ro the ReadOptions of the transaction
+	 * @param cfh the column family of the map
+	 * @param key the key
+	 * @param value the value
+	 * @return true
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	boolean put(Transaction txn, ReadOptions ro, ColumnFamilyHandle cfh, Comparable key, Object value) throws IOException {
+		ColumnFamilyHandle ich = prepare(value);
+		ColumnFamilyHandle bch = bitmaps.prepare(value);
+		bitmaps.recover(cfh);
+		try {
+			byte[] k = SerializedComparator.serializeObject(key);
+			byte[] old = txn.getForUpdate(ro, cfh, k, true);
+			Object o = old == null ? null : SerializedComparator.deserializeObject(old);
+			if(ich != null) {
+				for(byte[] e : entries(key, o))
+					txn.delete(ich, e);
+				for(byte[] e : entries(key, value))
+					txn.put(ich, e, EMPTY);
+			}
+			if(bch != null)
+				bitmaps.update(txn, ro, bch, key, o, value);
+			txn.put(cfh, k, SerializedComparator.serializeObject(value));
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+		return true;
+	}
+	/**
+	 * Remove the value and its index entries in the transaction.
+	 * @param txn the transaction
+	 * @param ro the ReadOptions of the transaction
+	 * @param cfh the column family of the map
+	 * @param key the key
+	 * @return the previous value, or null if not present
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	Object remove(Transaction txn, ReadOptions ro, ColumnFamilyHandle cfh, Comparable key) throws IOException {
+		ColumnFamilyHandle ich = index.handle();
+		ColumnFamilyHandle bch = bitmaps.getHandle();
+		bitmaps.recover(cfh);
+		try {
+			byte[] k = SerializedComparator.serializeObject(key);
+			byte[] old = txn.getForUpdate(ro, cfh, k, true);
+			if(old == null)
+				return null;
+			Object o = SerializedComparator.deserializeObject(old);
+			if(ich != null)
+				for(byte[] e : entries(key, o))
+					txn.delete(ich, e);
+			if(bch != null)
+				bitmaps.update(txn, ro, bch, key, o, null);
+			txn.delete(cfh, k);
+			return o;
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
+	/**
+	 * @param index the name of the index
+	 * @param from the least value inclusive, or null from the first
+	 * @param to the greatest value exclusive, or null to the last
+	 * @return the {@link IndexKey} bounds of the range
+	 */
+	@SuppressWarnings("rawtypes")
+	static IndexKey[] bounds(String index, Comparable from, Comparable to) {
+		return new IndexKey[] {IndexKey.low(index, from), to == null ? IndexKey.high(index, null) : IndexKey.low(index, to)};
+	}
+	/**
+	 * @param index the name of the index
+	 * @param value the indexed value
+	 * @return the {@link IndexKey} bounds of the entries of the value
+	 */
+	@SuppressWarnings("rawtypes")
+	static IndexKey[] bounds(String index, Comparable value) {
+		return new IndexKey[] {IndexKey.low(index, value), IndexKey.high(index, value)};
+	}
+	/**
+	 * @return the index column family, or null if there is none yet
+	 */
+	ColumnFamilyHandle getIndexHandle() {
+		return index.handle();
+	}
+	/**
+	 * @param entries iterator of {@link IndexKey}
+	 * @return iterator of {@link KeyValuePair} of the indexed value and the primary key
+	 */
+	static Iterator<?> indexOnly(Iterator<?> entries) {
+		return new Iterator<Object>() {
+			@Override
+			public boolean hasNext() {
+				return entries.hasNext();
+			}
+			@Override
+			public Object next() {
+				IndexKey k = (IndexKey) entries.next();
+				return new KeyValuePair(k.getValue(), k.getKey());
+			}
+		};
+	}
+	/**
+	 * @param entries iterator of {@link IndexKey}, closed with the returned iterator
+	 * @return iterator of the primary keys of the entries
+	 */
+	static Iterator<?> primaryKeys(Iterator<?> entries) {
+		return new PrimaryKeys(entries);
+	}
+
+	private static final class PrimaryKeys implements Iterator<Object>, AutoCloseable {
+		private final Iterator<?> entries;
+		PrimaryKeys(Iterator<?> entries) {
+			this.entries = entries;
+		}
+		@Override
+		public boolean hasNext() {
+			return entries.hasNext();
+		}
+		@Override
+		public Object next() {
+			return ((IndexKey)entries.next()).getKey();
+		}
+		@Override
+		public void close() {
+			if(entries instanceof AutoCloseable) {
+				try {
+					((AutoCloseable)entries).close();
+				} catch (Exception e) {}
+			}
+		}
+	}
+	/**
+	 * Iterates the primary entries of primary keys in their order, reading them a batch of keys at a time.
+	 * Entries removed since the keys were read from an index are skipped.
+	 */
+	static final class FetchIterator implements Iterator<Object>, AutoCloseable {
+		private final Iterator<?> entries;
+		private final Fetcher fetcher;
+		private Iterator<Object> batch = Collections.emptyIterator();
+		private Object next = null;
+		/**
+		 * @param entries iterator of primary keys, closed with this iterator
+		 * @param fetcher reads the entries of the keys
+		 */
+		FetchIterator(Iterator<?> entries, Fetcher fetcher) {
+			this.entries = entries;
+			this.fetcher = fetcher;
+		}
+		@SuppressWarnings("rawtypes")
+		@Override
+		public boolean hasNext() {
+			while(next == null) {
+				if(batch.hasNext()) {
+					next = batch.next();
+					continue;
+				}
+				if(!entries.hasNext())
+					return false;
+				ArrayList<Comparable> keys = new ArrayList<Comparable>(FETCH_SIZE);
+				while(entries.hasNext() && keys.size() < FETCH_SIZE)
+					keys.add((Comparable)entries.next());
+				try {
+					batch = fetcher.fetch(keys).iterator();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return true;
+		}
+		@Override
+		public Object next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			Object o = next;
+			next = null;
+			return o;
+		}
+		@Override
+		public void close() {
+			if(entries instanceof AutoCloseable) {
+				try {
+					((AutoCloseable)entries).close();
+				} catch (Exception e) {}
+			}
+		}
+	}
+	/**
+	 * Build the index column family again from the entries of the map, while the map is in use. The entries are
+	 * deleted, then every value is read under the stripe of its key and its entries written, so a concurrent put
+	 * of the key is either indexed by the build or replaces what it wrote. The bitmaps are built again after.
+	 * @param cfh the column family of the map
+	 * @return the number of values read
+	 * @throws IOException
+	 */
+	@SuppressWarnings("rawtypes")
+	long rebuild(ColumnFamilyHandle cfh) throws IOException {
+		ColumnFamilyHandle ich = index.handle();
+		long n = 0;
+		long tims = System.currentTimeMillis();
+		RocksDB db = session.getKVStore();
+		if(ich != null)
+			clear(db, ich);
+		try (WriteOptions wo = new WriteOptions(); WriteBatch wb = new WriteBatch()) {
+			try (RocksIterator it = db.newIterator(cfh, AbstractIterator.totalOrder())) {
+				for(it.seekToFirst(); it.isValid(); it.next()) {
+					byte[] k = it.key();
+					Comparable key = (Comparable) SerializedComparator.deserializeObject(k);
+					synchronized(stripe(key)) {
+						byte[] v = db.get(cfh, k);
+						if(v == null)
+							continue;
+						List<byte[]> entries = entries(key, SerializedComparator.deserializeObject(v));
+						if(!entries.isEmpty()) {
+							if(ich == null)
+								ich = index.create();
+							for(byte[] e : entries)
+								wb.put(ich, e, EMPTY);
+							db.write(wo, wb);
+							wb.clear();
+						}
+					}
+					++n;
+				}
+				it.status();
+			}
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+		if(DEBUG)
+			System.out.printf("SecondaryIndexer.rebuild %s %d values in %d ms.%n", index.name, n, System.currentTimeMillis()-tims);
+		bitmaps.rebuild(cfh);
+		return n;
+	}
+	/**
+	 * Delete all entries of an index or bitmap column family, a batch at a time.
+	 * @param db the database
+	 * @param h the column family
+	 * @throws IOException
+	 */
+	static void clear(RocksDB db, ColumnFamilyHandle h) throws IOException {
+		try (WriteOptions wo = new WriteOptions(); WriteBatch wb = new WriteBatch();
+			 RocksIterator it = db.newIterator(h, AbstractIterator.totalOrder())) {
+			for(it.seekToFirst(); it.isValid(); it.next()) {
+				wb.delete(h, it.key());
+				if(wb.count() >= FETCH_SIZE) {
+					db.write(wo, wb);
+					wb.clear();
+				}
+			}
+			it.status();
+			if(wb.count() > 0)
+				db.write(wo, wb);
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
+	/**
+	 * @return the primary entries of keys read by multiGet, absent keys dropped
+	 */
+	static List<Object> present(List<Object> kvs) {
+		ArrayList<Object> ret = new ArrayList<Object>(kvs.size());
+		for(Object o : kvs)
+			if(o != null)
+				ret.add(o);
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return "SecondaryIndexer "+index.name+" in "+session.getDBname()+(isActive() ? "" : " (none)");
+	}
+}
@@ -1,13 +1,20 @@
 package com.neocoretechs.rocksack.session;
 import java.io.IOException;
+import java.lang.ref.Cleaner;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.FlushOptions;
+import org.rocksdb.Holder;
 import org.rocksdb.Options;
 import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
@@ -17,11 +24,13 @@ import org.rocksdb.Transaction;
 
 import com.neocoretechs.rocksack.KeyValue;
 import com.neocoretechs.rocksack.SerializedComparator;
+import com.neocoretechs.rocksack.iterator.AbstractIterator;
 import com.neocoretechs.rocksack.iterator.Entry;
 import com.neocoretechs.rocksack.iterator.EntrySetIterator;
 import com.neocoretechs.rocksack.iterator.HeadSetIterator;
 import com.neocoretechs.rocksack.iterator.HeadSetKVIterator;
 import com.neocoretechs.rocksack.iterator.KeySetIterator;
+import com.neocoretechs.rocksack.iterator.KeyValuePair;
 import com.neocoretechs.rocksack.iterator.SubSetIterator;
 import com.neocoretechs.rocksack.iterator.SubSetKVIterator;
 import com.neocoretechs.rocksack.iterator.TailSetIterator;
@@ -65,7 +74,10 @@ import com.neocoretechs.rocksack.stream.TailSetStream;
 * handing out iterators, inserting and deleting objects, size, navigation, clearing,
 * and handling commit and rollback.<p>
 * Session is the universal collection of transaction and non-transaction methods, subclasses encapsulate
-* specific transaction and non-transaction semantics. 
+* specific transaction and non-transaction semantics.<p>
+* When {@link OpenDatabaseCache} caps the number of open databases, an idle session may be closed and is reopened
+* in place on next use. Map operations pin the session for their duration, iterators and streams until closed or
+* collected, and transactions until removed, and a pinned session is never closed.
 * @author Jonathan Groff (C) NeoCoreTechs 2003, 2017, 2021, 2022
 */
 public class Session {
@@ -76,6 +88,36 @@ public class Session {
 	//
 	List<ColumnFamilyDescriptor> columnFamilyDescriptor = null;
 	List<ColumnFamilyHandle> columnFamilyHandles = new ArrayList<>();
+	private final String dbName;
+	// operations in progress, EVICTED while the database is closed by the OpenDatabaseCache
+	static final int EVICTED = Integer.MIN_VALUE;
+	private final AtomicInteger pins = new AtomicInteger();
+	private final AtomicInteger iterators = new AtomicInteger();
+	private static final Cleaner cleaner = Cleaner.create();
+	volatile long lastAccess = System.nanoTime();
+	// reopens the database after eviction, set by SessionManager on connect
+	Supplier<? extends Session> opener = null;
+	// maps rebinding their column family handles after reopen
+	private final CopyOnWriteArrayList<Rebinder> rebinders = new CopyOnWriteArrayList<Rebinder>();
+	// indexers writing what they hold in memory before the database is closed
+	private final CopyOnWriteArrayList<Flusher> flushers = new CopyOnWriteArrayList<Flusher>();
+	// whether each column family filters on whole serialized keys, by handle identity, replaced on each addition
+	private volatile IdentityHashMap<ColumnFamilyHandle, Boolean> wholeKeyFiltered = new IdentityHashMap<ColumnFamilyHandle, Boolean>();
+
+	/**
+	 * Rebinds the column family handle of a map to the handles of the reopened database.
+	 */
+	@FunctionalInterface
+	interface Rebinder {
+		void rebind() throws RocksDBException;
+	}
+	/**
+	 * Writes the pending state of an indexer to the open database, without pinning the session.
+	 */
+	@FunctionalInterface
+	interface Flusher {
+		void flush() throws IOException;
+	}
 	/**
 	 * 
 	 * @param kvStore
@@ -88,12 +130,143 @@ public class Session {
 		this.options = options;
 		this.columnFamilyDescriptor = columnFamilyDescriptor;
 		this.columnFamilyHandles = columnFamilyHandles;
+		this.dbName = kvStore.getName();
 		if( DEBUG )
 			System.out.println("RockSackSession constructed with db:"+getDBname()+" desc:"+Arrays.toString(columnFamilyDescriptor.toArray())+" handle:"+Arrays.toString(columnFamilyHandles.toArray()));
 	}
 
 	protected String getDBname() {
-		return kvStore.getName();
+		return dbName;
+	}
+	/**
+	 * Pin the session for an operation, reopening the database if it was evicted.
+	 * @throws IOException if the database could not be reopened
+	 */
+	void pin() throws IOException {
+		for(;;) {
+			int p = pins.get();
+			if(p == EVICTED)
+				OpenDatabaseCache.reopen(this);
+			else if(pins.compareAndSet(p, p + 1))
+				break;
+		}
+		lastAccess = System.nanoTime();
+	}
+
+	void unpin() {
+		pins.decrementAndGet();
+	}
+	/**
+	 * Perform the operation with the session pinned, so the database stays open for its duration.
+	 * The column family handle of the map must be read inside the operation, since it changes on reopen.
+	 * @param op the operation
+	 * @return the result of the operation
+	 * @throws IOException
+	 */
+	<T> T pinned(AsyncSupport.IOCallable<T> op) throws IOException {
+		pin();
+		try {
+			return op.call();
+		} finally {
+			unpin();
+		}
+	}
+	/**
+	 * Pin the session while the iterator or stream is open. The pin is released when an iterator is closed,
+	 * or when the iterator or stream is garbage collected.
+	 * @param it the iterator or stream
+	 * @return it
+	 */
+	protected <T> T track(T it) {
+		iterators.incrementAndGet();
+		Cleaner.Cleanable c = cleaner.register(it, new IteratorRelease(iterators));
+		if(it instanceof AbstractIterator)
+			((AbstractIterator)it).onClose(c::clean);
+		return it;
+	}
+	// must not reference the iterator, or it would never become unreachable
+	private static final class IteratorRelease implements Runnable {
+		private final AtomicInteger iterators;
+		IteratorRelease(AtomicInteger iterators) {
+			this.iterators = iterators;
+		}
+		@Override
+		public void run() {
+			iterators.decrementAndGet();
+		}
+	}
+
+	void addRebinder(Rebinder r) {
+		rebinders.add(r);
+	}
+
+	void addFlusher(Flusher f) {
+		flushers.add(f);
+	}
+	/**
+	 * Write the pending state of the indexers before the database is closed.
+	 * @throws IOException
+	 */
+	private void flushPending() throws IOException {
+		for(Flusher f : flushers)
+			f.flush();
+	}
+
+	boolean isEvicted() {
+		return pins.get() == EVICTED;
+	}
+	/**
+	 * @return true if an operation, iterator or transaction holds the session open
+	 */
+	boolean isPinned() {
+		return pins.get() > 0 || iterators.get() > 0 || TransactionManager.hasTransactions(this);
+	}
+	/**
+	 * Flush and close the database if the session is not pinned. The caller holds the path lock of the database.
+	 * @return true if closed
+	 */
+	boolean evict() {
+		if(isPinned() || !pins.compareAndSet(0, EVICTED))
+			return false;
+		// an iterator or transaction created by an operation that completed before the transition
+		if(iterators.get() > 0 || TransactionManager.hasTransactions(this)) {
+			pins.set(0);
+			return false;
+		}
+		try (FlushOptions fo = new FlushOptions().setWaitForFlush(true)) {
+			flushPending();
+			kvStore.flush(fo, columnFamilyHandles);
+		} catch (IOException | RocksDBException e) {
+			if(DEBUG)
+				System.out.println("Session.evict flush failed for "+dbName+" "+e);
+			pins.set(0);
+			return false;
+		}
+		for(ColumnFamilyHandle cfh : columnFamilyHandles)
+			cfh.close();
+		kvStore.close();
+		dbOpen = false;
+		return true;
+	}
+	/**
+	 * Take over the database of a freshly opened session for the same path after eviction, rebind the maps
+	 * to its column families and make the session available. The caller holds the path lock of the database.
+	 * @param fresh the newly opened session
+	 * @throws IOException if a map could not be rebound
+	 */
+	void reopened(Session fresh) throws IOException {
+		kvStore = fresh.kvStore;
+		options = fresh.options;
+		columnFamilyDescriptor = fresh.columnFamilyDescriptor;
+		columnFamilyHandles = fresh.columnFamilyHandles;
+		wholeKeyFiltered = new IdentityHashMap<ColumnFamilyHandle, Boolean>();
+		try {
+			for(Rebinder r : rebinders)
+				r.rebind();
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+		pins.set(0);
 	}
 	
 	protected Object getMutexObject() {
@@ -200,6 +373,88 @@ public class Session {
 		return true;
 	}
 
+	/**
+	 * Get the value bytes for the key. In a column family with whole key filtering, see {@link TuningProfile#CANONICAL_KEYS},
+	 * keyMayExist is consulted first. The bloom filters and memtable answer most lookups of absent keys without
+	 * reading a block, and a value found in the memtable or block cache is returned without a second lookup.
+	 * Elsewhere the filters cannot rule out a key, which may compare equal to a stored key serialized differently.
+	 * @param cfh ColumnFamilyHandle
+	 * @param key the serialized key
+	 * @return the serialized value or null if absent
+	 * @throws RocksDBException
+	 */
+	private byte[] getBytes(ColumnFamilyHandle cfh, byte[] key) throws RocksDBException {
+		if(!isWholeKeyFiltered(cfh))
+			return kvStore.get(cfh, key);
+		Holder<byte[]> value = new Holder<byte[]>();
+		if(!kvStore.keyMayExist(cfh, key, value))
+			return null;
+		if(value.getValue() != null)
+			return value.getValue();
+		return kvStore.get(cfh, key);
+	}
+	/**
+	 * @param cfh ColumnFamilyHandle
+	 * @return true if the options of the column family filter on whole serialized keys
+	 * @throws RocksDBException
+	 */
+	boolean isWholeKeyFiltered(ColumnFamilyHandle cfh) throws RocksDBException {
+		Boolean b = wholeKeyFiltered.get(cfh);
+		if(b == null) {
+			b = DatabaseManager.getInstance().isWholeKeyFiltered(getDBname(), new String(cfh.getName()));
+			synchronized(this) {
+				IdentityHashMap<ColumnFamilyHandle, Boolean> m = new IdentityHashMap<ColumnFamilyHandle, Boolean>(wholeKeyFiltered);
+				m.put(cfh, b);
+				wholeKeyFiltered = m;
+			}
+		}
+		return b;
+	}
+	/**
+	 * Get the serialized value of the serialized key, for the {@link ObjectCache} to deserialize and weigh.
+	 * @param cfh ColumnFamilyHandle
+	 * @param key the serialized key
+	 * @return the serialized value or null if absent
+	 * @throws IOException
+	 */
+	protected byte[] getRaw(ColumnFamilyHandle cfh, byte[] key) throws IOException {
+		try {
+			return getBytes(cfh, key);
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
+	/**
+	 * Get the serialized value of the serialized key with a get, never answered absent by keyMayExist,
+	 * for the conditional writes, which must not take a present key for absent.
+	 * @param cfh ColumnFamilyHandle
+	 * @param key the serialized key
+	 * @return the serialized value or null if absent
+	 * @throws IOException
+	 */
+	protected byte[] getStored(ColumnFamilyHandle cfh, byte[] key) throws IOException {
+		try {
+			return kvStore.get(cfh, key);
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
+	/**
+	 * Get the serialized value of the serialized key in the transaction, for the {@link ObjectCache}.
+	 * @param txn Transaction context
+	 * @param cfh ColumnFamilyHandle
+	 * @param ro The ReadOptions
+	 * @param key the serialized key
+	 * @return the serialized value or null if absent
+	 * @throws IOException
+	 */
+	protected byte[] getRaw(Transaction txn, ColumnFamilyHandle cfh, ReadOptions ro, byte[] key) throws IOException {
+		try {
+			return txn.get(ro, cfh, key);
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
 	/**
 	 * Cause the KvStore to seekKey for the Comparable type.
 	 * @param cfh ColumnFamilyHandle
@@ -212,7 +467,7 @@ public class Session {
 		if(DEBUG)
 			System.out.printf("%s.get(%s)%n", this.getClass().getName(), o);
 		   try {
-			   byte[] b = kvStore.get(cfh,SerializedComparator.serializeObject(o));
+			   byte[] b = getBytes(cfh, SerializedComparator.serializeObject(o));
 			   if(b == null)
 				   return null;
 			   return new KeyValue(o,SerializedComparator.deserializeObject(b));
@@ -242,6 +497,64 @@ public class Session {
 			throw new IOException(e);
 		}
 	}
+	/**
+	 * Retrieve several keys in one call to the KvStore via multiGet.
+	 * @param cfh ColumnFamilyHandle
+	 * @param keys the Comparable keys to retrieve
+	 * @return List of Key/Value objects in order of the keys, null for keys not found
+	 * @throws IOException
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	protected List<Object> multiGet(ColumnFamilyHandle cfh, List<? extends Comparable> keys) throws IOException {
+		if(DEBUG)
+			System.out.printf("%s.multiGet(%d)%n", this.getClass().getName(), keys.size());
+		try {
+			ArrayList<ColumnFamilyHandle> cfhs = new ArrayList<ColumnFamilyHandle>(keys.size());
+			ArrayList<byte[]> bkeys = new ArrayList<byte[]>(keys.size());
+			for(Comparable key : keys) {
+				cfhs.add(cfh);
+				bkeys.add(SerializedComparator.serializeObject(key));
+			}
+			return toKeyValues(keys, kvStore.multiGetAsList(cfhs, bkeys));
+		} catch (RocksDBException | IOException e) {
+			throw new IOException(e);
+		}
+	}
+	/**
+	 * Retrieve several keys in one call to the transaction via multiGet.
+	 * @param txn Transaction context
+	 * @param cfh ColumnFamilyHandle
+	 * @param ro The ReadOptions
+	 * @param keys the Comparable keys to retrieve
+	 * @return List of Key/Value objects in order of the keys, null for keys not found
+	 * @throws IOException
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	protected List<Object> multiGet(Transaction txn, ColumnFamilyHandle cfh, ReadOptions ro, List<? extends Comparable> keys) throws IOException {
+		if(DEBUG)
+			System.out.printf("%s.multiGet(%s, %s, %d)%n", this.getClass().getName(), txn, ro, keys.size());
+		try {
+			ArrayList<ColumnFamilyHandle> cfhs = new ArrayList<ColumnFamilyHandle>(keys.size());
+			ArrayList<byte[]> bkeys = new ArrayList<byte[]>(keys.size());
+			for(Comparable key : keys) {
+				cfhs.add(cfh);
+				bkeys.add(SerializedComparator.serializeObject(key));
+			}
+			return toKeyValues(keys, txn.multiGetAsList(ro, cfhs, bkeys));
+		} catch (RocksDBException | IOException e) {
+			throw new IOException(e);
+		}
+	}
+	
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static List<Object> toKeyValues(List<? extends Comparable> keys, List<byte[]> values) throws IOException {
+		ArrayList<Object> ret = new ArrayList<Object>(keys.size());
+		for(int i = 0; i < keys.size(); i++) {
+			byte[] b = values.get(i);
+			ret.add(b == null ? null : new KeyValue(keys.get(i), SerializedComparator.deserializeObject(b)));
+		}
+		return ret;
+	}
 	
 	/**
 	 * getForUpdate() to read a key and make the read value a precondition for transaction commit.
@@ -291,7 +604,7 @@ public class Session {
 		if(DEBUG)
 			System.out.printf("%s.get(%s)%n", this.getClass().getName(), o);
 		   try {
-			   byte[] b = kvStore.get(cfh, o);
+			   byte[] b = getBytes(cfh, o);
 			   if(b == null)
 				   return null;
 			   return SerializedComparator.deserializeObject(b);
@@ -330,13 +643,14 @@ public class Session {
 	 */
 	@SuppressWarnings("rawtypes")
 	protected Object getValue(ColumnFamilyHandle cfh, Object o) throws IOException {
-		Iterator it = new EntrySetIterator(kvStore, cfh);
-		while(it.hasNext()) {
-			Entry e = ((Entry)it.next());
-			if(e.getValue().equals(o))
-				return e;
+		try (EntrySetIterator it = new EntrySetIterator(kvStore, cfh)) {
+			while(it.hasNext()) {
+				Entry e = ((Entry)it.next());
+				if(e.getValue().equals(o))
+					return e;
+			}
+			return null;
 		}
-		return null;
 	}
 	
 	/**
@@ -350,13 +664,14 @@ public class Session {
 	 */
 	@SuppressWarnings("rawtypes")
 	protected Object getValue(Transaction txn, ColumnFamilyHandle cfh, ReadOptions ro, Object o) throws IOException {
-		Iterator it = new EntrySetIterator(txn, ro, cfh);
-		while(it.hasNext()) {
-			Entry e = ((Entry)it.next());
-			if(e.getValue().equals(o))
-				return e;
+		try (EntrySetIterator it = new EntrySetIterator(txn, ro, cfh)) {
+			while(it.hasNext()) {
+				Entry e = ((Entry)it.next());
+				if(e.getValue().equals(o))
+					return e;
+			}
+			return null;
 		}
-		return null;
 	}
 
 	/**
@@ -368,10 +683,11 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Object nearest(ColumnFamilyHandle cfh, Comparable key) throws IOException {
-		Iterator<?> it = new TailSetKVIterator(cfh, key, kvStore);
-		if(!it.hasNext())
-			return null;
-		return it.next();
+		try (TailSetKVIterator it = new TailSetKVIterator(cfh, key, kvStore)) {
+			if(!it.hasNext())
+				return null;
+			return it.next();
+		}
 	}
 	/**
 	 * Return the key/value pair of Map.Entry implementation of the closest key to the passed key template.
@@ -383,10 +699,11 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Object nearest(Transaction txn, ColumnFamilyHandle cfh, Comparable key) throws IOException {
-		Iterator<?> it = new TailSetKVIterator(cfh, key, txn);
-		if(!it.hasNext())
-			return null;
-		return it.next();
+		try (TailSetKVIterator it = new TailSetKVIterator(cfh, key, txn)) {
+			if(!it.hasNext())
+				return null;
+			return it.next();
+		}
 	}
 
 	/**
@@ -400,7 +717,7 @@ public class Session {
 	*/
 	@SuppressWarnings("rawtypes")
 	protected Iterator<?> subSet(ColumnFamilyHandle cfh, Comparable fkey, Comparable tkey) throws IOException {
-		return new SubSetIterator(cfh, fkey, tkey, kvStore);
+		return track(new SubSetIterator(cfh, fkey, tkey, kvStore));
 	}
 	/**
 	* Returns iterator vs actual subset. {@link com.neocoretechs.rocksack.iterator.SubSetIterator}
@@ -414,7 +731,7 @@ public class Session {
 	*/
 	@SuppressWarnings("rawtypes")
 	protected Iterator<?> subSet(Transaction txn, ColumnFamilyHandle cfh, Comparable fkey, Comparable tkey) throws IOException {
-		return new SubSetIterator(cfh, fkey, tkey, txn);
+		return track(new SubSetIterator(cfh, fkey, tkey, txn));
 	}
 
 	/**
@@ -426,7 +743,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> subSetStream(ColumnFamilyHandle cfh, Comparable fkey, Comparable tkey) throws IOException {
-		return new SubSetStream(new SubSetIterator(cfh, fkey, tkey, kvStore));
+		return track(new SubSetStream(new SubSetIterator(cfh, fkey, tkey, kvStore)));
 	}
 	/**
 	 * Return a Stream that delivers the subset of fkey to tkey. {@link com.neocoretechs.rocksack.stream.SubSetStream}
@@ -438,7 +755,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> subSetStream(Transaction txn, ColumnFamilyHandle cfh, Comparable fkey, Comparable tkey) throws IOException {
-		return new SubSetStream(new SubSetIterator(cfh, fkey, tkey, txn));
+		return track(new SubSetStream(new SubSetIterator(cfh, fkey, tkey, txn)));
 	}
 
 	/**
@@ -452,7 +769,7 @@ public class Session {
 	*/
 	@SuppressWarnings("rawtypes")
 	protected Iterator<?> subSetKV(ColumnFamilyHandle cfh, Comparable fkey, Comparable tkey) throws IOException {
-		return new SubSetKVIterator(cfh, fkey, tkey, kvStore);
+		return track(new SubSetKVIterator(cfh, fkey, tkey, kvStore));
 	}
 	
 	/**
@@ -467,7 +784,7 @@ public class Session {
 	*/
 	@SuppressWarnings("rawtypes")
 	protected Iterator<?> subSetKV(Transaction txn, ColumnFamilyHandle cfh, Comparable fkey, Comparable tkey) throws IOException {
-		return new SubSetKVIterator(cfh, fkey, tkey, txn);
+		return track(new SubSetKVIterator(cfh, fkey, tkey, txn));
 	}
 
 	/**
@@ -479,7 +796,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> subSetKVStream(ColumnFamilyHandle cfh, Comparable fkey, Comparable tkey) throws IOException {
-			return new SubSetKVStream(cfh, fkey, tkey, kvStore);
+			return track(new SubSetKVStream(cfh, fkey, tkey, kvStore));
 	}
 	/**
 	 * Return a Streamof key/value pairs that delivers the subset of fkey to tkey. {@link com.neocoretechs.rocksack.stream.SubSetKVStream}
@@ -491,7 +808,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> subSetKVStream(Transaction txn, ColumnFamilyHandle cfh, Comparable fkey, Comparable tkey) throws IOException {
-			return new SubSetKVStream(cfh, fkey, tkey, txn);
+			return track(new SubSetKVStream(cfh, fkey, tkey, txn));
 	}
 
 	/**
@@ -501,7 +818,7 @@ public class Session {
 	* @exception IOException If we cannot obtain the iterator
 	*/
 	protected Iterator<?> entrySet(ColumnFamilyHandle cfh) throws IOException {
-		return new EntrySetIterator(kvStore, cfh);
+		return track(new EntrySetIterator(kvStore, cfh));
 	}
 	/**
 	* Not a real subset, returns iterator. {@link com.neocoretechs.rocksack.iterator.EntrySetIterator}
@@ -511,7 +828,7 @@ public class Session {
 	* @exception IOException If we cannot obtain the iterator
 	*/
 	protected Iterator<?> entrySet(Transaction txn, ColumnFamilyHandle cfh) throws IOException {
-		return new EntrySetIterator(txn, new ReadOptions(), cfh);
+		return track(new EntrySetIterator(txn, AbstractIterator.totalOrder(), cfh));
 	}
 
 	/**
@@ -521,7 +838,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> entrySetStream(ColumnFamilyHandle cfh) throws IOException {
-		return new EntrySetStream(kvStore, cfh);
+		return track(new EntrySetStream(kvStore, cfh));
 	}
 	/**
 	 * Get a Map.Entry stream of entry set. {@link com.neocoretechs.rocksack.stream.EntrySetStream}
@@ -531,7 +848,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> entrySetStream(Transaction txn, ColumnFamilyHandle cfh) throws IOException {
-		return new EntrySetStream(txn, cfh);
+		return track(new EntrySetStream(txn, cfh));
 	}
 
 	/**
@@ -543,7 +860,7 @@ public class Session {
 	*/
 	@SuppressWarnings("rawtypes")
 	protected Iterator<?> headSet(ColumnFamilyHandle cfh, Comparable tkey) throws IOException {
-		return new HeadSetIterator(tkey, kvStore, cfh);
+		return track(new HeadSetIterator(tkey, kvStore, cfh));
 	}
 	/**
 	* Not a real subset, returns Iterator. {@link com.neocoretechs.rocksack.iterator.HeadSetIterator}
@@ -555,7 +872,7 @@ public class Session {
 	*/
 	@SuppressWarnings("rawtypes")
 	protected Iterator<?> headSet(Transaction txn, ColumnFamilyHandle cfh, Comparable tkey) throws IOException {
-		return new HeadSetIterator(tkey, txn, cfh);
+		return track(new HeadSetIterator(tkey, txn, cfh));
 	}
 
 	/**
@@ -566,7 +883,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> headSetStream(ColumnFamilyHandle cfh, Comparable tkey) throws IOException {
-		return new HeadSetStream(tkey, kvStore, cfh);
+		return track(new HeadSetStream(tkey, kvStore, cfh));
 	}
 	/**
 	 * Get a stream of headset. {@link com.neocoretechs.rocksack.stream.HeadSetStream}
@@ -577,7 +894,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> headSetStream(Transaction txn, ColumnFamilyHandle cfh, Comparable tkey) throws IOException {
-		return new HeadSetStream(tkey, txn, cfh);
+		return track(new HeadSetStream(tkey, txn, cfh));
 	}
 
 	/**
@@ -589,7 +906,7 @@ public class Session {
 	*/
 	@SuppressWarnings("rawtypes")
 	protected Iterator<?> headSetKV(ColumnFamilyHandle cfh, Comparable tkey) throws IOException {
-		return new HeadSetKVIterator(tkey, kvStore, cfh);
+		return track(new HeadSetKVIterator(tkey, kvStore, cfh));
 	}
 	/**
 	* Not a real subset, returns Iterator. {@link com.neocoretechs.rocksack.iterator.HeadSetKVIterator}
@@ -601,7 +918,7 @@ public class Session {
 	*/
 	@SuppressWarnings("rawtypes")
 	protected Iterator<?> headSetKV(Transaction txn, ColumnFamilyHandle cfh, Comparable tkey) throws IOException {
-		return new HeadSetKVIterator(tkey, txn, cfh);
+		return track(new HeadSetKVIterator(tkey, txn, cfh));
 	}
 
 	/**
@@ -612,7 +929,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> headSetKVStream(ColumnFamilyHandle cfh, Comparable tkey) throws IOException {
-		return new HeadSetKVStream(tkey, kvStore, cfh);
+		return track(new HeadSetKVStream(tkey, kvStore, cfh));
 	}
 	/**
 	 * Get a stream of head set. {@link com.neocoretechs.rocksack.stream.HeadSetKVStream}
@@ -623,7 +940,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> headSetKVStream(Transaction txn, ColumnFamilyHandle cfh, Comparable tkey) throws IOException {
-		return new HeadSetKVStream(tkey, txn);
+		return track(new HeadSetKVStream(tkey, txn));
 	}
 
 	/**
@@ -633,7 +950,7 @@ public class Session {
 	* @exception IOException If we cannot obtain the iterator
 	*/
 	protected Iterator<?> keySet(ColumnFamilyHandle cfh) throws IOException {
-		return new KeySetIterator(kvStore, cfh);
+		return track(new KeySetIterator(kvStore, cfh));
 	}
 	/**
 	* Return the keyset Iterator over all elements. {@link com.neocoretechs.rocksack.iterator.KeySetIterator}
@@ -643,7 +960,7 @@ public class Session {
 	* @exception IOException If we cannot obtain the iterator
 	*/
 	protected Iterator<?> keySet(Transaction txn, ColumnFamilyHandle cfh) throws IOException {
-		return new KeySetIterator(txn, cfh);
+		return track(new KeySetIterator(txn, cfh));
 	}
 
 	/**
@@ -653,7 +970,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> keySetStream(ColumnFamilyHandle cfh) throws IOException {
-		return new KeySetStream(kvStore, cfh);
+		return track(new KeySetStream(kvStore, cfh));
 	}
 	/**
 	 * Get a keyset stream.  {@link com.neocoretechs.rocksack.stream.KeySetStream}
@@ -663,7 +980,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> keySetStream(Transaction txn, ColumnFamilyHandle cfh) throws IOException {
-		return new KeySetStream(txn, cfh);
+		return track(new KeySetStream(txn, cfh));
 	}
 
 	/**
@@ -675,7 +992,7 @@ public class Session {
 	*/
 	@SuppressWarnings("rawtypes")
 	protected Iterator<?> tailSet(ColumnFamilyHandle cfh, Comparable fkey) throws IOException {
-		return new TailSetIterator(cfh, fkey, kvStore);
+		return track(new TailSetIterator(cfh, fkey, kvStore));
 	}
 	/**
 	* Not a real subset, returns Iterator. {@link com.neocoretechs.rocksack.iterator.TailSetIterator}
@@ -687,7 +1004,7 @@ public class Session {
 	*/
 	@SuppressWarnings("rawtypes")
 	protected Iterator<?> tailSet(Transaction txn, ColumnFamilyHandle cfh, Comparable fkey) throws IOException {
-		return new TailSetIterator(cfh, fkey, txn);
+		return track(new TailSetIterator(cfh, fkey, txn));
 	}
 
 	/**
@@ -697,7 +1014,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> tailSetStream(ColumnFamilyHandle cfh, Comparable fkey) throws IOException {
-		return new TailSetStream(fkey, kvStore, cfh);
+		return track(new TailSetStream(fkey, kvStore, cfh));
 	}
 	/**
 	 * Return a tail set stream. {@link com.neocoretechs.rocksack.stream.TailSetStream}
@@ -708,7 +1025,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> tailSetStream(Transaction txn, ColumnFamilyHandle cfh, Comparable fkey) throws IOException {
-		return new TailSetStream(fkey, txn, cfh);
+		return track(new TailSetStream(fkey, txn, cfh));
 	}
 
 	/**
@@ -720,7 +1037,7 @@ public class Session {
 	*/
 	@SuppressWarnings("rawtypes")
 	protected Iterator<?> tailSetKV(ColumnFamilyHandle cfh, Comparable fkey) throws IOException {
-		return new TailSetKVIterator(cfh, fkey, kvStore);
+		return track(new TailSetKVIterator(cfh, fkey, kvStore));
 	}
 	/**
 	* Not a real subset, returns Iterator. {@link com.neocoretechs.rocksack.iterator.TailSetKVIterator}
@@ -732,7 +1049,7 @@ public class Session {
 	*/
 	@SuppressWarnings("rawtypes")
 	protected Iterator<?> tailSetKV(Transaction txn, ColumnFamilyHandle cfh, Comparable fkey) throws IOException {
-		return new TailSetKVIterator(cfh, fkey, txn);
+		return track(new TailSetKVIterator(cfh, fkey, txn));
 	}
 
 	/**
@@ -743,7 +1060,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> tailSetKVStream(ColumnFamilyHandle cfh, Comparable fkey) throws IOException {
-		return new TailSetKVStream(fkey, kvStore, cfh);
+		return track(new TailSetKVStream(fkey, kvStore, cfh));
 	}
 
 	/**
@@ -755,7 +1072,7 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Stream<?> tailSetKVStream(Transaction txn, ColumnFamilyHandle cfh, Comparable fkey) throws IOException {
-		return new TailSetKVStream(fkey, txn);
+		return track(new TailSetKVStream(fkey, txn));
 	}
 	/**
 	 * Contains a value object
@@ -790,11 +1107,16 @@ public class Session {
 	 */
 	@SuppressWarnings("rawtypes")
 	protected boolean contains(ColumnFamilyHandle cfh, Comparable o) throws IOException {
-		Object o2 = get(cfh, o);
-		return o2 != null;
+		try {
+			// the value is not deserialized
+			return getBytes(cfh, SerializedComparator.serializeObject(o)) != null;
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
 	}
 	/**
-	 * Contains a value object. Does a get since RocksDB doesnt seem to have keymayexist in trans context
+	 * Contains a value object. Does a get since RocksDB doesnt have keymayexist in trans context,
+	 * whose own writes it would miss, but does not deserialize the value.
 	 * @param txn Transaction
 	 * @param cfh ColumnFamilyHandle
 	 * @param ro readOptions
@@ -804,8 +1126,11 @@ public class Session {
 	 */
 	@SuppressWarnings("rawtypes")
 	protected boolean contains(Transaction txn, ColumnFamilyHandle cfh, ReadOptions ro, Comparable o) throws IOException {
-		Object o2 = get(txn,cfh,ro,o);
-		return o2 != null;
+		try {
+			return txn.get(ro, cfh, SerializedComparator.serializeObject(o)) != null;
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
 	}
 
 	/**
@@ -818,13 +1143,12 @@ public class Session {
 	protected Object remove(ColumnFamilyHandle cfh, Comparable o) throws IOException {
 		try {
 			byte[] b2 = SerializedComparator.serializeObject(o); // key
-			byte[] b = kvStore.get(cfh, b2); // b = value
-			kvStore.delete(cfh, b2); // serial bytes of key, call to delete
-			if(b != null) {
+			byte[] b = getBytes(cfh, b2); // b = value, keyMayExist only saves reading a value the filters rule out
+			kvStore.delete(cfh, b2); // serial bytes of key, call to delete whatever the filters say
+			if(b != null)
 				return SerializedComparator.deserializeObject(b); // serialize previous value from retrieved bytes
-			}
 		} catch (RocksDBException | IOException e) {
-			return new IOException(e);
+			throw new IOException(e);
 		}
 		return null; // no previous key
 	}
@@ -844,10 +1168,198 @@ public class Session {
 				return SerializedComparator.deserializeObject(b); // serialize previous value from retrieved bytes
 			}
 		} catch (RocksDBException | IOException e) {
-			return new IOException(e);
+			throw new IOException(e);
 		}
 		return null; // no previous key
 	}
+	/**
+	* Delete the key without reading its value.
+	* @param cfh ColumnFamilyHandle
+	* @param o The key to delete
+	* @param single true to write a SingleDelete, for a key put once since it was last deleted and never merged
+	* @throws IOException
+	*/
+	@SuppressWarnings("rawtypes")
+	protected void delete(ColumnFamilyHandle cfh, Comparable o, boolean single) throws IOException {
+		try {
+			byte[] k = SerializedComparator.serializeObject(o);
+			if(single)
+				kvStore.singleDelete(cfh, k);
+			else
+				kvStore.delete(cfh, k);
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
+	/**
+	* Delete the key in the transaction without reading its value.
+	* @param txn The Transaction
+	* @param cfh ColumnFamilyHandle
+	* @param o The key to delete
+	* @param single true to write a SingleDelete, for a key put once since it was last deleted and never merged
+	* @throws IOException
+	*/
+	@SuppressWarnings("rawtypes")
+	protected void delete(Transaction txn, ColumnFamilyHandle cfh, Comparable o, boolean single) throws IOException {
+		try {
+			byte[] k = SerializedComparator.serializeObject(o);
+			if(single)
+				txn.singleDelete(cfh, k);
+			else
+				txn.delete(cfh, k);
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
+	/**
+	* Delete the keys from fkey inclusive to tkey exclusive with one range tombstone, reading and deleting no key on its own.
+	* A null bound extends the range to the first or last key, and as the end of a range is excluded the last key is then
+	* deleted by itself.
+	* @param cfh ColumnFamilyHandle
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param reclaim true to drop the files wholly inside the range and compact it, freeing its space now rather than
+	* when compaction reaches the tombstone. Snapshots and open iterators no longer see the dropped files.
+	* @throws IOException
+	*/
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	protected void deleteRange(ColumnFamilyHandle cfh, Comparable fkey, Comparable tkey, boolean reclaim) throws IOException {
+		try {
+			byte[] b = fkey == null ? null : SerializedComparator.serializeObject(fkey);
+			byte[] e = tkey == null ? null : SerializedComparator.serializeObject(tkey);
+			byte[] last = null;
+			if(b == null || e == null) {
+				try (RocksIterator it = kvStore.newIterator(cfh, AbstractIterator.totalOrder())) {
+					if(b == null) {
+						it.seekToFirst();
+						if(it.isValid())
+							b = it.key();
+					}
+					if(e == null) {
+						it.seekToLast();
+						if(it.isValid())
+							e = last = it.key();
+					}
+					it.status();
+				}
+				if(b == null || e == null)
+					return; // empty
+			}
+			int c = ((Comparable)SerializedComparator.deserializeObject(b)).compareTo(SerializedComparator.deserializeObject(e));
+			if(c < 0)
+				kvStore.deleteRange(cfh, b, e);
+			if(last != null && c <= 0)
+				kvStore.delete(cfh, last);
+			if(reclaim && (c < 0 || (last != null && c == 0))) {
+				kvStore.deleteFilesInRanges(cfh, Arrays.asList(b, e), last != null);
+				kvStore.compactRange(cfh, b, e);
+			}
+			if(DEBUG)
+				System.out.printf("%s.deleteRange(%s, %s, %s, %b)%n", this.getClass().getName(), cfh, fkey, tkey, reclaim);
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
+	/**
+	* Read the keys from fkey to tkey exclusive, at most max of them, for a range removed a key at a time
+	* where its removal must see each key, as when the map has indexes. A page resumes after the last key of the
+	* page before, so the seek passes over the keys deleted so far instead of stepping over their tombstones.
+	* @param cfh ColumnFamilyHandle
+	* @param fkey The key the page starts from, or null from the first key
+	* @param inclusive true to include fkey, false to start after it
+	* @param tkey The key ending the range, or null through the last key
+	* @param max The most keys to read
+	* @return the keys in order
+	* @throws IOException
+	*/
+	@SuppressWarnings("rawtypes")
+	protected List<Comparable> keys(ColumnFamilyHandle cfh, Comparable fkey, boolean inclusive, Comparable tkey, int max) throws IOException {
+		try (RocksIterator it = kvStore.newIterator(cfh, AbstractIterator.totalOrder())) {
+			return keys(it, fkey, inclusive, tkey, max);
+		}
+	}
+	/**
+	* Read the keys the transaction sees from fkey to tkey exclusive, at most max of them, for a range
+	* removed a page at a time, transactions offering no range tombstone. A page resumes after the last key of the
+	* page before, so the seek passes over the deletes of the write batch instead of stepping over them.
+	* @param txn The Transaction
+	* @param cfh ColumnFamilyHandle
+	* @param fkey The key the page starts from, or null from the first key
+	* @param inclusive true to include fkey, false to start after it
+	* @param tkey The key ending the range, or null through the last key
+	* @param max The most keys to read
+	* @return the keys in order
+	* @throws IOException
+	*/
+	@SuppressWarnings("rawtypes")
+	protected List<Comparable> keys(Transaction txn, ColumnFamilyHandle cfh, Comparable fkey, boolean inclusive, Comparable tkey, int max) throws IOException {
+		try (RocksIterator it = txn.getIterator(AbstractIterator.totalOrder(), cfh)) {
+			return keys(it, fkey, inclusive, tkey, max);
+		}
+	}
+
+	/**
+	* Read the entries the transaction sees after fkey to tkey exclusive, at most max of them, for a range changed a
+	* chunk at a time. Each chunk is read by its own iterator, as the transaction is written between chunks, and with
+	* the snapshot of the transaction if it has one.
+	* @param txn The Transaction
+	* @param cfh ColumnFamilyHandle
+	* @param fkey The key the chunk starts from, or null from the first key
+	* @param inclusive true to include fkey, false to start after it
+	* @param tkey The key ending the range, or null through the last key
+	* @param max The most entries to read
+	* @return the {@link KeyValuePair} entries in order
+	* @throws IOException
+	*/
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	protected List<KeyValuePair> entries(Transaction txn, ColumnFamilyHandle cfh, Comparable fkey, boolean inclusive, Comparable tkey, int max) throws IOException {
+		ArrayList<KeyValuePair> ret = new ArrayList<KeyValuePair>();
+		try (ReadOptions ro = new ReadOptions().setTotalOrderSeek(true)) {
+			if(txn.getSnapshot() != null)
+				ro.setSnapshot(txn.getSnapshot());
+			try (RocksIterator it = txn.getIterator(ro, cfh)) {
+				if(fkey == null)
+					it.seekToFirst();
+				else
+					it.seek(SerializedComparator.serializeObject(fkey));
+				for(; it.isValid() && ret.size() < max; it.next()) {
+					Comparable key = (Comparable) SerializedComparator.deserializeObject(it.key());
+					if(!inclusive && key.compareTo(fkey) == 0)
+						continue;
+					if(tkey != null && key.compareTo(tkey) >= 0)
+						break;
+					ret.add(new KeyValuePair(key, SerializedComparator.deserializeObject(it.value())));
+				}
+				it.status();
+			}
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+		return ret;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static List<Comparable> keys(RocksIterator it, Comparable fkey, boolean inclusive, Comparable tkey, int max) throws IOException {
+		ArrayList<Comparable> ret = new ArrayList<Comparable>();
+		if(fkey == null)
+			it.seekToFirst();
+		else
+			it.seek(SerializedComparator.serializeObject(fkey));
+		for(; it.isValid() && ret.size() < max; it.next()) {
+			Comparable key = (Comparable) SerializedComparator.deserializeObject(it.key());
+			if(!inclusive && key.compareTo(fkey) == 0)
+				continue;
+			if(tkey != null && key.compareTo(tkey) >= 0)
+				break;
+			ret.add(key);
+		}
+		try {
+			it.status();
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+		return ret;
+	}
 
 	/**
 	 * Get the value of the object associated with first key
@@ -856,11 +1368,12 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Object first(ColumnFamilyHandle cfh) throws IOException {
-		Iterator<?> it = new EntrySetIterator(kvStore, cfh);
-		if(it.hasNext()) {
-			return ((Entry)it.next()).getValue();
+		try (EntrySetIterator it = new EntrySetIterator(kvStore, cfh)) {
+			if(it.hasNext()) {
+				return ((Entry)it.next()).getValue();
+			}
+			return null;
 		}
-		return null;
 	}
 	/**
 	 * Get the value of the object associated with first key
@@ -870,11 +1383,12 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected Object first(Transaction txn, ColumnFamilyHandle cfh) throws IOException {
-		Iterator<?> it = new EntrySetIterator(txn, new ReadOptions(), cfh);
-		if(it.hasNext()) {
-			return ((Entry)it.next()).getValue();
+		try (EntrySetIterator it = new EntrySetIterator(txn, AbstractIterator.totalOrder(), cfh)) {
+			if(it.hasNext()) {
+				return ((Entry)it.next()).getValue();
+			}
+			return null;
 		}
-		return null;
 	}
 
 	/**
@@ -887,11 +1401,12 @@ public class Session {
 	protected Comparable firstKey(ColumnFamilyHandle cfh) throws IOException {
 		if(DEBUG)
 			System.out.printf("%s.firstKey for kvStore %s%n", this.getClass().getName(),kvStore);
-		Iterator it = new EntrySetIterator(kvStore, cfh);
-		if(it.hasNext()) {
-			return (Comparable) ((Entry)it.next()).getKey();
+		try (EntrySetIterator it = new EntrySetIterator(kvStore, cfh)) {
+			if(it.hasNext()) {
+				return (Comparable) ((Entry)it.next()).getKey();
+			}
+			return null;
 		}
-		return null;
 	}
 	/**
 	 * Get the first key
@@ -904,11 +1419,12 @@ public class Session {
 	protected Comparable firstKey(Transaction txn, ColumnFamilyHandle cfh) throws IOException {
 		if(DEBUG)
 			System.out.printf("%s.firstKey for kvStore %s%n", this.getClass().getName(),txn);
-		Iterator it = new EntrySetIterator(txn, new ReadOptions(), cfh);
-		if(it.hasNext()) {
-			return (Comparable) ((Entry)it.next()).getKey();
+		try (EntrySetIterator it = new EntrySetIterator(txn, AbstractIterator.totalOrder(), cfh)) {
+			if(it.hasNext()) {
+				return (Comparable) ((Entry)it.next()).getKey();
+			}
+			return null;
 		}
-		return null;
 	}
 
 	/**
@@ -920,13 +1436,14 @@ public class Session {
 	protected Object last(ColumnFamilyHandle cfh) throws IOException {
 		if(DEBUG)
 			System.out.printf("%s.last for kvStore %s%n", this.getClass().getName(),kvStore);
-		EntrySetIterator it = new EntrySetIterator(kvStore, cfh);
-		RocksIterator ri = it.getIterator();
-		ri.seekToLast();
-		if(ri.isValid()) {
-			return SerializedComparator.deserializeObject(ri.value());
+		try (EntrySetIterator it = new EntrySetIterator(kvStore, cfh)) {
+			RocksIterator ri = it.getIterator();
+			ri.seekToLast();
+			if(ri.isValid()) {
+				return SerializedComparator.deserializeObject(ri.value());
+			}
+			return null;
 		}
-		return null;
 	}
 	/**
 	 * Get the last object associated with greatest valued key in the KVStore
@@ -938,13 +1455,14 @@ public class Session {
 	protected Object last(Transaction txn, ColumnFamilyHandle cfh) throws IOException {
 		if(DEBUG)
 			System.out.printf("%s.last for kvStore %s%n", this.getClass().getName(),txn);
-		EntrySetIterator it = new EntrySetIterator(txn, new ReadOptions(), cfh);
-		RocksIterator ri = it.getIterator();
-		ri.seekToLast();
-		if(ri.isValid()) {
-			return SerializedComparator.deserializeObject(ri.value());
+		try (EntrySetIterator it = new EntrySetIterator(txn, AbstractIterator.totalOrder(), cfh)) {
+			RocksIterator ri = it.getIterator();
+			ri.seekToLast();
+			if(ri.isValid()) {
+				return SerializedComparator.deserializeObject(ri.value());
+			}
+			return null;
 		}
-		return null;
 	}
 
 	/**
@@ -957,13 +1475,14 @@ public class Session {
 	protected Comparable lastKey(ColumnFamilyHandle cfh) throws IOException {
 		if(DEBUG)
 			System.out.printf("%s.lastKey for kvStore %s%n", this.getClass().getName(),kvStore);
-		EntrySetIterator it = new EntrySetIterator(kvStore, cfh);
-		RocksIterator ri = it.getIterator();
-		ri.seekToLast();
-		if(ri.isValid()) {
-			return (Comparable) SerializedComparator.deserializeObject(ri.key());
+		try (EntrySetIterator it = new EntrySetIterator(kvStore, cfh)) {
+			RocksIterator ri = it.getIterator();
+			ri.seekToLast();
+			if(ri.isValid()) {
+				return (Comparable) SerializedComparator.deserializeObject(ri.key());
+			}
+			return null;
 		}
-		return null;
 	}
 	/**
 	 * Get the last key in the KVStore
@@ -976,13 +1495,14 @@ public class Session {
 	protected Comparable lastKey(Transaction txn, ColumnFamilyHandle cfh) throws IOException {
 		if(DEBUG)
 			System.out.printf("%s.lastKey for kvStore %s%n", this.getClass().getName(),txn);
-		EntrySetIterator it = new EntrySetIterator(txn, new ReadOptions(), cfh);
-		RocksIterator ri = it.getIterator();
-		ri.seekToLast();
-		if(ri.isValid()) {
-			return (Comparable) SerializedComparator.deserializeObject(ri.key());
+		try (EntrySetIterator it = new EntrySetIterator(txn, AbstractIterator.totalOrder(), cfh)) {
+			RocksIterator ri = it.getIterator();
+			ri.seekToLast();
+			if(ri.isValid()) {
+				return (Comparable) SerializedComparator.deserializeObject(ri.key());
+			}
+			return null;
 		}
-		return null;
 	}
 
 	/**
@@ -992,13 +1512,14 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected long size(ColumnFamilyHandle cfh) throws IOException {
-		Iterator<?> it = new KeySetIterator(kvStore, cfh);
-		long cnt = 0;
-		while(it.hasNext()) {
-			it.next();
-			++cnt;
+		try (KeySetIterator it = new KeySetIterator(kvStore, cfh)) {
+			long cnt = 0;
+			while(it.hasNext()) {
+				it.next();
+				++cnt;
+			}
+			return cnt;
 		}
-		return cnt;
 	}
 	/**
 	 * Get the number of keys total.
@@ -1008,13 +1529,14 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected long size(Transaction txn, ColumnFamilyHandle cfh) throws IOException {
-		Iterator<?> it = new KeySetIterator(txn, cfh);
-		long cnt = 0;
-		while(it.hasNext()) {
-			it.next();
-			++cnt;
+		try (KeySetIterator it = new KeySetIterator(txn, cfh)) {
+			long cnt = 0;
+			while(it.hasNext()) {
+				it.next();
+				++cnt;
+			}
+			return cnt;
 		}
-		return cnt;
 	}
 
 	/**
@@ -1024,11 +1546,12 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected boolean isEmpty(ColumnFamilyHandle cfh) throws IOException {
-		Iterator<?> it = new KeySetIterator(kvStore, cfh);
-		if(it.hasNext()) {
-			return true;
+		try (KeySetIterator it = new KeySetIterator(kvStore, cfh)) {
+			if(it.hasNext()) {
+				return true;
+			}
+			return false;
 		}
-		return false;
 	}
 	
 	/**
@@ -1039,11 +1562,12 @@ public class Session {
 	 * @throws IOException
 	 */
 	protected boolean isEmpty(Transaction txn, ColumnFamilyHandle cfh) throws IOException {
-		Iterator<?> it = new KeySetIterator(txn, cfh);
-		if(it.hasNext()) {
-			return true;
+		try (KeySetIterator it = new KeySetIterator(txn, cfh)) {
+			if(it.hasNext()) {
+				return true;
+			}
+			return false;
 		}
-		return false;
 	}
 	
 	/**
@@ -1064,7 +1588,16 @@ public class Session {
 	* @exception IOException For low level failure
 	*/
 	public void Close() throws IOException {
-		kvStore.close();
+		// the next connect to the path opens the database again
+		SessionManager.getSessionTable().remove(getDBname(), this);
+		OpenDatabaseCache.closed(this);
+		if(!isEvicted()) {
+			try {
+				flushPending();
+			} finally {
+				kvStore.close();
+			}
+		}
 	}
 	/**
 	* Close this session.
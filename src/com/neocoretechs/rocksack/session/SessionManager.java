@@ -3,8 +3,10 @@ package com.neocoretechs.rocksack.session;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Vector;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
@@ -17,7 +19,6 @@ import org.rocksdb.TransactionDB;
 import org.rocksdb.TransactionDBOptions;
 
 import com.neocoretechs.rocksack.Alias;
-import com.neocoretechs.rocksack.DatabaseClass;
 
 /*
 * Copyright (c) 2003, NeoCoreTechs
@@ -56,7 +57,9 @@ public final class SessionManager {
 	private static ConcurrentHashMap<String, Session> SessionTable = new ConcurrentHashMap<String, Session>();
 	@SuppressWarnings("rawtypes")
 	private static ConcurrentHashMap<?, ?> AdminSessionTable = new ConcurrentHashMap();
-	private static Vector<String> OfflineDBs = new Vector<String>();
+	private static Set<String> OfflineDBs = ConcurrentHashMap.newKeySet();
+	// serializes the opening and offlining of each database path, paths never wait on each other
+	private static ConcurrentHashMap<String, ReentrantLock> PathLocks = new ConcurrentHashMap<String, ReentrantLock>();
 
 	//
 	// Sets the maximum number users
@@ -108,6 +111,53 @@ public final class SessionManager {
 		return lastCommitTime;
 	}
 
+	/**
+	 * Return the session for the database path, opening it with the supplied opener if it is not in the session table.
+	 * An open session is returned without locking. Opening takes a lock for the path only, so connections
+	 * to different databases proceed in parallel, and concurrent connections to the same path open it once.
+	 * @param dbname the path to the database
+	 * @param opener opens the database if no session exists
+	 * @return The {@link Session}
+	 * @throws IOException if recovery of prepared transactions fails
+	 * @throws IllegalAccessException if the database is offline
+	 */
+	private static Session connect(String dbname, Supplier<? extends Session> opener) throws IOException, IllegalAccessException {
+		if (OfflineDBs.contains(dbname))
+			throw new IllegalAccessException("Database is offline, try later");
+		Session hps = SessionTable.get(dbname);
+		if (hps != null)
+			return hps;
+		ReentrantLock lock = getPathLock(dbname);
+		lock.lock();
+		try {
+			if (OfflineDBs.contains(dbname))
+				throw new IllegalAccessException("Database is offline, try later");
+			hps = SessionTable.get(dbname);
+			if (hps == null) {
+				// did'nt find it, create anew
+				hps = opener.get();
+				// resolve transactions left prepared by an interrupted two phase commit
+				if(hps instanceof TransactionSession)
+					TwoPhaseCommit.recover((TransactionSession)hps);
+				SessionTable.put(dbname, hps);
+				// retained to reopen the database if closed by the OpenDatabaseCache
+				hps.opener = opener;
+				OpenDatabaseCache.opened(hps);
+				if( DEBUG )
+					System.out.printf("New session for db:%s session:%s%n",dbname,hps);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return hps;
+	}
+	/**
+	 * @param dbname the path to the database
+	 * @return the lock held while the database at the path is opened, closed or reopened
+	 */
+	static ReentrantLock getPathLock(String dbname) {
+		return PathLocks.computeIfAbsent(dbname, k -> new ReentrantLock());
+	}
 	/**
 	 * Open the database and extract the ColumnFamily that represents the derivedClassName
 	 * @param dbname
@@ -117,22 +167,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized Session Connect(String dbname, Options options, String derivedClassName) throws IOException, IllegalAccessException {
+	public static Session Connect(String dbname, Options options, String derivedClassName) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to database:%s with options:%s derived class:%s%n", dbname, options, derivedClassName);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		Session hps = (Session) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamily(dbname,options,derivedClassName);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New session for db:%s session:%s derived class:%s %n",dbname,hps,derivedClassName);
-		}
-		return hps;
+		return connect(dbname, () -> OpenDBColumnFamily(dbname,options,derivedClassName));
 	}
 	/**
 	 * Open the database and extract the ColumnFamily that represents the default column family for main class
@@ -142,22 +182,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized Session Connect(String dbname, Options options) throws IOException, IllegalAccessException {
+	public static Session Connect(String dbname, Options options) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to database:%s with options:%s%n", dbname, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		Session hps = (Session) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamily(dbname,options);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New session for db:%s session:%s%n",dbname,hps);
-		}
-		return hps;
+		return connect(dbname, () -> OpenDBColumnFamily(dbname,options));
 	}
 
 	/**
@@ -168,22 +198,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized TransactionSession ConnectTransaction(String dbname, Options options) throws IOException, IllegalAccessException {
+	public static TransactionSession ConnectTransaction(String dbname, Options options) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to transaction database:%s with options:%s%n", dbname, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		TransactionSession hps = (TransactionSession) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamilyTransaction(dbname,options);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New transaction session for db:%s session:%s%n",dbname,hps);
-		}
-		return hps;
+		return (TransactionSession) connect(dbname, () -> OpenDBColumnFamilyTransaction(dbname,options));
 	}
 	/**
 	 * Connect to a transaction database column family for a default ColumnFamily class being stored in that database with associated transaction timeout.
@@ -194,22 +214,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized TransactionSession ConnectTransaction(String dbname, Options options, long timeout) throws IOException, IllegalAccessException {
+	public static TransactionSession ConnectTransaction(String dbname, Options options, long timeout) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to transaction database:%s with options:%s%n", dbname, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		TransactionSession hps = (TransactionSession) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamilyTransaction(dbname,options,timeout);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New transaction session for db:%s session:%s%n",dbname,hps);
-		}
-		return hps;
+		return (TransactionSession) connect(dbname, () -> OpenDBColumnFamilyTransaction(dbname,options,timeout));
 	}
 	/**
 	 * Connect to a transaction database column family for a default ColumnFamily class being stored in that database.
@@ -220,22 +230,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized TransactionSession ConnectTransaction(Alias alias, String dbname, Options options) throws IOException, IllegalAccessException {
+	public static TransactionSession ConnectTransaction(Alias alias, String dbname, Options options) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to transaction database:%s alias:%s with options:%s%n", dbname, alias, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		TransactionSession hps = (TransactionSession) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamilyTransaction(alias,dbname,options);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New transaction session for db:%s alias:%s session:%s %n",dbname, alias, hps);
-		}
-		return hps;
+		return (TransactionSession) connect(dbname, () -> OpenDBColumnFamilyTransaction(alias,dbname,options));
 	}
 	/**
 	 * Connect to a transaction database column family for a default ColumnFamily class being stored in that database with associated transaction timeout.
@@ -247,22 +247,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized TransactionSession ConnectTransaction(Alias alias, String dbname, Options options, long timeout) throws IOException, IllegalAccessException {
+	public static TransactionSession ConnectTransaction(Alias alias, String dbname, Options options, long timeout) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to transaction database:%s alias:%s with options:%s%n", dbname, alias, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		TransactionSession hps = (TransactionSession) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamilyTransaction(alias, dbname, options, timeout);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New transaction session for db:%s alias:%s session:%s%n",dbname, alias, hps);
-		}
-		return hps;
+		return (TransactionSession) connect(dbname, () -> OpenDBColumnFamilyTransaction(alias, dbname, options, timeout));
 	}
 	/**
 	 * Connect to a transaction database column family for a derived class being stored in that database.
@@ -274,22 +264,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized TransactionSession ConnectTransaction(Alias alias, String dbname, Options options, String derivedClassName) throws IOException, IllegalAccessException {
+	public static TransactionSession ConnectTransaction(Alias alias, String dbname, Options options, String derivedClassName) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to transaction database:%s derived class:%s alias:%s with options:%s%n", dbname, derivedClassName, alias, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		TransactionSession hps = (TransactionSession) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamilyTransaction(alias,dbname,options,derivedClassName);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New transaction session for db:%s derived class:%s alias:%s session:%s%n",dbname, derivedClassName, alias, hps);
-		}
-		return hps;
+		return (TransactionSession) connect(dbname, () -> OpenDBColumnFamilyTransaction(alias,dbname,options,derivedClassName));
 	}
 	/**
 	 * Connect to a transaction database column family for a derived class being stored in that database with associated transaction timeout.
@@ -302,22 +282,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized TransactionSession ConnectTransaction(Alias alias, String dbname, Options options, String derivedClassName, long timeout) throws IOException, IllegalAccessException {
+	public static TransactionSession ConnectTransaction(Alias alias, String dbname, Options options, String derivedClassName, long timeout) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to transaction database:%s derived class:%s alias:%s with options:%s%n", dbname, derivedClassName, alias, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		TransactionSession hps = (TransactionSession) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamilyTransaction(alias, dbname, options, derivedClassName, timeout);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New transaction session for db:%s derived class:%s alias:%s session:%s%n",dbname, derivedClassName, alias, hps);
-		}
-		return hps;
+		return (TransactionSession) connect(dbname, () -> OpenDBColumnFamilyTransaction(alias, dbname, options, derivedClassName, timeout));
 	}
 	/**
 	 * Connect to a transaction database column family for a derived class being stored in that database.
@@ -328,22 +298,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized TransactionSession ConnectTransaction(String dbname, Options options, String derivedClassName) throws IOException, IllegalAccessException {
+	public static TransactionSession ConnectTransaction(String dbname, Options options, String derivedClassName) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to transaction database:%s derived class:%s with options:%s%n", dbname, derivedClassName, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		TransactionSession hps = (TransactionSession) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamilyTransaction(dbname,options,derivedClassName);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New transaction session for db:%s derived class:%s session:%s%n",dbname, derivedClassName, hps);
-		}
-		return hps;
+		return (TransactionSession) connect(dbname, () -> OpenDBColumnFamilyTransaction(dbname,options,derivedClassName));
 	}
 	/**
 	 * Connect to a transaction database column family for a derived class being stored in that database with associated transaction timeout.
@@ -355,22 +315,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized TransactionSession ConnectTransaction(String dbname, Options options, String derivedClassName, long timeout) throws IOException, IllegalAccessException {
+	public static TransactionSession ConnectTransaction(String dbname, Options options, String derivedClassName, long timeout) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to transaction database:%s for derived class:%s with options:%s%n", dbname, derivedClassName, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		TransactionSession hps = (TransactionSession) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamilyTransaction(dbname, options, derivedClassName, timeout);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New transaction session for db:%s derived class:%s session:%s%n",dbname, derivedClassName, hps);
-		}
-		return hps;
+		return (TransactionSession) connect(dbname, () -> OpenDBColumnFamilyTransaction(dbname, options, derivedClassName, timeout));
 	}
 	
 	/**
@@ -381,22 +331,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized TransactionSession ConnectOptimisticTransaction(String dbname, Options options) throws IOException, IllegalAccessException {
+	public static TransactionSession ConnectOptimisticTransaction(String dbname, Options options) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to optimistic transaction database:%s with options:%s%n", dbname, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		TransactionSession hps = (TransactionSession) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamilyOptimisticTransaction(dbname,options);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New optimistic session for db:%s session:%s %n",dbname,hps);
-		}
-		return hps;
+		return (TransactionSession) connect(dbname, () -> OpenDBColumnFamilyOptimisticTransaction(dbname,options));
 	}
 	/**
 	 * Connect to an optimistic transaction database column family for a default ColumnFamily class being stored in that database.
@@ -406,22 +346,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized TransactionSession ConnectOptimisticTransaction(Alias alias, String dbname, Options options) throws IOException, IllegalAccessException {
+	public static TransactionSession ConnectOptimisticTransaction(Alias alias, String dbname, Options options) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to optimistic transaction database:%s with options:%s%n", dbname, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		TransactionSession hps = (TransactionSession) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamilyOptimisticTransaction(alias,dbname,options);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New optimistic session for db:%s session:%s%n",dbname,hps);
-		}
-		return hps;
+		return (TransactionSession) connect(dbname, () -> OpenDBColumnFamilyOptimisticTransaction(alias,dbname,options));
 	}
 	/**
 	 * Connect to an optimistic transaction database column family for a derived class being stored in that database.
@@ -432,22 +362,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized TransactionSession ConnectOptimisticTransaction(Alias alias, String dbname, Options options, String derivedClassName) throws IOException, IllegalAccessException {
+	public static TransactionSession ConnectOptimisticTransaction(Alias alias, String dbname, Options options, String derivedClassName) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to optimistic transaction database:%s for derived class:%s Alias:%s with options:%s%n", dbname, derivedClassName, alias, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		TransactionSession hps = (TransactionSession) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamilyOptimisticTransaction(alias,dbname,options,derivedClassName);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New optimistic session for db:%s derived class:%s Alias:%s session:%s%n",dbname, derivedClassName, alias, hps);
-		}
-		return hps;
+		return (TransactionSession) connect(dbname, () -> OpenDBColumnFamilyOptimisticTransaction(alias,dbname,options,derivedClassName));
 	}
 	/**
 	 * Connect to an optimistic transaction database column family for a derived class being stored in that database.
@@ -458,22 +378,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized TransactionSession ConnectOptimisticTransaction(String dbname, Options options, String derivedClassName) throws IOException, IllegalAccessException {
+	public static TransactionSession ConnectOptimisticTransaction(String dbname, Options options, String derivedClassName) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.printf("Connecting to optimistic transaction database:%s for derived class:%s with options:%s%n", dbname, derivedClassName, options);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		TransactionSession hps = (TransactionSession) (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew
-			hps = OpenDBColumnFamilyOptimisticTransaction(dbname,options,derivedClassName);
-			SessionTable.put(dbname, hps);
-			if( DEBUG )
-				System.out.printf("New optimistic session for db:%s derived class:%s session:%s %n",dbname, derivedClassName, hps);
-		}
-		return hps;
+		return (TransactionSession) connect(dbname, () -> OpenDBColumnFamilyOptimisticTransaction(dbname,options,derivedClassName));
 	}
 	/**
 	 * Start the DB with no logging for debugging purposes
@@ -484,28 +394,12 @@ public final class SessionManager {
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 */
-	public static synchronized Session ConnectNoRecovery(String dbname, Options options) throws IOException, IllegalAccessException {
+	public static Session ConnectNoRecovery(String dbname, Options options) throws IOException, IllegalAccessException {
 		if( DEBUG ) {
 			System.out.println("Connecting WITHOUT RECOVERY to "+dbname);
 		}
 		//if( SessionTable.size() >= MAX_USERS && MAX_USERS != -1) throw new IllegalAccessException("Maximum number of users exceeded");
-		if (OfflineDBs.contains(dbname))
-			throw new IllegalAccessException("Database is offline, try later");
-		Session hps = (SessionTable.get(dbname));
-		if (hps == null) {
-			// did'nt find it, create anew, throws IllegalAccessException if no go
-			// Global IO and main KeyValue implementation
-			if( DEBUG )
-				System.out.println("SessionManager.ConectNoRecovery bringing up IO");
-			hps = OpenDBColumnFamily(dbname, options);
-			if( DEBUG )
-				System.out.println("SessionManager.ConectNoRecovery bringing up session");
-			if( DEBUG )
-				System.out.println("SessionManager.ConectNoRecovery logging session");
-			SessionTable.put(dbname, hps);
-		} 
-		//
-		return hps;
+		return connect(dbname, () -> OpenDBColumnFamily(dbname, options));
 	}
 	/**
 	 * Call the RocksDB open for the given path and options
@@ -539,7 +433,7 @@ public final class SessionManager {
 		List<ColumnFamilyDescriptor> columnFamilyDescriptor = buildColumnFamilyDescriptors(dbPath, options);
 	    RocksDB db;
 		try {
-			db = RocksDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = RocksDB.open(DatabaseManager.getInstance().getDBOptions(dbPath), dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -559,7 +453,7 @@ public final class SessionManager {
 		List<ColumnFamilyDescriptor> columnFamilyDescriptor = buildDerivedColumnFamilyDescriptors(dbPath, options, derivedClassName);
 	    RocksDB db;
 		try {
-			db = RocksDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = RocksDB.open(DatabaseManager.getInstance().getDBOptions(dbPath), dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -579,7 +473,7 @@ public final class SessionManager {
 	    TransactionDB db;
 	    TransactionDBOptions tDbo = new TransactionDBOptions();
 		try {
-			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getTransactionDBOptions(dbPath), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -599,7 +493,7 @@ public final class SessionManager {
 	    TransactionDBOptions tDbo = new TransactionDBOptions();
 	    tDbo.setTransactionLockTimeout(timeout);
 		try {
-			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getTransactionDBOptions(dbPath), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -618,7 +512,7 @@ public final class SessionManager {
 	    TransactionDB db;
 	    TransactionDBOptions tDbo = new TransactionDBOptions();
 		try {
-			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getTransactionDBOptions(dbPath), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -642,7 +536,7 @@ public final class SessionManager {
 	    TransactionDBOptions tDbo = new TransactionDBOptions();
 	    tDbo.setTransactionLockTimeout(timeout);
 		try {
-			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getTransactionDBOptions(dbPath), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -665,7 +559,7 @@ public final class SessionManager {
 	    TransactionDB db;
 	    TransactionDBOptions tDbo = new TransactionDBOptions();
 		try {
-			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getTransactionDBOptions(dbPath), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -690,7 +584,7 @@ public final class SessionManager {
 	    TransactionDBOptions tDbo = new TransactionDBOptions();
 	    tDbo.setTransactionLockTimeout(timeout);
 		try {
-			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getTransactionDBOptions(dbPath), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -711,7 +605,7 @@ public final class SessionManager {
 	    TransactionDB db;
 	    TransactionDBOptions tDbo = new TransactionDBOptions();
 		try {
-			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getTransactionDBOptions(dbPath), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -735,7 +629,7 @@ public final class SessionManager {
 	    TransactionDBOptions tDbo = new TransactionDBOptions();
 	    tDbo.setTransactionLockTimeout(timeout);
 		try {
-			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = (TransactionDB) TransactionDB.open(DatabaseManager.getInstance().getTransactionDBOptions(dbPath), tDbo, dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -754,7 +648,7 @@ public final class SessionManager {
 		List<ColumnFamilyDescriptor> columnFamilyDescriptor = buildColumnFamilyDescriptors(dbPath, options);
 	    OptimisticTransactionDB db;
 		try {
-			db = OptimisticTransactionDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = OptimisticTransactionDB.open(DatabaseManager.getInstance().getTransactionDBOptions(dbPath), dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -774,7 +668,7 @@ public final class SessionManager {
 		List<ColumnFamilyDescriptor> columnFamilyDescriptor = buildDerivedColumnFamilyDescriptors(dbPath, options, derivedClassName);
 	    OptimisticTransactionDB db;
 		try {
-			db = OptimisticTransactionDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = OptimisticTransactionDB.open(DatabaseManager.getInstance().getTransactionDBOptions(dbPath), dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -796,7 +690,7 @@ public final class SessionManager {
 		List<ColumnFamilyDescriptor> columnFamilyDescriptor = buildDerivedColumnFamilyDescriptors(dbPath, options, derivedClassName);
 	    OptimisticTransactionDB db;
 		try {
-			db = OptimisticTransactionDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = OptimisticTransactionDB.open(DatabaseManager.getInstance().getTransactionDBOptions(dbPath), dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -816,7 +710,7 @@ public final class SessionManager {
 		List<ColumnFamilyDescriptor> columnFamilyDescriptor = buildColumnFamilyDescriptors(dbPath, options);
 	    OptimisticTransactionDB db;
 		try {
-			db = OptimisticTransactionDB.open(DatabaseManager.getInstance().getDefaultDBOptions(), dbPath, columnFamilyDescriptor, columnFamilyHandles);
+			db = OptimisticTransactionDB.open(DatabaseManager.getInstance().getTransactionDBOptions(dbPath), dbPath, columnFamilyDescriptor, columnFamilyHandles);
 		} catch (RocksDBException e) {
 			throw new RuntimeException(e);
 		}
@@ -852,44 +746,17 @@ public final class SessionManager {
 			ColumnFamilyDescriptor cfd = null;
 			if(DEBUG)
 				System.out.printf("SessionManager.buildDefaultColumnFamilyDescriptors reading column family %s for db:%s%n",cn,dbPath);
-			if(cn.equals(defcn)) {
+			if(cn.equals(defcn))
 				foundDefault = true;
-				cfd = new ColumnFamilyDescriptor(e, DatabaseManager.getDefaultColumnFamilyOptions());
-			} else {
-				ColumnFamilyOptions cfo = DatabaseManager.getInstance().getOptionsCache(cn);
-				if(cfo == null) {
-					if(DEBUG)
-						System.out.println("SessionManager.buildDefaultColumnFamilyDescriptors - Column family options cache miss for "+cn);
-					Class clazz = null;
-					try {
-						clazz = Class.forName(cn);
-					} catch (ClassNotFoundException e1) {
-						e1.printStackTrace();
-					}
-					if(clazz == null || clazz.isAnnotationPresent(DatabaseClass.class)) {
-						DatabaseClass dc = (DatabaseClass)clazz.getAnnotation(DatabaseClass.class);
-						DatabaseManager.getInstance().buildOptionsFromAnnotation(dc, cn, DatabaseManager.getInstance().getBaseTable());
-						if(DEBUG)
-							System.out.println("SessionManager.buildDefaultColumnFamilyDescriptors - Built and cached column family options: "+cfo+" for "+cn);
-						cfo = DatabaseManager.getInstance().getOptionsCache(cn);
-					} else {
-						if(DEBUG)
-							System.out.println("SessionManager.buildDefaultColumnFamilyDescriptors - Using DEFAULT options for "+cn);
-						cfo = DatabaseManager.getDefaultColumnFamilyOptions();
-					}
-				} else {
-					if(DEBUG)
-						System.out.println("SessionManager.buildDefaultColumnFamilyDescriptors - Found column family options from cache: "+cfo+" for "+cn);
-				}
-				cfd = new ColumnFamilyDescriptor(e, cfo);
-			}
+			// options of the tablespace, alias and class of the column family, with any DatabaseClass overrides
+			cfd = new ColumnFamilyDescriptor(e, DatabaseManager.getInstance().getColumnFamilyOptions(dbPath, cn));
 			columnFamilyDescriptor.add(cfd);
 		}
 		if(!foundDefault) {
 			if(DEBUG)
 				System.out.printf("SessionManager.buildDefaultColumnFamilyDescriptors did NOT find %s for db:%s default columnfamily%n",new String(RocksDB.DEFAULT_COLUMN_FAMILY),dbPath);
 			// options from main DB open?
-			ColumnFamilyDescriptor cfd = new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, DatabaseManager.getDefaultColumnFamilyOptions());
+			ColumnFamilyDescriptor cfd = new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, DatabaseManager.getInstance().getColumnFamilyOptions(dbPath, null));
 			columnFamilyDescriptor.add(cfd);
 			//cfo.close();
 		}
@@ -929,14 +796,9 @@ public final class SessionManager {
 			if(cn.equals(defcn)) {
 				foundDefault = true;
 			}
-			ColumnFamilyOptions cfo = DatabaseManager.getInstance().getOptionsCache(cn);
+			ColumnFamilyOptions cfo = DatabaseManager.getInstance().getColumnFamilyOptions(dbPath, cn);
 			if(DEBUG)
-				if(cfo != null)
-					System.out.println("SessionManager.buildDerivedColumnFamilyDescriptors - Found column family options from cache: "+cfo+" for "+cn);
-				else
-					System.out.println("SessionManager.buildDerivedColumnFamilyDescriptors - Column family options cache miss for "+cn);
-			if(cfo == null)
-				cfo = DatabaseManager.getDefaultColumnFamilyOptions();
+				System.out.println("SessionManager.buildDerivedColumnFamilyDescriptors - column family options: "+cfo+" for "+cn);
 			cfd = new ColumnFamilyDescriptor(e, cfo);
 			columnFamilyDescriptor.add(cfd);
 		}
@@ -944,7 +806,7 @@ public final class SessionManager {
 			if(DEBUG)
 				System.out.printf("SessionManager.buildDerivedColumnFamilyDescriptors did NOT find %s for db:%s derivedClass:%s%n",TransactionDB.DEFAULT_COLUMN_FAMILY,dbPath,derivedClassName);
 			// options from main DB open?
-			ColumnFamilyDescriptor cfd = new ColumnFamilyDescriptor(TransactionDB.DEFAULT_COLUMN_FAMILY, DatabaseManager.getDefaultColumnFamilyOptions());
+			ColumnFamilyDescriptor cfd = new ColumnFamilyDescriptor(TransactionDB.DEFAULT_COLUMN_FAMILY, DatabaseManager.getInstance().getColumnFamilyOptions(dbPath, null));
 			columnFamilyDescriptor.add(cfd);
 		}
 		return columnFamilyDescriptor;
@@ -954,21 +816,27 @@ public final class SessionManager {
 	* @param dbname The database to offline
 	* @exception IOException if we can't force the close
 	*/
-	protected static synchronized void setDBOffline(String dbname) throws IOException {
-		OfflineDBs.addElement(dbname);
-		// look for session instance, then signal close
-		Session hps = (SessionTable.get(dbname));
-		if (hps != null) {
-			hps.Close();
+	protected static void setDBOffline(String dbname) throws IOException {
+		ReentrantLock lock = getPathLock(dbname);
+		lock.lock();
+		try {
+			OfflineDBs.add(dbname);
+			// look for session instance, then signal close
+			Session hps = (SessionTable.get(dbname));
+			if (hps != null) {
+				hps.Close();
+			}
+		} finally {
+			lock.unlock();
 		}
 	}
-	protected static synchronized void setDBOnline(String dbname) {
-		OfflineDBs.removeElement(dbname);
+	protected static void setDBOnline(String dbname) {
+		OfflineDBs.remove(dbname);
 	}
-	public static synchronized boolean isDBOffline(String dbname) {
+	public static boolean isDBOffline(String dbname) {
 		return OfflineDBs.contains(dbname);
 	}
-	protected static synchronized void releaseSession(TransactionInterface DS) {
+	protected static void releaseSession(TransactionInterface DS) {
 		SessionTable.remove(DS);
 	}
 
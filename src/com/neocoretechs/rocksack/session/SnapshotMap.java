@@ -0,0 +1,455 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Snapshot;
+
+import com.neocoretechs.rocksack.KeyValue;
+import com.neocoretechs.rocksack.SerializedComparator;
+import com.neocoretechs.rocksack.iterator.Entry;
+import com.neocoretechs.rocksack.iterator.KeyValuePair;
+import com.neocoretechs.rocksack.stream.SackStream;
+
+/**
+ * A read only view of a {@link BufferedMap} pinned to a RocksDB Snapshot, so every get, range and stream of the view
+ * sees the map as it was when the view was opened, whatever is written meanwhile. A report reading firstKey, then a
+ * subMap, then the size sees one state of the map, without a transaction database.<p>
+ * Methods return the same element types as those of the map. The view holds its database open and keeps the versions
+ * of the snapshot from compaction, so it should be closed promptly, which closes the iterators and streams it opened.
+ * It is released when garbage collected if never closed. Safe for use by several threads until closed.
+ * Obtained with {@link BufferedMap#openSnapshot()} or {@link DatabaseManager#openSnapshot(Class)}.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public final class SnapshotMap implements AutoCloseable {
+	private static boolean DEBUG = false;
+	private static final Cleaner cleaner = Cleaner.create();
+	// iterator elements
+	private static final int KEYS = 0;
+	private static final int ENTRIES = 1;
+	private static final int PAIRS = 2;
+
+	private final BufferedMap map;
+	private final RocksDB db;
+	private final ColumnFamilyHandle cfh;
+	private final Release release;
+	private final Cleaner.Cleanable cleanable;
+	private final Set<SnapshotIterator> iterators = ConcurrentHashMap.newKeySet();
+	private volatile boolean closed = false;
+
+	/**
+	 * Releases the snapshot and the pin of the session, must not reference the view.
+	 */
+	private static final class Release implements Runnable {
+		private final Session session;
+		private final RocksDB db;
+		private final Snapshot snapshot;
+		private final ReadOptions ro;
+		Release(Session session, RocksDB db, Snapshot snapshot, ReadOptions ro) {
+			this.session = session;
+			this.db = db;
+			this.snapshot = snapshot;
+			this.ro = ro;
+		}
+		@Override
+		public void run() {
+			ro.close();
+			db.releaseSnapshot(snapshot);
+			session.unpin();
+		}
+	}
+	/**
+	 * Pin the session of the map and take the snapshot.
+	 * @param map the map
+	 * @throws IOException if the database could not be reopened
+	 */
+	SnapshotMap(BufferedMap map) throws IOException {
+		this.map = map;
+		Session session = map.getSession();
+		session.pin();
+		this.db = session.getKVStore();
+		this.cfh = map.columnFamilyHandle;
+		Snapshot snapshot = db.getSnapshot();
+		this.release = new Release(session, db, snapshot, new ReadOptions().setSnapshot(snapshot).setTotalOrderSeek(true));
+		this.cleanable = cleaner.register(this, release);
+		if(DEBUG)
+			System.out.printf("%s opened on %s at %d%n", this.getClass().getName(), map.getClassName(), snapshot.getSequenceNumber());
+	}
+
+	private ReadOptions ro() throws IOException {
+		if(closed)
+			throw new IOException("Snapshot of "+map.getClassName()+" is closed");
+		return release.ro;
+	}
+	/**
+	 * @return the sequence number of the snapshot
+	 */
+	public long getSequenceNumber() {
+		return release.snapshot.getSequenceNumber();
+	}
+	/**
+	 * @return the map of the view
+	 */
+	public BufferedMap getMap() {
+		return map;
+	}
+	/**
+	* @param tkey The key for the value
+	* @return The key/value for the key as {@link com.neocoretechs.rocksack.KeyValue}, or null if not present
+	* @exception IOException if get from backing store fails
+	*/
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public Object get(Comparable tkey) throws IOException {
+		try {
+			byte[] b = db.get(cfh, ro(), SerializedComparator.serializeObject(tkey));
+			return b == null ? null : new KeyValue(tkey, SerializedComparator.deserializeObject(b));
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
+	/**
+	* Get the values of several keys in one multiGet.
+	* @param tkeys The keys for the values
+	* @return List of {@link com.neocoretechs.rocksack.KeyValue} in order of the keys, null for keys not found
+	* @exception IOException if get from backing store fails
+	*/
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public List<Object> getAll(List<? extends Comparable> tkeys) throws IOException {
+		ArrayList<byte[]> keys = new ArrayList<byte[]>(tkeys.size());
+		for(Comparable k : tkeys)
+			keys.add(SerializedComparator.serializeObject(k));
+		try {
+			List<byte[]> values = db.multiGetAsList(ro(), Collections.nCopies(keys.size(), cfh), keys);
+			ArrayList<Object> ret = new ArrayList<Object>(values.size());
+			for(int i = 0; i < values.size(); i++) {
+				byte[] b = values.get(i);
+				ret.add(b == null ? null : new KeyValue(tkeys.get(i), SerializedComparator.deserializeObject(b)));
+			}
+			return ret;
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
+	/**
+	* @param tkey The key to match
+	* @return true if the key is present
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public boolean containsKey(Comparable tkey) throws IOException {
+		try {
+			return db.get(cfh, ro(), SerializedComparator.serializeObject(tkey)) != null;
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
+	/**
+	* @param tvalue The value to find
+	* @return the {@link Entry} of the first key holding the value, or null if none does
+	* @exception IOException If backing store fails
+	*/
+	public Object getValue(Object tvalue) throws IOException {
+		try (SnapshotIterator it = new SnapshotIterator(null, null, ENTRIES)) {
+			while(it.hasNext()) {
+				Entry e = (Entry) it.next();
+				if(e.getValue().equals(tvalue))
+					return e;
+			}
+			return null;
+		}
+	}
+	/**
+	* @param tvalue The value to find
+	* @return true if a key holds the value
+	* @exception IOException If backing store fails
+	*/
+	public boolean containsValue(Object tvalue) throws IOException {
+		return getValue(tvalue) != null;
+	}
+	/**
+	* @return the number of entries
+	* @exception IOException If backing store fails
+	*/
+	public long size() throws IOException {
+		try (RocksIterator it = db.newIterator(cfh, ro())) {
+			long n = 0;
+			for(it.seekToFirst(); it.isValid(); it.next())
+				++n;
+			return n;
+		}
+	}
+	/**
+	* @return true if the map held no entries
+	* @exception IOException If backing store fails
+	*/
+	public boolean isEmpty() throws IOException {
+		try (RocksIterator it = db.newIterator(cfh, ro())) {
+			it.seekToFirst();
+			return !it.isValid();
+		}
+	}
+	/**
+	* @return the first key, or null if empty
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Comparable firstKey() throws IOException {
+		return (Comparable) end(true, true);
+	}
+	/**
+	* @return the last key, or null if empty
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Comparable lastKey() throws IOException {
+		return (Comparable) end(false, true);
+	}
+	/**
+	* @return the value of the first key, or null if empty
+	* @exception IOException If backing store fails
+	*/
+	public Object first() throws IOException {
+		return end(true, false);
+	}
+	/**
+	* @return the value of the last key, or null if empty
+	* @exception IOException If backing store fails
+	*/
+	public Object last() throws IOException {
+		return end(false, false);
+	}
+
+	private Object end(boolean first, boolean key) throws IOException {
+		try (RocksIterator it = db.newIterator(cfh, ro())) {
+			if(first)
+				it.seekToFirst();
+			else
+				it.seekToLast();
+			if(!it.isValid())
+				return null;
+			return SerializedComparator.deserializeObject(key ? it.key() : it.value());
+		}
+	}
+	/**
+	* @param tkey The key sought
+	* @return the {@link KeyValuePair} of the key or the first key after it, or null if none
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Object nearest(Comparable tkey) throws IOException {
+		try (SnapshotIterator it = new SnapshotIterator(tkey, null, PAIRS)) {
+			return it.hasNext() ? it.next() : null;
+		}
+	}
+	/**
+	* @return Iterator of {@link Entry} of all entries
+	* @exception IOException If backing store fails
+	*/
+	public Iterator<?> entrySet() throws IOException {
+		return open(null, null, ENTRIES);
+	}
+
+	public Stream<?> entrySetStream() throws IOException {
+		return new SackStream(entrySet());
+	}
+	/**
+	* @return Iterator of all keys
+	* @exception IOException If backing store fails
+	*/
+	public Iterator<?> keySet() throws IOException {
+		return open(null, null, KEYS);
+	}
+
+	public Stream<?> keySetStream() throws IOException {
+		return new SackStream(keySet());
+	}
+	/**
+	* @param tkey Strictly less than 'to' element
+	* @return Iterator of keys from the first to tkey
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> headMap(Comparable tkey) throws IOException {
+		return open(null, tkey, KEYS);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Stream<?> headMapStream(Comparable tkey) throws IOException {
+		return new SackStream(headMap(tkey));
+	}
+	/**
+	* @param tkey Strictly less than 'to' element
+	* @return Iterator of {@link KeyValuePair} from the first key to tkey
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> headMapKV(Comparable tkey) throws IOException {
+		return open(null, tkey, PAIRS);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Stream<?> headMapKVStream(Comparable tkey) throws IOException {
+		return new SackStream(headMapKV(tkey));
+	}
+	/**
+	* @param fkey Greater or equal to 'from' element
+	* @return Iterator of keys from fkey to the last
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> tailMap(Comparable fkey) throws IOException {
+		return open(fkey, null, KEYS);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Stream<?> tailMapStream(Comparable fkey) throws IOException {
+		return new SackStream(tailMap(fkey));
+	}
+	/**
+	* @param fkey Greater or equal to 'from' element
+	* @return Iterator of {@link KeyValuePair} from fkey to the last key
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> tailMapKV(Comparable fkey) throws IOException {
+		return open(fkey, null, PAIRS);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Stream<?> tailMapKVStream(Comparable fkey) throws IOException {
+		return new SackStream(tailMapKV(fkey));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Iterator of keys from fkey to tkey
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> subMap(Comparable fkey, Comparable tkey) throws IOException {
+		return open(fkey, tkey, KEYS);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Stream<?> subMapStream(Comparable fkey, Comparable tkey) throws IOException {
+		return new SackStream(subMap(fkey, tkey));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Iterator of {@link KeyValuePair} from fkey to tkey
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> subMapKV(Comparable fkey, Comparable tkey) throws IOException {
+		return open(fkey, tkey, PAIRS);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Stream<?> subMapKVStream(Comparable fkey, Comparable tkey) throws IOException {
+		return new SackStream(subMapKV(fkey, tkey));
+	}
+
+	@SuppressWarnings("rawtypes")
+	private SnapshotIterator open(Comparable fkey, Comparable tkey, int elements) throws IOException {
+		SnapshotIterator it = new SnapshotIterator(fkey, tkey, elements);
+		iterators.add(it);
+		// a close racing the add must still close the iterator
+		if(closed)
+			it.close();
+		return it;
+	}
+	/**
+	 * Iterates the snapshot from fkey inclusive to tkey exclusive, closing its RocksIterator when exhausted.
+	 */
+	@SuppressWarnings("rawtypes")
+	private final class SnapshotIterator implements Iterator<Object>, AutoCloseable {
+		private final RocksIterator it;
+		private final Comparable tkey;
+		private final int elements;
+		private Comparable nextKey = null;
+		private boolean done = false;
+
+		SnapshotIterator(Comparable fkey, Comparable tkey, int elements) throws IOException {
+			this.it = db.newIterator(cfh, ro());
+			this.tkey = tkey;
+			this.elements = elements;
+			if(fkey == null)
+				it.seekToFirst();
+			else
+				it.seek(SerializedComparator.serializeObject(fkey));
+			advance();
+		}
+		@SuppressWarnings("unchecked")
+		private void advance() throws IOException {
+			if(!done && it.isValid()) {
+				nextKey = (Comparable) SerializedComparator.deserializeObject(it.key());
+				if(tkey == null || nextKey.compareTo(tkey) < 0)
+					return;
+			}
+			close();
+		}
+		@Override
+		public synchronized boolean hasNext() {
+			return !done;
+		}
+		@Override
+		public synchronized Object next() {
+			if(done)
+				throw new NoSuchElementException();
+			try {
+				Comparable key = nextKey;
+				Object ret = elements == KEYS ? key :
+					elements == ENTRIES ? new Entry(key, SerializedComparator.deserializeObject(it.value())) :
+					new KeyValuePair(key, SerializedComparator.deserializeObject(it.value()));
+				it.next();
+				advance();
+				return ret;
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		@Override
+		public synchronized void close() {
+			if(!done) {
+				done = true;
+				nextKey = null;
+				it.close();
+			}
+			iterators.remove(this);
+		}
+	}
+	/**
+	 * Close the iterators and streams of the view and release the snapshot.
+	 */
+	@Override
+	public synchronized void close() {
+		if(closed)
+			return;
+		closed = true;
+		for(SnapshotIterator it : iterators)
+			it.close();
+		cleanable.clean();
+		if(DEBUG)
+			System.out.printf("%s closed on %s%n", this.getClass().getName(), map.getClassName());
+	}
+
+	@Override
+	public String toString() {
+		return "SnapshotMap of "+map.getClassName()+" at "+getSequenceNumber()+(closed ? " (closed)" : "");
+	}
+}
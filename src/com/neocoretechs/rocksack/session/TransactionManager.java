@@ -3,11 +3,13 @@ package com.neocoretechs.rocksack.session;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.rocksdb.RocksDBException;
 import org.rocksdb.Transaction;
@@ -48,11 +50,42 @@ public final class TransactionManager {
 		TransactionSession transactionSession;
 		Transaction transaction;
 		TransactionId transactionId;
+		// handle caches of the TransactionalMaps this link is bound to, cleared when the link is removed
+		private CopyOnWriteArrayList<ConcurrentHashMap<TransactionId, SessionAndTransaction>> bindings = new CopyOnWriteArrayList<ConcurrentHashMap<TransactionId, SessionAndTransaction>>();
+		private volatile boolean unlinked = false;
 		public SessionAndTransaction(TransactionSession session, Transaction transaction, TransactionId transactionId) {
 			this.transactionSession = session;
 			this.transaction = transaction;
 			this.transactionId = transactionId;
 		}
+		/**
+		 * Record that a TransactionalMap holds this link in its handle cache under the transaction id,
+		 * so the handle can be dropped when the link is removed.
+		 * @param handles the handle cache of the map
+		 */
+		void bind(ConcurrentHashMap<TransactionId, SessionAndTransaction> handles) {
+			bindings.add(handles);
+			if(unlinked)
+				handles.remove(transactionId, this);
+		}
+		/**
+		 * The link was removed from the transaction id table, drop it from the handle caches it was bound to.
+		 */
+		void unlink() {
+			unlinked = true;
+			// writes not committed by now never will be
+			ObjectCache.discard(transaction);
+			RangeCache.discard(transaction);
+			for(ConcurrentHashMap<TransactionId, SessionAndTransaction> handles : bindings)
+				handles.remove(transactionId, this);
+			bindings.clear();
+		}
+		/**
+		 * @return true if the link was removed from the transaction id table
+		 */
+		boolean isUnlinked() {
+			return unlinked;
+		}
 		/**
 		 * @return the transactionSession
 		 */
@@ -153,13 +186,12 @@ public final class TransactionManager {
 	/**
 	 * Create a new empty map of mangled name to SessionAndTransaction, put it in idToNameToSessionAndTransaction
 	 * return the new linkage for further population with mangled name and session subclass.
+	 * If another thread created the linkage for the id first, that linkage is returned.
 	 * @param xid
 	 * @return
 	 */
 	static ConcurrentHashMap<String, SessionAndTransaction> setTransaction(TransactionId xid) {
-		ConcurrentHashMap<String, SessionAndTransaction> newLink = new ConcurrentHashMap<String, SessionAndTransaction>();
-		idToNameToSessionAndTransaction.put(xid, newLink);
-		return newLink;
+		return idToNameToSessionAndTransaction.computeIfAbsent(xid, k -> new ConcurrentHashMap<String, SessionAndTransaction>());
 	}
 	
 	/**
@@ -177,6 +209,22 @@ public final class TransactionManager {
 		}
 		return retState;
 	}
+	/**
+	 * Whether any transaction is linked to the session, which keeps its database open, see {@link OpenDatabaseCache}.
+	 * @param session the session
+	 * @return true if a transaction id has a link to the session
+	 */
+	static boolean hasTransactions(Session session) {
+		if(!(session instanceof TransactionSession))
+			return false;
+		for(ConcurrentHashMap<String, SessionAndTransaction> tLink : idToNameToSessionAndTransaction.values()) {
+			for(SessionAndTransaction sLink : tLink.values()) {
+				if(sLink.getTransactionSession() == session)
+					return true;
+			}
+		}
+		return false;
+	}
 	/**
 	 * Extract the list of unique transactions from a subset of the mapping of mangled names to SessionAndTransaction instances
 	 * @param tLink map of subset of mangled name to SessionAndTransaction
@@ -196,6 +244,17 @@ public final class TransactionManager {
 		}
 		return retXactn;
 	}
+	/**
+	 * The unique transactions linked to the given id, taken directly from the id index.
+	 * @param uid the transaction id
+	 * @return List of Transactions, empty if the id is unknown
+	 */
+	private static List<Transaction> getTransactionsById(TransactionId uid) {
+		ConcurrentHashMap<String, SessionAndTransaction> tLink = idToNameToSessionAndTransaction.get(uid);
+		if(tLink == null)
+			return new ArrayList<Transaction>();
+		return getTransactions(tLink);
+	}
 	/**
 	 * Return a list all unique RocksDB transactions extracted from the map of mangled names to SessionAndTransaction<p>
 	 * Those exist in the map with id's mapped to transactions
@@ -298,24 +357,7 @@ public final class TransactionManager {
 	 * @return
 	 */
 	static List<Transaction> getOutstandingTransactionsById(TransactionId uid) {
-		ArrayList<Transaction> retXactn = new ArrayList<Transaction>();
-		for(Entry<TransactionId, ConcurrentHashMap<String, SessionAndTransaction>> sessions : idToNameToSessionAndTransaction.entrySet()) {
-			// Get all the TransactionalMaps for the session
-			if(sessions.getKey().equals(uid)) {
-				ConcurrentHashMap<String,SessionAndTransaction> sessAndTrans = sessions.getValue();
-				// Get all the SessionAndTransactions instances which contain the Session and its Transaction
-				for(Entry<String, SessionAndTransaction> transMaps: sessAndTrans.entrySet()) {
-					SessionAndTransaction sLink = transMaps.getValue();
-					// Get all the transactions active for each TransactionSession
-					//if(!transact.getState().equals(TransactionState.COMMITED) &&
-					//	!transact.getState().equals(TransactionState.COMMITTED) &&
-					//	!transact.getState().equals(TransactionState.ROLLEDBACK))
-					if(!retXactn.contains(sLink.getTransaction()))
-						retXactn.add(sLink.getTransaction());
-				}
-			}
-		}
-		return retXactn;
+		return getTransactionsById(uid);
 	}
 	
 	/**
@@ -360,16 +402,17 @@ public final class TransactionManager {
 			System.out.println("TransactionManager.getOutstandingTransactionsByPathAndId for path:"+path+" id:"+uid+" got volume "+v);
 		// Get all the TransactionalMaps for the volume, compare sessions
 		if(sessions != null) {
-			Collection<SessionAndTransaction> sLink = sessions.values();
-			for(TransactionSetInterface transMaps: v.classToIsoTransaction.values()) {
+			// sessions of the maps in the volume, then one pass over the links of this transaction id
+			HashSet<Session> volumeSessions = new HashSet<Session>();
+			for(TransactionSetInterface transMaps: v.classToIsoTransaction.values())
+				volumeSessions.add(transMaps.getSession());
+			for(SessionAndTransaction session : sessions.values()) {
 				// see if TransactionMap has a session that matches the session in the collection attached to this transaction id
-				for(SessionAndTransaction session : sLink) {
-					if(session.getTransactionSession().equals(transMaps.getSession())) {
-						if(DEBUG)
-							System.out.println("TransactionManager.getOutstandingTransactionsByPathAndId adding:"+session);
-						if(!retXactn.contains(session.getTransaction())) {
-							retXactn.add(session.getTransaction());
-						}
+				if(volumeSessions.contains(session.getTransactionSession())) {
+					if(DEBUG)
+						System.out.println("TransactionManager.getOutstandingTransactionsByPathAndId adding:"+session);
+					if(!retXactn.contains(session.getTransaction())) {
+						retXactn.add(session.getTransaction());
 					}
 				}
 			}
@@ -415,6 +458,8 @@ public final class TransactionManager {
 			try {
 				t.getTransaction().rollback();
 			} catch (RocksDBException e) {}
+			ObjectCache.discard(t.getTransaction());
+			RangeCache.discard(t.getTransaction());
 		}
 	}
 	/**
@@ -424,12 +469,11 @@ public final class TransactionManager {
 	 * @throws RocksDBException 
 	 */
 	static void clearOutstandingTransaction(TransactionId uid) throws RocksDBException, IOException {
-		for(SessionAndTransaction t: getOutstandingTransactions()) {
-			if(t.getTransactionId().equals(uid)) {
-				t.getTransaction().rollback();
-				removeTransaction(uid);
-			}
-		}
+		List<Transaction> tx = getTransactionsById(uid);
+		for(Transaction t: tx)
+			t.rollback();
+		if(!tx.isEmpty())
+			removeTransaction(uid);
 	}
 	/**
 	 * Commit all transactions with given transaction Id
@@ -437,10 +481,10 @@ public final class TransactionManager {
 	 * @throws RocksDBException
 	 */
 	public static void commit(TransactionId uid) throws RocksDBException {
-		for(SessionAndTransaction t: getOutstandingTransactions()) {
-			if(t.getTransactionId().equals(uid)) {			
-				t.getTransaction().commit();
-			}
+		for(Transaction t: getTransactionsById(uid)) {
+			t.commit();
+			ObjectCache.committed(t);
+			RangeCache.committed(t);
 		}
 	}
 	/**
@@ -449,10 +493,10 @@ public final class TransactionManager {
 	 * @throws RocksDBException
 	 */	
 	public static void rollback(TransactionId uid) throws RocksDBException {
-		for(SessionAndTransaction t: getOutstandingTransactions()) {
-			if(t.getTransactionId().equals(uid)) {			
-				t.getTransaction().rollback();
-			}
+		for(Transaction t: getTransactionsById(uid)) {
+			t.rollback();
+			ObjectCache.discard(t);
+			RangeCache.discard(t);
 		}
 	}	
 	/**
@@ -461,11 +505,8 @@ public final class TransactionManager {
 	 * @throws RocksDBException
 	 */
 	public static void checkpoint(TransactionId uid) throws RocksDBException {
-		for(SessionAndTransaction t: getOutstandingTransactions()) {
-			if(t.getTransactionId().equals(uid)) {			
-				t.getTransaction().setSavePoint();
-			}
-		}
+		for(Transaction t: getTransactionsById(uid))
+			t.setSavePoint();
 	}
 	/**
 	 * Rollback to checkpoint all transactions with given transaction Id
@@ -473,11 +514,8 @@ public final class TransactionManager {
 	 * @throws RocksDBException
 	 */
 	public static void rollbackToCheckpoint(TransactionId uid) throws RocksDBException {
-		for(SessionAndTransaction t: getOutstandingTransactions()) {
-			if(t.getTransactionId().equals(uid)) {	
-				t.getTransaction().rollbackToSavePoint();
-			}
-		}
+		for(Transaction t: getTransactionsById(uid))
+			t.rollbackToSavePoint();
 	}
 	
 	/**
@@ -501,7 +539,9 @@ public final class TransactionManager {
 			ts.add(s.getKey());
 		}
 		for(String s : ts) {
-			tis.remove(s);
+			SessionAndTransaction sLink = tis.remove(s);
+			if(sLink != null)
+				sLink.unlink();
 		}
 		if(tis.isEmpty()) {
 			if(DEBUG) {
@@ -530,7 +570,9 @@ public final class TransactionManager {
 				ts.add(s.getKey());
 		}
 		for(String s : ts) {
-			tis.remove(s);
+			SessionAndTransaction sLink = tis.remove(s);
+			if(sLink != null)
+				sLink.unlink();
 		}
 		if(tis.isEmpty()) {
 			if(DEBUG) {
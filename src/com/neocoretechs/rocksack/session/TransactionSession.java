@@ -70,12 +70,22 @@ public class TransactionSession extends Session implements TransactionInterface
 	 * @param create true to create if not existing
 	 * @return The RocksDb Transaction object or null if not found and create was false
 	 */
-	public synchronized Transaction getTransaction(TransactionId transactionId, String clazz, boolean create) {
+	public Transaction getTransaction(TransactionId transactionId, String clazz, boolean create) {
+		SessionAndTransaction transLink = getSessionAndTransaction(transactionId, clazz, create);
+		return transLink == null ? null : transLink.getTransaction();
+	}
+	/**
+	 * Get the link of session and Transaction object formed from id and class, as {@link #getTransaction(TransactionId, String, boolean)}.
+	 * The link is what {@link TransactionalMap} binds to itself per transaction id, so that subsequent operations need no lookup.
+	 * @param transactionId
+	 * @param clazz
+	 * @param create true to create if not existing
+	 * @return The {@link SessionAndTransaction} or null if not found and create was false
+	 */
+	public synchronized SessionAndTransaction getSessionAndTransaction(TransactionId transactionId, String clazz, boolean create) {
 		String name = transactionId.getTransactionId()+clazz;
 		if(DEBUG)
 			System.out.printf("%s.getTransaction Enter Transaction id:%s Class:%s create:%b from name:%s%n",this.getClass().getName(),transactionId,clazz,create,name);
-		Transaction transaction = null;
-		boolean exists = false;
 		SessionAndTransaction transLink = null;
 		// check exact match
 		ConcurrentHashMap<String, SessionAndTransaction> transSession = TransactionManager.getTransactionSession(transactionId);
@@ -91,30 +101,36 @@ public class TransactionSession extends Session implements TransactionInterface
 						//if(DEBUG)
 						//	System.out.printf("%s.getTransaction Transaction id:%s Transaction name:%s%n",this.getClass().getName(),alle.getKey(),alle.getValue().getName());
 						if(alle.getTransactionId().getTransactionId().startsWith(transactionId.getTransactionId())) {
-							transaction = alle.getTransaction();
-							exists = true;
+							transLink = alle;
 							break;
 						}
 					}
 				}
-			} else {
-				transaction = transLink.getTransaction();
-				exists = true;
 			}
 		}
-		if(!exists && create) {
+		if(transLink == null && create) {
 			if(DEBUG)
 				System.out.printf("%s.getTransaction Creating Transaction id:%s Transaction name:%s%n",this.getClass().getName(),transactionId,name);
-			if(transactionId instanceof LockingTransactionId)
-				transaction = BeginTransaction(((LockingTransactionId)transactionId).getLockTimeout());
-			else
-				transaction = BeginTransaction();
-			transLink = new SessionAndTransaction(this, transaction, transactionId);
-			transSession.put(name, transLink);
+			try {
+				pin();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			try {
+				Transaction transaction;
+				if(transactionId instanceof LockingTransactionId)
+					transaction = BeginTransaction(((LockingTransactionId)transactionId).getLockTimeout());
+				else
+					transaction = BeginTransaction();
+				transLink = new SessionAndTransaction(this, transaction, transactionId);
+				transSession.put(name, transLink);
+			} finally {
+				unpin();
+			}
 		}
 		if(DEBUG)
-			System.out.printf("%s.getTransaction returning Transaction name:%s%n",this.getClass().getName(),transaction.getName());
-		return transaction;
+			System.out.printf("%s.getTransaction returning Transaction link:%s%n",this.getClass().getName(),transLink);
+		return transLink;
 	}
 
 	/**
@@ -134,11 +150,29 @@ public class TransactionSession extends Session implements TransactionInterface
 		String name = xid.getTransactionId()+tm.getClassName();
 		if(tLink.containsKey(name))
 			return true;
-		SessionAndTransaction sLink;
-		if(xid instanceof LockingTransactionId)
-			sLink = new SessionAndTransaction(tm.getSession(), BeginTransaction(((LockingTransactionId)xid).getLockTimeout()), xid);
-		else
-			sLink = new SessionAndTransaction(tm.getSession(), BeginTransaction(), xid);
+		SessionAndTransaction sLink = null;
+		// another class of this database already in the transaction, such as a column family
+		// of a consolidated tablespace, shares its RocksDB transaction
+		for(SessionAndTransaction other : tLink.values()) {
+			if(other.getTransactionSession() == this) {
+				sLink = new SessionAndTransaction(this, other.getTransaction(), xid);
+				break;
+			}
+		}
+		if(sLink == null) {
+			// the database stays open once the transaction is linked
+			pin();
+			try {
+				if(xid instanceof LockingTransactionId)
+					sLink = new SessionAndTransaction(tm.getSession(), BeginTransaction(((LockingTransactionId)xid).getLockTimeout()), xid);
+				else
+					sLink = new SessionAndTransaction(tm.getSession(), BeginTransaction(), xid);
+				tLink.put(name, sLink);
+			} finally {
+				unpin();
+			}
+			return false;
+		}
 		tLink.put(name, sLink);
 		return false;
 	}
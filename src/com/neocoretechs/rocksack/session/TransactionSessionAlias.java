@@ -80,11 +80,29 @@ public class TransactionSessionAlias extends TransactionSession {
 		String name = xid.getTransactionId()+tm.getClassName()+alias.getAlias();
 		if(tLink.containsKey(name))
 			return true;
-		SessionAndTransaction sLink;
-		if(xid instanceof LockingTransactionId)
-			sLink = new SessionAndTransaction(tm.getSession(), BeginTransaction(((LockingTransactionId)xid).getLockTimeout()), xid);
-		else
-			sLink = new SessionAndTransaction(tm.getSession(), BeginTransaction(), xid);
+		SessionAndTransaction sLink = null;
+		// another class of this database already in the transaction, such as a column family
+		// of a consolidated tablespace, shares its RocksDB transaction
+		for(SessionAndTransaction other : tLink.values()) {
+			if(other.getTransactionSession() == this) {
+				sLink = new SessionAndTransaction(this, other.getTransaction(), xid);
+				break;
+			}
+		}
+		if(sLink == null) {
+			// the database stays open once the transaction is linked
+			pin();
+			try {
+				if(xid instanceof LockingTransactionId)
+					sLink = new SessionAndTransaction(tm.getSession(), BeginTransaction(((LockingTransactionId)xid).getLockTimeout()), xid);
+				else
+					sLink = new SessionAndTransaction(tm.getSession(), BeginTransaction(), xid);
+				tLink.put(name, sLink);
+			} finally {
+				unpin();
+			}
+			return false;
+		}
 		tLink.put(name, sLink);
 		return false;
 	}
@@ -124,12 +142,10 @@ public class TransactionSessionAlias extends TransactionSession {
 	 * @return The RocksDb Transaction object or null if not found and create was false
 	 */
 	@Override
-	public synchronized Transaction getTransaction(TransactionId transactionId, String clazz, boolean create) {
+	public synchronized SessionAndTransaction getSessionAndTransaction(TransactionId transactionId, String clazz, boolean create) {
 		String name = transactionId.getTransactionId()+clazz+alias.getAlias();
 		if(DEBUG)
 			System.out.printf("%s.getTransaction Enter Alias:%s Transaction id:%s Class:%s create:%b from name:%s%n",this.getClass().getName(),alias,transactionId,clazz,create,name);
-		Transaction transaction = null;
-		boolean exists = false;
 		SessionAndTransaction transLink = null;
 		// check exact match
 		ConcurrentHashMap<String, SessionAndTransaction> transSession = TransactionManager.getTransactionSession(transactionId);
@@ -151,30 +167,36 @@ public class TransactionSessionAlias extends TransactionSession {
 						System.out.printf("%s.getTransaction transSession collection null or empty Alias:%s Transaction id:%s Class:%s create:%b from name:%s%n",this.getClass().getName(),alias,transactionId,clazz,create,name);
 					for(SessionAndTransaction alle : all) {
 						if(alle.getTransactionId().getTransactionId().startsWith(transactionId.getTransactionId())) {
-							transaction = alle.getTransaction();
-							exists = true;
+							transLink = alle;
 							break;
 						}
 					}
 				}
-			} else {
-				transaction = transLink.getTransaction();
-				exists = true;
 			}
 		}
-		if(!exists && create) {
+		if(transLink == null && create) {
 			if(DEBUG)
 				System.out.printf("%s.getTransaction Creating Transaction id:%s Transaction name:%s%n",this.getClass().getName(),transactionId,name);
-			if(transactionId instanceof LockingTransactionId)
-				transaction = BeginTransaction(((LockingTransactionId)transactionId).getLockTimeout());
-			else
-				transaction = BeginTransaction();
-			transLink = new SessionAndTransaction(this, transaction, transactionId);
-			transSession.put(name, transLink);
+			try {
+				pin();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			try {
+				Transaction transaction;
+				if(transactionId instanceof LockingTransactionId)
+					transaction = BeginTransaction(((LockingTransactionId)transactionId).getLockTimeout());
+				else
+					transaction = BeginTransaction();
+				transLink = new SessionAndTransaction(this, transaction, transactionId);
+				transSession.put(name, transLink);
+			} finally {
+				unpin();
+			}
 		}
 		if(DEBUG)
-			System.out.printf("%s.getTransaction returning Transaction name:%s%n",this.getClass().getName(),transaction.getName());
-		return transaction;
+			System.out.printf("%s.getTransaction returning Transaction link:%s%n",this.getClass().getName(),transLink);
+		return transLink;
 	}
 
 	@Override
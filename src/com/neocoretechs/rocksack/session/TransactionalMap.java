@@ -1,7 +1,15 @@
 package com.neocoretechs.rocksack.session;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
 import java.util.Map.Entry;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
 import java.util.stream.Stream;
 
 import org.rocksdb.ColumnFamilyDescriptor;
@@ -10,8 +18,18 @@ import org.rocksdb.RocksDBException;
 import org.rocksdb.Transaction;
 import org.rocksdb.TransactionDB;
 
+import com.neocoretechs.rocksack.IndexKey;
 import com.neocoretechs.rocksack.KeyValue;
+import com.neocoretechs.rocksack.SerializedComparator;
 import com.neocoretechs.rocksack.TransactionId;
+import com.neocoretechs.rocksack.iterator.DiffIterator;
+import com.neocoretechs.rocksack.iterator.KeyValuePair;
+import com.neocoretechs.rocksack.iterator.MergeJoinIterator;
+import com.neocoretechs.rocksack.stream.DiffStream;
+import com.neocoretechs.rocksack.stream.MergeJoinStream;
+import com.neocoretechs.rocksack.session.TransactionManager.SessionAndTransaction;
+import com.neocoretechs.rocksack.stream.SackPublisher;
+import com.neocoretechs.rocksack.stream.SackStream;
 
 /*
 * Copyright (c) 2024, NeoCoreTechs
@@ -48,8 +66,14 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	private static boolean DEBUG = false;
 	protected TransactionSession session;
 	private String className;
+	private boolean isDerived;
 	ColumnFamilyHandle columnFamilyHandle = null;
 	ColumnFamilyDescriptor columnFamilyDescriptor = null;
+	// transaction handles bound to this map per transaction id, dropped when the transaction is removed
+	private ConcurrentHashMap<TransactionId, SessionAndTransaction> transactions = new ConcurrentHashMap<TransactionId, SessionAndTransaction>();
+	private ObjectCache cache;
+	private RangeCache rangeCache;
+	private SecondaryIndexer indexer;
 
 	/**
 	 * Calls processColumnFamily with derivedClassName if derived is true, no args otherwise.
@@ -60,11 +84,38 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	 * @throws IllegalAccessException
 	 * @throws RocksDBException
 	 */
-	public TransactionalMap(TransactionSession session, String className, boolean isDerived) throws IOException, IllegalAccessException, RocksDBException {
+	TransactionalMap(TransactionSession session, String className, boolean isDerived) throws IOException, IllegalAccessException, RocksDBException {
 		this.session = session;
 		this.className = className;
 		if(DEBUG)
 			System.out.printf("%s %s %b%n", this.getClass().getName(), className, isDerived);
+		this.isDerived = isDerived;
+		session.pin();
+		try {
+			bindColumnFamily();
+			indexer = new SecondaryIndexer(session, className);
+		} finally {
+			session.unpin();
+		}
+		cache = ObjectCache.forColumnFamily(session.getDBname(), isDerived ? className : null);
+		rangeCache = RangeCache.forColumnFamily(session.getDBname(), isDerived ? className : null);
+	}
+	/**
+	 * Register the constructed map with its session, so the column family is bound again when the database is
+	 * reopened. Called once by {@link DatabaseManager} before the map is published.
+	 * @return this map
+	 */
+	TransactionalMap open() {
+		session.addRebinder(this::bindColumnFamily);
+		return this;
+	}
+	/**
+	 * Bind the column family handle and descriptor of this map from the session, on construction
+	 * and again when the database is reopened by the {@link OpenDatabaseCache}. Operations need no pin,
+	 * the session stays open while their transaction is linked to it.
+	 * @throws RocksDBException
+	 */
+	private void bindColumnFamily() throws RocksDBException {
 		if(isDerived)
 			processColumnFamily(className);
 		else
@@ -125,7 +176,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 				}
 			}
 		} else {
-			this.columnFamilyDescriptor = new ColumnFamilyDescriptor(derivedClassName.getBytes(), DatabaseManager.getDefaultColumnFamilyOptions());
+			this.columnFamilyDescriptor = new ColumnFamilyDescriptor(derivedClassName.getBytes(), DatabaseManager.getInstance().getColumnFamilyOptions(this.session.getDBname(), derivedClassName));
 			this.session.columnFamilyDescriptor.add(this.columnFamilyDescriptor);
 			this.columnFamilyHandle = this.session.kvStore.createColumnFamily(this.columnFamilyDescriptor);
 		}
@@ -135,8 +186,41 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 			throw new RocksDBException("columnFamilyHandle name "+(new String(this.columnFamilyHandle.getName()))+" or descriptor does not match target:"+derivedClassName);
 	}
 	
+	/**
+	 * Get the Transaction for the transaction id in this map. The link of session and transaction is looked up
+	 * by mangled name in the session on first use of the id, then bound to this map, so further operations with the id
+	 * take a single lookup. The binding is dropped when the transaction is removed from the {@link TransactionManager}.
+	 * @param transactionId
+	 * @return The RocksDb Transaction or null if the id is not associated with this map
+	 */
+	private Transaction getTransaction(TransactionId transactionId) {
+		SessionAndTransaction sLink = transactions.get(transactionId);
+		if(sLink == null || sLink.isUnlinked()) {
+			sLink = session.getSessionAndTransaction(transactionId, className, false);
+			if(sLink == null)
+				return null;
+			transactions.put(transactionId, sLink);
+			sLink.bind(transactions);
+		}
+		return sLink.getTransaction();
+	}
+	
+	/**
+	 * Drop the transaction handle bound for the id, called when a new link is made for the id and this map,
+	 * which replaces any transaction of the id in use for another class in the same database.
+	 * @param transactionId
+	 */
+	void unbindTransaction(TransactionId transactionId) {
+		transactions.remove(transactionId);
+	}
+	
 	public TransactionSession getSession() throws IOException {
-		session.waitOpen();
+		session.pin();
+		try {
+			session.waitOpen();
+		} finally {
+			session.unpin();
+		}
 		return session;
 	}
 
@@ -148,9 +232,14 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	public void Open() throws IOException {
 	}
 
+	/**
+	 * Close the session of this map if it owns it. A derived map shares the session of its database
+	 * with the map of the default column family and its sibling maps, and leaves it open.
+	 */
 	@Override
-	public void Close() throws IOException {		
-		session.getKVStore().close();
+	public void Close() throws IOException {
+		if(!isDerived)
+			session.Close();
 	}
 	
 	
@@ -165,10 +254,17 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@SuppressWarnings("rawtypes")
 	@Override
 	public boolean put(TransactionId transactionId, Comparable tkey, Object tvalue) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
-		return session.put(txn, columnFamilyHandle, tkey, tvalue);
+		boolean b = indexer.maintains(tvalue) ?
+			indexer.put(txn, session.ro, columnFamilyHandle, tkey, tvalue) :
+			session.put(txn, columnFamilyHandle, tkey, tvalue);
+		if(cache != null)
+			cache.written(txn, tkey);
+		if(rangeCache != null)
+			rangeCache.written(txn, tkey);
+		return b;
 	}
 	/**
 	* Put a  key/value pair to main cache and pool.
@@ -180,13 +276,24 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@SuppressWarnings("rawtypes")
 	public boolean putViaBytes(TransactionId transactionId, byte[] tkey, Object tvalue) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
-		return session.putViaBytes(txn, columnFamilyHandle, tkey, tvalue);
+		boolean b = indexer.maintains(tvalue) ?
+			indexer.put(txn, session.ro, columnFamilyHandle, (Comparable) SerializedComparator.deserializeObject(tkey), tvalue) :
+			session.putViaBytes(txn, columnFamilyHandle, tkey, tvalue);
+		if(cache != null || rangeCache != null) {
+			Object key = SerializedComparator.deserializeObject(tkey);
+			if(cache != null)
+				cache.written(txn, key);
+			if(rangeCache != null)
+				rangeCache.written(txn, key);
+		}
+		return b;
 	}
 	/**
-	* Get a value from backing store if not in cache.
+	* Get a value from backing store if not in cache. The {@link ObjectCache} of the map, if it has one,
+	* answers unless the transaction wrote the key.
 	* @param transactionId Transaction Id
 	* @param tkey The key for the value
 	* @return The value for the key
@@ -195,9 +302,11 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Object get(TransactionId transactionId, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
+		if(cache != null && !cache.isWritten(txn, tkey))
+			return cache.get(tkey, k -> session.getRaw(txn, columnFamilyHandle, session.ro, k));
 		return getSession().get(txn, columnFamilyHandle, session.ro, tkey);
 	}
 	/**
@@ -208,7 +317,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	* @exception IOException if get from backing store fails
 	*/
 	public Object getViaBytes(TransactionId transactionId, byte[] tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return getSession().getViaBytes(txn, columnFamilyHandle, session.ro, tkey);
@@ -223,7 +332,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Object getValue(TransactionId transactionId, Object tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.getValue(txn, columnFamilyHandle, session.ro, tkey);
@@ -240,7 +349,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	public Object getForUpdate(TransactionId transactionId, Comparable o, boolean exclusive) throws IOException {
 		if(DEBUG)
 			System.out.printf("%s.get(%s, %s, %s)%n", this.getClass().getName(), transactionId, session.ro, o);
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.getForUpdate(txn, columnFamilyHandle, session.ro, o, exclusive);
@@ -255,7 +364,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	public void undoGetForUpdate(TransactionId transactionId, Comparable o) throws IOException {
 		if(DEBUG)
 			System.out.printf("%s.get(%s, %s, %s)%n", this.getClass().getName(), transactionId, session.ro, o);
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		session.undoGetForUpdate(txn, columnFamilyHandle, o);
@@ -268,7 +377,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@Override
 	public long size(TransactionId transactionId) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.size(txn, columnFamilyHandle);
@@ -282,7 +391,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@Override
 	public Iterator<?> entrySet(TransactionId transactionId) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.entrySet(txn, columnFamilyHandle);
@@ -293,7 +402,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	 */
 	@Override
 	public Stream<?> entrySetStream(TransactionId transactionId) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.entrySetStream(txn, columnFamilyHandle);
@@ -307,7 +416,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@Override
 	public Iterator<?> keySet(TransactionId transactionId) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.keySet(txn, columnFamilyHandle);
@@ -318,7 +427,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	 */
 	@Override
 	public Stream<?> keySetStream(TransactionId transactionId) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.keySetStream(txn, columnFamilyHandle);
@@ -334,7 +443,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public boolean containsKey(TransactionId transactionId, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.contains(txn, columnFamilyHandle, session.ro, tkey);
@@ -349,7 +458,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public boolean containsValue(TransactionId transactionId, Object value) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.containsValue(txn, columnFamilyHandle, session.ro, value);
@@ -364,10 +473,283 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Object remove(TransactionId transactionId, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
+		if(txn == null)
+			throw new IOException("Transaction "+transactionId+" not found for session "+this);
+		Object o = indexer.isActive() ?
+			indexer.remove(txn, session.ro, columnFamilyHandle, tkey) :
+			session.remove(txn, columnFamilyHandle, session.ro, tkey);
+		if(cache != null)
+			cache.written(txn, tkey);
+		if(rangeCache != null)
+			rangeCache.written(txn, tkey);
+		return o;
+	}
+	/**
+	* Remove the key in the transaction without reading its value.
+	* If the map has secondary or bitmap indexes the value is read to remove its entries.
+	* @param transactionId Transaction Id
+	* @param tkey The key to remove
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public void removeBlind(TransactionId transactionId, Comparable tkey) throws IOException {
+		delete(transactionId, tkey, false);
+	}
+	/**
+	* Remove a write once key in the transaction with a SingleDelete. The key must have been put at most once since it
+	* was last removed and never overwritten, otherwise an older value may reappear.
+	* @param transactionId Transaction Id
+	* @param tkey The key to remove
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public void removeSingle(TransactionId transactionId, Comparable tkey) throws IOException {
+		delete(transactionId, tkey, true);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void delete(TransactionId transactionId, Comparable tkey, boolean single) throws IOException {
+		Transaction txn = getTransaction(transactionId);
+		if(txn == null)
+			throw new IOException("Transaction "+transactionId+" not found for session "+this);
+		if(indexer.isActive())
+			indexer.remove(txn, session.ro, columnFamilyHandle, tkey);
+		else
+			session.delete(txn, columnFamilyHandle, tkey, single);
+		if(cache != null)
+			cache.written(txn, tkey);
+		if(rangeCache != null)
+			rangeCache.written(txn, tkey);
+	}
+	/**
+	* Remove the keys from fkey inclusive to tkey exclusive in the transaction. Transactions offer no range tombstone,
+	* so the keys are read a page at a time and deleted without reading their values, unless the map has indexes.
+	* @param transactionId Transaction Id
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @return the number of keys removed
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public long removeRange(TransactionId transactionId, Comparable fkey, Comparable tkey) throws IOException {
+		Transaction txn = getTransaction(transactionId);
+		if(txn == null)
+			throw new IOException("Transaction "+transactionId+" not found for session "+this);
+		long n = 0;
+		List<Comparable> keys;
+		Comparable from = fkey;
+		boolean inclusive = true;
+		do {
+			// each page resumes after the last key removed, seeking past the deletes in the write batch
+			keys = session.keys(txn, columnFamilyHandle, from, inclusive, tkey, BufferedMap.REMOVE_PAGE);
+			for(Comparable key : keys) {
+				if(indexer.isActive())
+					indexer.remove(txn, session.ro, columnFamilyHandle, key);
+				else
+					session.delete(txn, columnFamilyHandle, key, false);
+				if(cache != null)
+					cache.written(txn, key);
+				if(rangeCache != null)
+					rangeCache.written(txn, key);
+			}
+			n += keys.size();
+			if(!keys.isEmpty()) {
+				from = keys.get(keys.size() - 1);
+				inclusive = false;
+			}
+		} while(keys.size() == BufferedMap.REMOVE_PAGE);
+		return n;
+	}
+	/**
+	* Remove the keys strictly less than tkey in the transaction. {@link #removeRange(TransactionId, Comparable, Comparable)}
+	* @param transactionId Transaction Id
+	* @param tkey The key ending the range
+	* @return the number of keys removed
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public long removeHead(TransactionId transactionId, Comparable tkey) throws IOException {
+		return removeRange(transactionId, null, tkey);
+	}
+	/**
+	* Remove the keys greater or equal to fkey in the transaction. {@link #removeRange(TransactionId, Comparable, Comparable)}
+	* @param transactionId Transaction Id
+	* @param fkey The first key of the range
+	* @return the number of keys removed
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public long removeTail(TransactionId transactionId, Comparable fkey) throws IOException {
+		return removeRange(transactionId, fkey, null);
+	}
+	/**
+	* Remove every key of the map in the transaction. {@link #removeRange(TransactionId, Comparable, Comparable)}
+	* @param transactionId Transaction Id
+	* @return the number of keys removed
+	* @exception IOException If backing store fails
+	*/
+	public long clear(TransactionId transactionId) throws IOException {
+		return removeRange(transactionId, null, null);
+	}
+	/**
+	* Remove the entries of the range the predicate accepts in the transaction.
+	* {@link #removeIf(TransactionId, Comparable, Comparable, BiPredicate, BulkUpdate.Progress)}
+	* @param transactionId Transaction Id
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param predicate true for a key and value to remove
+	* @return the number of entries removed
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public long removeIf(TransactionId transactionId, Comparable fkey, Comparable tkey, BiPredicate<Comparable, Object> predicate) throws IOException {
+		return removeIf(transactionId, fkey, tkey, predicate, null);
+	}
+	/**
+	* Remove the entries of the range the predicate accepts in the transaction. The range is read a chunk at a time as
+	* the transaction sees it, each chunk judged in parallel by a {@link BulkUpdate} and its removes written to the
+	* transaction, which commits or rolls back all of them.
+	* @param transactionId Transaction Id
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param predicate true for a key and value to remove, called from several threads at once
+	* @param progress receives the entries judged and removed after each chunk, or null
+	* @return the number of entries removed
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public long removeIf(TransactionId transactionId, Comparable fkey, Comparable tkey, BiPredicate<Comparable, Object> predicate, BulkUpdate.Progress progress) throws IOException {
+		return bulk(transactionId, fkey, tkey, BulkUpdate.removing(predicate), progress);
+	}
+	/**
+	* Replace the values of the range by the function in the transaction.
+	* {@link #updateRange(TransactionId, Comparable, Comparable, BiFunction, BulkUpdate.Progress)}
+	* @param transactionId Transaction Id
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param function gives the new value for a key and value, or null to leave the entry
+	* @return the number of entries replaced
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public long updateRange(TransactionId transactionId, Comparable fkey, Comparable tkey, BiFunction<Comparable, Object, Object> function) throws IOException {
+		return updateRange(transactionId, fkey, tkey, function, null);
+	}
+	/**
+	* Replace the values of the range by the function in the transaction. The range is read a chunk at a time as the
+	* transaction sees it, each chunk judged in parallel by a {@link BulkUpdate} and its puts written to the transaction.
+	* @param transactionId Transaction Id
+	* @param fkey The first key, or null from the first key
+	* @param tkey The key ending the range, or null through the last key
+	* @param function gives the new value for a key and value, or null to leave the entry, called from several threads at once
+	* @param progress receives the entries judged and replaced after each chunk, or null
+	* @return the number of entries replaced
+	* @exception IOException If backing store fails
+	*/
+	@Override
+	@SuppressWarnings("rawtypes")
+	public long updateRange(TransactionId transactionId, Comparable fkey, Comparable tkey, BiFunction<Comparable, Object, Object> function, BulkUpdate.Progress progress) throws IOException {
+		return bulk(transactionId, fkey, tkey, function, progress);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private long bulk(TransactionId transactionId, Comparable fkey, Comparable tkey, BiFunction<Comparable, Object, Object> op, BulkUpdate.Progress progress) throws IOException {
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
-		return session.remove(txn, columnFamilyHandle, session.ro, tkey);
+		BulkUpdate bulk = new BulkUpdate(op, progress);
+		Comparable from = fkey;
+		boolean inclusive = true;
+		List<KeyValuePair> chunk;
+		do {
+			chunk = session.entries(txn, columnFamilyHandle, from, inclusive, tkey, BulkUpdate.CHUNK_SIZE);
+			if(chunk.isEmpty())
+				break;
+			bulk.apply(chunk, (puts, removes) -> {
+				for(KeyValuePair kv : puts) {
+					Comparable key = (Comparable) kv.getKey();
+					if(indexer.maintains(kv.getValue()))
+						indexer.put(txn, session.ro, columnFamilyHandle, key, kv.getValue());
+					else
+						session.put(txn, columnFamilyHandle, key, kv.getValue());
+					written(txn, key);
+				}
+				for(Comparable key : removes) {
+					if(indexer.isActive())
+						indexer.remove(txn, session.ro, columnFamilyHandle, key);
+					else
+						session.delete(txn, columnFamilyHandle, key, false);
+					written(txn, key);
+				}
+			});
+			from = (Comparable) chunk.get(chunk.size() - 1).getKey();
+			inclusive = false;
+		} while(chunk.size() == BulkUpdate.CHUNK_SIZE);
+		return bulk.getChanged();
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void written(Transaction txn, Comparable key) {
+		if(cache != null)
+			cache.written(txn, key);
+		if(rangeCache != null)
+			rangeCache.written(txn, key);
+	}
+	/**
+	* Put the value in the transaction if the key is absent. The key is read with getForUpdate, so it is locked
+	* and the commit fails if another writes it first.
+	* @param transactionId Transaction Id
+	* @param tkey The key for the pair
+	* @param tvalue The value for the pair
+	* @return null if the value was put, else the present value
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Object putIfAbsent(TransactionId transactionId, Comparable tkey, Object tvalue) throws IOException {
+		Object o = presentForUpdate(transactionId, tkey);
+		if(o == null)
+			put(transactionId, tkey, tvalue);
+		return o;
+	}
+	/**
+	* Put the value in the transaction if the key is present. The key is read with getForUpdate.
+	* @param transactionId Transaction Id
+	* @param tkey The key for the pair
+	* @param tvalue The value for the pair
+	* @return the previous value, or null if the key was absent and nothing was put
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Object replace(TransactionId transactionId, Comparable tkey, Object tvalue) throws IOException {
+		Object o = presentForUpdate(transactionId, tkey);
+		if(o != null)
+			put(transactionId, tkey, tvalue);
+		return o;
+	}
+	/**
+	* Put the value in the transaction if the key holds a value equal to the expected one. The key is read with getForUpdate.
+	* @param transactionId Transaction Id
+	* @param tkey The key for the pair
+	* @param expected The value the key must hold
+	* @param tvalue The value for the pair
+	* @return true if the value was put
+	* @exception IOException If backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public boolean replace(TransactionId transactionId, Comparable tkey, Object expected, Object tvalue) throws IOException {
+		Object o = presentForUpdate(transactionId, tkey);
+		if(o == null || !o.equals(expected))
+			return false;
+		put(transactionId, tkey, tvalue);
+		return true;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private Object presentForUpdate(TransactionId transactionId, Comparable tkey) throws IOException {
+		Object kv = getForUpdate(transactionId, tkey, true);
+		return kv == null ? null : ((Map.Entry)kv).getValue();
 	}
 	/**
 	* @param transactionId Transaction Id
@@ -376,7 +758,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@Override
 	public Comparable firstKey(TransactionId transactionId) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.firstKey(txn, columnFamilyHandle);
@@ -388,7 +770,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@Override
 	public Comparable lastKey(TransactionId transactionId) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.lastKey(txn, columnFamilyHandle);
@@ -402,7 +784,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@Override
 	public Object last(TransactionId transactionId) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.last(txn, columnFamilyHandle);
@@ -415,7 +797,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@Override
 	public Object first(TransactionId transactionId) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.first(txn, columnFamilyHandle);
@@ -428,7 +810,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	 * @throws IOException
 	 */
 	public Object nearest(TransactionId transactionId, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.nearest(txn, columnFamilyHandle, tkey);
@@ -442,7 +824,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Iterator<?> headMap(TransactionId transactionId, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.headSet(txn, columnFamilyHandle, tkey);
@@ -455,7 +837,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Stream<?> headMapStream(TransactionId transactionId, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.headSetStream(txn, columnFamilyHandle, tkey);
@@ -470,7 +852,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Iterator<?> headMapKV(TransactionId transactionId, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.headSetKV(txn, columnFamilyHandle, tkey);
@@ -484,7 +866,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Stream<?> headMapKVStream(TransactionId transactionId, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.headSetKVStream(txn, columnFamilyHandle, tkey);
@@ -499,7 +881,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Iterator<?> tailMap(TransactionId transactionId, Comparable fkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.tailSet(txn, columnFamilyHandle, fkey);
@@ -514,7 +896,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Stream<?> tailMapStream(TransactionId transactionId, Comparable fkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.tailSetStream(txn, columnFamilyHandle, fkey);
@@ -528,7 +910,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Iterator<?> tailMapKV(TransactionId transactionId, Comparable fkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.tailSetKV(txn, columnFamilyHandle, fkey);
@@ -543,7 +925,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Stream<?> tailMapKVStream(TransactionId transactionId, Comparable fkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.tailSetKVStream(txn, columnFamilyHandle, fkey);
@@ -558,7 +940,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Iterator<?> subMap(TransactionId transactionId, Comparable fkey, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.subSet(txn, columnFamilyHandle, fkey, tkey);
@@ -573,7 +955,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Stream<?> subMapStream(TransactionId transactionId, Comparable fkey, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.subSetStream(txn, columnFamilyHandle, fkey, tkey);
@@ -589,7 +971,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Iterator<?> subMapKV(TransactionId transactionId, Comparable fkey, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.subSetKV(txn, columnFamilyHandle, fkey, tkey);
@@ -604,11 +986,230 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	@Override
 	@SuppressWarnings("rawtypes")
 	public Stream<?> subMapKVStream(TransactionId transactionId, Comparable fkey, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.subSetKVStream(txn, columnFamilyHandle, fkey, tkey);
 	}
+	/**
+	* Merge join this map with another map ordered by the same comparator, both read under the same transaction.
+	* A single forward pass is made over each map.
+	* @param transactionId Transaction Id
+	* @param other the right side map
+	* @param joinType INNER, LEFT, FULL_OUTER
+	* @return Iterator of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Iterator<?> joinKV(TransactionId transactionId, TransactionalMap other, MergeJoinIterator.JoinType joinType) throws IOException {
+		return new MergeJoinIterator(entrySet(transactionId), other.entrySet(transactionId), joinType);
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @param other the right side map
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @param joinType INNER, LEFT, FULL_OUTER
+	* @return Iterator of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> joinKV(TransactionId transactionId, TransactionalMap other, Comparable fkey, Comparable tkey, MergeJoinIterator.JoinType joinType) throws IOException {
+		return new MergeJoinIterator(subSetKV(transactionId, fkey, tkey), other.subSetKV(transactionId, fkey, tkey), joinType);
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @param other the right side map
+	* @param joinType INNER, LEFT, FULL_OUTER
+	* @return Stream of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Stream<?> joinKVStream(TransactionId transactionId, TransactionalMap other, MergeJoinIterator.JoinType joinType) throws IOException {
+		return new MergeJoinStream(entrySet(transactionId), other.entrySet(transactionId), joinType);
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @param other the right side map
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @param joinType INNER, LEFT, FULL_OUTER
+	* @return Stream of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> joinKVStream(TransactionId transactionId, TransactionalMap other, Comparable fkey, Comparable tkey, MergeJoinIterator.JoinType joinType) throws IOException {
+		return new MergeJoinStream(subSetKV(transactionId, fkey, tkey), other.subSetKV(transactionId, fkey, tkey), joinType);
+	}
+	/**
+	* Difference of this map against another map. Delivers keys present on one side only
+	* and keys whose values are not equal. A single forward pass is made over each map.
+	* @param transactionId Transaction Id
+	* @param other the right side map
+	* @return Iterator of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Iterator<?> diffKV(TransactionId transactionId, TransactionalMap other) throws IOException {
+		return new DiffIterator(entrySet(transactionId), other.entrySet(transactionId));
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @param other the right side map
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Iterator of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> diffKV(TransactionId transactionId, TransactionalMap other, Comparable fkey, Comparable tkey) throws IOException {
+		return new DiffIterator(subSetKV(transactionId, fkey, tkey), other.subSetKV(transactionId, fkey, tkey));
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @param other the right side map
+	* @return Stream of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Stream<?> diffKVStream(TransactionId transactionId, TransactionalMap other) throws IOException {
+		return new DiffStream(entrySet(transactionId), other.entrySet(transactionId));
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @param other the right side map
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Stream of {@link com.neocoretechs.rocksack.iterator.JoinEntry} in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> diffKVStream(TransactionId transactionId, TransactionalMap other, Comparable fkey, Comparable tkey) throws IOException {
+		return new DiffStream(subSetKV(transactionId, fkey, tkey), other.subSetKV(transactionId, fkey, tkey));
+	}
+	/**
+	* Flow.Publisher variant of the range scan. The iterator is opened and read on the executor of {@link SackPublisher}
+	* as subscriber demand arrives, and released on cancel or completion.
+	* @param transactionId Transaction Id
+	* @return Publisher of {@link com.neocoretechs.rocksack.iterator.Entry} over the entire map
+	*/
+	public Flow.Publisher<Object> entrySetPublisher(TransactionId transactionId) {
+		return new SackPublisher(() -> entrySet(transactionId));
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @return Publisher of keys over the entire map
+	*/
+	public Flow.Publisher<Object> keySetPublisher(TransactionId transactionId) {
+		return new SackPublisher(() -> keySet(transactionId));
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @param tkey Strictly less than 'to' this element
+	* @return Publisher of keys from first to tkey
+	*/
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> headMapPublisher(TransactionId transactionId, Comparable tkey) {
+		return new SackPublisher(() -> headSet(transactionId, tkey));
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @param tkey Strictly less than 'to' this element
+	* @return Publisher of KeyValuePairs from first to tkey
+	*/
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> headMapKVPublisher(TransactionId transactionId, Comparable tkey) {
+		return new SackPublisher(() -> headSetKV(transactionId, tkey));
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @param fkey 'from' element inclusive
+	* @return Publisher of keys from fkey to last
+	*/
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> tailMapPublisher(TransactionId transactionId, Comparable fkey) {
+		return new SackPublisher(() -> tailSet(transactionId, fkey));
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @param fkey 'from' element inclusive
+	* @return Publisher of KeyValuePairs from fkey to last
+	*/
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> tailMapKVPublisher(TransactionId transactionId, Comparable fkey) {
+		return new SackPublisher(() -> tailSetKV(transactionId, fkey));
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Publisher of keys from fkey to tkey
+	*/
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> subMapPublisher(TransactionId transactionId, Comparable fkey, Comparable tkey) {
+		return new SackPublisher(() -> subSet(transactionId, fkey, tkey));
+	}
+	/**
+	* @param transactionId Transaction Id
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Publisher of KeyValuePairs from fkey to tkey
+	*/
+	@SuppressWarnings("rawtypes")
+	public Flow.Publisher<Object> subMapKVPublisher(TransactionId transactionId, Comparable fkey, Comparable tkey) {
+		return new SackPublisher(() -> subSetKV(transactionId, fkey, tkey));
+	}
+	/**
+	* Get a value asynchronously on the executor of {@link AsyncSupport}.
+	* @param transactionId Transaction Id
+	* @param tkey The key for the value
+	* @return future of the {@link com.neocoretechs.rocksack.KeyValue} for the key, or null if not found
+	*/
+	@SuppressWarnings("rawtypes")
+	public CompletableFuture<Object> getAsync(TransactionId transactionId, Comparable tkey) {
+		return AsyncSupport.supply(() -> get(transactionId, tkey));
+	}
+	/**
+	* Get several values in one multiGet.
+	* @param transactionId Transaction Id
+	* @param tkeys The keys for the values
+	* @return List of {@link com.neocoretechs.rocksack.KeyValue} in order of the keys, null for keys not found
+	* @exception IOException if get from backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public List<Object> getAll(TransactionId transactionId, List<? extends Comparable> tkeys) throws IOException {
+		Transaction txn = getTransaction(transactionId);
+		if(txn == null)
+			throw new IOException("Transaction "+transactionId+" not found for session "+this);
+		return session.multiGet(txn, columnFamilyHandle, session.ro, tkeys);
+	}
+	/**
+	* Get several values asynchronously in one multiGet.
+	* @param transactionId Transaction Id
+	* @param tkeys The keys for the values
+	* @return future of the List of {@link com.neocoretechs.rocksack.KeyValue} in order of the keys, null for keys not found
+	*/
+	@SuppressWarnings("rawtypes")
+	public CompletableFuture<List<Object>> getAllAsync(TransactionId transactionId, List<? extends Comparable> tkeys) {
+		return AsyncSupport.supply(() -> getAll(transactionId, tkeys));
+	}
+	/**
+	* Put a key/value pair asynchronously.
+	* @param transactionId Transaction Id
+	* @param tkey The key for the pair
+	* @param tvalue The value for the pair
+	* @return future of the put result
+	*/
+	@SuppressWarnings("rawtypes")
+	public CompletableFuture<Boolean> putAsync(TransactionId transactionId, Comparable tkey, Object tvalue) {
+		return AsyncSupport.supply(() -> put(transactionId, tkey, tvalue));
+	}
+	/**
+	* Remove a key asynchronously.
+	* @param transactionId Transaction Id
+	* @param tkey The key to match
+	* @return future of the removed value, or null if not present
+	*/
+	@SuppressWarnings("rawtypes")
+	public CompletableFuture<Object> removeAsync(TransactionId transactionId, Comparable tkey) {
+		return AsyncSupport.supply(() -> remove(transactionId, tkey));
+	}
 	
 	/**
 	* Return boolean value indicating whether the map is empty
@@ -618,7 +1219,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@Override
 	public boolean isEmpty(TransactionId transactionId) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.isEmpty(txn, columnFamilyHandle);
@@ -628,7 +1229,131 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	 * @throws IOException
 	 */
 	public void dropColumn() throws IOException {
-		session.dropColumn(columnFamilyHandle);
+		session.pinned(() -> {
+			session.dropColumn(columnFamilyHandle);
+			indexer.drop();
+			return null;
+		});
+		if(cache != null)
+			cache.clear();
+		if(rangeCache != null)
+			rangeCache.clear();
+	}
+	/**
+	* Get the entries whose values have the given value of a {@link com.neocoretechs.rocksack.SecondaryIndex}, in primary
+	* key order, as seen by the transaction.
+	* @param transactionId Transaction Id
+	* @param index the name of the index
+	* @param value the indexed value
+	* @return Iterator of {@link com.neocoretechs.rocksack.KeyValue}, empty if no value of the map was indexed
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> getByIndex(TransactionId transactionId, String index, Comparable value) throws IOException {
+		return indexFetch(transactionId, SecondaryIndexer.bounds(index, value));
+	}
+	/**
+	* Get the entries whose values of a {@link com.neocoretechs.rocksack.SecondaryIndex} are in a range, in index order,
+	* as seen by the transaction.
+	* @param transactionId Transaction Id
+	* @param index the name of the index
+	* @param fvalue 'from' indexed value inclusive, null from the first
+	* @param tvalue 'to' indexed value exclusive, null to the last
+	* @return Iterator of {@link com.neocoretechs.rocksack.KeyValue}, empty if no value of the map was indexed
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> indexRange(TransactionId transactionId, String index, Comparable fvalue, Comparable tvalue) throws IOException {
+		return indexFetch(transactionId, SecondaryIndexer.bounds(index, fvalue, tvalue));
+	}
+	/**
+	* Stream of the index alone as seen by the transaction, the values of the map are not read.
+	* @param transactionId Transaction Id
+	* @param index the name of the index
+	* @param fvalue 'from' indexed value inclusive, null from the first
+	* @param tvalue 'to' indexed value exclusive, null to the last
+	* @return Stream of {@link com.neocoretechs.rocksack.iterator.KeyValuePair} of indexed value and primary key in index order
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> indexStream(TransactionId transactionId, String index, Comparable fvalue, Comparable tvalue) throws IOException {
+		Transaction txn = getTransaction(transactionId);
+		if(txn == null)
+			throw new IOException("Transaction "+transactionId+" not found for session "+this);
+		ColumnFamilyHandle ich = indexer.getIndexHandle();
+		if(ich == null)
+			return Stream.empty();
+		IndexKey[] b = SecondaryIndexer.bounds(index, fvalue, tvalue);
+		return new SackStream(SecondaryIndexer.indexOnly(session.subSet(txn, ich, b[0], b[1])));
+	}
+	/**
+	 * Read the primary entries of a range of the index column family in the transaction.
+	 */
+	private Iterator<?> indexFetch(TransactionId transactionId, IndexKey[] b) throws IOException {
+		Transaction txn = getTransaction(transactionId);
+		if(txn == null)
+			throw new IOException("Transaction "+transactionId+" not found for session "+this);
+		ColumnFamilyHandle ich = indexer.getIndexHandle();
+		if(ich == null)
+			return Collections.emptyIterator();
+		return new SecondaryIndexer.FetchIterator(SecondaryIndexer.primaryKeys(session.subSet(txn, ich, b[0], b[1])),
+			keys -> SecondaryIndexer.present(session.multiGet(txn, columnFamilyHandle, session.ro, keys)));
+	}
+	/**
+	* Get the keys of the entries whose values satisfy a query of their {@link com.neocoretechs.rocksack.BitmapIndex}
+	* results as seen by the transaction, without reading the values. Keys are in the order their values were first indexed.
+	* @param transactionId Transaction Id
+	* @param query the query
+	* @return Stream of keys, empty if no value of the map had bitmap indexes
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Stream<?> bitmapKeyStream(TransactionId transactionId, BitmapQuery query) throws IOException {
+		return new SackStream(bitmapKeys(transactionId, query));
+	}
+	/**
+	* Get the entries whose values satisfy a query of their {@link com.neocoretechs.rocksack.BitmapIndex} results as
+	* seen by the transaction. Entries are in the order their values were first indexed, read a batch at a time.
+	* @param transactionId Transaction Id
+	* @param query the query
+	* @return Iterator of {@link com.neocoretechs.rocksack.KeyValue}, empty if no value of the map had bitmap indexes
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Iterator<?> bitmapQuery(TransactionId transactionId, BitmapQuery query) throws IOException {
+		Transaction txn = getTransaction(transactionId);
+		Iterator<?> keys = bitmapKeys(transactionId, query);
+		return new SecondaryIndexer.FetchIterator(keys,
+			k -> SecondaryIndexer.present(session.multiGet(txn, columnFamilyHandle, session.ro, k)));
+	}
+	/**
+	* Count the entries whose values satisfy a query of their {@link com.neocoretechs.rocksack.BitmapIndex} results
+	* as seen by the transaction, from the bitmaps alone.
+	* @param transactionId Transaction Id
+	* @param query the query
+	* @return the number of entries
+	* @exception IOException If backing store retrieval failure
+	*/
+	public long bitmapCount(TransactionId transactionId, BitmapQuery query) throws IOException {
+		Transaction txn = getTransaction(transactionId);
+		if(txn == null)
+			throw new IOException("Transaction "+transactionId+" not found for session "+this);
+		return indexer.getBitmaps().evaluate(txn, columnFamilyHandle, query).cardinality();
+	}
+	/**
+	 * Evaluate the query in the transaction and resolve its ordinals to keys a batch at a time.
+	 */
+	private Iterator<?> bitmapKeys(TransactionId transactionId, BitmapQuery query) throws IOException {
+		Transaction txn = getTransaction(transactionId);
+		if(txn == null)
+			throw new IOException("Transaction "+transactionId+" not found for session "+this);
+		BitmapIndexer bitmaps = indexer.getBitmaps();
+		RoaringBitmap ordinals = bitmaps.evaluate(txn, columnFamilyHandle, query);
+		return BitmapIndexer.keys(ordinals, k -> session.multiGet(txn, bitmaps.getHandle(), session.ro, k));
+	}
+	/**
+	 * @return the {@link ObjectCache} in front of the gets of this map, or null if its class has none
+	 */
+	public ObjectCache getObjectCache() {
+		return cache;
 	}
 	
 	/**
@@ -649,7 +1374,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	 */
 	@Override
 	public Iterator<?> iterator(TransactionId transactionId) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.keySet(txn, columnFamilyHandle);
@@ -661,7 +1386,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	 */
 	@Override
 	public boolean contains(TransactionId transactionId, Comparable o) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.contains(txn, columnFamilyHandle, session.ro, o);
@@ -675,7 +1400,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/	
 	@Override
 	public Iterator<?> subSet(TransactionId transactionId, Comparable fkey, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.subSet(txn, columnFamilyHandle, fkey, tkey);
@@ -689,7 +1414,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/	
 	@Override
 	public Stream<?> subSetStream(TransactionId transactionId, Comparable fkey, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.subSetStream(txn, columnFamilyHandle, fkey, tkey);
@@ -703,7 +1428,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@Override
 	public Iterator<?> headSet(TransactionId transactionId, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.headSet(txn, columnFamilyHandle, tkey);
@@ -717,7 +1442,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@Override
 	public Stream<?> headSetStream(TransactionId transactionId, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.headSetStream(txn, columnFamilyHandle, tkey);
@@ -731,7 +1456,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	 */
 	@Override
 	public Iterator<?> tailSet(TransactionId transactionId, Comparable fkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.tailSet(txn, columnFamilyHandle, fkey);
@@ -745,7 +1470,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	 */
 	@Override
 	public Stream<?> tailSetStream(TransactionId transactionId, Comparable fkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.tailSetStream(txn, columnFamilyHandle, fkey);
@@ -759,7 +1484,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/	
 	@Override
 	public Iterator<?> subSetKV(TransactionId transactionId, Comparable fkey, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.subSetKV(txn, columnFamilyHandle, fkey, tkey);
@@ -773,7 +1498,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/	
 	@Override
 	public Stream<?> subSetKVStream(TransactionId transactionId, Comparable fkey, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.subSetKVStream(txn, columnFamilyHandle, fkey, tkey);
@@ -787,7 +1512,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@Override
 	public Iterator<?> headSetKV(TransactionId transactionId, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.headSetKV(txn, columnFamilyHandle, tkey);
@@ -801,7 +1526,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	*/
 	@Override
 	public Stream<?> headSetKVStream(TransactionId transactionId, Comparable tkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.headSetKVStream(txn, columnFamilyHandle, tkey);
@@ -815,7 +1540,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	 */
 	@Override
 	public Iterator<?> tailSetKV(TransactionId transactionId, Comparable fkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.tailSetKV(txn, columnFamilyHandle, fkey);
@@ -829,7 +1554,7 @@ public class TransactionalMap implements TransactionOrderedKVMapInterface {
 	 */
 	@Override
 	public Stream<?> tailSetKVStream(TransactionId transactionId, Comparable fkey) throws IOException {
-		Transaction txn = session.getTransaction(transactionId, className, false);
+		Transaction txn = getTransaction(transactionId);
 		if(txn == null)
 			throw new IOException("Transaction "+transactionId+" not found for session "+this);
 		return session.tailSetKVStream(txn, columnFamilyHandle, fkey);
@@ -0,0 +1,321 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.neocoretechs.rocksack.Alias;
+
+/**
+ * Deployment configuration of database, column family and table options per tablespace, alias and class, so options
+ * can be tuned without code changes. Options are resolved when a database is opened or a column family created, by
+ * layering, each over the one before:<br>
+ * the {@link TuningProfile#DEFAULT} profile<br>
+ * the Global section<br>
+ * the Tablespace section of the tablespace path holding the database<br>
+ * the Alias section of the alias of that tablespace<br>
+ * the overrides of the {@link com.neocoretechs.rocksack.DatabaseClass} annotation of the class<br>
+ * the Class section of the class or column stored in the column family.<p>
+ * A section may name a profile with the key profile, whose options are applied before the other keys of the section.
+ * The file is in the style of a RocksDB OPTIONS file, option names are those of RocksDB. Column family options are
+ * unprefixed, database options are prefixed db. and apply to the databases a section covers, block based table options
+ * are prefixed table. and are block_size, bloom_bits_per_key (0 for no filter), whole_key_filtering,
+ * cache_index_and_filter_blocks and pin_l0_filter_and_index_blocks_in_cache. The database option db.row_cache_size
+ * gives the bytes of a row cache, which holds values found by point lookups apart from the shared block cache.
+ * table.whole_key_filtering and memtable_whole_key_filtering are off by default and set by the canonical-keys profile,
+ * only for classes whose keys comparing equal always serialize alike, see {@link TuningProfile#CANONICAL_KEYS}.<p>
+ * The column family option memtable chooses the memtable representation: skip_list, the default, hash_skip_list with
+ * prefix_length, the bytes of serialized key hashed to a bucket, and memtable_bucket_count, or vector for bulk loads.
+ * Only skip_list accepts concurrent writes, for the others the database needs db.allow_concurrent_memtable_write=false,
+ * which is set for the class of a database but must be configured for a tablespace holding such a column family.
+ * db.enable_pipelined_write overlaps the write ahead log and memtable writes of successive write groups.
+ * db.unordered_write lets writers insert into the memtable without waiting for earlier writers, so a snapshot may miss
+ * a write with an earlier sequence number, and is ignored for transactional databases.<p>
+ * Options prefixed cache. configure the {@link ObjectCache} of deserialized values in front of the gets of a column family,
+ * cache.max_entries bounds it by entries and cache.max_bytes by estimated bytes, there is none if neither is set.
+ * cache.pinned=true holds the whole column family on heap instead, and {@link DatabaseManager#getMap(Class)} returns a
+ * {@link PinnedMap} serving every read from it. cache.range_max_entries bounds the {@link RangeCache} of range results
+ * by their total entries, there is none if it is not set.<p>
+ * The column family of a {@link CounterMap}, named after its map with the suffix #counters, takes the counters profile
+ * under its Class section, with the merge_operator option set to uint64add.<p>
+ * For instance:<br>
+ * <pre>
+ * [Global]
+ * profile=point-lookup
+ * db.max_open_files=512
+ * [Tablespace "C:/users/you/RockSack/TestDB2"]
+ * profile=range-scan
+ * [Alias "archive"]
+ * compression=kZSTD
+ * [Class "com.you.Event"]
+ * profile=write-heavy
+ * write_buffer_size=67108864
+ * db.row_cache_size=268435456
+ * [Class "com.you.Config"]
+ * cache.max_entries=10000
+ * [Class "com.you.Session"]
+ * memtable=hash_skip_list
+ * prefix_length=48
+ * [Profile "dedup"]
+ * table.block_size=8192
+ * </pre>
+ * Keys before the first section belong to the Global section, lines starting with # or ; are comments.
+ * If the system property rocksack.options names a file it is loaded on first use.<p>
+ * Options are built on first use and shared by all column families and databases resolving to the same options.
+ * Changes apply to databases opened and column families created afterwards.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public final class TuningConfig {
+	private static boolean DEBUG = false;
+	/** System property naming a configuration file loaded on first use */
+	public static final String OPTIONS_PROPERTY = "rocksack.options";
+	private static final String PROFILE = "profile";
+	private static ConcurrentHashMap<String, String> global = new ConcurrentHashMap<String, String>();
+	private static ConcurrentHashMap<String, Map<String, String>> tablespaces = new ConcurrentHashMap<String, Map<String, String>>();
+	private static ConcurrentHashMap<String, Map<String, String>> aliases = new ConcurrentHashMap<String, Map<String, String>>();
+	private static ConcurrentHashMap<String, Map<String, String>> classes = new ConcurrentHashMap<String, Map<String, String>>();
+	private static ConcurrentHashMap<String, Map<String, String>> profiles = new ConcurrentHashMap<String, Map<String, String>>();
+
+	static {
+		String file = System.getProperty(OPTIONS_PROPERTY);
+		if(file != null) {
+			try {
+				load(file);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not load options from "+file, e);
+			}
+		}
+	}
+
+	private TuningConfig() {}
+
+	/**
+	 * Load the configuration file, replacing the current configuration.
+	 * @param file the path of the file
+	 * @throws IOException if the file cannot be read or a line is malformed
+	 */
+	public static void load(String file) throws IOException {
+		try (Reader r = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+			load(r);
+		}
+	}
+	/**
+	 * Load the configuration, replacing the current configuration.
+	 * @param reader the configuration text
+	 * @throws IOException if the text cannot be read or a line is malformed
+	 */
+	public static synchronized void load(Reader reader) throws IOException {
+		ConcurrentHashMap<String, String> g = new ConcurrentHashMap<String, String>();
+		ConcurrentHashMap<String, Map<String, String>> ts = new ConcurrentHashMap<String, Map<String, String>>();
+		ConcurrentHashMap<String, Map<String, String>> as = new ConcurrentHashMap<String, Map<String, String>>();
+		ConcurrentHashMap<String, Map<String, String>> cs = new ConcurrentHashMap<String, Map<String, String>>();
+		ConcurrentHashMap<String, Map<String, String>> ps = new ConcurrentHashMap<String, Map<String, String>>();
+		Map<String, String> section = g;
+		BufferedReader br = new BufferedReader(reader);
+		String line;
+		int lineNo = 0;
+		while((line = br.readLine()) != null) {
+			++lineNo;
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#") || line.startsWith(";"))
+				continue;
+			if(line.startsWith("[")) {
+				if(!line.endsWith("]"))
+					throw new IOException("Malformed section at line "+lineNo+": "+line);
+				String header = line.substring(1, line.length()-1).trim();
+				int q = header.indexOf('"');
+				String kind = (q < 0 ? header : header.substring(0, q)).trim();
+				String name = q < 0 ? null : header.substring(q+1, header.lastIndexOf('"'));
+				if(kind.equals("Global")) {
+					section = g;
+					continue;
+				}
+				if(name == null || name.isEmpty())
+					throw new IOException("Section "+kind+" requires a quoted name at line "+lineNo);
+				switch(kind) {
+					case "Tablespace":
+						section = ts.computeIfAbsent(name, k -> new ConcurrentHashMap<String, String>());
+						break;
+					case "Alias":
+						section = as.computeIfAbsent(name, k -> new ConcurrentHashMap<String, String>());
+						break;
+					case "Class":
+						section = cs.computeIfAbsent(DatabaseManager.translateClass(name), k -> new ConcurrentHashMap<String, String>());
+						break;
+					case "Profile":
+						section = ps.computeIfAbsent(name, k -> new ConcurrentHashMap<String, String>());
+						break;
+					default:
+						throw new IOException("Unknown section "+kind+" at line "+lineNo);
+				}
+				continue;
+			}
+			int eq = line.indexOf('=');
+			if(eq <= 0)
+				throw new IOException("Expected key=value at line "+lineNo+": "+line);
+			section.put(line.substring(0, eq).trim(), line.substring(eq+1).trim());
+		}
+		global = g;
+		tablespaces = ts;
+		aliases = as;
+		classes = cs;
+		profiles = ps;
+		if(DEBUG)
+			System.out.printf("TuningConfig.load global:%s tablespaces:%s aliases:%s classes:%s profiles:%s%n", g, ts, as, cs, ps);
+	}
+	/**
+	 * Set the profile of the Global section.
+	 * @param profile
+	 */
+	public static void setProfile(TuningProfile profile) {
+		global.put(PROFILE, profile.getName());
+	}
+	/**
+	 * Set the profile of the Tablespace section for the path.
+	 * @param tablespace the tablespace path, as given to {@link DatabaseManager#setTableSpaceDir(String)}
+	 * @param profile
+	 */
+	public static void setProfile(String tablespace, TuningProfile profile) {
+		tablespaces.computeIfAbsent(tablespace, k -> new ConcurrentHashMap<String, String>()).put(PROFILE, profile.getName());
+	}
+	/**
+	 * Set the profile of the Alias section.
+	 * @param alias
+	 * @param profile
+	 */
+	public static void setProfile(Alias alias, TuningProfile profile) {
+		aliases.computeIfAbsent(alias.getAlias(), k -> new ConcurrentHashMap<String, String>()).put(PROFILE, profile.getName());
+	}
+	/**
+	 * Set the profile of the Class section.
+	 * @param clazz the class stored in the column family
+	 * @param profile
+	 */
+	public static void setProfile(Class<?> clazz, TuningProfile profile) {
+		setOption(clazz, PROFILE, profile.getName());
+	}
+	/**
+	 * Set an option in the Class section.
+	 * @param clazz the class stored in the column family
+	 * @param key the prefixed option name
+	 * @param value
+	 */
+	public static void setOption(Class<?> clazz, String key, String value) {
+		classes.computeIfAbsent(ClassMapping.get(clazz).getMapName(), k -> new ConcurrentHashMap<String, String>()).put(key, value);
+	}
+	/**
+	 * Give the database of the class a row cache. Values found by point lookups are kept in it, so repeated gets of the
+	 * same keys neither read nor decompress a block. For a {@link com.neocoretechs.rocksack.DatabaseClass} stored as a
+	 * column family the cache belongs to the database of its tablespace, and serves all classes stored there.
+	 * @param clazz the class
+	 * @param bytes the capacity of the cache, 0 for none
+	 */
+	public static void setRowCache(Class<?> clazz, long bytes) {
+		classes.computeIfAbsent(ClassMapping.get(clazz).xClass, k -> new ConcurrentHashMap<String, String>())
+			.put("db."+DatabaseManager.ROW_CACHE_SIZE, String.valueOf(bytes));
+	}
+	/**
+	 * Put an {@link ObjectCache} in front of the gets of the maps of the class, for maps obtained afterwards.
+	 * @param clazz the class
+	 * @param maxEntries the bound in entries, 0 for none
+	 * @param maxBytes the bound in estimated bytes, used over maxEntries if above 0
+	 */
+	public static void setObjectCache(Class<?> clazz, long maxEntries, long maxBytes) {
+		Map<String, String> section = classes.computeIfAbsent(ClassMapping.get(clazz).getMapName(), k -> new ConcurrentHashMap<String, String>());
+		section.put("cache."+ObjectCache.MAX_ENTRIES, String.valueOf(maxEntries));
+		section.put("cache."+ObjectCache.MAX_BYTES, String.valueOf(maxBytes));
+	}
+	/**
+	 * Put a {@link RangeCache} behind the range queries of the maps of the class, for maps obtained afterwards.
+	 * @param clazz the class
+	 * @param maxEntries the bound of the total entries of the cached ranges, 0 for none
+	 */
+	public static void setRangeCache(Class<?> clazz, long maxEntries) {
+		classes.computeIfAbsent(ClassMapping.get(clazz).getMapName(), k -> new ConcurrentHashMap<String, String>())
+			.put("cache."+RangeCache.RANGE_MAX_ENTRIES, String.valueOf(maxEntries));
+	}
+	/**
+	 * Hold the column family of the class on heap, for maps obtained afterwards, see {@link PinnedMap}.
+	 * @param clazz the class
+	 * @param pinned true to serve all reads of the class from memory
+	 */
+	public static void setPinned(Class<?> clazz, boolean pinned) {
+		classes.computeIfAbsent(ClassMapping.get(clazz).getMapName(), k -> new ConcurrentHashMap<String, String>())
+			.put("cache."+PinnedMap.PINNED, String.valueOf(pinned));
+	}
+	/**
+	 * @param profile the profile
+	 * @return the options of the profile, as redefined by a Profile section of its name if one was loaded
+	 */
+	static Map<String, String> getProfileOptions(TuningProfile profile) {
+		Map<String, String> p = profiles.get(profile.getName());
+		return p != null ? p : profile.getOptions();
+	}
+	/**
+	 * Resolve the options of a column family and of the database holding it.
+	 * @param dbPath the database path, tablespace plus translated class, or null for the Global options alone
+	 * @param cfName the column family, or null or default for the class of the database
+	 * @param annotated options of the DatabaseClass annotation of the class, or null
+	 * @return the prefixed options in key order
+	 */
+	static TreeMap<String, String> resolve(String dbPath, String cfName, Map<String, String> annotated) {
+		TreeMap<String, String> opts = new TreeMap<String, String>(TuningProfile.DEFAULT.getOptions());
+		apply(opts, global);
+		if(dbPath == null)
+			return opts;
+		// the longest tablespace path prefixing the database, configured, aliased or the default
+		String tablespace = null;
+		String alias = null;
+		for(String ts : tablespaces.keySet())
+			if(dbPath.startsWith(ts) && (tablespace == null || ts.length() > tablespace.length()))
+				tablespace = ts;
+		String def = DatabaseManager.getTableSpaceDir();
+		if(dbPath.startsWith(def) && (tablespace == null || def.length() > tablespace.length()))
+			tablespace = def;
+		for(String[] ap : VolumeManager.getAliases()) {
+			if(dbPath.startsWith(ap[1]) && (tablespace == null || ap[1].length() >= tablespace.length())) {
+				tablespace = ap[1];
+				alias = ap[0];
+			}
+		}
+		if(tablespace != null)
+			apply(opts, tablespaces.get(tablespace));
+		if(alias != null)
+			apply(opts, aliases.get(alias));
+		if(annotated != null)
+			opts.putAll(annotated);
+		String clazz = (cfName == null || cfName.equals("default")) ? (tablespace == null ? dbPath : dbPath.substring(tablespace.length())) : cfName;
+		apply(opts, classes.get(clazz));
+		if(DEBUG)
+			System.out.printf("TuningConfig.resolve %s %s tablespace:%s alias:%s class:%s %s%n", dbPath, cfName, tablespace, alias, clazz, opts);
+		return opts;
+	}
+	/**
+	 * Apply the profile of the section, if any, then its other keys.
+	 */
+	private static void apply(TreeMap<String, String> opts, Map<String, String> section) {
+		if(section == null)
+			return;
+		String name = section.get(PROFILE);
+		if(name != null) {
+			Map<String, String> p = profiles.get(name);
+			if(p == null) {
+				TuningProfile tp = TuningProfile.forName(name);
+				if(tp == null)
+					throw new IllegalArgumentException("Unknown tuning profile "+name);
+				p = tp.getOptions();
+			}
+			opts.putAll(p);
+		}
+		for(Map.Entry<String, String> e : section.entrySet())
+			if(!e.getKey().equals(PROFILE))
+				opts.put(e.getKey(), e.getValue());
+	}
+}
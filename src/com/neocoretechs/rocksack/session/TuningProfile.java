@@ -0,0 +1,130 @@
+package com.neocoretechs.rocksack.session;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named sets of options for common workloads, selected per tablespace, alias or class with {@link TuningConfig}.
+ * Option names are those of the RocksDB OPTIONS file. Column family options are unprefixed, database options carry the
+ * prefix db. and block based table options the prefix table., see {@link TuningConfig}.<p>
+ * {@link #DEFAULT} holds the options every database and column family start from, the others hold only the options
+ * they change from it. A profile named in a configuration file may also be defined or redefined there.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public enum TuningProfile {
+	/**
+	 * LZ4 compressed, ZSTD at the bottommost level, 96MB skiplist write buffers written concurrently, 64KB blocks.
+	 * Whole key filtering is off, see {@link #CANONICAL_KEYS}
+	 */
+	DEFAULT("default",
+		"write_buffer_size", "100663296",
+		"max_write_buffer_number", "3",
+		"memtable", "skip_list",
+		"compression", "kLZ4Compression",
+		"bottommost_compression", "kZSTD",
+		"table.block_size", "65536",
+		"table.bloom_bits_per_key", "10",
+		"table.whole_key_filtering", "false",
+		"table.cache_index_and_filter_blocks", "true",
+		"table.pin_l0_filter_and_index_blocks_in_cache", "true",
+		"db.allow_mmap_reads", "true",
+		"db.use_direct_reads", "false",
+		"db.use_direct_io_for_flush_and_compaction", "true",
+		"db.allow_concurrent_memtable_write", "true",
+		"db.enable_write_thread_adaptive_yield", "true"),
+	/** Gets of single keys. Small blocks, add {@link #CANONICAL_KEYS} to answer absent keys from the bloom filters */
+	POINT_LOOKUP("point-lookup",
+		"table.block_size", "4096",
+		"level_compaction_dynamic_level_bytes", "true"),
+	/**
+	 * Whole key bloom filters on the memtable as well as the files, so gets of absent keys mostly read no block and
+	 * are answered by keyMayExist. The filters hash the serialized key while the {@link com.neocoretechs.rocksack.SerializedComparator} orders
+	 * by compareTo, so only for classes whose keys comparing equal always serialize to the same bytes. A key class
+	 * whose compareTo ignores some fields, or which evolved under the same serialVersionUID, would be reported absent.
+	 */
+	CANONICAL_KEYS("canonical-keys",
+		"table.whole_key_filtering", "true",
+		"memtable_whole_key_filtering", "true",
+		"memtable_prefix_bloom_size_ratio", "0.1"),
+	/** Iteration over ordered ranges. Large blocks, no whole key filter, larger files */
+	RANGE_SCAN("range-scan",
+		"table.block_size", "65536",
+		"table.whole_key_filtering", "false",
+		"target_file_size_base", "134217728",
+		"level_compaction_dynamic_level_bytes", "true"),
+	/** Sustained inserts and updates. More and larger memtables merged before flush, later level 0 stalls, pipelined write ahead log and memtable writes */
+	WRITE_HEAVY("write-heavy",
+		"write_buffer_size", "134217728",
+		"max_write_buffer_number", "6",
+		"min_write_buffer_number_to_merge", "2",
+		"level0_file_num_compaction_trigger", "8",
+		"level0_slowdown_writes_trigger", "40",
+		"level0_stop_writes_trigger", "56",
+		"target_file_size_base", "134217728",
+		"max_bytes_for_level_base", "1073741824",
+		"db.bytes_per_sync", "1048576",
+		"db.enable_pipelined_write", "true"),
+	/**
+	 * Initial load of a large data set. Automatic compaction is off and writes never stall, compact the range after loading.
+	 * Vector memtables append without ordering until flush, so writes are not concurrent and reads before flush are slow
+	 */
+	BULK_LOAD("bulk-load",
+		"disable_auto_compactions", "true",
+		"write_buffer_size", "268435456",
+		"max_write_buffer_number", "4",
+		"min_write_buffer_number_to_merge", "1",
+		"level0_file_num_compaction_trigger", "1073741824",
+		"level0_slowdown_writes_trigger", "1073741824",
+		"level0_stop_writes_trigger", "1073741824",
+		"soft_pending_compaction_bytes_limit", "0",
+		"hard_pending_compaction_bytes_limit", "0",
+		"target_file_size_base", "268435456",
+		"memtable", "vector",
+		"db.allow_concurrent_memtable_write", "false"),
+	/**
+	 * Column families of {@link CounterMap}s. Small values merged often, so small memtables, no compression and
+	 * small blocks. Compaction stays leveled, FIFO compaction would drop the files holding the oldest deltas of a count
+	 */
+	COUNTERS("counters",
+		"write_buffer_size", "33554432",
+		"max_write_buffer_number", "2",
+		"compression", "kNoCompression",
+		"bottommost_compression", "kDisableCompressionOption",
+		"table.block_size", "4096",
+		"level_compaction_dynamic_level_bytes", "true");
+
+	private final String name;
+	private final Map<String, String> options;
+
+	private TuningProfile(String name, String... keyValues) {
+		this.name = name;
+		LinkedHashMap<String, String> opts = new LinkedHashMap<String, String>();
+		for(int i = 0; i < keyValues.length; i += 2)
+			opts.put(keyValues[i], keyValues[i+1]);
+		this.options = Collections.unmodifiableMap(opts);
+	}
+	/**
+	 * @return the name of the profile in a configuration file, such as point-lookup
+	 */
+	public String getName() {
+		return name;
+	}
+	/**
+	 * @return the options of the profile by prefixed name
+	 */
+	public Map<String, String> getOptions() {
+		return options;
+	}
+	/**
+	 * @param name the name of the profile in a configuration file
+	 * @return the profile, or null if none has the name
+	 */
+	public static TuningProfile forName(String name) {
+		for(TuningProfile p : values())
+			if(p.name.equals(name))
+				return p;
+		return null;
+	}
+}
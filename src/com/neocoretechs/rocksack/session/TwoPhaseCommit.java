@@ -0,0 +1,320 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.rocksdb.RocksDBException;
+import org.rocksdb.Transaction;
+import org.rocksdb.Transaction.TransactionState;
+import org.rocksdb.TransactionDB;
+
+import com.neocoretechs.rocksack.TransactionId;
+import com.neocoretechs.rocksack.session.TransactionManager.SessionAndTransaction;
+
+/**
+ * Two phase commit coordinator for a {@link TransactionId} whose transactions span several class databases.
+ * Each class is stored in its own TransactionDB, so committing the transactions of an id one after the other can leave
+ * some committed and some not if a failure intervenes.<p>
+ * The coordinator names each participating transaction after its id, calls prepare on all of them in parallel,
+ * and if all prepared, durably logs the commit decision for the id to the decision log before committing all of them
+ * in parallel. If any prepare fails, all are rolled back. Once all have committed a done record is logged.<p>
+ * A prepared transaction survives a crash in the write ahead log of its database. When a TransactionDB is opened,
+ * {@link #recover(TransactionSession)} commits its prepared transactions whose id has a commit decision in the log
+ * and rolls back the others. An id with a single participating database, or with an optimistic transaction
+ * which cannot be prepared, is committed directly.<p>
+ * The commit decision names the databases of the id. Once each of them has been opened and recovered, a done record
+ * is logged for the id.
+ * The decision log defaults to TwoPhaseCommit.log prefixed by the default tablespace, set with {@link #setLogPath(String)}.
+ * It is emptied whenever no decision is outstanding.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public final class TwoPhaseCommit {
+	private static boolean DEBUG = false;
+	private static final char NAME_SEPARATOR = '#';
+	private static final String COMMIT = "C ";
+	private static final String DONE = "D ";
+	private static final String DB_SEPARATOR = "\t";
+	private static String logPath = null;
+	private static FileChannel log = null;
+	// ids with a commit decision and no done record, to the databases not yet recovered since the decision
+	private static ConcurrentHashMap<String, Set<String>> inDoubt = new ConcurrentHashMap<String, Set<String>>();
+	private static AtomicInteger inFlight = new AtomicInteger();
+	// appends share the log, emptying it excludes them
+	private static ReentrantReadWriteLock logLock = new ReentrantReadWriteLock();
+
+	private TwoPhaseCommit() {}
+
+	/**
+	 * Set the path of the decision log, closing the current log. Must be set before transactions are committed
+	 * or databases recovered if the default is not desired.
+	 * @param path the full path of the log file
+	 * @throws IOException
+	 */
+	public static synchronized void setLogPath(String path) throws IOException {
+		if(log != null) {
+			log.close();
+			log = null;
+		}
+		logPath = path;
+	}
+
+	public static synchronized String getLogPath() {
+		if(logPath == null)
+			logPath = DatabaseManager.getTableSpaceDir()+"TwoPhaseCommit.log";
+		return logPath;
+	}
+	/**
+	 * Open the decision log, reading the ids committed but not done in a previous run.
+	 * @return the log channel
+	 * @throws IOException
+	 */
+	private static synchronized FileChannel getLog() throws IOException {
+		if(log == null) {
+			Path p = Paths.get(getLogPath());
+			if(Files.exists(p)) {
+				for(String line : Files.readAllLines(p, StandardCharsets.UTF_8)) {
+					if(line.startsWith(COMMIT)) {
+						String[] fields = line.substring(COMMIT.length()).split(DB_SEPARATOR);
+						Set<String> dbs = ConcurrentHashMap.newKeySet();
+						for(int i = 1; i < fields.length; i++)
+							dbs.add(fields[i]);
+						inDoubt.put(fields[0], dbs);
+					} else if(line.startsWith(DONE))
+						inDoubt.remove(line.substring(DONE.length()));
+				}
+			}
+			log = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			if(DEBUG)
+				System.out.printf("TwoPhaseCommit.getLog %s in doubt:%s%n", p, inDoubt);
+		}
+		return log;
+	}
+
+	private static void append(String record, boolean force) throws IOException {
+		FileChannel fc = getLog();
+		ByteBuffer bb = ByteBuffer.wrap((record+"\n").getBytes(StandardCharsets.UTF_8));
+		logLock.readLock().lock();
+		try {
+			while(bb.hasRemaining())
+				fc.write(bb);
+			if(force)
+				fc.force(false);
+		} finally {
+			logLock.readLock().unlock();
+		}
+	}
+	/**
+	 * Empty the log if no decision is in flight or in doubt.
+	 * @throws IOException
+	 */
+	private static void truncate() throws IOException {
+		if(inFlight.get() != 0 || !inDoubt.isEmpty() || !logLock.writeLock().tryLock())
+			return;
+		try {
+			if(inFlight.get() == 0)
+				getLog().truncate(0);
+		} finally {
+			logLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Commit the outstanding transactions of the id atomically across their databases.
+	 * Transactions already committed or rolled back are skipped.
+	 * @param xid the transaction id
+	 * @param tx the transactions of the id, one per database
+	 * @throws IOException if prepare failed and all were rolled back, or commit failed after the decision was logged,
+	 * in which case the remaining transactions are committed by recovery when their database is next opened
+	 */
+	static void commit(TransactionId xid, List<Transaction> tx) throws IOException {
+		ArrayList<Transaction> participants = new ArrayList<Transaction>(tx.size());
+		for(Transaction t : tx) {
+			if(!t.getState().equals(TransactionState.COMMITTED) &&
+			   !t.getState().equals(TransactionState.ROLLEDBACK))
+				participants.add(t);
+		}
+		if(participants.size() < 2 || !isPreparable(xid, participants)) {
+			try {
+				for(Transaction t : participants) {
+					t.commit();
+					ObjectCache.committed(t);
+					RangeCache.committed(t);
+				}
+			} catch (RocksDBException e) {
+				throw new IOException(e);
+			}
+			return;
+		}
+		List<String> dbs = databases(xid, participants);
+		inFlight.incrementAndGet();
+		try {
+			// phase 1
+			try {
+				int i = 0;
+				for(Transaction t : participants)
+					t.setName(xid.getTransactionId()+NAME_SEPARATOR+(i++));
+				forAll(participants, t -> t.prepare());
+			} catch (IOException | RocksDBException e) {
+				if(DEBUG)
+					System.out.printf("TwoPhaseCommit.commit prepare failed for %s, rolling back %d transactions%n", xid, participants.size());
+				try {
+					forAll(participants, t -> {
+						if(!t.getState().equals(TransactionState.ROLLEDBACK))
+							t.rollback();
+						ObjectCache.discard(t);
+						RangeCache.discard(t);
+					});
+				} catch(IOException ioe) {
+					e.addSuppressed(ioe);
+				}
+				throw (e instanceof IOException) ? (IOException)e : new IOException(e);
+			}
+			// decision
+			append(COMMIT+xid.getTransactionId()+DB_SEPARATOR+String.join(DB_SEPARATOR, dbs), true);
+			// phase 2
+			try {
+				forAll(participants, t -> {
+					t.commit();
+					ObjectCache.committed(t);
+					RangeCache.committed(t);
+				});
+			} catch(IOException e) {
+				// the decision is kept for recovery of the transactions left prepared
+				Set<String> pending = ConcurrentHashMap.newKeySet();
+				pending.addAll(dbs);
+				inDoubt.put(xid.getTransactionId(), pending);
+				throw e;
+			}
+			append(DONE+xid.getTransactionId(), false);
+			if(DEBUG)
+				System.out.printf("TwoPhaseCommit.commit committed %s across %d databases%n", xid, participants.size());
+		} finally {
+			inFlight.decrementAndGet();
+		}
+		truncate();
+	}
+	/**
+	 * @return true if every participant is a pessimistic TransactionDB transaction
+	 */
+	private static boolean isPreparable(TransactionId xid, List<Transaction> participants) {
+		ConcurrentHashMap<String, SessionAndTransaction> links = TransactionManager.getTransactions(xid);
+		if(links == null)
+			return false;
+		int found = 0;
+		for(SessionAndTransaction sLink : links.values()) {
+			if(participants.contains(sLink.getTransaction())) {
+				if(!(sLink.getTransactionSession().getKVStore() instanceof TransactionDB))
+					return false;
+				++found;
+			}
+		}
+		return found >= participants.size();
+	}
+	/**
+	 * @return the paths of the databases of the participants
+	 */
+	private static List<String> databases(TransactionId xid, List<Transaction> participants) {
+		ArrayList<String> dbs = new ArrayList<String>(participants.size());
+		for(SessionAndTransaction sLink : TransactionManager.getTransactions(xid).values()) {
+			if(participants.contains(sLink.getTransaction()))
+				dbs.add(sLink.getTransactionSession().getDBname());
+		}
+		return dbs;
+	}
+
+	@FunctionalInterface
+	private interface TransactionOp {
+		void apply(Transaction t) throws RocksDBException;
+	}
+	/**
+	 * Apply the operation to all transactions in parallel on the {@link AsyncSupport} executor and wait for all.
+	 * @throws IOException with the first failure
+	 */
+	private static void forAll(List<Transaction> participants, TransactionOp op) throws IOException {
+		CompletableFuture<?>[] cfs = new CompletableFuture<?>[participants.size()];
+		for(int i = 0; i < cfs.length; i++) {
+			Transaction t = participants.get(i);
+			cfs[i] = AsyncSupport.supply(() -> {
+				try {
+					op.apply(t);
+				} catch (RocksDBException e) {
+					throw new IOException(e);
+				}
+				return null;
+			});
+		}
+		try {
+			CompletableFuture.allOf(cfs).join();
+		} catch(CompletionException ce) {
+			Throwable cause = ce.getCause();
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Resolve the transactions of a newly opened TransactionDB left prepared by a crash between the phases.
+	 * Those whose id has a commit decision in the log are committed, the others rolled back, since no decision
+	 * was reached for them. An id whose databases have all been recovered is logged done.
+	 * @param session the newly opened session
+	 * @throws IOException
+	 */
+	static void recover(TransactionSession session) throws IOException {
+		if(!(session.getKVStore() instanceof TransactionDB))
+			return;
+		getLog();
+		List<Transaction> prepared = session.getAllPreparedTransactions();
+		if(prepared != null && !prepared.isEmpty())
+			resolve(session, prepared);
+		// the database holds no prepared transaction of an id any more
+		String db = session.getDBname();
+		for(Map.Entry<String, Set<String>> e : inDoubt.entrySet()) {
+			Set<String> pending = e.getValue();
+			pending.remove(db);
+			if(pending.isEmpty() && inDoubt.remove(e.getKey(), pending)) {
+				append(DONE+e.getKey(), false);
+				if(DEBUG)
+					System.out.printf("TwoPhaseCommit.recover resolved %s%n", e.getKey());
+			}
+		}
+		truncate();
+	}
+
+	private static void resolve(TransactionSession session, List<Transaction> prepared) throws IOException {
+		try {
+			for(Transaction t : prepared) {
+				String name = t.getName();
+				int sep = name.lastIndexOf(NAME_SEPARATOR);
+				String id = sep < 0 ? name : name.substring(0, sep);
+				if(inDoubt.containsKey(id)) {
+					if(DEBUG)
+						System.out.printf("TwoPhaseCommit.recover committing %s in %s%n", name, session);
+					t.commit();
+				} else {
+					if(DEBUG)
+						System.out.printf("TwoPhaseCommit.recover rolling back %s in %s%n", name, session);
+					t.rollback();
+				}
+			}
+		} catch (RocksDBException e) {
+			throw new IOException(e);
+		}
+	}
+}
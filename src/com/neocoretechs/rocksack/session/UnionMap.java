@@ -0,0 +1,313 @@
+package com.neocoretechs.rocksack.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import com.neocoretechs.rocksack.iterator.MergeIterator;
+import com.neocoretechs.rocksack.iterator.PrefetchIterator;
+import com.neocoretechs.rocksack.stream.MergeStream;
+
+/**
+ * Read only union view over several {@link BufferedMap}, such as the main and derived class column families
+ * of a tablespace, or the same class across several {@link com.neocoretechs.rocksack.Alias} tablespaces.
+ * Range methods open an iterator on each map and merge them in comparator order with a heap via {@link MergeIterator}.
+ * Keys present in more than one map are delivered once per map, in the order the maps were given.<p>
+ * If parallel is set, each map is read ahead in batches on its own thread from the executor so that
+ * the sources are fetched concurrently. The default executor creates a virtual thread per source.
+ * Streams should be closed when abandoned before exhaustion in parallel mode to stop the fetch threads.
+ * Obtained via DatabaseManager.getUnionMap.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class UnionMap {
+	private static boolean DEBUG = false;
+	private static ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private List<BufferedMap> maps;
+	private boolean parallel = false;
+	private int batchSize = PrefetchIterator.DEFAULT_BATCH_SIZE;
+
+	private interface RangeSource {
+		Iterator<?> open(BufferedMap map) throws IOException;
+	}
+
+	/**
+	 * @param maps the maps to be merged, in order of precedence for equal keys
+	 */
+	public UnionMap(List<BufferedMap> maps) {
+		this.maps = maps;
+	}
+
+	public List<BufferedMap> getMaps() {
+		return maps;
+	}
+	/**
+	 * @param parallel true to fetch from each map concurrently on the executor
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+	/**
+	 * @param batchSize number of elements fetched at once from each map in parallel mode
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+	/**
+	 * Set the executor supplying fetch threads for parallel mode for all union maps.
+	 * @param exec
+	 */
+	public static void setExecutor(ExecutorService exec) {
+		executor = exec;
+	}
+
+	public static ExecutorService getExecutor() {
+		return executor;
+	}
+
+	private MergeIterator merge(RangeSource source) throws IOException {
+		ArrayList<Iterator<?>> sources = new ArrayList<Iterator<?>>(maps.size());
+		try {
+			for(BufferedMap map : maps) {
+				Iterator<?> it = source.open(map);
+				sources.add(parallel ? new PrefetchIterator(it, executor, batchSize, PrefetchIterator.DEFAULT_QUEUE_DEPTH) : it);
+			}
+		} catch(IOException ioe) {
+			new MergeIterator(sources).close();
+			throw ioe;
+		}
+		if(DEBUG)
+			System.out.printf("%s merging %d sources parallel=%b%n", this.getClass().getName(), sources.size(), parallel);
+		return new MergeIterator(sources);
+	}
+	/**
+	* Get the value for the key from the first map containing it.
+	* @param key The key for the value
+	* @return The {@link com.neocoretechs.rocksack.KeyValue} for the key, or null if no map contains it
+	* @exception IOException if get from backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public Object get(Comparable key) throws IOException {
+		for(BufferedMap map : maps) {
+			Object o = map.get(key);
+			if(o != null)
+				return o;
+		}
+		return null;
+	}
+	/**
+	* @param key The key to find
+	* @return true if any map contains the key
+	* @exception IOException if get from backing store fails
+	*/
+	@SuppressWarnings("rawtypes")
+	public boolean containsKey(Comparable key) throws IOException {
+		for(BufferedMap map : maps) {
+			if(map.containsKey(key))
+				return true;
+		}
+		return false;
+	}
+	/**
+	* @return total number of elements in all maps
+	* @exception IOException If backing store retrieval failure
+	*/
+	public long size() throws IOException {
+		long size = 0;
+		for(BufferedMap map : maps)
+			size += map.size();
+		return size;
+	}
+	/**
+	* @return true if all maps are empty
+	* @exception IOException If backing store retrieval failure
+	*/
+	public boolean isEmpty() throws IOException {
+		for(BufferedMap map : maps) {
+			if(map.size() > 0)
+				return false;
+		}
+		return true;
+	}
+	/**
+	* @return least key over all maps, or null if all empty
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public Comparable firstKey() throws IOException {
+		Comparable ret = null;
+		for(BufferedMap map : maps) {
+			Comparable c = map.firstKey();
+			if(c != null && (ret == null || c.compareTo(ret) < 0))
+				ret = c;
+		}
+		return ret;
+	}
+	/**
+	* @return greatest key over all maps, or null if all empty
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public Comparable lastKey() throws IOException {
+		Comparable ret = null;
+		for(BufferedMap map : maps) {
+			Comparable c = map.lastKey();
+			if(c != null && (ret == null || c.compareTo(ret) > 0))
+				ret = c;
+		}
+		return ret;
+	}
+	/**
+	* @return Iterator of {@link com.neocoretechs.rocksack.iterator.Entry} of all maps in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Iterator<?> entrySet() throws IOException {
+		return merge(map -> map.entrySet());
+	}
+	/**
+	* @return Stream of {@link com.neocoretechs.rocksack.iterator.Entry} of all maps in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Stream<?> entrySetStream() throws IOException {
+		return new MergeStream(merge(map -> map.entrySet()));
+	}
+	/**
+	* @return Iterator of keys of all maps in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Iterator<?> keySet() throws IOException {
+		return merge(map -> map.keySet());
+	}
+	/**
+	* @return Stream of keys of all maps in key order
+	* @exception IOException If backing store retrieval failure
+	*/
+	public Stream<?> keySetStream() throws IOException {
+		return new MergeStream(merge(map -> map.keySet()));
+	}
+	/**
+	* @param tkey Strictly less than 'to' this element
+	* @return Iterator of keys of all maps from first to tkey
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> headSet(Comparable tkey) throws IOException {
+		return merge(map -> map.headSet(tkey));
+	}
+	/**
+	* @param tkey Strictly less than 'to' this element
+	* @return Stream of keys of all maps from first to tkey
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> headSetStream(Comparable tkey) throws IOException {
+		return new MergeStream(merge(map -> map.headSet(tkey)));
+	}
+	/**
+	* @param tkey Strictly less than 'to' this element
+	* @return Iterator of KeyValuePairs of all maps from first to tkey
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> headSetKV(Comparable tkey) throws IOException {
+		return merge(map -> map.headSetKV(tkey));
+	}
+	/**
+	* @param tkey Strictly less than 'to' this element
+	* @return Stream of KeyValuePairs of all maps from first to tkey
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> headSetKVStream(Comparable tkey) throws IOException {
+		return new MergeStream(merge(map -> map.headSetKV(tkey)));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @return Iterator of keys of all maps from fkey to last
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> tailSet(Comparable fkey) throws IOException {
+		return merge(map -> map.tailSet(fkey));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @return Stream of keys of all maps from fkey to last
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> tailSetStream(Comparable fkey) throws IOException {
+		return new MergeStream(merge(map -> map.tailSet(fkey)));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @return Iterator of KeyValuePairs of all maps from fkey to last
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> tailSetKV(Comparable fkey) throws IOException {
+		return merge(map -> map.tailSetKV(fkey));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @return Stream of KeyValuePairs of all maps from fkey to last
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> tailSetKVStream(Comparable fkey) throws IOException {
+		return new MergeStream(merge(map -> map.tailSetKV(fkey)));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Iterator of keys of all maps from fkey to tkey
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> subSet(Comparable fkey, Comparable tkey) throws IOException {
+		return merge(map -> map.subSet(fkey, tkey));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Stream of keys of all maps from fkey to tkey
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> subSetStream(Comparable fkey, Comparable tkey) throws IOException {
+		return new MergeStream(merge(map -> map.subSet(fkey, tkey)));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Iterator of KeyValuePairs of all maps from fkey to tkey
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Iterator<?> subSetKV(Comparable fkey, Comparable tkey) throws IOException {
+		return merge(map -> map.subSetKV(fkey, tkey));
+	}
+	/**
+	* @param fkey 'from' element inclusive
+	* @param tkey 'to' element exclusive
+	* @return Stream of KeyValuePairs of all maps from fkey to tkey
+	* @exception IOException If backing store retrieval failure
+	*/
+	@SuppressWarnings("rawtypes")
+	public Stream<?> subSetKVStream(Comparable fkey, Comparable tkey) throws IOException {
+		return new MergeStream(merge(map -> map.subSetKV(fkey, tkey)));
+	}
+
+	@Override
+	public String toString() {
+		return "UnionMap:"+maps+" parallel:"+parallel;
+	}
+}
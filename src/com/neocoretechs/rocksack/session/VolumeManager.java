@@ -4,6 +4,7 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.neocoretechs.rocksack.Alias;
 /**
@@ -48,6 +49,17 @@ public final class VolumeManager {
 		public ConcurrentHashMap<String, SetInterface> classToIso = new ConcurrentHashMap<String,SetInterface>();
 		// these are active in a transaction context
 		public ConcurrentHashMap<String, TransactionSetInterface> classToIsoTransaction = new ConcurrentHashMap<String, TransactionSetInterface>();
+		// all classes are column families of one database, see DatabaseManager.setConsolidated
+		volatile boolean consolidated = false;
+		// serializes creation of the maps of one tablespace class and its derived column families
+		private ConcurrentHashMap<String, ReentrantLock> classLocks = new ConcurrentHashMap<String, ReentrantLock>();
+		/**
+		 * @param xClass the translated tablespace class name
+		 * @return the lock held while the maps for the class are created
+		 */
+		ReentrantLock getClassLock(String xClass) {
+			return classLocks.computeIfAbsent(xClass, k -> new ReentrantLock());
+		}
 	}
 	
 	static Collection<Volume> get() {
@@ -62,13 +74,13 @@ public final class VolumeManager {
 		if(DEBUG)
 			System.out.println("VolumeManager.get attempt for path:"+path);
 		Volume v = pathToVolume.get(path);
-		if(v == null) {
+		if(v != null)
+			return v;
+		return pathToVolume.computeIfAbsent(path, k -> {
 			if(DEBUG)
 				System.out.println("VolumeManager.get creating new volume for path:"+path);
-			v = new Volume();
-			pathToVolume.put(path, v);
-		}
-		return v;
+			return new Volume();
+		});
 	}
 	/**
 	 * Get the tablespace path for the given alias
@@ -0,0 +1,23 @@
+package com.neocoretechs.rocksack.stream;
+
+import java.util.Iterator;
+
+import com.neocoretechs.rocksack.iterator.DiffIterator;
+
+/**
+ * Java 8 stream extensions for RockSack delivery of ordered persistent datasets.
+ * Difference of two ordered Map.Entry iterators delivering {@link com.neocoretechs.rocksack.iterator.JoinEntry}
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class DiffStream extends SackStream {
+
+	public DiffStream(DiffIterator esi) {
+		super(esi);
+	}
+
+	public DiffStream(Iterator<?> left, Iterator<?> right) {
+		this(new DiffIterator(left, right));
+	}
+
+}
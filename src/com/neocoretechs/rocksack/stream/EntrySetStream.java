@@ -3,10 +3,10 @@ package com.neocoretechs.rocksack.stream;
 import java.io.IOException;
 
 import org.rocksdb.ColumnFamilyHandle;
-import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.Transaction;
 
+import com.neocoretechs.rocksack.iterator.AbstractIterator;
 import com.neocoretechs.rocksack.iterator.EntrySetIterator;
 
 /**
@@ -24,7 +24,7 @@ public class EntrySetStream extends SackStream {
 		this(new EntrySetIterator(kvMain));
 	}
 	public EntrySetStream(Transaction kvMain) throws IOException {
-		this(new EntrySetIterator(kvMain, new ReadOptions()));
+		this(new EntrySetIterator(kvMain, AbstractIterator.totalOrder()));
 	}
 
 	public EntrySetStream(RocksDB kvMain, ColumnFamilyHandle cfh) throws IOException {
@@ -32,7 +32,7 @@ public class EntrySetStream extends SackStream {
 	}
 
 	public EntrySetStream(Transaction kvMain, ColumnFamilyHandle cfh) throws IOException {
-		this(new EntrySetIterator(kvMain, new ReadOptions(), cfh));
+		this(new EntrySetIterator(kvMain, AbstractIterator.totalOrder(), cfh));
 	}
 
 }
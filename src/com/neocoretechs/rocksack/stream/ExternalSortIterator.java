@@ -0,0 +1,275 @@
+package com.neocoretechs.rocksack.stream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.neocoretechs.rocksack.SerializedComparator;
+
+/**
+ * Iterator that delivers the elements of a source iterator in the order imposed by a Comparator, without
+ * requiring the entire source to fit in heap. Elements are buffered until the estimated size of the buffer
+ * exceeds the memory budget, at which point the buffer is sorted and spilled as a run to a temporary file.
+ * When the source is exhausted the runs, along with whatever remains in the buffer, are merged in
+ * comparator order with a heap, holding one element per run in memory. Elements comparing equal are delivered in
+ * source order, as runs are spilled in that order and the heap takes the earlier run first.<p>
+ * If the source never exceeds the budget no spill takes place and the result is a plain in memory sort.<p>
+ * The sort phase is deferred until the first call to hasNext or next, so constructing a sorted stream
+ * does not consume the source. Elements must be Serializable if a spill occurs, and the size estimate
+ * is taken from the serialized form of a sample of the elements.<p>
+ * Run files are deleted when the iterator is exhausted, fails or is closed, so an iterator abandoned part way
+ * must be closed, as the sorted {@link SackStream} does on close. An AutoCloseable source is closed once consumed,
+ * or when the iterator is closed before.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class ExternalSortIterator<T> implements Iterator<T>, AutoCloseable {
+	private static boolean DEBUG = false;
+	public static long DEFAULT_MEMORY_BUDGET = 64L * 1024L * 1024L; // 64 MB
+	private static int SAMPLE_INTERVAL = 64; // serialize every nth element to estimate size
+	private static int ELEMENT_OVERHEAD = 32; // reference, header and buffer slot per element
+	private static File tempDir = null; // null is java.io.tmpdir
+	private Iterator<T> source;
+	private Comparator<? super T> comparator;
+	private long memoryBudget;
+	private boolean sorted = false;
+	private Iterator<T> inMemory = null;
+	private PriorityQueue<Run> merge = null;
+	private ArrayList<Run> runs = new ArrayList<Run>();
+
+	/**
+	 * A sorted run being merged. Either a spilled run file or the residual in memory buffer.
+	 */
+	private final class Run {
+		final int index = runs.size(); // position in source order, breaking ties in the merge
+		File file;
+		DataInputStream dis;
+		Iterator<T> buffer;
+		long remaining;
+		T head;
+		Run(File file, long count) throws IOException {
+			this.file = file;
+			this.remaining = count;
+			this.dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+		}
+		Run(ArrayList<T> buffer) {
+			this.buffer = buffer.iterator();
+			this.remaining = buffer.size();
+		}
+		/**
+		 * Advance head to the next element of the run.
+		 * @return false if run exhausted
+		 * @throws IOException
+		 */
+		@SuppressWarnings("unchecked")
+		boolean advance() throws IOException {
+			if(remaining == 0) {
+				head = null;
+				close();
+				return false;
+			}
+			--remaining;
+			if(buffer != null) {
+				head = buffer.next();
+			} else {
+				byte[] b = new byte[dis.readInt()];
+				dis.readFully(b);
+				head = (T) SerializedComparator.deserializeObject(b);
+			}
+			return true;
+		}
+		void close() {
+			buffer = null;
+			if(dis != null) {
+				try {
+					dis.close();
+				} catch (IOException e) {}
+				dis = null;
+			}
+			if(file != null) {
+				file.delete();
+				file = null;
+			}
+		}
+	}
+
+	/**
+	 * Sort the source with the default memory budget.
+	 * @param source the unsorted elements
+	 * @param comparator the ordering to impose
+	 */
+	public ExternalSortIterator(Iterator<T> source, Comparator<? super T> comparator) {
+		this(source, comparator, DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * Sort the source, spilling to temporary files when the buffered elements are estimated to exceed memoryBudget bytes.
+	 * @param source the unsorted elements
+	 * @param comparator the ordering to impose
+	 * @param memoryBudget approximate number of bytes of elements to hold in heap before spilling a run
+	 */
+	public ExternalSortIterator(Iterator<T> source, Comparator<? super T> comparator, long memoryBudget) {
+		if(memoryBudget <= 0)
+			throw new IllegalArgumentException("Memory budget must be greater than 0:"+memoryBudget);
+		this.source = source;
+		this.comparator = comparator;
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Set the directory where run files are written, null for java.io.tmpdir
+	 * @param dir
+	 */
+	public static void setTempDirectory(File dir) {
+		tempDir = dir;
+	}
+
+	public static File getTempDirectory() {
+		return tempDir;
+	}
+
+	/**
+	 * Consume the source, spilling runs as the budget is exceeded, then set up the merge.
+	 * @throws IOException
+	 */
+	private void sort() throws IOException {
+		sorted = true;
+		ArrayList<T> buffer = new ArrayList<T>();
+		long sampledBytes = 0;
+		long samples = 0;
+		long count = 0;
+		while(source.hasNext()) {
+			T o = source.next();
+			buffer.add(o);
+			if((count++ % SAMPLE_INTERVAL) == 0) {
+				sampledBytes += SerializedComparator.serializeObject(o).length;
+				++samples;
+			}
+			if(buffer.size() * ((sampledBytes / samples) + ELEMENT_OVERHEAD) > memoryBudget) {
+				spill(buffer);
+				buffer = new ArrayList<T>();
+			}
+		}
+		// everything is buffered or spilled, release the source now rather than when the sort is closed
+		closeSource();
+		buffer.sort(comparator);
+		if(runs.isEmpty()) {
+			inMemory = buffer.iterator();
+			if(DEBUG)
+				System.out.printf("%s sorted %d elements in memory%n", this.getClass().getName(), count);
+			return;
+		}
+		if(!buffer.isEmpty())
+			runs.add(new Run(buffer));
+		if(DEBUG)
+			System.out.printf("%s merging %d runs of %d elements%n", this.getClass().getName(), runs.size(), count);
+		merge = new PriorityQueue<Run>(runs.size(), (r1, r2) -> {
+			int c = comparator.compare(r1.head, r2.head);
+			return c != 0 ? c : Integer.compare(r1.index, r2.index);
+		});
+		for(Run r : runs) {
+			if(r.advance())
+				merge.add(r);
+		}
+	}
+
+	/**
+	 * Sort the buffer and write it as a run of length prefixed serialized elements.
+	 * @param buffer
+	 * @throws IOException
+	 */
+	private void spill(ArrayList<T> buffer) throws IOException {
+		buffer.sort(comparator);
+		File f = File.createTempFile("sackstream", ".run", tempDir);
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 65536))) {
+			for(T o : buffer) {
+				byte[] b = SerializedComparator.serializeObject(o);
+				dos.writeInt(b.length);
+				dos.write(b);
+			}
+		} catch(IOException ioe) {
+			f.delete();
+			throw ioe;
+		}
+		runs.add(new Run(f, buffer.size()));
+		if(DEBUG)
+			System.out.printf("%s spilled run %d of %d elements to %s%n", this.getClass().getName(), runs.size(), buffer.size(), f);
+	}
+
+	@Override
+	public boolean hasNext() {
+		try {
+			if(!sorted)
+				sort();
+		} catch (IOException ioe) {
+			close();
+			throw new RuntimeException(ioe);
+		} catch (RuntimeException re) {
+			close();
+			throw re;
+		}
+		if(inMemory != null)
+			return inMemory.hasNext();
+		return !merge.isEmpty();
+	}
+
+	@Override
+	public T next() {
+		if(!hasNext())
+			throw new NoSuchElementException("No next iterator element");
+		if(inMemory != null)
+			return inMemory.next();
+		Run r = merge.poll();
+		T ret = r.head;
+		try {
+			if(r.advance())
+				merge.add(r);
+		} catch (IOException ioe) {
+			close();
+			throw new RuntimeException(ioe);
+		} catch (RuntimeException re) {
+			close();
+			throw re;
+		}
+		return ret;
+	}
+
+	/**
+	 * Close the source if it is AutoCloseable, such as an iterator holding a RocksIterator and its session.
+	 */
+	private void closeSource() {
+		if(source instanceof AutoCloseable) {
+			try {
+				((AutoCloseable)source).close();
+			} catch (Exception e) {}
+		}
+		source = Collections.emptyIterator();
+	}
+
+	/**
+	 * Close the source, release the buffered elements and delete any remaining run files.
+	 */
+	@Override
+	public void close() {
+		closeSource();
+		for(Run r : runs)
+			r.close();
+		runs.clear();
+		if(merge != null)
+			merge.clear();
+		inMemory = null;
+		sorted = true;
+		merge = new PriorityQueue<Run>(1);
+	}
+}
@@ -0,0 +1,23 @@
+package com.neocoretechs.rocksack.stream;
+
+import java.util.Iterator;
+
+import com.neocoretechs.rocksack.iterator.MergeJoinIterator;
+
+/**
+ * Java 8 stream extensions for RockSack delivery of ordered persistent datasets.
+ * Merge join of two ordered Map.Entry iterators delivering {@link com.neocoretechs.rocksack.iterator.JoinEntry}
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class MergeJoinStream extends SackStream {
+
+	public MergeJoinStream(MergeJoinIterator esi) {
+		super(esi);
+	}
+
+	public MergeJoinStream(Iterator<?> left, Iterator<?> right, MergeJoinIterator.JoinType joinType) {
+		this(new MergeJoinIterator(left, right, joinType));
+	}
+
+}
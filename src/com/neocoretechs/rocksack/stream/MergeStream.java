@@ -0,0 +1,31 @@
+package com.neocoretechs.rocksack.stream;
+
+import java.util.Iterator;
+import java.util.List;
+
+import com.neocoretechs.rocksack.iterator.MergeIterator;
+
+/**
+ * Java 8 stream extensions for RockSack delivery of ordered persistent datasets.
+ * K-way merge of ordered iterators from several column families or databases. Closing the stream
+ * closes the sources of the merge.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class MergeStream extends SackStream {
+
+	public MergeStream(MergeIterator esi) {
+		super(esi);
+	}
+
+	public MergeStream(List<Iterator<?>> sources) {
+		this(new MergeIterator(sources));
+	}
+
+	@Override
+	public void close() {
+		((MergeIterator)it).close();
+		super.close();
+	}
+
+}
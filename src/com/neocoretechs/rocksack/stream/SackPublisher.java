@@ -0,0 +1,191 @@
+package com.neocoretechs.rocksack.stream;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flow.Publisher delivering the elements of a RockSack range iterator with backpressure.<p>
+ * Each subscriber gets its own iterator, opened on the executor when demand first arrives, so that subscribe never blocks
+ * in the database. Elements are fetched on the executor only against outstanding request(n) demand, at most batchSize per
+ * pass, after which the drain is resubmitted so a fast consumer does not monopolize an executor thread.
+ * No thread is held while there is no demand. On cancel, completion or error the native iterator is closed.<p>
+ * The default executor creates a virtual thread per task.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class SackPublisher implements Flow.Publisher<Object> {
+	private static boolean DEBUG = false;
+	private static Executor defaultExecutor = Executors.newVirtualThreadPerTaskExecutor();
+	private static int defaultBatchSize = 256;
+	private IteratorSupplier supplier;
+	private Executor executor;
+	private int batchSize;
+
+	/**
+	 * Opens the range iterator for a subscription.
+	 */
+	@FunctionalInterface
+	public interface IteratorSupplier {
+		Iterator<?> open() throws IOException;
+	}
+
+	public SackPublisher(IteratorSupplier supplier) {
+		this(supplier, defaultExecutor, defaultBatchSize);
+	}
+
+	/**
+	 * @param supplier opens the iterator for each subscription
+	 * @param executor runs the fetch and delivery of elements
+	 * @param batchSize maximum elements delivered per pass on an executor thread
+	 */
+	public SackPublisher(IteratorSupplier supplier, Executor executor, int batchSize) {
+		this.supplier = supplier;
+		this.executor = executor;
+		this.batchSize = batchSize;
+	}
+	/**
+	 * Set the executor used by publishers subsequently created without an explicit executor.
+	 * @param executor
+	 */
+	public static void setDefaultExecutor(Executor executor) {
+		defaultExecutor = executor;
+	}
+
+	public static Executor getDefaultExecutor() {
+		return defaultExecutor;
+	}
+
+	public static void setDefaultBatchSize(int batchSize) {
+		defaultBatchSize = batchSize;
+	}
+
+	public static int getDefaultBatchSize() {
+		return defaultBatchSize;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super Object> subscriber) {
+		if(subscriber == null)
+			throw new NullPointerException("Subscriber is null");
+		SackSubscription subscription = new SackSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+	}
+
+	/**
+	 * Serialized drain loop. The work in progress count guarantees a single drain on the executor at any time,
+	 * hence the iterator is only ever touched by one thread, including when it is closed.
+	 */
+	private final class SackSubscription implements Flow.Subscription, Runnable {
+		private Flow.Subscriber<? super Object> subscriber;
+		private Iterator<?> it = null;
+		private AtomicLong demand = new AtomicLong();
+		private AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled = false;
+		private volatile Throwable badRequest = null;
+		private boolean done = false;
+
+		SackSubscription(Flow.Subscriber<? super Object> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if(n <= 0) {
+				badRequest = new IllegalArgumentException("Subscription request must be positive:"+n);
+			} else {
+				long r, u;
+				do {
+					r = demand.get();
+					u = r + n;
+					if(u < 0)
+						u = Long.MAX_VALUE;
+				} while(!demand.compareAndSet(r, u));
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			schedule();
+		}
+
+		private void schedule() {
+			if(wip.getAndIncrement() == 0)
+				executor.execute(this);
+		}
+
+		private void release() {
+			done = true;
+			if(it instanceof AutoCloseable) {
+				try {
+					((AutoCloseable)it).close();
+				} catch (Exception e) {}
+			}
+			it = null;
+			if(DEBUG)
+				System.out.printf("%s released iterator for %s%n", this.getClass().getName(), subscriber);
+		}
+
+		@Override
+		public void run() {
+			int missed = wip.get();
+			for(;;) {
+				if(done)
+					return;
+				if(cancelled) {
+					release();
+					return;
+				}
+				if(badRequest != null) {
+					release();
+					subscriber.onError(badRequest);
+					return;
+				}
+				long r = demand.get();
+				long e = 0;
+				try {
+					if(r > 0 && it == null)
+						it = supplier.open();
+					while(e != r && e < batchSize) {
+						if(cancelled) {
+							release();
+							return;
+						}
+						if(!it.hasNext()) {
+							release();
+							subscriber.onComplete();
+							return;
+						}
+						subscriber.onNext(it.next());
+						++e;
+					}
+					if(it != null && e == r && !cancelled && !it.hasNext()) {
+						release();
+						subscriber.onComplete();
+						return;
+					}
+				} catch(Throwable t) {
+					release();
+					subscriber.onError(t);
+					return;
+				}
+				if(e > 0 && r != Long.MAX_VALUE)
+					r = demand.addAndGet(-e);
+				if(e == batchSize && r > 0) {
+					// yield the thread, remaining demand picked up by the resubmitted drain
+					executor.execute(this);
+					return;
+				}
+				missed = wip.addAndGet(-missed);
+				if(missed == 0)
+					return;
+			}
+		}
+	}
+}
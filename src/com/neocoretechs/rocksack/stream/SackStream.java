@@ -114,9 +114,27 @@ public class SackStream<T> implements Stream<T> {
 		return of();
 	}
 
+	/**
+	 * Sort by the given comparator, spilling sorted runs to temporary files once the
+	 * default memory budget of {@link ExternalSortIterator} is exceeded.
+	 */
 	@Override
 	public Stream sorted(Comparator comparator) {
-		return of().sorted(comparator);
+		return sorted(comparator, ExternalSortIterator.DEFAULT_MEMORY_BUDGET);
+	}
+	
+	/**
+	 * Sort by the given comparator holding at most approximately memoryBudget bytes of elements in heap.
+	 * Beyond that, sorted runs are spilled to temporary files and merged as the resulting stream is consumed.
+	 * The run files are removed when the stream is exhausted or closed. The source iterator is closed once it is
+	 * consumed, and closing the sorted stream closes this stream.
+	 * @param comparator the ordering to impose
+	 * @param memoryBudget approximate bytes of elements to buffer before spilling a run
+	 * @return the Stream in comparator order
+	 */
+	public Stream<T> sorted(Comparator comparator, long memoryBudget) {
+		ExternalSortIterator<T> esi = new ExternalSortIterator<T>(it, comparator, memoryBudget);
+		return (Stream<T>) StreamSupport.stream(Spliterators.spliteratorUnknownSize(esi, Spliterator.ORDERED), parallel).onClose(esi::close).onClose(this::close);
 	}
 
 	@Override
@@ -0,0 +1,145 @@
+package com.neocoretechs.rocksack.test;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.neocoretechs.rocksack.BitmapIndex;
+import com.neocoretechs.rocksack.session.BitmapQuery;
+import com.neocoretechs.rocksack.session.BufferedMap;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+
+/**
+ * Test of bitmap indexes on the fields and methods of stored values. Queries combining results with AND, OR and NOT
+ * count, stream and read the entries satisfying them, and the bitmaps follow overwrites and removes. A rebuild
+ * reproduces them.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatteryBitmapIndex {
+	public static boolean DEBUG = false;
+	static int min = 0;
+	static int max = 20000;
+	static String[] statuses = new String[] {"open", "held", "shipped", "closed"};
+
+	public static class Ticket implements Serializable {
+		private static final long serialVersionUID = 1L;
+		@BitmapIndex
+		String status;
+		long id;
+		public Ticket(String status, long id) {
+			this.status = status;
+			this.id = id;
+		}
+		@BitmapIndex(name = "urgent")
+		public Boolean urgent() {
+			return id % 10 == 0;
+		}
+		@Override
+		public String toString() {
+			return "Ticket:"+status+","+id;
+		}
+	}
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatteryBitmapIndex <DB>");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		BufferedMap map = DatabaseManager.getMap(Long.class);
+		long tims = System.currentTimeMillis();
+		for(int i = min; i < max; i++)
+			map.put(Long.valueOf(i), new Ticket(statuses[i % statuses.length], i));
+		System.out.println("Loaded "+(max - min)+" tickets in "+(System.currentTimeMillis()-tims)+" ms.");
+		battery1(map);
+		battery2(map);
+		battery3(map);
+		System.out.println("BatteryBitmapIndex TEST BATTERY COMPLETE.");
+	}
+	/**
+	 * Each status holds a quarter of the tickets, a tenth are urgent.
+	 * @throws Exception
+	 */
+	public static void battery1(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		int n = max - min;
+		for(String status : statuses) {
+			long c = map.bitmapCount(BitmapQuery.eq("status", status));
+			if(c != n / statuses.length)
+				throw new Exception("BATTERY1 FAIL status "+status+" has "+c);
+		}
+		// ids of open tickets are multiples of 4, of urgent multiples of 10, both multiples of 20
+		BitmapQuery openUrgent = BitmapQuery.and(BitmapQuery.eq("status", "open"), BitmapQuery.eq("urgent", true));
+		long c = count(map.bitmapQuery(openUrgent), "open", true);
+		if(c != n / 20)
+			throw new Exception("BATTERY1 FAIL open and urgent has "+c);
+		BitmapQuery openNotUrgent = BitmapQuery.and(BitmapQuery.eq("status", "open"), BitmapQuery.not(BitmapQuery.eq("urgent", true)));
+		c = count(map.bitmapQuery(openNotUrgent), "open", false);
+		if(c != n / 4 - n / 20)
+			throw new Exception("BATTERY1 FAIL open and not urgent has "+c);
+		c = map.bitmapKeyStream(BitmapQuery.in("status", "held", "shipped")).count();
+		if(c != n / 2)
+			throw new Exception("BATTERY1 FAIL held or shipped has "+c);
+		c = map.bitmapCount(BitmapQuery.not(BitmapQuery.eq("status", "closed")));
+		if(c != n - n / 4)
+			throw new Exception("BATTERY1 FAIL not closed has "+c);
+		System.out.println("BATTERY1 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * Closing the open tickets and removing some moves and removes their ordinals.
+	 * @throws Exception
+	 */
+	public static void battery2(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		int n = max - min;
+		for(int i = min; i < max; i += 4) {
+			if(i % 8 == 0)
+				map.put(Long.valueOf(i), new Ticket("closed", i));
+			else
+				map.remove(Long.valueOf(i));
+		}
+		if(map.bitmapCount(BitmapQuery.eq("status", "open")) != 0)
+			throw new Exception("BATTERY2 FAIL open still indexed");
+		long c = count(map.bitmapQuery(BitmapQuery.eq("status", "closed")), "closed", null);
+		if(c != n / 4 + n / 8)
+			throw new Exception("BATTERY2 FAIL closed has "+c);
+		c = map.bitmapCount(BitmapQuery.not(BitmapQuery.eq("status", "closed")));
+		if(c != map.size() - (n / 4 + n / 8))
+			throw new Exception("BATTERY2 FAIL not closed has "+c+" of "+map.size());
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * A rebuild gives the same answers.
+	 * @throws Exception
+	 */
+	public static void battery3(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		BitmapQuery q = BitmapQuery.or(BitmapQuery.eq("status", "held"), BitmapQuery.eq("urgent", true));
+		long before = map.bitmapCount(q);
+		map.rebuildIndex();
+		long after = map.bitmapCount(q);
+		long streamed = map.bitmapKeyStream(q).count();
+		if(before != after || after != streamed)
+			throw new Exception("BATTERY3 FAIL before "+before+" after "+after+" streamed "+streamed);
+		System.out.println("BATTERY3 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+
+	private static long count(Iterator<?> it, String status, Boolean urgent) throws Exception {
+		long n = 0;
+		while(it.hasNext()) {
+			Map.Entry<?,?> e = (Map.Entry<?,?>) it.next();
+			Ticket t = (Ticket)e.getValue();
+			if(!t.status.equals(status) || (urgent != null && !t.urgent().equals(urgent)))
+				throw new Exception("FAIL "+e+" found for status "+status+" urgent "+urgent);
+			++n;
+		}
+		return n;
+	}
+}
@@ -0,0 +1,87 @@
+package com.neocoretechs.rocksack.test;
+
+import com.neocoretechs.rocksack.session.BufferedMap;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+
+/**
+ * Test of removes that skip the read of the value, SingleDelete of write once keys, and puts conditional on the
+ * presence of the key.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatteryBlindWrites {
+	public static boolean DEBUG = false;
+	static int min = 0;
+	static int max = 100000;
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatteryBlindWrites <DB>");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		BufferedMap map = DatabaseManager.getMap(Long.class);
+		for(int i = min; i < max; i++)
+			map.removeBlind(Long.valueOf(i));
+		battery1(map);
+		battery2(map);
+		battery3(map);
+		System.out.println("BatteryBlindWrites TEST BATTERY COMPLETE.");
+	}
+	/**
+	 * putIfAbsent puts every absent key once, and keeps the first value after.
+	 * @throws Exception
+	 */
+	public static void battery1(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		for(int i = min; i < max; i++)
+			if(map.putIfAbsent(Long.valueOf(i), "Value"+i) != null)
+				throw new Exception("BATTERY1 FAIL key "+i+" present before put");
+		for(int i = min; i < max; i++) {
+			Object o = map.putIfAbsent(Long.valueOf(i), "Other"+i);
+			if(!("Value"+i).equals(o))
+				throw new Exception("BATTERY1 FAIL key "+i+" holds "+o);
+		}
+		System.out.println("BATTERY1 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * replace changes present keys only, the three argument form only when the value matches.
+	 * @throws Exception
+	 */
+	public static void battery2(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		for(int i = min; i < max; i++) {
+			if(!map.replace(Long.valueOf(i), "Value"+i, "Replaced"+i))
+				throw new Exception("BATTERY2 FAIL key "+i+" not replaced");
+			if(map.replace(Long.valueOf(i), "Value"+i, "Again"+i))
+				throw new Exception("BATTERY2 FAIL key "+i+" replaced on a stale value");
+		}
+		if(map.replace(Long.valueOf(max), "Absent") != null || map.containsKey(Long.valueOf(max)))
+			throw new Exception("BATTERY2 FAIL absent key replaced");
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * A key put once is removed with SingleDelete, the replaced keys are removed blind, leaving none.
+	 * @throws Exception
+	 */
+	public static void battery3(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		Long k = Long.valueOf(max + 1);
+		map.put(k, "Once");
+		map.removeSingle(k);
+		if(map.get(k) != null)
+			throw new Exception("BATTERY3 FAIL write once key survived SingleDelete");
+		for(int i = min; i < max; i++)
+			map.removeBlind(Long.valueOf(i));
+		for(int i = min; i < max; i++)
+			if(map.get(Long.valueOf(i)) != null)
+				throw new Exception("BATTERY3 FAIL key "+i+" survived remove");
+		System.out.println("BATTERY3 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+}
@@ -0,0 +1,71 @@
+package com.neocoretechs.rocksack.test;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.neocoretechs.rocksack.session.BufferedMap;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+
+/**
+ * Test of removeIf and updateRange judging a range of entries in parallel and writing them in batches.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatteryBulkUpdate {
+	public static boolean DEBUG = false;
+	static int min = 0;
+	static int max = 100000;
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatteryBulkUpdate <DB>");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		BufferedMap map = DatabaseManager.getMap(Long.class);
+		map.clear();
+		for(int i = min; i < max; i++)
+			map.put(Long.valueOf(i), Long.valueOf(i));
+		battery1(map);
+		battery2(map);
+		System.out.println("BatteryBulkUpdate TEST BATTERY COMPLETE.");
+	}
+	/**
+	 * Remove the multiples of 3 in the lower half, progress reaching the size of the range.
+	 * @throws Exception
+	 */
+	public static void battery1(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		long[] scanned = new long[1];
+		long n = map.removeIf(null, Long.valueOf(max / 2), (k, v) -> (Long)v % 3 == 0, (s, c) -> scanned[0] = s);
+		if(n != (max / 2 + 2) / 3 || scanned[0] != max / 2)
+			throw new Exception("BATTERY1 FAIL removed "+n+" scanned "+scanned[0]);
+		if(map.size() != max - n || map.get(Long.valueOf(3)) != null || map.get(Long.valueOf(max / 2 + 1)) == null)
+			throw new Exception("BATTERY1 FAIL size "+map.size());
+		System.out.println("BATTERY1 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * Double the even values of the upper half, leaving the odd ones.
+	 * @throws Exception
+	 */
+	public static void battery2(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		long n = map.updateRange(Long.valueOf(max / 2), null, (k, v) -> (Long)v % 2 == 0 ? (Long)v * 2 : null);
+		if(n != (max - max / 2 + 1) / 2)
+			throw new Exception("BATTERY2 FAIL replaced "+n);
+		Iterator<?> it = map.tailMapKV(Long.valueOf(max / 2));
+		while(it.hasNext()) {
+			Map.Entry<?,?> e = (Map.Entry<?,?>) it.next();
+			long k = (Long)e.getKey();
+			if((Long)e.getValue() != (k % 2 == 0 ? k * 2 : k))
+				throw new Exception("BATTERY2 FAIL "+e);
+		}
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+}
@@ -0,0 +1,116 @@
+package com.neocoretechs.rocksack.test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.neocoretechs.rocksack.KeyValue;
+import com.neocoretechs.rocksack.session.BufferedMap;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+import com.neocoretechs.rocksack.session.TuningConfig;
+
+/**
+ * Multi-threaded write benchmark of the memtable and write path configurations. The same number of puts is divided
+ * among 1, 2, 4... threads for a database of each configuration, one class each:<br>
+ * Long, the default skiplist memtable with concurrent memtable writes<br>
+ * Integer, the skiplist memtable written by one thread at a time<br>
+ * Double, the write-heavy profile with pipelined writes<br>
+ * String, the vector memtable of the bulk-load profile<br>
+ * Throughput is reported per configuration and thread count, so the scaling of concurrent memtable writes shows
+ * against the serialized ones. Every key of the last round must read back.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2, optionally followed by the maximum number of threads
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatteryConcurrentWrite {
+	public static boolean DEBUG = false;
+	static int maxThreads = 16;
+	static int puts = 200000;
+	@SuppressWarnings("rawtypes")
+	static Class[] classes = new Class[] {Long.class, Integer.class, Double.class, String.class};
+	static String[] configs = new String[] {"concurrent skiplist", "serial skiplist", "pipelined write-heavy", "vector bulk-load"};
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatteryConcurrentWrite <DB> [threads]");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		if(argv.length > 1)
+			maxThreads = Integer.parseInt(argv[1]);
+		// configure before the databases are opened
+		TuningConfig.setOption(Integer.class, "db.allow_concurrent_memtable_write", "false");
+		TuningConfig.setOption(Double.class, "profile", "write-heavy");
+		TuningConfig.setOption(String.class, "memtable", DatabaseManager.VECTOR);
+		for(int c = 0; c < classes.length; c++) {
+			for(int threads = 1; threads <= maxThreads; threads *= 2)
+				battery1(c, threads);
+		}
+		battery2();
+		System.out.println("BatteryConcurrentWrite TEST BATTERY COMPLETE.");
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static Comparable key(int c, int i) {
+		switch(c) {
+			case 0: return Long.valueOf(i);
+			case 1: return Integer.valueOf(i);
+			case 2: return Double.valueOf(i);
+			default: return String.format("%010d", i);
+		}
+	}
+	/**
+	 * Release the threads at once, each putting its share of the keys into the map of the class.
+	 * @param c the index of the class
+	 * @param threads number of writing threads
+	 * @throws Exception
+	 */
+	public static void battery1(int c, int threads) throws Exception {
+		BufferedMap map = DatabaseManager.getMap(classes[c]);
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		ArrayList<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		int share = puts / threads;
+		for(int t = 0; t < threads; t++) {
+			final int base = t * share;
+			results.add(exec.submit(() -> {
+				start.await();
+				for(int i = base; i < base + share; i++)
+					map.put(key(c, i), Long.valueOf(i));
+				return share;
+			}));
+		}
+		long tims = System.currentTimeMillis();
+		start.countDown();
+		long total = 0;
+		for(Future<Integer> f : results)
+			total += f.get();
+		long elapsed = System.currentTimeMillis()-tims;
+		exec.shutdown();
+		System.out.println("BATTERY1 SUCCESS "+configs[c]+" threads:"+threads+" "+total+" puts in "+elapsed+" ms, "+
+				(total*1000/Math.max(elapsed, 1))+" per second.");
+	}
+	/**
+	 * Every key written by the single thread round reads back with its value in each configuration.
+	 * @throws Exception
+	 */
+	public static void battery2() throws Exception {
+		long tims = System.currentTimeMillis();
+		for(int c = 0; c < classes.length; c++) {
+			BufferedMap map = DatabaseManager.getMap(classes[c]);
+			for(int i = 0; i < puts; i++) {
+				Object o = map.get(key(c, i));
+				if(o == null || !((KeyValue)o).getmValue().equals(Long.valueOf(i)))
+					throw new Exception("BATTERY2 FAIL "+configs[c]+" key "+i+" got "+o);
+			}
+		}
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+}
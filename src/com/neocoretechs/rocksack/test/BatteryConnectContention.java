@@ -0,0 +1,135 @@
+package com.neocoretechs.rocksack.test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+import com.neocoretechs.rocksack.TransactionId;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+import com.neocoretechs.rocksack.session.SessionManager;
+import com.neocoretechs.rocksack.session.TransactionalMap;
+
+/**
+ * Contention benchmark for opening transactional maps. Many threads are released at once, each
+ * repeatedly starting a transaction, obtaining the {@link TransactionalMap} for one of a set of classes,
+ * storing an element and committing. The first round opens the databases, so threads for different classes open
+ * different databases at the same time, later rounds find them open. Timing is reported for both.<p>
+ * Verifies each class resolved to exactly one TransactionalMap and one session no matter how many threads raced to open it.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2, optionally followed by the number of threads
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatteryConnectContention {
+	public static boolean DEBUG = false;
+	static int threads = 64;
+	static int rounds = 100;
+	@SuppressWarnings("rawtypes")
+	static Class[] classes = new Class[] {String.class, Long.class, Integer.class, Short.class, Byte.class, Double.class,
+		Float.class, Character.class, BigInteger.class, BigDecimal.class, java.util.Date.class, java.util.UUID.class};
+	@SuppressWarnings("rawtypes")
+	static List<IntFunction<Comparable>> keys = new ArrayList<IntFunction<Comparable>>();
+	static {
+		keys.add(i -> String.format("%010d", i));
+		keys.add(i -> Long.valueOf(i));
+		keys.add(i -> Integer.valueOf(i));
+		keys.add(i -> Short.valueOf((short)i));
+		keys.add(i -> Byte.valueOf((byte)i));
+		keys.add(i -> Double.valueOf(i));
+		keys.add(i -> Float.valueOf(i));
+		keys.add(i -> Character.valueOf((char)('A'+(i % 26))));
+		keys.add(i -> BigInteger.valueOf(i));
+		keys.add(i -> BigDecimal.valueOf(i));
+		keys.add(i -> new java.util.Date(i));
+		keys.add(i -> new java.util.UUID(0L, i));
+	}
+	@SuppressWarnings("rawtypes")
+	private static ConcurrentHashMap<Class, TransactionalMap> resolved = new ConcurrentHashMap<Class, TransactionalMap>();
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatteryConnectContention <DB> [threads]");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		if(argv.length > 1)
+			threads = Integer.parseInt(argv[1]);
+		battery1(1);
+		battery1(rounds);
+		battery2();
+		System.out.println("BatteryConnectContention TEST BATTERY COMPLETE.");
+	}
+	/**
+	 * Release all threads at once, each performing the given number of transactions against the maps of its class.
+	 * @param nRounds transactions per thread
+	 * @throws Exception
+	 */
+	public static void battery1(int nRounds) throws Exception {
+		System.out.println("Connect contention Battery1 threads:"+threads+" classes:"+classes.length+" rounds:"+nRounds);
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		ArrayList<Future<Long>> results = new ArrayList<Future<Long>>();
+		for(int t = 0; t < threads; t++) {
+			final int c = t % classes.length;
+			final int base = t * nRounds;
+			results.add(exec.submit(() -> {
+				start.await();
+				long opens = 0;
+				for(int i = 0; i < nRounds; i++) {
+					long timo = System.nanoTime();
+					TransactionId xid = DatabaseManager.getTransactionId();
+					TransactionalMap map = DatabaseManager.getTransactionalMap(classes[c], xid);
+					if(!DatabaseManager.isSessionAssociated(xid, map))
+						DatabaseManager.associateSession(xid, map);
+					opens += System.nanoTime() - timo;
+					TransactionalMap prev = resolved.putIfAbsent(classes[c], map);
+					if(prev != null && prev != map)
+						throw new Exception("Class "+classes[c]+" resolved to two maps "+prev+" and "+map);
+					map.put(xid, keys.get(c).apply(base + i), Long.valueOf(base + i));
+					DatabaseManager.commitTransaction(xid);
+					DatabaseManager.endTransaction(xid);
+				}
+				return opens;
+			}));
+		}
+		long tims = System.currentTimeMillis();
+		start.countDown();
+		long opens = 0;
+		for(Future<Long> f : results)
+			opens += f.get();
+		long elapsed = System.currentTimeMillis()-tims;
+		exec.shutdown();
+		long total = (long)threads * nRounds;
+		System.out.println("BATTERY1 SUCCESS in "+elapsed+" ms. "+total+" transactions, "+(total*1000/Math.max(elapsed, 1))+
+				" per second, mean map open "+(opens/total/1000)+" us.");
+	}
+	/**
+	 * Each class has exactly one session in the session table.
+	 * @throws Exception
+	 */
+	@SuppressWarnings("rawtypes")
+	public static void battery2() throws Exception {
+		long tims = System.currentTimeMillis();
+		if(resolved.size() != classes.length)
+			throw new Exception("BATTERY2 FAIL expected "+classes.length+" maps, got "+resolved.size());
+		for(Class c : classes) {
+			TransactionalMap map = resolved.get(c);
+			if(!SessionManager.getSessionTable().containsValue(map.getSession()))
+				throw new Exception("BATTERY2 FAIL session for "+c+" not in the session table");
+			if(DEBUG)
+				System.out.println(c+" "+map+" "+map.getSession());
+		}
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+}
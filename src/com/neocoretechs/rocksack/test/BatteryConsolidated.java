@@ -0,0 +1,125 @@
+package com.neocoretechs.rocksack.test;
+
+import java.util.Map;
+
+import com.neocoretechs.rocksack.KeyValue;
+import com.neocoretechs.rocksack.session.BufferedMap;
+import com.neocoretechs.rocksack.session.Consolidator;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+
+/**
+ * Test of a consolidated tablespace: per class databases of Long and String keys are migrated by the {@link Consolidator}
+ * into the single database of the tablespace, then read and written as its column families. A union of the column
+ * families of a class is refused, since they share the database with every other class.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long, TestDB2java.lang.String
+ * and TestDB2ColumnFamilies will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatteryConsolidated {
+	public static boolean DEBUG = false;
+	static int min = 0;
+	static int max = 10000;
+	static String uniqKeyFmt = "%08d";
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatteryConsolidated <DB>");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		battery1(argv[0]);
+		// the per class maps are closed and removed, so the tablespace may switch to consolidated mode
+		DatabaseManager.setConsolidated(true);
+		battery2();
+		battery3();
+		battery4();
+		System.out.println("BatteryConsolidated TEST BATTERY COMPLETE.");
+	}
+	/**
+	 * Load a database per class, close them and migrate them, every entry is copied to the column family of its class.
+	 * @throws Exception
+	 */
+	public static void battery1(String tablespace) throws Exception {
+		long tims = System.currentTimeMillis();
+		BufferedMap longs = DatabaseManager.getMap(Long.class);
+		BufferedMap strings = DatabaseManager.getMap(String.class);
+		longs.clear();
+		strings.clear();
+		for(int i = min; i < max; i++) {
+			longs.put(Long.valueOf(i), "Value"+i);
+			strings.put(String.format(uniqKeyFmt, i), Long.valueOf(i));
+		}
+		DatabaseManager.removeMap(longs);
+		DatabaseManager.removeMap(strings);
+		Map<String, Long> copied = Consolidator.migrate(tablespace);
+		if(DEBUG)
+			System.out.println("BATTERY1 copied "+copied);
+		Long n = Long.valueOf(max - min);
+		if(!n.equals(copied.get(Long.class.getName())) || !n.equals(copied.get(String.class.getName())))
+			throw new Exception("BATTERY1 FAIL copied "+copied);
+		System.out.println("BATTERY1 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * The maps of the consolidated tablespace hold the migrated entries of their class only, in key order.
+	 * @throws Exception
+	 */
+	public static void battery2() throws Exception {
+		long tims = System.currentTimeMillis();
+		BufferedMap longs = DatabaseManager.getMap(Long.class);
+		BufferedMap strings = DatabaseManager.getMap(String.class);
+		if(!longs.getSession().equals(strings.getSession()))
+			throw new Exception("BATTERY2 FAIL classes in different databases "+longs.getSession()+" "+strings.getSession());
+		if(longs.size() != max - min || strings.size() != max - min)
+			throw new Exception("BATTERY2 FAIL size "+longs.size()+" "+strings.size());
+		for(int i = min; i < max; i++) {
+			KeyValue kvl = (KeyValue)longs.get(Long.valueOf(i));
+			KeyValue kvs = (KeyValue)strings.get(String.format(uniqKeyFmt, i));
+			if(kvl == null || kvs == null || !("Value"+i).equals(kvl.getmValue()) || !Long.valueOf(i).equals(kvs.getmValue()))
+				throw new Exception("BATTERY2 FAIL value of "+i);
+		}
+		if(!longs.firstKey().equals(Long.valueOf(min)) || !longs.lastKey().equals(Long.valueOf(max - 1)))
+			throw new Exception("BATTERY2 FAIL first "+longs.firstKey()+" last "+longs.lastKey());
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * Writes to one class in the consolidated database leave the other untouched.
+	 * @throws Exception
+	 */
+	public static void battery3() throws Exception {
+		long tims = System.currentTimeMillis();
+		BufferedMap longs = DatabaseManager.getMap(Long.class);
+		BufferedMap strings = DatabaseManager.getMap(String.class);
+		longs.put(Long.valueOf(max), "Value"+max);
+		longs.removeRange(Long.valueOf(min), Long.valueOf(max / 2));
+		if(longs.size() != max / 2 + 1 || strings.size() != max - min)
+			throw new Exception("BATTERY3 FAIL size "+longs.size()+" "+strings.size());
+		if(longs.get(Long.valueOf(max / 2 - 1)) != null || longs.get(Long.valueOf(max)) == null)
+			throw new Exception("BATTERY3 FAIL bounds");
+		longs.clear();
+		strings.clear();
+		if(longs.size() != 0 || strings.size() != 0)
+			throw new Exception("BATTERY3 FAIL clear "+longs.size()+" "+strings.size());
+		System.out.println("BATTERY3 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * A union of the column families of a class is refused, they would span every class of the tablespace.
+	 * @throws Exception
+	 */
+	public static void battery4() throws Exception {
+		long tims = System.currentTimeMillis();
+		try {
+			DatabaseManager.getUnionMap(Long.class);
+			throw new Exception("BATTERY4 FAIL union of a consolidated tablespace");
+		} catch (UnsupportedOperationException e) {
+			if(DEBUG)
+				System.out.println("BATTERY4 "+e);
+		}
+		System.out.println("BATTERY4 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+}
@@ -0,0 +1,117 @@
+package com.neocoretechs.rocksack.test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.neocoretechs.rocksack.iterator.KeyValuePair;
+import com.neocoretechs.rocksack.session.CounterMap;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+
+/**
+ * Test of counters kept by merge. Threads increment the same counters at once and no increment may be lost,
+ * batched increments apply together, and ranges of counters read back in key order.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatteryCounterMap {
+	public static boolean DEBUG = false;
+	static int counters = 100;
+	static int threads = 8;
+	static int increments = 10000;
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatteryCounterMap <DB>");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		CounterMap map = DatabaseManager.getCounterMap(Long.class);
+		for(int i = 0; i < counters; i++)
+			map.remove(Long.valueOf(i));
+		battery1(map);
+		battery2(map);
+		battery3(map);
+		System.out.println(map);
+		System.out.println("BatteryCounterMap TEST BATTERY COMPLETE.");
+	}
+	/**
+	 * Every thread adds 1 to each counter in turn, the counters must hold every increment.
+	 * @throws Exception
+	 */
+	public static void battery1(CounterMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		ArrayList<Thread> running = new ArrayList<Thread>();
+		for(int t = 0; t < threads; t++) {
+			Thread th = new Thread(() -> {
+				try {
+					for(int i = 0; i < increments; i++)
+						map.increment(Long.valueOf(i % counters), 1);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			});
+			th.start();
+			running.add(th);
+		}
+		for(Thread th : running)
+			th.join();
+		for(int i = 0; i < counters; i++) {
+			long c = map.get(Long.valueOf(i));
+			if(c != (long)threads * increments / counters)
+				throw new Exception("BATTERY1 FAIL counter "+i+" is "+c);
+		}
+		System.out.println("BATTERY1 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * A batch subtracts the count from each counter, leaving them all 0, and keys never written count 0.
+	 * @throws Exception
+	 */
+	public static void battery2(CounterMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		TreeMap<Long, Long> deltas = new TreeMap<Long, Long>();
+		ArrayList<Long> keys = new ArrayList<Long>();
+		for(int i = 0; i < counters; i++) {
+			deltas.put(Long.valueOf(i), -((long)threads * increments / counters));
+			keys.add(Long.valueOf(i));
+		}
+		keys.add(Long.valueOf(counters + 1));
+		map.incrementAll(deltas);
+		List<Long> counts = map.getAll(keys);
+		for(int i = 0; i < counts.size(); i++)
+			if(counts.get(i) != 0)
+				throw new Exception("BATTERY2 FAIL counter "+keys.get(i)+" is "+counts.get(i));
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * Set each counter to its key, a range reads them back in order over several pages.
+	 * @throws Exception
+	 */
+	public static void battery3(CounterMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		for(int i = 0; i < counters; i++)
+			map.set(Long.valueOf(i), i);
+		Iterator<?> it = map.range(Long.valueOf(10), Long.valueOf(90));
+		long expected = 10;
+		while(it.hasNext()) {
+			KeyValuePair p = (KeyValuePair) it.next();
+			if(!p.getKey().equals(expected) || !p.getValue().equals(expected))
+				throw new Exception("BATTERY3 FAIL expected "+expected+" got "+p);
+			++expected;
+		}
+		if(expected != 90)
+			throw new Exception("BATTERY3 FAIL range ended at "+expected);
+		long total = map.rangeStream(null, null).mapToLong(p -> (Long)((Map.Entry<?,?>)p).getValue()).sum();
+		if(total != (long)counters * (counters - 1) / 2)
+			throw new Exception("BATTERY3 FAIL total "+total);
+		System.out.println("BATTERY3 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+}
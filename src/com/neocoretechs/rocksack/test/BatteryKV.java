@@ -1,10 +1,15 @@
 package com.neocoretechs.rocksack.test;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.Map;
 
 import com.neocoretechs.rocksack.KeyValue;
 import com.neocoretechs.rocksack.iterator.Entry;
+import com.neocoretechs.rocksack.iterator.JoinEntry;
+import com.neocoretechs.rocksack.iterator.MergeJoinIterator;
 import com.neocoretechs.rocksack.session.BufferedMap;
 import com.neocoretechs.rocksack.session.DatabaseManager;
 
@@ -42,6 +47,7 @@ public class BatteryKV {
 		battery1(argv);
 		battery2(argv);
 		battery11(argv);
+		battery11A(argv);
 		battery1AR6(argv);
 		battery1AR7(argv);
 		battery1AR8(argv);
@@ -54,6 +60,7 @@ public class BatteryKV {
 		battery1AR14(argv);
 		battery1AR15(argv);
 		battery1AR16(argv);
+		battery1AR16A(argv);
 		battery1AR17(argv);
 		battery18(argv);
 		 System.out.println("BatteryKV TEST BATTERY COMPLETE.");
@@ -74,7 +81,7 @@ public class BatteryKV {
 		j = (int) bmap.size();
 		if(j > 0) {
 			System.out.println("Cleaning DB of "+j+" elements.");
-			battery1AR17(argv);		
+			bmap.clear();
 		}
 		for(int i = min; i < max; i++) {
 			fkey = String.format(uniqKeyFmt, i);
@@ -131,6 +138,37 @@ public class BatteryKV {
 		}
 	}
 	
+	/**
+	 * Asynchronous gets issued all at once, to be coalesced into multiGets, and getAll over the same keys.
+	 * @param argv
+	 * @throws Exception
+	 */
+	public static void battery11A(String[] argv) throws Exception {
+		System.out.println("KV Battery11A ");
+		long tims = System.currentTimeMillis();
+		int recs = 0;
+		ArrayList<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>(max-min);
+		ArrayList<String> keys = new ArrayList<String>(max-min);
+		for(int i = min; i < max; i++) {
+			String fkey = String.format(uniqKeyFmt, i);
+			keys.add(fkey);
+			futures.add(bmap.getAsync(fkey));
+		}
+		List<Object> all = bmap.getAllAsync(keys).get();
+		for(int i = min; i < max; i++) {
+			KeyValue kv = (KeyValue)futures.get(i-min).get();
+			KeyValue kva = (KeyValue)all.get(i-min);
+			if(kv == null || kva == null || i != ((Long)kv.getmValue()).intValue() || i != ((Long)kva.getmValue()).intValue()) {
+				System.out.println("RANGE KEY MISMATCH for 'getAsync':"+i+" - "+kv+" "+kva);
+				++recs;
+			}
+		}
+		if( recs > 0) {
+			System.out.println("KV BATTERY11A FAIL, failed to get "+recs);
+		} else {
+			System.out.println("KV BATTERY11A SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+		}
+	}
 	/**
 	 * Test the higher level functions in the map.
 	 * public Set entrySet()
@@ -423,6 +461,32 @@ public class BatteryKV {
 		}
 		 System.out.println("BATTERY1AR16 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
 	}
+	/**
+	 * Merge join and diff of the map against itself. Inner join should deliver every key with equal values
+	 * on both sides, diff should deliver nothing.
+	 * @param argv
+	 * @throws Exception
+	 */
+	public static void battery1AR16A(String[] argv) throws Exception {
+		long tims = System.currentTimeMillis();
+		int i = min;
+		System.out.println("KV Battery1AR16A");
+		Iterator<?> its = bmap.joinKV(bmap, MergeJoinIterator.JoinType.INNER);
+		while(its.hasNext()) {
+			JoinEntry je = (JoinEntry) its.next();
+			if(Integer.parseInt((String)je.getKey()) != i || !je.hasLeft() || !je.hasRight() || je.isChanged()) {
+				System.out.println("KV RANGE 1AR16A JOIN MISMATCH:"+i+" - "+je);
+				throw new Exception("KV RANGE 1AR16A JOIN MISMATCH:"+i+" - "+je);
+			}
+			++i;
+		}
+		if(i != max)
+			throw new Exception("KV RANGE 1AR16A JOIN COUNT MISMATCH:"+i+" should be "+max);
+		its = bmap.diffKV(bmap);
+		if(its.hasNext())
+			throw new Exception("KV RANGE 1AR16A DIFF MISMATCH, should be empty:"+its.next());
+		System.out.println("BATTERY1AR16A SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
 	/**
 	 * remove entries
 	 * @param argv
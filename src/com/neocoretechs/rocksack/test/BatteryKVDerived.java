@@ -10,6 +10,7 @@ import com.neocoretechs.rocksack.iterator.Entry;
 import com.neocoretechs.rocksack.session.BufferedMap;
 import com.neocoretechs.rocksack.session.BufferedMap;
 import com.neocoretechs.rocksack.session.DatabaseManager;
+import com.neocoretechs.rocksack.session.UnionMap;
 
 
 /**
@@ -58,6 +59,7 @@ public class BatteryKVDerived {
 		battery1AR14(argv);
 		battery1AR15(argv);
 		battery1AR16(argv);
+		battery1AR16A(argv);
 		battery1AR17(argv);
 		battery18(argv);
 		 System.out.println("BatteryKV TEST BATTERY COMPLETE.");
@@ -561,6 +563,33 @@ public class BatteryKVDerived {
 		}
 		 System.out.println("BATTERY1AR16 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
 	}
+	/**
+	 * Union of base and derived column families. Base holds first half, derived second half, so
+	 * the merged keys should be in total order over the full range, sequential and parallel.
+	 * @param argv
+	 * @throws Exception
+	 */
+	public static void battery1AR16A(String[] argv) throws Exception {
+		long tims = System.currentTimeMillis();
+		System.out.println("KV Battery1AR16A");
+		UnionMap umap = DatabaseManager.getUnionMap(Derived.class);
+		for(int p = 0; p < 2; p++) {
+			umap.setParallel(p == 1);
+			int i = min;
+			Iterator<?> its = umap.entrySet();
+			while(its.hasNext()) {
+				Map.Entry nex = (Map.Entry) its.next();
+				if(Integer.parseInt(((Based)nex.getKey()).basedKey) != i) {
+					System.out.println("KV RANGE 1AR16A KEY MISMATCH:"+i+" - "+nex+" "+umap);
+					throw new Exception("KV RANGE 1AR16A KEY MISMATCH:"+i+" - "+nex);
+				}
+				++i;
+			}
+			if(i != max)
+				throw new Exception("KV RANGE 1AR16A COUNT MISMATCH:"+i+" should be "+max+" "+umap);
+		}
+		System.out.println("BATTERY1AR16A SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
 	/**
 	 * remove entries
 	 * @param argv
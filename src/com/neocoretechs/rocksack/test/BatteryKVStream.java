@@ -2,11 +2,14 @@ package com.neocoretechs.rocksack.test;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
 import java.util.stream.Stream;
 
 import com.neocoretechs.rocksack.KeyValue;
 import com.neocoretechs.rocksack.session.BufferedMap;
 import com.neocoretechs.rocksack.session.DatabaseManager;
+import com.neocoretechs.rocksack.stream.SackStream;
 
 /**
  * Yes, this should be a nice JUnit fixture someday. Test of embedded KV stream retrieval ops.
@@ -58,6 +61,8 @@ public class BatteryKVStream {
 		battery1AR14A(argv);
 		battery1AR15(argv);
 		battery1AR16(argv);
+		battery1AR16A(argv);
+		battery1AR16B(argv);
 		battery1AR17(argv);
 		battery18(argv);
 		System.out.println("BatteryKVStream TEST BATTERY COMPLETE.");
@@ -429,6 +434,78 @@ public class BatteryKVStream {
 		});
 		 System.out.println("BATTERY1AR16 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
 	}
+	/**
+	 * entrySetStream sorted descending by value with a small memory budget to force spill of sorted runs
+	 * to temporary files and a merge of the runs.
+	 * @param argv
+	 * @throws Exception
+	 */
+	public static void battery1AR16A(String[] argv) throws Exception {
+		long tims = System.currentTimeMillis();
+		i = max-1;
+		SackStream stream = (SackStream) bmap.entrySetStream();
+		System.out.println("KV Battery1AR16A");
+		stream.setParallel(false);
+		stream.sorted((e1, e2) -> ((Long)((Map.Entry)e2).getValue()).compareTo((Long)((Map.Entry)e1).getValue()), 1024L*1024L).forEach(e ->{
+			if(((Long)((Map.Entry)e).getValue()).intValue() != i) {
+				System.out.println("KV RANGE 1AR16A VALUE MISMATCH:"+i+" - "+e);
+				throw new RuntimeException("KV RANGE 1AR16A VALUE MISMATCH:"+i+" - "+e);
+			}
+			--i;
+		});
+		if(i != min-1)
+			System.out.println("KV RANGE 1AR16A COUNT MISMATCH, stopped at:"+i);
+		System.out.println("BATTERY1AR16A SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * subMapKVPublisher - subscriber requests in small batches, elements should arrive in key order over the full range.
+	 * @param argv
+	 * @throws Exception
+	 */
+	public static void battery1AR16B(String[] argv) throws Exception {
+		long tims = System.currentTimeMillis();
+		i = min;
+		String fkey = String.format(uniqKeyFmt, min);
+		String tkey = String.format(uniqKeyFmt, max);
+		System.out.println("KV Battery1AR16B");
+		CountDownLatch latch = new CountDownLatch(1);
+		Throwable[] fault = new Throwable[1];
+		bmap.subMapKVPublisher(fkey, tkey).subscribe(new Flow.Subscriber<Object>() {
+			Flow.Subscription subscription;
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				this.subscription = subscription;
+				subscription.request(100);
+			}
+			@Override
+			public void onNext(Object e) {
+				if(Integer.parseInt((String)((Map.Entry)e).getKey()) != i) {
+					System.out.println("KV RANGE 1AR16B KEY MISMATCH:"+i+" - "+e);
+					subscription.cancel();
+					fault[0] = new Exception("KV RANGE 1AR16B KEY MISMATCH:"+i+" - "+e);
+					latch.countDown();
+					return;
+				}
+				if((++i % 100) == 0)
+					subscription.request(100);
+			}
+			@Override
+			public void onError(Throwable t) {
+				fault[0] = t;
+				latch.countDown();
+			}
+			@Override
+			public void onComplete() {
+				latch.countDown();
+			}
+		});
+		latch.await();
+		if(fault[0] != null)
+			throw new Exception(fault[0]);
+		if(i != max)
+			System.out.println("KV RANGE 1AR16B COUNT MISMATCH:"+i+" should be "+max);
+		System.out.println("BATTERY1AR16B SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
 	/**
 	 * remove entries
 	 * @param argv
@@ -3,6 +3,7 @@ package com.neocoretechs.rocksack.test;
 import java.util.Iterator;
 import java.util.Map;
 
+import com.neocoretechs.rocksack.KeyValue;
 import com.neocoretechs.rocksack.TransactionId;
 import com.neocoretechs.rocksack.iterator.Entry;
 import com.neocoretechs.rocksack.session.DatabaseManager;
@@ -66,6 +67,7 @@ public class BatteryKVTransaction {
 		battery1AR16(xid);
 		battery1AR17(xid);
 		battery18(xid);
+		battery19(xid);
 		System.out.println("BatteryKVTransaction TEST BATTERY COMPLETE.");
 		DatabaseManager.removeTransaction(xid);
 	}
@@ -430,6 +432,39 @@ public class BatteryKVTransaction {
 		}
 		 System.out.println("BATTERY1AR16 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
 	}
+	/**
+	 * One transaction id spanning the String and Long databases, committed with two phase commit,
+	 * then verify the entries were committed in both and remove them.
+	 * @param xid
+	 * @throws Exception
+	 */
+	public static void battery19(TransactionId xid) throws Exception {
+		System.out.println(xid+" KV Battery19 ");
+		long tims = System.currentTimeMillis();
+		TransactionId xid2 = DatabaseManager.getTransactionId();
+		DatabaseManager.associateSession(xid2, bmap);
+		TransactionalMap lmap = DatabaseManager.getTransactionalMap(Long.class, xid2);
+		if(!DatabaseManager.isSessionAssociated(xid2, lmap))
+			DatabaseManager.associateSession(xid2, lmap);
+		String fkey = String.format(uniqKeyFmt, max*3);
+		bmap.put(xid2, fkey, Long.valueOf(max*3));
+		lmap.put(xid2, Long.valueOf(max*3), fkey);
+		DatabaseManager.commitTransaction(xid2);
+		DatabaseManager.removeTransaction(xid2);
+		TransactionId xid3 = DatabaseManager.getTransactionId();
+		DatabaseManager.associateSession(xid3, bmap);
+		DatabaseManager.associateSession(xid3, lmap);
+		KeyValue kv1 = (KeyValue)bmap.get(xid3, fkey);
+		KeyValue kv2 = (KeyValue)lmap.get(xid3, Long.valueOf(max*3));
+		if(kv1 == null || kv2 == null || !Long.valueOf(max*3).equals(kv1.getmValue()) || !fkey.equals(kv2.getmValue()))
+			throw new Exception("KV BATTERY19 FAIL, two phase commit of "+xid2+" not visible in both databases");
+		bmap.remove(xid3, fkey);
+		lmap.remove(xid3, Long.valueOf(max*3));
+		DatabaseManager.commitTransaction(xid3);
+		DatabaseManager.removeTransaction(xid3);
+		System.out.println("KV BATTERY19 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	
 	/**
 	 * remove entries
 	 * @param xid
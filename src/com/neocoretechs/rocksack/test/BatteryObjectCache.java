@@ -0,0 +1,100 @@
+package com.neocoretechs.rocksack.test;
+
+import com.neocoretechs.rocksack.KeyValue;
+import com.neocoretechs.rocksack.session.BufferedMap;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+import com.neocoretechs.rocksack.session.ObjectCache;
+import com.neocoretechs.rocksack.session.TuningConfig;
+
+/**
+ * Test of the object cache in front of map gets. A hot set of keys is read repeatedly among reads of keys
+ * read once, and must stay cached while the cache holds its bound. Puts and removes must invalidate,
+ * so every get returns the value last written.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatteryObjectCache {
+	public static boolean DEBUG = false;
+	static int min = 0;
+	static int max = 100000;
+	static int hot = 500;
+	static int maxEntries = 1000;
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatteryObjectCache <DB>");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		TuningConfig.setObjectCache(Long.class, maxEntries, 0);
+		BufferedMap map = DatabaseManager.getMap(Long.class);
+		if(map.getObjectCache() == null)
+			throw new Exception("BatteryObjectCache FAIL no cache for "+map);
+		battery1(map);
+		battery2(map);
+		battery3(map);
+		System.out.println(map.getObjectCache());
+		System.out.println("BatteryObjectCache TEST BATTERY COMPLETE.");
+	}
+	/**
+	 * Load the keys, then read the hot keys between each read of a cold key.
+	 * The hot keys must be answered from the cache despite the cold keys passing through.
+	 * @throws Exception
+	 */
+	public static void battery1(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		for(int i = min; i < max; i++)
+			map.put(Long.valueOf(i), Long.valueOf(i));
+		ObjectCache cache = map.getObjectCache();
+		for(int i = min; i < max; i++) {
+			verify(map, (long)(i % hot), i % hot);
+			verify(map, (long)i, i);
+		}
+		long hits = cache.getHits();
+		// every hot read past the first round should hit
+		if(hits < (max - min - hot) * 9 / 10)
+			throw new Exception("BATTERY1 FAIL "+hits+" hits, hot keys were not retained "+cache);
+		if(cache.size() > maxEntries)
+			throw new Exception("BATTERY1 FAIL "+cache.size()+" entries over bound "+maxEntries);
+		System.out.println("BATTERY1 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms. hit rate "+cache.getHitRate());
+	}
+	/**
+	 * Overwrite the hot keys, which must read back the new values.
+	 * @throws Exception
+	 */
+	public static void battery2(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		for(int i = 0; i < hot; i++) {
+			verify(map, (long)i, i);
+			map.put(Long.valueOf(i), Long.valueOf(i + max));
+			verify(map, (long)i, i + max);
+		}
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * Remove the hot keys, which must then be absent.
+	 * @throws Exception
+	 */
+	public static void battery3(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		for(int i = 0; i < hot; i++) {
+			map.remove(Long.valueOf(i));
+			Object o = map.get(Long.valueOf(i));
+			if(o != null)
+				throw new Exception("BATTERY3 FAIL removed key "+i+" got "+o);
+		}
+		System.out.println("BATTERY3 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+
+	private static void verify(BufferedMap map, long key, long value) throws Exception {
+		Object o = map.get(Long.valueOf(key));
+		if(o == null || !((KeyValue)o).getmValue().equals(Long.valueOf(value)))
+			throw new Exception("FAIL key "+key+" expected "+value+" got "+o);
+	}
+}
@@ -0,0 +1,140 @@
+package com.neocoretechs.rocksack.test;
+
+import com.neocoretechs.rocksack.KeyValue;
+import com.neocoretechs.rocksack.iterator.AbstractIterator;
+import com.neocoretechs.rocksack.session.BufferedMap;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+import com.neocoretechs.rocksack.session.OpenDatabaseCache;
+
+/**
+ * Test of the cap on open databases. Maps of more classes than the cap are loaded a class at a time, then read
+ * round robin for a bounded number of rounds, so each switch of class evicts and reopens a database. Every value
+ * must read back as written, the cap must hold, and the eviction and reopen counts must match the switches.
+ * An open iterator must pin its database through the traffic on the other classes.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatteryOpenDatabaseCache {
+	public static boolean DEBUG = false;
+	static int maxOpen = 2;
+	static int min = 0;
+	static int max = 1000;
+	// round robin passes over the classes, each pass reopening every class
+	static int rounds = 8;
+	// elements of the pinned iteration between visits to the other classes
+	static int stride = 100;
+	@SuppressWarnings("rawtypes")
+	static Class[] classes = new Class[] {String.class, Long.class, Integer.class, Double.class};
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatteryOpenDatabaseCache <DB>");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		OpenDatabaseCache.setMaxOpenDatabases(maxOpen);
+		battery1();
+		battery2();
+		battery3();
+		System.out.println("Evictions:"+OpenDatabaseCache.getEvictions()+" mean "+(OpenDatabaseCache.getEvictionNanos()/Math.max(OpenDatabaseCache.getEvictions(), 1)/1000)+
+				" us, reopens:"+OpenDatabaseCache.getReopens()+" mean "+(OpenDatabaseCache.getReopenNanos()/Math.max(OpenDatabaseCache.getReopens(), 1)/1000)+" us.");
+		System.out.println("BatteryOpenDatabaseCache TEST BATTERY COMPLETE.");
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static Comparable key(int c, int i) {
+		switch(c) {
+			case 0: return String.format("%010d", i);
+			case 1: return Long.valueOf(i);
+			case 2: return Integer.valueOf(i);
+			default: return Double.valueOf(i);
+		}
+	}
+
+	private static void checkCap(String battery) throws Exception {
+		if(OpenDatabaseCache.getOpenDatabases() > maxOpen)
+			throw new Exception(battery+" FAIL "+OpenDatabaseCache.getOpenDatabases()+" databases open, cap "+maxOpen);
+	}
+	/**
+	 * Load each class in turn, opening more databases than the cap, so the least recently used are evicted.
+	 * @throws Exception
+	 */
+	public static void battery1() throws Exception {
+		long tims = System.currentTimeMillis();
+		long evictions = OpenDatabaseCache.getEvictions();
+		for(int c = 0; c < classes.length; c++) {
+			BufferedMap map = DatabaseManager.getMap(classes[c]);
+			map.clear();
+			for(int i = min; i < max; i++)
+				map.put(key(c, i), Long.valueOf(i));
+			checkCap("BATTERY1");
+		}
+		if(OpenDatabaseCache.getEvictions() - evictions < classes.length - maxOpen)
+			throw new Exception("BATTERY1 FAIL "+(OpenDatabaseCache.getEvictions() - evictions)+" evictions opening "+classes.length+" databases, cap "+maxOpen);
+		System.out.println("BATTERY1 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * Read a block of each class round robin. With more classes than the cap every switch finds the class evicted,
+	 * so each pass reopens every class and evicts as many, and every value must read back as written.
+	 * @throws Exception
+	 */
+	public static void battery2() throws Exception {
+		long tims = System.currentTimeMillis();
+		long evictions = OpenDatabaseCache.getEvictions();
+		long reopens = OpenDatabaseCache.getReopens();
+		long reopenNanos = OpenDatabaseCache.getReopenNanos();
+		int block = (max - min) / rounds;
+		for(int r = 0; r < rounds; r++) {
+			for(int c = 0; c < classes.length; c++) {
+				BufferedMap map = DatabaseManager.getMap(classes[c]);
+				for(int i = min + r * block; i < min + (r + 1) * block; i++) {
+					Object o = map.get(key(c, i));
+					if(o == null || !((KeyValue)o).getmValue().equals(Long.valueOf(i)))
+						throw new Exception("BATTERY2 FAIL class "+classes[c]+" key "+i+" got "+o);
+				}
+				checkCap("BATTERY2");
+			}
+		}
+		long reopened = OpenDatabaseCache.getReopens() - reopens;
+		long evicted = OpenDatabaseCache.getEvictions() - evictions;
+		// the first maxOpen classes of the first pass may still be open from the load
+		if(reopened < rounds * classes.length - maxOpen || reopened > rounds * classes.length)
+			throw new Exception("BATTERY2 FAIL "+reopened+" reopens in "+rounds+" passes over "+classes.length+" classes");
+		if(evicted < reopened)
+			throw new Exception("BATTERY2 FAIL "+evicted+" evictions for "+reopened+" reopens");
+		if(OpenDatabaseCache.getReopenNanos() <= reopenNanos)
+			throw new Exception("BATTERY2 FAIL reopen time not recorded");
+		System.out.println("BATTERY2 SUCCESS "+reopened+" reopens in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * An iterator held open across traffic on the other classes reads every element, its database is never evicted
+	 * while the others are.
+	 * @throws Exception
+	 */
+	public static void battery3() throws Exception {
+		long tims = System.currentTimeMillis();
+		BufferedMap pinned = DatabaseManager.getMap(classes[0]);
+		long reopens = OpenDatabaseCache.getReopens();
+		int n = 0;
+		try (AbstractIterator it = (AbstractIterator)pinned.keySet()) {
+			while(it.hasNext()) {
+				it.next();
+				++n;
+				if(n % stride == 0)
+					for(int c = 1; c < classes.length; c++)
+						DatabaseManager.getMap(classes[c]).get(key(c, n % max));
+			}
+		}
+		if(n != max - min)
+			throw new Exception("BATTERY3 FAIL iterated "+n+" of "+(max - min));
+		if(OpenDatabaseCache.getReopens() == reopens)
+			throw new Exception("BATTERY3 FAIL no database was reopened around the open iterator");
+		System.out.println("BATTERY3 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+}
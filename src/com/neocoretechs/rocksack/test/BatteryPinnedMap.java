@@ -0,0 +1,101 @@
+package com.neocoretechs.rocksack.test;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.neocoretechs.rocksack.KeyValue;
+import com.neocoretechs.rocksack.session.BufferedMap;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+import com.neocoretechs.rocksack.session.PinnedMap;
+import com.neocoretechs.rocksack.session.TuningConfig;
+
+/**
+ * Test of the map of a class held on heap. Gets and ranges are served from memory and must return what was written,
+ * in key order, with the element types of the maps over RocksDB. Run twice, the second run finds the keys of the first
+ * loaded from the database when the map is opened.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatteryPinnedMap {
+	public static boolean DEBUG = false;
+	static int min = 0;
+	static int max = 100000;
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatteryPinnedMap <DB>");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		TuningConfig.setPinned(Long.class, true);
+		BufferedMap map = DatabaseManager.getMap(Long.class);
+		if(!(map instanceof PinnedMap))
+			throw new Exception("BatteryPinnedMap FAIL map is not pinned "+map);
+		System.out.println("Opened with "+map.size()+" entries");
+		battery1(map);
+		battery2(map);
+		battery3(map);
+		System.out.println("BatteryPinnedMap TEST BATTERY COMPLETE.");
+	}
+	/**
+	 * Put the keys, every one reads back.
+	 * @throws Exception
+	 */
+	public static void battery1(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		for(int i = min; i < max; i++)
+			map.put(Long.valueOf(i), Long.valueOf(i));
+		for(int i = min; i < max; i++) {
+			Object o = map.get(Long.valueOf(i));
+			if(o == null || !((KeyValue)o).getmValue().equals(Long.valueOf(i)))
+				throw new Exception("BATTERY1 FAIL key "+i+" got "+o);
+		}
+		if(map.size() != max - min)
+			throw new Exception("BATTERY1 FAIL size "+map.size()+" expected "+(max - min));
+		System.out.println("BATTERY1 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * Ranges return the keys in order, from inclusive, to exclusive.
+	 * @throws Exception
+	 */
+	public static void battery2(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		long from = max / 4, to = max / 2;
+		Iterator<?> it = map.subMapKV(Long.valueOf(from), Long.valueOf(to));
+		long expect = from;
+		while(it.hasNext()) {
+			Map.Entry<?,?> e = (Map.Entry<?,?>) it.next();
+			if(!e.getKey().equals(Long.valueOf(expect)) || !e.getValue().equals(Long.valueOf(expect)))
+				throw new Exception("BATTERY2 FAIL expected "+expect+" got "+e);
+			++expect;
+		}
+		if(expect != to)
+			throw new Exception("BATTERY2 FAIL range ended at "+expect+" expected "+to);
+		if(map.headMapStream(Long.valueOf(from)).count() != from - min)
+			throw new Exception("BATTERY2 FAIL head count");
+		if(!map.firstKey().equals(Long.valueOf(min)) || !map.lastKey().equals(Long.valueOf(max - 1)))
+			throw new Exception("BATTERY2 FAIL first "+map.firstKey()+" last "+map.lastKey());
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * Removed keys are absent, and a range over them is empty.
+	 * @throws Exception
+	 */
+	public static void battery3(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		for(int i = min; i < min + 100; i++) {
+			map.remove(Long.valueOf(i));
+			if(map.get(Long.valueOf(i)) != null || map.containsKey(Long.valueOf(i)))
+				throw new Exception("BATTERY3 FAIL removed key "+i+" present");
+		}
+		if(map.subMap(Long.valueOf(min), Long.valueOf(min + 100)).hasNext())
+			throw new Exception("BATTERY3 FAIL removed range not empty");
+		System.out.println("BATTERY3 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+}
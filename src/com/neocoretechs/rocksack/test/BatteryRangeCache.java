@@ -0,0 +1,97 @@
+package com.neocoretechs.rocksack.test;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.neocoretechs.rocksack.session.BufferedMap;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+import com.neocoretechs.rocksack.session.RangeCache;
+import com.neocoretechs.rocksack.session.TuningConfig;
+
+/**
+ * Test of the range result cache behind the range queries of a map. The same ranges are queried repeatedly and must
+ * be answered from the cache, a put inside one range must invalidate it alone, and every query returns the values
+ * last written.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatteryRangeCache {
+	public static boolean DEBUG = false;
+	static int min = 0;
+	static int max = 100000;
+	static int width = 1000;
+	static int ranges = 10;
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatteryRangeCache <DB>");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		TuningConfig.setRangeCache(Long.class, width * ranges);
+		BufferedMap map = DatabaseManager.getMap(Long.class);
+		if(map.getRangeCache() == null)
+			throw new Exception("BatteryRangeCache FAIL no range cache for "+map);
+		for(int i = min; i < max; i++)
+			map.put(Long.valueOf(i), Long.valueOf(i));
+		battery1(map);
+		battery2(map);
+		System.out.println(map.getRangeCache());
+		System.out.println("BatteryRangeCache TEST BATTERY COMPLETE.");
+	}
+	/**
+	 * Query each range repeatedly, all but the first query of each must hit.
+	 * @throws Exception
+	 */
+	public static void battery1(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		RangeCache cache = map.getRangeCache();
+		long hits = cache.getHits();
+		for(int n = 0; n < 10; n++)
+			for(int r = 0; r < ranges; r++)
+				verify(map, r * width);
+		if(cache.getHits() - hits != 9 * ranges)
+			throw new Exception("BATTERY1 FAIL "+(cache.getHits() - hits)+" hits expected "+(9 * ranges)+" "+cache);
+		System.out.println("BATTERY1 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms. "+cache);
+	}
+	/**
+	 * Overwrite a key of the first range, which must read back while the other ranges still hit.
+	 * @throws Exception
+	 */
+	public static void battery2(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		RangeCache cache = map.getRangeCache();
+		map.put(Long.valueOf(min + 1), Long.valueOf(min + 1 + max));
+		long hits = cache.getHits();
+		Iterator<?> it = map.subMapKV(Long.valueOf(min), Long.valueOf(min + width));
+		it.next();
+		Map.Entry<?,?> e = (Map.Entry<?,?>) it.next();
+		if(!e.getValue().equals(Long.valueOf(min + 1 + max)))
+			throw new Exception("BATTERY2 FAIL stale range "+e);
+		for(int r = 1; r < ranges; r++)
+			verify(map, r * width);
+		if(cache.getHits() - hits != ranges - 1)
+			throw new Exception("BATTERY2 FAIL other ranges invalidated "+cache);
+		map.put(Long.valueOf(min + 1), Long.valueOf(min + 1));
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+
+	private static void verify(BufferedMap map, long from) throws Exception {
+		Iterator<?> it = map.subMapKV(Long.valueOf(from), Long.valueOf(from + width));
+		long expect = from;
+		while(it.hasNext()) {
+			Map.Entry<?,?> e = (Map.Entry<?,?>) it.next();
+			if(!e.getKey().equals(Long.valueOf(expect)) || !e.getValue().equals(Long.valueOf(expect)))
+				throw new Exception("FAIL expected "+expect+" got "+e);
+			++expect;
+		}
+		if(expect != from + width)
+			throw new Exception("FAIL range "+from+" ended at "+expect);
+	}
+}
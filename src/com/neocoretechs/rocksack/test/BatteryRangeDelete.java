@@ -0,0 +1,88 @@
+package com.neocoretechs.rocksack.test;
+
+import java.util.Iterator;
+
+import com.neocoretechs.rocksack.session.BufferedMap;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+
+/**
+ * Test of removing ranges of keys with range tombstones: a sub range, the head and tail of the map, and all of it.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatteryRangeDelete {
+	public static boolean DEBUG = false;
+	static int min = 0;
+	static int max = 100000;
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatteryRangeDelete <DB>");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		BufferedMap map = DatabaseManager.getMap(Long.class);
+		map.clear();
+		for(int i = min; i < max; i++)
+			map.put(Long.valueOf(i), "Value"+i);
+		battery1(map);
+		battery2(map);
+		battery3(map);
+		System.out.println("BatteryRangeDelete TEST BATTERY COMPLETE.");
+	}
+	/**
+	 * Removing the middle half leaves both ends, a range ending before it starts removes nothing.
+	 * @throws Exception
+	 */
+	public static void battery1(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		map.removeRange(Long.valueOf(max / 4), Long.valueOf(max - max / 4));
+		map.removeRange(Long.valueOf(max), Long.valueOf(min));
+		if(map.size() != max / 2)
+			throw new Exception("BATTERY1 FAIL size "+map.size());
+		if(map.get(Long.valueOf(max / 4 - 1)) == null || map.get(Long.valueOf(max / 4)) != null ||
+			map.get(Long.valueOf(max - max / 4 - 1)) != null || map.get(Long.valueOf(max - max / 4)) == null)
+			throw new Exception("BATTERY1 FAIL bounds of the range");
+		System.out.println("BATTERY1 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * Removing the head and the tail, the tail with its space reclaimed, leaves the keys between.
+	 * @throws Exception
+	 */
+	public static void battery2(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		map.removeHead(Long.valueOf(10));
+		map.removeRange(Long.valueOf(max - 10), null, true);
+		if(!map.firstKey().equals(Long.valueOf(10)) || !map.lastKey().equals(Long.valueOf(max - 11)))
+			throw new Exception("BATTERY2 FAIL first "+map.firstKey()+" last "+map.lastKey());
+		map.removeTail(Long.valueOf(max / 2));
+		Iterator<?> it = map.keySet();
+		long n = 0;
+		while(it.hasNext()) {
+			Long k = (Long) it.next();
+			if(k < 10 || k >= max / 4)
+				throw new Exception("BATTERY2 FAIL key "+k+" present");
+			++n;
+		}
+		if(n != max / 4 - 10)
+			throw new Exception("BATTERY2 FAIL "+n+" keys left");
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * Clearing removes the last key too, though the end of a range tombstone is excluded.
+	 * @throws Exception
+	 */
+	public static void battery3(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		map.clear(true);
+		if(map.size() != 0 || map.keySet().hasNext())
+			throw new Exception("BATTERY3 FAIL size "+map.size()+" after clear");
+		System.out.println("BATTERY3 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+}
@@ -0,0 +1,140 @@
+package com.neocoretechs.rocksack.test;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.neocoretechs.rocksack.SecondaryIndex;
+import com.neocoretechs.rocksack.session.BufferedMap;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+
+/**
+ * Test of secondary indexes on the fields and methods of stored values. Values are found by indexed value, by range
+ * of indexed values and from the index alone, and the index follows overwrites and removes. A rebuild reproduces it.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatterySecondaryIndex {
+	public static boolean DEBUG = false;
+	static int min = 0;
+	static int max = 10000;
+	static String[] regions = new String[] {"east", "north", "south", "west"};
+
+	public static class Order implements Serializable {
+		private static final long serialVersionUID = 1L;
+		@SecondaryIndex
+		String region;
+		long amount;
+		public Order(String region, long amount) {
+			this.region = region;
+			this.amount = amount;
+		}
+		@SecondaryIndex(name = "size")
+		public Long size() {
+			return amount / 1000;
+		}
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Order && ((Order)o).region.equals(region) && ((Order)o).amount == amount;
+		}
+		@Override
+		public int hashCode() {
+			return region.hashCode() ^ Long.hashCode(amount);
+		}
+		@Override
+		public String toString() {
+			return "Order:"+region+","+amount;
+		}
+	}
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatterySecondaryIndex <DB>");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		BufferedMap map = DatabaseManager.getMap(Long.class);
+		for(int i = min; i < max; i++)
+			map.put(Long.valueOf(i), new Order(regions[i % regions.length], i));
+		battery1(map);
+		battery2(map);
+		battery3(map);
+		System.out.println("BatterySecondaryIndex TEST BATTERY COMPLETE.");
+	}
+	/**
+	 * Each region holds a quarter of the orders, each size range a thousand, a value or range between them none.
+	 * @throws Exception
+	 */
+	public static void battery1(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		for(String region : regions) {
+			long n = count(map.getByIndex("region", region), region);
+			if(n != (max - min) / regions.length)
+				throw new Exception("BATTERY1 FAIL region "+region+" has "+n);
+		}
+		long n = map.indexRangeStream("size", Long.valueOf(2), Long.valueOf(4)).count();
+		if(n != 2000)
+			throw new Exception("BATTERY1 FAIL size range has "+n);
+		n = map.indexStream("region", "north", "south").count();
+		if(n != (max - min) / regions.length)
+			throw new Exception("BATTERY1 FAIL index only stream has "+n);
+		// a value or range with no entries, falling between indexed values, finds nothing
+		if(map.getByIndex("region", "middle").hasNext())
+			throw new Exception("BATTERY1 FAIL unindexed region found");
+		if(map.indexRange("region", "f", "m").hasNext() || map.indexStream("region", "f", "m").count() != 0)
+			throw new Exception("BATTERY1 FAIL empty region range found");
+		if(map.indexRange("size", Long.valueOf(max), Long.valueOf(2 * max)).hasNext())
+			throw new Exception("BATTERY1 FAIL empty size range found");
+		System.out.println("BATTERY1 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * Moving orders to another region and removing some moves and removes their index entries.
+	 * @throws Exception
+	 */
+	public static void battery2(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		// east orders are the multiples of 4
+		for(int i = min; i < max; i += 4) {
+			if(i % 8 == 0)
+				map.put(Long.valueOf(i), new Order("west", i));
+			else
+				map.remove(Long.valueOf(i));
+		}
+		if(map.getByIndex("region", "east").hasNext())
+			throw new Exception("BATTERY2 FAIL east still indexed");
+		long n = count(map.getByIndex("region", "west"), "west");
+		if(n != (max - min) / regions.length + (max - min) / 8)
+			throw new Exception("BATTERY2 FAIL west has "+n);
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * A rebuild indexes the same entries.
+	 * @throws Exception
+	 */
+	public static void battery3(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		long before = map.indexStream("region", null, null).count();
+		long values = map.rebuildIndex();
+		long after = map.indexStream("region", null, null).count();
+		if(before != after || values != map.size())
+			throw new Exception("BATTERY3 FAIL before "+before+" after "+after+" values "+values+" size "+map.size());
+		System.out.println("BATTERY3 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+
+	private static long count(Iterator<?> it, String region) throws Exception {
+		long n = 0;
+		while(it.hasNext()) {
+			Map.Entry<?,?> e = (Map.Entry<?,?>) it.next();
+			if(!((Order)e.getValue()).region.equals(region))
+				throw new Exception("FAIL "+e+" found for region "+region);
+			++n;
+		}
+		return n;
+	}
+}
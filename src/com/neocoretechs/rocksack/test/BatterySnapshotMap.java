@@ -0,0 +1,86 @@
+package com.neocoretechs.rocksack.test;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.neocoretechs.rocksack.session.BufferedMap;
+import com.neocoretechs.rocksack.session.DatabaseManager;
+import com.neocoretechs.rocksack.session.SnapshotMap;
+
+/**
+ * Test of read only views pinned to a snapshot: writes made after the view is opened are not seen by its gets,
+ * ranges and size, and the view refuses reads once closed.
+ * NOTES:
+ * A database unique to this test module should be used.
+ * program argument is database i.e. C:/users/you/RockSack/TestDB2
+ * C:/users/you/RockSack should be valid path. C:/users/you/RockSack/TestDB2java.lang.Long etc. will be created.
+ * @author Jonathan Groff Copyright (C) NeoCoreTechs 2026
+ *
+ */
+public class BatterySnapshotMap {
+	public static boolean DEBUG = false;
+	static int min = 0;
+	static int max = 100000;
+	/**
+	* Main test fixture driver
+	*/
+	public static void main(String[] argv) throws Exception {
+		if(argv.length < 1) {
+			System.out.println("Usage: java com.neocoretechs.rocksack.test.BatterySnapshotMap <DB>");
+			System.exit(1);
+		}
+		DatabaseManager.setTableSpaceDir(argv[0]);
+		BufferedMap map = DatabaseManager.getMap(Long.class);
+		map.clear();
+		for(int i = min; i < max; i++)
+			map.put(Long.valueOf(i), "Value"+i);
+		battery1(map);
+		battery2(map);
+		System.out.println("BatterySnapshotMap TEST BATTERY COMPLETE.");
+	}
+	/**
+	 * Remove half the map and overwrite the rest after opening the view, the view still reads the map as it was.
+	 * @throws Exception
+	 */
+	public static void battery1(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		try (SnapshotMap snap = DatabaseManager.openSnapshot(Long.class)) {
+			Iterator<?> open = snap.subMap(Long.valueOf(min), Long.valueOf(max));
+			map.removeTail(Long.valueOf(max / 2));
+			for(int i = min; i < max / 2; i++)
+				map.put(Long.valueOf(i), "Changed"+i);
+			if(snap.size() != max - min || !snap.lastKey().equals(Long.valueOf(max - 1)))
+				throw new Exception("BATTERY1 FAIL size "+snap.size()+" last "+snap.lastKey());
+			if(!((Map.Entry<?,?>)snap.get(Long.valueOf(min))).getValue().equals("Value"+min) || !snap.containsKey(Long.valueOf(max - 1)))
+				throw new Exception("BATTERY1 FAIL get "+snap.get(Long.valueOf(min)));
+			long n = 0;
+			while(open.hasNext()) {
+				open.next();
+				++n;
+			}
+			if(n != max - min || snap.tailMapKVStream(Long.valueOf(max / 2)).count() != max - max / 2)
+				throw new Exception("BATTERY1 FAIL ranges read "+n);
+		}
+		if(map.size() != max / 2)
+			throw new Exception("BATTERY1 FAIL map size "+map.size());
+		System.out.println("BATTERY1 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+	/**
+	 * A closed view closes its iterators and refuses reads.
+	 * @throws Exception
+	 */
+	public static void battery2(BufferedMap map) throws Exception {
+		long tims = System.currentTimeMillis();
+		SnapshotMap snap = map.openSnapshot();
+		Iterator<?> it = snap.keySet();
+		snap.close();
+		if(it.hasNext())
+			throw new Exception("BATTERY2 FAIL iterator open after close");
+		try {
+			snap.get(Long.valueOf(min));
+			throw new Exception("BATTERY2 FAIL read after close");
+		} catch (java.io.IOException e) {
+		}
+		System.out.println("BATTERY2 SUCCESS in "+(System.currentTimeMillis()-tims)+" ms.");
+	}
+}